@@ -1,6 +1,9 @@
+import groovy.json.JsonSlurper
+
 plugins {
     id("java")
     id("application")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.mousecontrol"
@@ -30,3 +33,127 @@ application {
 tasks.test {
     useJUnitPlatform()
 }
+
+// ===== Benchmarks (src/jmh/java) =====
+// ./gradlew jmh                       run all benchmarks (headless, synthetic frames and input)
+// ./gradlew jmh -PjmhIncludes=Encode  run the benchmarks matching a regex
+// ./gradlew jmhSaveBaseline           copy the last results to benchmarks/baseline.json (check it in)
+// ./gradlew jmhCompare                compare the last results with the baseline
+
+val jmhResults = layout.buildDirectory.file("results/jmh/results.json")
+val jmhBaseline = layout.projectDirectory.file("benchmarks/baseline.json")
+
+jmh {
+    jmhVersion.set("1.37")
+    jvmArgs.add("-Djava.awt.headless=true")
+    resultFormat.set("JSON")
+    resultsFile.set(jmhResults)
+    (findProperty("jmhIncludes") as String?)?.let { includes.set(listOf(it)) }
+}
+
+tasks.register<Copy>("jmhSaveBaseline") {
+    group = "benchmark"
+    description = "Copies the last JMH results to benchmarks/baseline.json."
+    from(jmhResults)
+    into(layout.projectDirectory.dir("benchmarks"))
+    rename { "baseline.json" }
+}
+
+tasks.register("jmhCompare") {
+    group = "benchmark"
+    description = "Compares the last JMH results with benchmarks/baseline.json; " +
+            "fails if a benchmark got slower than -PjmhMaxRegression percent (default 10)."
+    doLast {
+        val maxRegression = (findProperty("jmhMaxRegression") as String?)?.toDouble() ?: 10.0
+
+        @Suppress("UNCHECKED_CAST")
+        fun load(file: File): Map<String, Map<String, Any>> {
+            val runs = JsonSlurper().parse(file) as List<Map<String, Any>>
+            return runs.associateBy { run ->
+                val params = (run["params"] as Map<String, Any>?)?.entries
+                        ?.sortedBy { it.key }?.joinToString(",") { "${it.key}=${it.value}" } ?: ""
+                "${run["benchmark"]}($params)"
+            }
+        }
+
+        val current = load(jmhResults.get().asFile)
+        val baseline = load(jmhBaseline.asFile)
+        val regressions = mutableListOf<String>()
+        for ((key, run) in current.toSortedMap()) {
+            @Suppress("UNCHECKED_CAST")
+            val metric = run["primaryMetric"] as Map<String, Any>
+            val score = (metric["score"] as Number).toDouble()
+            val unit = metric["scoreUnit"]
+            val base = baseline[key]
+            if (base == null) {
+                println(String.format("%-90s %12.3f %-8s (new)", key, score, unit))
+                continue
+            }
+            @Suppress("UNCHECKED_CAST")
+            val baseScore = ((base["primaryMetric"] as Map<String, Any>)["score"] as Number).toDouble()
+            // time per op: lower is better; throughput: higher is better
+            val slower = if (run["mode"] == "thrpt") baseScore / score else score / baseScore
+            val change = (slower - 1.0) * 100.0
+            println(String.format("%-90s %12.3f %-8s %+7.1f%%", key, score, unit, change))
+            if (change > maxRegression) regressions.add(key)
+        }
+        if (regressions.isNotEmpty()) {
+            throw GradleException("Benchmarks slower than baseline by more than $maxRegression%: $regressions")
+        }
+    }
+}
+
+// ===== Flight recording (jfr/mousecontrol.jfc) =====
+// ./gradlew run -Pjfr     run with the pipeline events recorded to build/mousecontrol.jfr
+// ./gradlew test          includes PipelineEventsTest: a synthetic session must fire every event
+
+val jfrSettings = layout.projectDirectory.file("jfr/mousecontrol.jfc").asFile
+
+tasks.named<JavaExec>("run") {
+    if (project.hasProperty("jfr")) {
+        val recording = layout.buildDirectory.file("mousecontrol.jfr").get().asFile
+        jvmArgs("-XX:StartFlightRecording:settings=default,settings=$jfrSettings,filename=$recording")
+    }
+}
+
+// ===== Fast startup (AppCDS) =====
+// ./gradlew cdsArchive    training run on a simulated desktop; writes build/mousecontrol.jsa
+// ./gradlew run -Pcds     fast startup (-Dmousecontrol.fastStartup=true) with the archive
+// CDS only archives classes from jars, so both use the jar rather than build/classes.
+
+val cdsArchiveFile = layout.buildDirectory.file("mousecontrol.jsa")
+
+tasks.register<JavaExec>("cdsArchive") {
+    group = "build"
+    description = "Runs a training session and dumps the loaded classes into an AppCDS archive."
+    classpath = files(tasks.jar) + configurations["runtimeClasspath"]
+    mainClass.set("com.mousecontrol.StartupTraining")
+    jvmArgs("-XX:ArchiveClassesAtExit=${cdsArchiveFile.get().asFile}", "-Djava.awt.headless=true")
+    outputs.file(cdsArchiveFile)
+}
+
+tasks.named<JavaExec>("run") {
+    if (project.hasProperty("cds")) {
+        dependsOn("cdsArchive")
+        classpath = files(tasks.jar) + configurations["runtimeClasspath"]
+        jvmArgs("-XX:SharedArchiveFile=${cdsArchiveFile.get().asFile}", "-Dmousecontrol.fastStartup=true")
+    }
+}
+
+// ===== Load testing (com.mousecontrol.loadtest) =====
+// ./gradlew loadGen --args="--rate 500 --duration 20 --metrics http://127.0.0.1:9100/metrics"
+// ./gradlew streamReceiver --args="udp --control 127.0.0.1:5000 --fec auto"
+
+tasks.register<JavaExec>("loadGen") {
+    group = "application"
+    description = "Drives the control connection with synthetic or recorded gyro input."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("com.mousecontrol.loadtest.LoadGenerator")
+}
+
+tasks.register<JavaExec>("streamReceiver") {
+    group = "application"
+    description = "Receives the UDP or WebSocket screen stream and reports fps, loss and latency."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("com.mousecontrol.loadtest.StreamReceiver")
+}
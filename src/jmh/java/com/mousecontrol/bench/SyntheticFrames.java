@@ -0,0 +1,76 @@
+package com.mousecontrol.bench;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * SyntheticFrames
+ *
+ * Deterministic stand-ins for captured screens, so the benchmarks run headless
+ * and every run sees the same pixels. Frames use the capturer's pixel layout
+ * (TYPE_3BYTE_BGR).
+ *
+ *  - "text":  an editor-like screen (flat background, lines of antialiased text)
+ *  - "photo": smooth gradients with noise, like video or a photo wallpaper
+ */
+public final class SyntheticFrames {
+
+    private SyntheticFrames() {}
+
+    public static BufferedImage create(String content, int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = img.createGraphics();
+        try {
+            if ("photo".equals(content)) photo(img);
+            else text(g, width, height);
+        } finally {
+            g.dispose();
+        }
+        return img;
+    }
+
+    private static void text(Graphics2D g, int width, int height) {
+        Random rnd = new Random(42);
+        g.setColor(new Color(0x1E1E1E));
+        g.fillRect(0, 0, width, height);
+        g.setColor(new Color(0x252526));
+        g.fillRect(0, 0, width / 6, height);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
+        Color[] palette = {new Color(0xD4D4D4), new Color(0x569CD6), new Color(0xCE9178), new Color(0x6A9955)};
+        String words = "public static final int return void new this if else for while try catch";
+        String[] tokens = words.split(" ");
+        for (int y = 18; y < height; y += 18) {
+            int x = width / 6 + 8 + rnd.nextInt(6) * 16;
+            int n = rnd.nextInt(10);
+            for (int i = 0; i < n && x < width; i++) {
+                String t = tokens[rnd.nextInt(tokens.length)];
+                g.setColor(palette[rnd.nextInt(palette.length)]);
+                g.drawString(t, x, y);
+                x += (t.length() + 1) * 9;
+            }
+        }
+    }
+
+    private static void photo(BufferedImage img) {
+        Random rnd = new Random(7);
+        int w = img.getWidth();
+        int h = img.getHeight();
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int r = clamp((int) (128 + 100 * Math.sin(x / 97.0) * Math.cos(y / 61.0)) + rnd.nextInt(17) - 8);
+                int gr = clamp((x * 255 / w + y * 64 / h) + rnd.nextInt(17) - 8);
+                int b = clamp((int) (128 + 90 * Math.cos((x + y) / 143.0)) + rnd.nextInt(17) - 8);
+                img.setRGB(x, y, (r << 16) | (gr << 8) | b);
+            }
+        }
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(255, v));
+    }
+}
@@ -0,0 +1,38 @@
+package com.mousecontrol.bench;
+
+import com.mousecontrol.loadtest.MotionTrace;
+import com.mousecontrol.models.MotionData;
+
+import java.util.Locale;
+
+/**
+ * SyntheticInput
+ *
+ * Deterministic motion traces shaped like a phone held in the hand: slow sweeps
+ * with sensor noise, occasional still periods and clicks.
+ */
+public final class SyntheticInput {
+
+    private SyntheticInput() {}
+
+    /**
+     * The same trace the load generator sends, so benchmark and load-test numbers compare.
+     */
+    public static MotionData[] motionTrace(int samples, long seed) {
+        return MotionTrace.synthetic(samples, seed);
+    }
+
+    /**
+     * The same trace as the JSON lines the mobile client sends.
+     */
+    public static String[] motionLines(int samples, long seed) {
+        MotionData[] trace = motionTrace(samples, seed);
+        String[] lines = new String[samples];
+        for (int i = 0; i < samples; i++) {
+            MotionData d = trace[i];
+            lines[i] = String.format(Locale.ROOT, "{\"gyroX\":%.6f,\"gyroY\":%.6f,\"leftClick\":%b,\"rightClick\":%b}",
+                    d.gyroX, d.gyroY, d.leftClick, d.rightClick);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,59 @@
+package com.mousecontrol.communication;
+
+import com.mousecontrol.bench.SyntheticFrames;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame encoding per codec and content type, one frame per op. "imageIO" is the plain
+ * ImageIO.write path the streamers used before JpegEncoder (new writer and output stream
+ * per frame), kept as a reference point.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeBenchmark {
+
+    @Param({"text", "photo"})
+    public String content;
+
+    @Param({"1280"})
+    public int width;
+
+    @Param({"JPEG", "LOSSLESS", "AUTO"})
+    public FrameCodec codec;
+
+    private BufferedImage frame;
+    private FrameEncoder encoder;
+
+    @Setup
+    public void setup() throws IOException {
+        frame = SyntheticFrames.create(content, width, width * 9 / 16);
+        encoder = codec.newEncoder(0.7f);
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoder.close();
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        return encoder.encode(frame);
+    }
+
+    @Benchmark
+    public int imageIO() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(frame, "jpg", out);
+        return out.size();
+    }
+}
@@ -0,0 +1,76 @@
+package com.mousecontrol.communication;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fragmenting and sending one encoded frame to a loopback subscriber (FragmentSender.send,
+ * the UDP streamer's send path), with and without XOR FEC. A background thread drains the
+ * receiving socket so sends measure the normal path rather than a full buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FragmentSendBenchmark {
+
+    @Param({"65536", "262144"})
+    public int frameBytes;
+
+    @Param({"0", "8"})
+    public int fecGroup;
+
+    private DatagramChannel receiver;
+    private Thread drain;
+    private StreamTarget[] targets;
+    private FragmentSender sender;
+    private FecEncoder fec;
+    private byte[] frame;
+    private int seq;
+
+    @Setup
+    public void setup() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        receiver = DatagramChannel.open().bind(new InetSocketAddress(loopback, 0));
+        drain = new Thread(() -> {
+            ByteBuffer buf = ByteBuffer.allocateDirect(2048);
+            try {
+                while (true) {
+                    buf.clear();
+                    receiver.receive(buf);
+                }
+            } catch (IOException e) {
+                // closed in tearDown
+            }
+        }, "benchmark-drain");
+        drain.setDaemon(true);
+        drain.start();
+
+        int port = ((InetSocketAddress) receiver.getLocalAddress()).getPort();
+        targets = new StreamTarget[] {new StreamTarget(loopback, port, loopback, 60_000, 1)};
+        sender = new FragmentSender(1100);
+        fec = fecGroup > 0 ? new FecEncoder(FecEncoder.Mode.FIXED, fecGroup) : FecEncoder.off();
+        frame = new byte[frameBytes];
+        new Random(3).nextBytes(frame);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (StreamTarget t : targets) t.close();
+        receiver.close();
+    }
+
+    @Benchmark
+    public int send() {
+        return sender.send(targets, frame, frame.length, seq++, fec, fecGroup, 0);
+    }
+}
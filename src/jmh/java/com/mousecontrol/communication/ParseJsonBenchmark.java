@@ -0,0 +1,34 @@
+package com.mousecontrol.communication;
+
+import com.mousecontrol.bench.SyntheticInput;
+import com.mousecontrol.models.MotionData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Motion line parsing on the control connection (TCPServer.parseJson), one line per op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseJsonBenchmark {
+
+    private String[] lines;
+    private int next;
+
+    @Setup
+    public void setup() {
+        lines = SyntheticInput.motionLines(4096, 1);
+    }
+
+    @Benchmark
+    public MotionData parseJson() {
+        String line = lines[next];
+        next = (next + 1) & (lines.length - 1);
+        return TCPServer.parseJson(line);
+    }
+}
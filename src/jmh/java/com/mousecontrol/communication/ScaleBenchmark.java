@@ -0,0 +1,44 @@
+package com.mousecontrol.communication;
+
+import com.mousecontrol.bench.SyntheticFrames;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downscaling a 1920x1080 frame to a tier's width (the same bilinear drawImage path the
+ * capturer uses), one frame per op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScaleBenchmark {
+
+    @Param({"1280", "800"})
+    public int width;
+
+    private BufferedImage frame;
+    private StreamTier tier;
+    private AdaptiveStreamController ctl;
+
+    @Setup
+    public void setup() {
+        frame = SyntheticFrames.create("photo", 1920, 1080);
+        tier = StreamTier.fixed(width, 0.7f);
+        ctl = AdaptiveStreamController.fixed(30, width, 0.7f);
+    }
+
+    @TearDown
+    public void tearDown() {
+        tier.close();
+    }
+
+    @Benchmark
+    public BufferedImage scale() {
+        return tier.scaledFrame(frame, ctl);
+    }
+}
@@ -0,0 +1,32 @@
+package com.mousecontrol.controller;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Character to key mapping used when typing text (KeyboardController.keyStroke), over a
+ * mix of letters, digits and punctuation; one line of text per op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyboardMappingBenchmark {
+
+    private char[] text;
+
+    @Setup
+    public void setup() {
+        text = "Hello, World! ls -la /tmp; echo \"done\" (exit_code: 0)? 42.5\n".toCharArray();
+    }
+
+    @Benchmark
+    public int keyStrokes() {
+        int acc = 0;
+        for (char c : text) acc += KeyboardController.keyStroke(c);
+        return acc;
+    }
+}
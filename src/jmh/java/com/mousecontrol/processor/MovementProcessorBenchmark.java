@@ -0,0 +1,62 @@
+package com.mousecontrol.processor;
+
+import com.mousecontrol.bench.SyntheticInput;
+import com.mousecontrol.controller.MouseController;
+import com.mousecontrol.models.MotionData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MovementProcessor.handle over a recorded-like motion trace, with a MouseController that
+ * does nothing, so only the processing (and its per-sample logging, sent to a null stream)
+ * is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MovementProcessorBenchmark {
+
+    private static final class NoOpMouseController extends MouseController {
+        NoOpMouseController() {
+            super(null);
+        }
+
+        @Override public void moveBy(int dx, int dy) {}
+        @Override public void leftClick() {}
+        @Override public void rightClick() {}
+    }
+
+    private MovementProcessor processor;
+    private MotionData[] trace;
+    private int next;
+    private PrintStream stdout;
+
+    @Setup
+    public void setup() {
+        processor = new MovementProcessor(new NoOpMouseController());
+        // same tuning as Main
+        processor.setSensitivity(2.0);
+        processor.setSmoothing(0.1);
+        processor.setDeadZone(0.0);
+        trace = SyntheticInput.motionTrace(4096, 1);
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public void handle() {
+        processor.handle(trace[next]);
+        next = (next + 1) & (trace.length - 1);
+    }
+}
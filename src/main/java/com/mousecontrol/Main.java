@@ -6,8 +6,20 @@ import com.mousecontrol.communication.UDPStreamer;
 import com.mousecontrol.communication.WebSocketStreamer;
 import com.mousecontrol.controller.MouseController;
 import com.mousecontrol.controller.KeyboardController;
+import com.mousecontrol.desktop.Desktop;
+import com.mousecontrol.desktop.Desktops;
+import com.mousecontrol.desktop.Environment;
+import com.mousecontrol.desktop.LazyDesktop;
+import com.mousecontrol.desktop.SimulatedDesktop;
+import com.mousecontrol.metrics.MetricsRegistry;
+import com.mousecontrol.metrics.MetricsServer;
 import com.mousecontrol.processor.MovementProcessor;
+import com.mousecontrol.processor.TouchpadProcessor;
+import com.mousecontrol.recording.SessionRecorder;
 import com.mousecontrol.ui.DashboardUI;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -15,50 +27,25 @@ public class Main {
 
     private static final Logger LOGGER = Logger.getLogger(Main.class.getName());
 
-    /**9
-     * Check if xdotool is installed on the system
+    /**
+     * Print system information and platform setup hints.
      */
-    private static boolean checkXdotoolInstalled() {
-        try {
-            ProcessBuilder pb = new ProcessBuilder("which", "xdotool");
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-            return exitCode == 0;
-        } catch (Exception e) {
-            return false;
-        }
-    }
-
-    public static void main(String[] args)  {
-
-
-        System.out.println("\n╔═══════════════════════════════════════════════════════════╗");
-        System.out.println("║     Mobile Mouse Controller - Desktop Application           ║");
-        System.out.println("╚═══════════════════════════════════════════════════════════╝\n");
-
-        // Get OS information
-        String osName = System.getProperty("os.name").toLowerCase();
-        String osVersion = System.getProperty("os.version");
-        String javaVersion = System.getProperty("java.version");
-        String userName = System.getProperty("user.name");
-        boolean isWindows = osName.contains("win");
-        boolean isLinux = osName.contains("linux");
-
+    private static void printDiagnostics(Environment env) {
         // System diagnostics
         System.out.println("📊 System Information:");
-        System.out.println("  OS: " + System.getProperty("os.name") + " " + osVersion);
-        System.out.println("  Java Version: " + javaVersion);
-        System.out.println("  User: " + userName);
+        System.out.println("  OS: " + env.osName + " " + System.getProperty("os.version"));
+        System.out.println("  Java Version: " + System.getProperty("java.version"));
+        System.out.println("  User: " + System.getProperty("user.name"));
 
-        if (isLinux) {
-            System.out.println("  Display: " + System.getenv("DISPLAY"));
-            System.out.println("  Session Type: " + System.getenv("XDG_SESSION_TYPE"));
+        if (env.linux) {
+            System.out.println("  Display: " + env.display);
+            System.out.println("  Session Type: " + env.sessionType);
         }
 
         System.out.println("\n🔧 Platform-Specific Setup:");
 
         // Windows-specific instructions
-        if (isWindows) {
+        if (env.windows) {
             System.out.println("\n  ✅ WINDOWS DETECTED");
             System.out.println("  The application is ready to use on Windows!");
             System.out.println("  • Cursor control: ✓ Fully supported");
@@ -71,18 +58,12 @@ public class Main {
             System.out.println("     4. Enjoy your mobile mouse!\n");
         }
         // Linux-specific instructions
-        else if (isLinux) {
+        else if (env.linux) {
             System.out.println("\n  🐧 LINUX DETECTED");
 
-            String xdgSession = System.getenv("XDG_SESSION_TYPE");
-            boolean isWayland = xdgSession != null && xdgSession.contains("wayland");
-
-            System.out.println("  Session Type: " + (xdgSession != null ? xdgSession.toUpperCase() : "UNKNOWN"));
+            System.out.println("  Session Type: " + (env.sessionType != null ? env.sessionType.toUpperCase() : "UNKNOWN"));
 
-            // Check for xdotool
-            boolean hasXdotool = checkXdotoolInstalled();
-
-            if (hasXdotool) {
+            if (env.xdotool) {
                 System.out.println("  ✅ xdotool: INSTALLED");
                 System.out.println("  • Cursor control: ✓ Optimal (no sudo needed)");
                 System.out.println("  • Mouse clicks: ✓ Optimal");
@@ -97,13 +78,28 @@ public class Main {
             }
 
             System.out.println("  💡 Troubleshooting:");
-            if (isWayland) {
+            if (env.wayland) {
                 System.out.println("     • Running on Wayland - some features may be limited");
                 System.out.println("     • For best results, switch to X11 session if available");
             }
             System.out.println("     • Check DISPLAY variable: echo $DISPLAY");
             System.out.println("     • Test xdotool: xdotool mousemove 100 100\n");
         }
+    }
+
+    public static void main(String[] args)  {
+        // -Dmousecontrol.fastStartup=true: listen right away; the desktop, the cursor self-test
+        // and the streamers are set up in the background or when first needed
+        boolean fastStartup = Boolean.getBoolean("mousecontrol.fastStartup");
+        // xdotool lookup and (in fast mode) Robot setup run in parallel with the rest of startup
+        CompletableFuture<Environment> environment = Environment.probeAsync();
+        if (fastStartup) Desktops.startAsync();
+
+        System.out.println("\n╔═══════════════════════════════════════════════════════════╗");
+        System.out.println("║     Mobile Mouse Controller - Desktop Application           ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════╝\n");
+
+        if (!fastStartup) printDiagnostics(environment.join());
 
         System.out.println("╔═══════════════════════════════════════════════════════════╗");
         System.out.println("║ Starting application...                                    ║");
@@ -112,11 +108,20 @@ public class Main {
         try {
             // Create headless dashboard (no Swing window will be created)
             DashboardUI dashboard = new DashboardUI();
+            // -Dmousecontrol.logSamples=true prints every gyro sample and cursor move, as before
+            boolean logSamples = Boolean.getBoolean("mousecontrol.logSamples");
+            dashboard.setEchoSamples(logSamples);
             dashboard.addLog("Initializing...");
 
+            // Real desktop, or -Dmousecontrol.desktop=simulated[:1920x1080,...] to run without a display
+            Desktop desktop = fastStartup ? new LazyDesktop() : Desktops.get();
+            if (!fastStartup) dashboard.addLog("Desktop: " + desktop.getName());
+
             // Create controller and processor
-            MouseController mouse = new MouseController();
+            MouseController mouse = fastStartup ? new MouseController(desktop) : new MouseController();
+            mouse.setLogMoves(logSamples);
             MovementProcessor processor = new MovementProcessor(mouse);
+            processor.setLogSamples(logSamples);
 
             // Tuning defaults - adjusted for small gyro values
             // Reduced sensitivity so movements are slower/less jumpy by default
@@ -135,7 +140,6 @@ public class Main {
                 @Override
                 public void onCursorMove(int moveX, int moveY) {
                     dashboard.updateCursorMovement(moveX, moveY);
-                    dashboard.addLog(String.format("Move: (%+d, %+d)", moveX, moveY));
                 }
 
                 @Override
@@ -146,6 +150,9 @@ public class Main {
 
             // Start TCP Server
             TCPServer server = new TCPServer(5000, processor);
+            // -Dmousecontrol.sessionGraceMs=<ms>: how long a disconnected client can come back to its session
+            Long sessionGraceMs = Long.getLong("mousecontrol.sessionGraceMs");
+            if (sessionGraceMs != null) server.setSessionGraceMs(sessionGraceMs);
             server.setServerCallback(new TCPServer.ServerCallback() {
                 @Override
                 public void onConnectionStatusChanged(String status) {
@@ -154,17 +161,69 @@ public class Main {
                 }
             });
 
+            MetricsRegistry metrics = new MetricsRegistry();
+
             // Create and attach UDPStreamer with sane defaults
-            UDPStreamer streamer = new UDPStreamer(1100); // fragment size ~1100 bytes
-            server.setUdpStreamer(streamer);
+            Supplier<UDPStreamer> udpStreamer = () -> {
+                UDPStreamer streamer = new UDPStreamer(1100); // fragment size ~1100 bytes
+                streamer.setCursorButtonSource(mouse::getButtonMask);
+                streamer.registerMetrics(metrics);
+                return streamer;
+            };
 
             // Create and attach KeyboardController
-            KeyboardController kc = new KeyboardController();
+            KeyboardController kc = new KeyboardController(desktop);
             server.setKeyboardController(kc);
 
+            // Touchpad mode: {"touch":...} samples move the pointer, scroll, zoom and swipe
+            TouchpadProcessor touchpad = new TouchpadProcessor(mouse, kc);
+            // -Dmousecontrol.naturalScroll=false: classic wheel direction for two-finger scrolling
+            touchpad.setNaturalScroll(!"false".equalsIgnoreCase(System.getProperty("mousecontrol.naturalScroll")));
+            // -Dmousecontrol.wheelRate=<per second>: most scroll/zoom injections per second (default 60)
+            Integer wheelRate = Integer.getInteger("mousecontrol.wheelRate");
+            if (wheelRate != null) touchpad.setMaxWheelRate(wheelRate);
+            server.setTouchpadProcessor(touchpad);
+
             // Create and attach WebSocketStreamer (optional)
-            WebSocketStreamer ws = new WebSocketStreamer();
-            server.setWebSocketStreamer(ws);
+            Supplier<WebSocketStreamer> webSocketStreamer = () -> {
+                WebSocketStreamer ws = new WebSocketStreamer();
+                ws.setCursorButtonSource(mouse::getButtonMask);
+                // viewers may send motion and keyboard input on their stream connection
+                ws.setInputDispatcher(server.getInputDispatcher());
+                ws.registerMetrics(metrics);
+                return ws;
+            };
+
+            // fast startup builds each streamer on the first command for it
+            if (fastStartup) {
+                server.setUdpStreamerFactory(udpStreamer);
+                server.setWebSocketStreamerFactory(webSocketStreamer);
+            } else {
+                server.setUdpStreamer(udpStreamer.get());
+                server.setWebSocketStreamer(webSocketStreamer.get());
+            }
+
+            // Optional metrics endpoint: -Dmousecontrol.metricsPort=9100 serves http://<host>:9100/metrics
+            server.registerMetrics(metrics);
+            touchpad.registerMetrics(metrics);
+            dashboard.registerMetrics(metrics);
+            Desktops.startAsync().thenAccept(d -> {
+                if (d instanceof SimulatedDesktop) ((SimulatedDesktop) d).registerMetrics(metrics);
+            });
+            Integer metricsPort = Integer.getInteger("mousecontrol.metricsPort");
+            if (metricsPort != null && metricsPort > 0) {
+                new MetricsServer(metrics).start(metricsPort);
+                dashboard.addLog("Metrics endpoint on port " + metricsPort + " (/metrics)");
+            }
+
+            // Optional session recording from startup: -Dmousecontrol.record=<dir>
+            String recordDir = System.getProperty("mousecontrol.record");
+            if (recordDir != null && !recordDir.isEmpty()) {
+                server.startRecording(Paths.get(recordDir), SessionRecorder.DEFAULT_SEGMENT_BYTES, SessionRecorder.DEFAULT_SEGMENTS);
+                dashboard.addLog("Recording session to " + recordDir);
+            }
+            // flush and finish any running recording on exit
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stopRecording, "recording-shutdown"));
 
             server.start();
 
@@ -172,6 +231,21 @@ public class Main {
             dashboard.addLog("Waiting for connection from Flutter...");
             dashboard.addLog("Tip: You can start WebSocket streaming by sending a control JSON over TCP: {\"websocket\":{\"cmd\":\"start\",\"port\":8080}}\n");
 
+            if (fastStartup) {
+                // what the classic path does before listening, now while already accepting
+                Thread checks = new Thread(() -> {
+                    printDiagnostics(environment.join());
+                    try {
+                        mouse.selfTest();
+                        dashboard.addLog("Desktop: " + desktop.getName());
+                    } catch (RuntimeException e) {
+                        dashboard.addLog("Desktop setup failed: " + e.getMessage());
+                    }
+                }, "startup-checks");
+                checks.setDaemon(true);
+                checks.start();
+            }
+
             // Keep app running
             Thread.currentThread().join();
 
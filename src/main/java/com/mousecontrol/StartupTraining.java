@@ -0,0 +1,103 @@
+package com.mousecontrol;
+
+import com.mousecontrol.desktop.Desktops;
+
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * StartupTraining
+ *
+ * Training run for the AppCDS archive (./gradlew cdsArchive): starts the application in
+ * fast-startup mode on a simulated desktop, drives it the way a phone does for a couple
+ * of seconds (motion, clicks, typing, a UDP stream, a WebSocket stream start and stop,
+ * a metrics scrape) and exits, so that the JVM's -XX:ArchiveClassesAtExit archive holds
+ * the classes a real session loads.
+ *
+ * Uses port 5000 like the application, so it cannot run next to it.
+ */
+public final class StartupTraining {
+
+    private static final int PORT = 5000;
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty(Desktops.PROPERTY) == null) System.setProperty(Desktops.PROPERTY, "simulated");
+        System.setProperty("mousecontrol.fastStartup", "true");
+        int metricsPort;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            metricsPort = probe.getLocalPort();
+        }
+        System.setProperty("mousecontrol.metricsPort", String.valueOf(metricsPort));
+
+        Thread app = new Thread(() -> Main.main(args), "main");
+        app.setDaemon(true);
+        app.start();
+
+        int status = 0;
+        try (Socket socket = connect();
+             DatagramSocket receiver = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             Writer w = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            w.write("{\"stream\":{\"cmd\":\"start\",\"port\":" + receiver.getLocalPort()
+                    + ",\"fps\":15,\"maxWidth\":960,\"fec\":{\"mode\":\"auto\"},\"cursorRate\":60}}\n");
+            for (int i = 0; i < 400; i++) {
+                double phase = 2 * Math.PI * i / 200.0;
+                w.write("{\"gyroX\":" + Math.sin(phase) + ",\"gyroY\":" + Math.cos(phase) / 2
+                        + ",\"leftClick\":" + (i % 150 == 0) + ",\"rightClick\":" + (i % 390 == 0) + "}\n");
+            }
+            w.write("{\"keyboard\":{\"cmd\":\"type\",\"text\":\"Hello, world! 123\"}}\n");
+            w.write("{\"websocket\":{\"cmd\":\"start\",\"port\":0}}\n");
+            w.flush();
+
+            // frames until they have come for a second
+            receiver.setSoTimeout(200);
+            byte[] buf = new byte[2048];
+            long until = System.nanoTime() + 3_000_000_000L;
+            int packets = 0;
+            while (System.nanoTime() < until) {
+                try {
+                    receiver.receive(new DatagramPacket(buf, buf.length));
+                    if (packets++ == 0) until = System.nanoTime() + 1_000_000_000L;
+                } catch (SocketTimeoutException ignored) {
+                    // keep waiting until the deadline
+                }
+            }
+            w.write("{\"websocket\":{\"cmd\":\"stop\"}}\n");
+            w.write("{\"stream\":{\"cmd\":\"stop\",\"port\":" + receiver.getLocalPort() + "}}\n");
+            w.flush();
+
+            try (InputStream in = URI.create("http://127.0.0.1:" + metricsPort + "/metrics").toURL().openStream()) {
+                in.readAllBytes();
+            }
+            System.out.println("StartupTraining: received " + packets + " stream packets");
+            if (packets == 0) status = 1;
+            // let the handler get through what is still buffered
+            Thread.sleep(500);
+        } catch (Exception e) {
+            e.printStackTrace();
+            status = 2;
+        }
+        // the server threads do not stop on their own; the archive is written at exit
+        System.exit(status);
+    }
+
+    private static Socket connect() throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new Socket(InetAddress.getLoopbackAddress(), PORT);
+            } catch (java.net.ConnectException e) {
+                // the server binds on its own thread
+                if (attempt >= 250) throw e;
+                Thread.sleep(20);
+            }
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.mousecontrol.communication;
+
+import com.mousecontrol.metrics.MetricsRegistry;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * AdaptiveStreamController
+ *
+ * Holds the live JPEG quality, output width and frame rate of a stream and,
+ * when adaptive mode is enabled, adjusts them from client feedback reports
+ * (frames received, fragments lost, decode time, latency) so the stream stays
+ * close to a target bitrate and latency within configured bounds.
+ *
+ * Degrades quality first, then resolution, then frame rate; recovers in the
+ * reverse order. The streaming thread reads the current values every frame.
+ *
+ * One stream can have several subscribers, each reporting on its own schedule, so
+ * loss and bitrate are measured per subscriber: against what was sent since that
+ * subscriber's previous report. Any congested subscriber steps the stream down; it
+ * only steps up again once none has been congested for a while.
+ */
+public class AdaptiveStreamController {
+
+    /**
+     * Limits and targets for adaptive mode. Public fields so callers can fill in
+     * only what the client specified.
+     */
+    public static class Bounds {
+        public float minQuality = 0.3f;
+        public float maxQuality = 0.9f;
+        public int minWidth = 480;
+        public int maxWidth = 1920;
+        public int minFps = 4;
+        public int maxFps = 30;
+        public int targetKbps = 4000;
+        public int targetLatencyMs = 150;
+    }
+
+    // Thresholds for treating a report as congested
+    private static final double MAX_FRAGMENT_LOSS = 0.02;
+    private static final double MAX_FRAME_LOSS = 0.05;
+    // Send-side backpressure steps down at most this often, so one slow burst costs one step
+    private static final long BACKPRESSURE_STEP_NANOS = 1_000_000_000L;
+    // No step up while any subscriber was congested this recently
+    private static final long UPGRADE_HOLD_NANOS = 2_000_000_000L;
+    // A subscriber that has not reported for this long is forgotten
+    private static final long WINDOW_EXPIRY_NANOS = 10_000_000_000L;
+
+    private final boolean adaptive;
+    private final Bounds bounds;
+
+    // current decisions (read by the streaming thread every frame)
+    private volatile float quality;
+    private volatile int width;
+    private volatile int fps;
+
+    // send-side totals; each subscriber's window is the difference since its last report
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong sentFrames = new AtomicLong();
+    private final AtomicLong sentFragments = new AtomicLong();
+    private final Map<Object, Window> windows = new HashMap<>();
+    private long lastCongestedNanos = System.nanoTime() - UPGRADE_HOLD_NANOS;
+
+    // last observed link state (exposed as metrics)
+    private volatile double lastKbps = 0.0;
+    private volatile double lastFrameLoss = 0.0;
+    private volatile double lastFragmentLoss = 0.0;
+    private volatile double lastDecodeMs = 0.0;
+    private volatile double lastLatencyMs = 0.0;
+    private final AtomicLong feedbackReports = new AtomicLong();
+    private final AtomicLong downgrades = new AtomicLong();
+    private final AtomicLong upgrades = new AtomicLong();
+    private final AtomicLong backpressureEvents = new AtomicLong();
+    private long lastBackpressureStep = System.nanoTime() - BACKPRESSURE_STEP_NANOS;
+
+    /**
+     * Send totals at a subscriber's previous report, and the fragment loss it reported.
+     */
+    private static final class Window {
+        long bytes;
+        long frames;
+        long fragments;
+        long nanos;
+        double fragmentLoss;
+    }
+
+    private AdaptiveStreamController(int fps, int width, float quality, Bounds bounds, boolean adaptive) {
+        this.adaptive = adaptive;
+        this.bounds = bounds;
+        if (adaptive) {
+            this.quality = clamp(quality, bounds.minQuality, bounds.maxQuality);
+            this.width = (int) clamp(width, bounds.minWidth, bounds.maxWidth);
+            this.fps = (int) clamp(fps, bounds.minFps, bounds.maxFps);
+        } else {
+            this.quality = clamp(quality, 0f, 1f);
+            this.width = width;
+            this.fps = Math.max(1, fps);
+        }
+    }
+
+    /**
+     * Controller that always reports the requested values and ignores feedback.
+     */
+    public static AdaptiveStreamController fixed(int fps, int width, float quality) {
+        return new AdaptiveStreamController(fps, width, quality, new Bounds(), false);
+    }
+
+    /**
+     * Controller starting from the requested values and adapting within bounds.
+     */
+    public static AdaptiveStreamController adaptive(int fps, int width, float quality, Bounds bounds) {
+        return new AdaptiveStreamController(fps, width, quality, bounds, true);
+    }
+
+    public boolean isAdaptive() { return adaptive; }
+
+    public float getQuality() { return quality; }
+    public int getMaxWidth() { return width; }
+    public int getFps() { return fps; }
+
+    /**
+     * Called by the streaming thread after each frame has been handed to the network.
+     * fragments counts data fragments only: clients report lost data fragments, not parity.
+     */
+    public void onFrameSent(int bytes, int fragments) {
+        sentBytes.addAndGet(bytes);
+        sentFrames.incrementAndGet();
+        sentFragments.addAndGet(fragments);
+    }
+
+    /**
+     * Called by the streaming thread when it skips a frame because the previous one
+     * has not left the send buffer yet. The link is congested regardless of what the
+     * client reports, so adaptive mode steps down without waiting for feedback.
+     */
+    public synchronized void onBackpressure() {
+        backpressureEvents.incrementAndGet();
+        if (!adaptive) return;
+        long now = System.nanoTime();
+        if (now - lastBackpressureStep < BACKPRESSURE_STEP_NANOS) return;
+        lastBackpressureStep = now;
+        if (stepDown()) {
+            downgrades.incrementAndGet();
+            logDecision("down (backpressure)");
+        }
+    }
+
+    /**
+     * Apply one client feedback report. All counts are since the subscriber's previous
+     * report; its first report only starts its window.
+     *
+     * @param subscriber       identifies the reporting subscriber (any key with equals/hashCode)
+     * @param framesReceived   complete frames the client decoded
+     * @param fragmentsLost    UDP fragments the client detected as missing (0 for WebSocket)
+     * @param decodeMs         average client decode time per frame
+     * @param latencyMs        client-estimated end-to-end latency, or a negative value if unknown
+     */
+    public synchronized void onFeedback(Object subscriber, long framesReceived, long fragmentsLost, double decodeMs, double latencyMs) {
+        long now = System.nanoTime();
+        long totalBytes = sentBytes.get();
+        long totalFrames = sentFrames.get();
+        long totalFragments = sentFragments.get();
+        Window w = windows.get(subscriber);
+        boolean first = w == null;
+        if (first) {
+            w = new Window();
+            windows.put(subscriber, w);
+        }
+        double seconds = Math.max(1e-3, (now - w.nanos) / 1e9);
+        long bytes = totalBytes - w.bytes;
+        long frames = totalFrames - w.frames;
+        long fragments = totalFragments - w.fragments;
+        w.bytes = totalBytes;
+        w.frames = totalFrames;
+        w.fragments = totalFragments;
+        w.nanos = now;
+        feedbackReports.incrementAndGet();
+        if (first) return;
+
+        lastKbps = bytes * 8.0 / 1000.0 / seconds;
+        lastFrameLoss = frames > 0 ? Math.max(0.0, 1.0 - (double) framesReceived / frames) : 0.0;
+        w.fragmentLoss = fragments > 0 ? Math.min(1.0, (double) fragmentsLost / fragments) : 0.0;
+        lastDecodeMs = Math.max(0.0, decodeMs);
+        lastLatencyMs = latencyMs;
+        lastFragmentLoss = worstFragmentLoss(now, w);
+
+        if (!adaptive || frames == 0) return;
+
+        double frameBudgetMs = 1000.0 / fps;
+        boolean congested = lastFragmentLoss > MAX_FRAGMENT_LOSS
+                || lastFrameLoss > MAX_FRAME_LOSS
+                || (latencyMs >= 0 && latencyMs > bounds.targetLatencyMs)
+                || lastKbps > bounds.targetKbps * 1.1
+                || lastDecodeMs > frameBudgetMs * 0.8;
+
+        boolean headroom = lastFragmentLoss == 0.0
+                && lastFrameLoss <= 0.01
+                && (latencyMs < 0 || latencyMs < bounds.targetLatencyMs * 0.7)
+                && lastKbps < bounds.targetKbps * 0.7
+                && lastDecodeMs < frameBudgetMs * 0.5
+                && now - lastCongestedNanos > UPGRADE_HOLD_NANOS;
+
+        if (congested) {
+            lastCongestedNanos = now;
+            if (stepDown()) {
+                downgrades.incrementAndGet();
+                logDecision("down");
+            }
+        } else if (headroom) {
+            if (stepUp()) {
+                upgrades.incrementAndGet();
+                logDecision("up");
+            }
+        }
+    }
+
+    /**
+     * Highest fragment loss among the subscribers still reporting (FEC protects the
+     * worst link); forgets those that stopped.
+     */
+    private double worstFragmentLoss(long now, Window current) {
+        double worst = current.fragmentLoss;
+        for (Iterator<Window> it = windows.values().iterator(); it.hasNext(); ) {
+            Window w = it.next();
+            if (now - w.nanos > WINDOW_EXPIRY_NANOS) it.remove();
+            else worst = Math.max(worst, w.fragmentLoss);
+        }
+        return worst;
+    }
+
+    private boolean stepDown() {
+        if (quality > bounds.minQuality + 1e-3) {
+            quality = clamp(quality * 0.8f, bounds.minQuality, bounds.maxQuality);
+            return true;
+        }
+        if (width > bounds.minWidth) {
+            width = (int) clamp(evenWidth(width * 0.8), bounds.minWidth, bounds.maxWidth);
+            return true;
+        }
+        if (fps > bounds.minFps) {
+            fps = (int) clamp((int) (fps * 0.75), bounds.minFps, bounds.maxFps);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean stepUp() {
+        if (fps < bounds.maxFps) {
+            fps = (int) clamp(fps + 2, bounds.minFps, bounds.maxFps);
+            return true;
+        }
+        if (width < bounds.maxWidth) {
+            width = (int) clamp(evenWidth(width * 1.1), bounds.minWidth, bounds.maxWidth);
+            return true;
+        }
+        if (quality < bounds.maxQuality - 1e-3) {
+            quality = clamp(quality + 0.05f, bounds.minQuality, bounds.maxQuality);
+            return true;
+        }
+        return false;
+    }
+
+    private void logDecision(String direction) {
+        System.out.printf("Adaptive stream %s: quality=%.2f width=%d fps=%d (%.0f kbps, frame loss %.1f%%, fragment loss %.1f%%, decode %.1f ms)%n",
+                direction, quality, width, fps, lastKbps, lastFrameLoss * 100, lastFragmentLoss * 100, lastDecodeMs);
+    }
+
+    private static int evenWidth(double w) {
+        return ((int) Math.round(w)) & ~1;
+    }
+
+    private static float clamp(float v, float min, float max) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+    private static long clamp(long v, long min, long max) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+    // ===== metrics =====
+
+    /**
+     * Register the decisions of whichever controller a stream currently runs with,
+     * under the label stream="<name>" (NaN / 0 while it is not running).
+     */
+    public static void registerMetrics(MetricsRegistry registry, String stream, Supplier<AdaptiveStreamController> current) {
+        registry.gauge("mousecontrol_stream_quality", "Current encoder quality (0..1).", () -> {
+            AdaptiveStreamController c = current.get();
+            return c != null ? c.getQuality() : Double.NaN;
+        }, "stream", stream);
+        registry.gauge("mousecontrol_stream_max_width", "Current maximum frame width in pixels.", () -> {
+            AdaptiveStreamController c = current.get();
+            return c != null ? c.getMaxWidth() : Double.NaN;
+        }, "stream", stream);
+        registry.gauge("mousecontrol_stream_target_fps", "Current target frame rate.", () -> {
+            AdaptiveStreamController c = current.get();
+            return c != null ? c.getFps() : Double.NaN;
+        }, "stream", stream);
+        registry.gauge("mousecontrol_stream_fragment_loss_ratio", "Worst fragment loss among the subscribers' last reports.", () -> {
+            AdaptiveStreamController c = current.get();
+            return c != null ? c.getLastFragmentLoss() : Double.NaN;
+        }, "stream", stream);
+        registry.counter("mousecontrol_stream_adaptations_total", "Adaptive steps taken by the current stream.", () -> {
+            AdaptiveStreamController c = current.get();
+            return c != null ? c.getDowngrades() : 0;
+        }, "stream", stream, "direction", "down");
+        registry.counter("mousecontrol_stream_adaptations_total", "Adaptive steps taken by the current stream.", () -> {
+            AdaptiveStreamController c = current.get();
+            return c != null ? c.getUpgrades() : 0;
+        }, "stream", stream, "direction", "up");
+        registry.counter("mousecontrol_stream_backpressure_total", "Frames skipped by the current stream because the previous one was still queued.", () -> {
+            AdaptiveStreamController c = current.get();
+            return c != null ? c.getBackpressureEvents() : 0;
+        }, "stream", stream);
+        registry.counter("mousecontrol_stream_feedback_reports_total", "Client feedback reports received by the current stream.", () -> {
+            AdaptiveStreamController c = current.get();
+            return c != null ? c.getFeedbackReports() : 0;
+        }, "stream", stream);
+    }
+
+    public double getLastKbps() { return lastKbps; }
+    public double getLastFrameLoss() { return lastFrameLoss; }
+    public double getLastFragmentLoss() { return lastFragmentLoss; }
+    public double getLastDecodeMs() { return lastDecodeMs; }
+    public double getLastLatencyMs() { return lastLatencyMs; }
+    public long getFeedbackReports() { return feedbackReports.get(); }
+    public long getDowngrades() { return downgrades.get(); }
+    public long getUpgrades() { return upgrades.get(); }
+    public long getBackpressureEvents() { return backpressureEvents.get(); }
+
+    @Override
+    public String toString() {
+        return "AdaptiveStreamController{" +
+                "adaptive=" + adaptive +
+                ", quality=" + quality +
+                ", width=" + width +
+                ", fps=" + fps +
+                ", kbps=" + Math.round(lastKbps) +
+                ", frameLoss=" + lastFrameLoss +
+                ", fragmentLoss=" + lastFragmentLoss +
+                ", decodeMs=" + lastDecodeMs +
+                ", latencyMs=" + lastLatencyMs +
+                '}';
+    }
+}
@@ -0,0 +1,97 @@
+package com.mousecontrol.communication;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * AutoFrameEncoder
+ *
+ * Picks JPEG or lossless QOI for each frame from its content. A sparse sample
+ * of rows measures how flat the picture is: text and UI (mostly runs of equal
+ * pixels) go lossless, photos and video go JPEG. Hysteresis keeps a screen that
+ * sits near the threshold from flipping codecs every frame, and a lossless frame
+ * that comes out much larger than JPEG did sends the encoder back to JPEG for a
+ * while.
+ *
+ * Not thread-safe: use one encoder per streaming thread.
+ */
+public class AutoFrameEncoder implements FrameEncoder {
+
+    // Flatness (share of pixels equal to their left neighbour) to switch to / from lossless
+    private static final double ENTER_LOSSLESS = 0.80;
+    private static final double LEAVE_LOSSLESS = 0.65;
+    // Sample every n-th row; 1/16 of a frame is enough to tell UI from video
+    private static final int SAMPLE_ROW_STEP = 16;
+    // A lossless frame this many times the last JPEG size is not worth the bandwidth
+    private static final int MAX_LOSSLESS_RATIO = 4;
+    private static final int JPEG_HOLD_FRAMES = 30;
+
+    private final JpegEncoder jpeg;
+    private final QoiEncoder lossless = new QoiEncoder();
+    private FrameEncoder current;
+    private int[] sampleRow = new int[0];
+    private int lastJpegLength = 0;
+    private int jpegHold = 0;
+    private long losslessFrames = 0;
+    private long jpegFrames = 0;
+
+    public AutoFrameEncoder(float quality) throws IOException {
+        this.jpeg = new JpegEncoder(quality);
+        this.current = jpeg;
+    }
+
+    @Override
+    public int encode(BufferedImage img) throws IOException {
+        if (sampleRow.length < img.getWidth()) sampleRow = new int[img.getWidth()];
+        double flat = QoiEncoder.flatness(img, SAMPLE_ROW_STEP, sampleRow);
+        boolean useLossless = current == lossless ? flat >= LEAVE_LOSSLESS : flat >= ENTER_LOSSLESS;
+        if (jpegHold > 0) {
+            jpegHold--;
+            useLossless = false;
+        }
+
+        if (useLossless) {
+            int len = lossless.encode(img);
+            if (lastJpegLength > 0 && len > lastJpegLength * MAX_LOSSLESS_RATIO) {
+                // flat but detailed (e.g. a dense screenshot): not worth it, stay on JPEG for a while
+                jpegHold = JPEG_HOLD_FRAMES;
+            } else {
+                current = lossless;
+                losslessFrames++;
+                return len;
+            }
+        }
+        current = jpeg;
+        lastJpegLength = jpeg.encode(img);
+        jpegFrames++;
+        return lastJpegLength;
+    }
+
+    @Override
+    public byte[] buffer() {
+        return current.buffer();
+    }
+
+    @Override
+    public int length() {
+        return current.length();
+    }
+
+    @Override
+    public void setQuality(float quality) {
+        jpeg.setQuality(quality);
+    }
+
+    public boolean isLossless() {
+        return current == lossless;
+    }
+
+    public long getLosslessFrames() { return losslessFrames; }
+    public long getJpegFrames() { return jpegFrames; }
+
+    @Override
+    public void close() {
+        jpeg.close();
+        lossless.close();
+    }
+}
@@ -0,0 +1,176 @@
+package com.mousecontrol.communication;
+
+import com.mousecontrol.metrics.Counter;
+import com.mousecontrol.processor.MovementProcessor;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * ClientSessions
+ *
+ * Sessions that outlive a control connection, so a phone that drops off the network
+ * (Wi-Fi roaming, a short outage) can reconnect and carry on where it was. A client
+ * opts in by sending {"session":{"cmd":"hello"}} and gets a token back; after a
+ * disconnect the session is kept for a grace period, and a hello with that token on a
+ * new connection takes it over. Only when the grace period runs out (or the client
+ * says "bye") is the session's cleanup run: streams stopped, held keys released.
+ *
+ * The session only records what belongs to the client; TCPServer decides what to do
+ * on resume and expiry.
+ */
+public final class ClientSessions {
+
+    public static final long DEFAULT_GRACE_MS = 10_000;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * One client's session. Fields are guarded by the ClientSessions instance, except
+     * that the connection's handler may read what resume() set.
+     */
+    public static final class Session {
+        final String token;
+        // address the client last connected from (owner of its UDP subscribers)
+        volatile InetAddress address;
+        // address before the last resume
+        InetAddress resumedFrom;
+        // connection currently attached, or null while the session waits to be resumed
+        Socket connection;
+        // calibration and smoothing at the time of the disconnect
+        MovementProcessor.State processorState;
+        ScheduledFuture<?> expiry;
+        boolean ended;
+
+        Session(String token, InetAddress address, Socket connection) {
+            this.token = token;
+            this.address = address;
+            this.connection = connection;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public InetAddress getAddress() {
+            return address;
+        }
+    }
+
+    private final Map<String, Session> sessions = new HashMap<>();
+    private final Consumer<Session> onExpire;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "session-expiry");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile long graceMs = DEFAULT_GRACE_MS;
+
+    final Counter created = new Counter();
+    final Counter resumed = new Counter();
+    final Counter expired = new Counter();
+
+    /**
+     * @param onExpire cleanup for a session that was not resumed in time; runs on the
+     *                 timer thread (or the caller of end())
+     */
+    public ClientSessions(Consumer<Session> onExpire) {
+        this.onExpire = onExpire;
+    }
+
+    public void setGraceMs(long graceMs) {
+        if (graceMs < 0) throw new IllegalArgumentException("grace must be >= 0");
+        this.graceMs = graceMs;
+    }
+
+    public long getGraceMs() {
+        return graceMs;
+    }
+
+    /**
+     * A new session attached to the given connection.
+     */
+    public synchronized Session create(InetAddress address, Socket connection) {
+        byte[] bytes = new byte[16];
+        RANDOM.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(32);
+        for (byte b : bytes) token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        Session s = new Session(token.toString(), address, connection);
+        sessions.put(s.token, s);
+        created.inc();
+        return s;
+    }
+
+    /**
+     * Take over the session with this token for a new connection, or null if there is no
+     * such session (unknown token, or it already expired). A session whose old connection
+     * has not noticed the disconnect yet can be taken over too. Afterwards resumedFrom is
+     * the address it had, and processorState what was saved at the disconnect (if any).
+     */
+    public synchronized Session resume(String token, InetAddress address, Socket connection) {
+        Session s = token == null ? null : sessions.get(token);
+        if (s == null || s.ended) return null;
+        if (s.expiry != null) {
+            s.expiry.cancel(false);
+            s.expiry = null;
+        }
+        // still attached: the processor state is the live one, not what an older disconnect saved
+        if (s.connection != null) s.processorState = null;
+        s.resumedFrom = s.address;
+        s.address = address;
+        s.connection = connection;
+        resumed.inc();
+        return s;
+    }
+
+    /**
+     * The connection closed: keep the session for the grace period. Does nothing if the
+     * session has meanwhile been taken over by another connection.
+     */
+    public synchronized void detach(Session s, Socket connection, MovementProcessor.State processorState) {
+        if (s.ended || s.connection != connection) return;
+        s.connection = null;
+        s.processorState = processorState;
+        s.expiry = timer.schedule(() -> expireIfDetached(s), graceMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * End the session now (client said goodbye); runs its cleanup on this thread.
+     */
+    public void end(Session s) {
+        synchronized (this) {
+            if (s.ended) return;
+            s.ended = true;
+            if (s.expiry != null) s.expiry.cancel(false);
+            sessions.remove(s.token);
+        }
+        onExpire.accept(s);
+    }
+
+    private void expireIfDetached(Session s) {
+        synchronized (this) {
+            if (s.ended || s.connection != null) return;
+            s.ended = true;
+            sessions.remove(s.token);
+            expired.inc();
+        }
+        onExpire.accept(s);
+    }
+
+    /** Sessions waiting to be resumed. */
+    public synchronized int getDetachedCount() {
+        int n = 0;
+        for (Session s : sessions.values()) {
+            if (s.connection == null) n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,132 @@
+package com.mousecontrol.communication;
+
+import com.mousecontrol.desktop.Desktop;
+import com.mousecontrol.desktop.Desktops;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * CursorStreamer
+ *
+ * Samples the pointer position and button state at a high rate (60-120 Hz)
+ * and hands changes to a sink (UDP or WebSocket), so the client can draw the
+ * cursor itself instead of waiting for the next video frame. Only changes are
+ * sent, plus a periodic heartbeat so a late joiner gets the current state.
+ */
+public class CursorStreamer {
+
+    /**
+     * Receives cursor updates. Coordinates are desktop pixels; area is the desktop
+     * region the video stream covers, so the client can map into the frame.
+     */
+    public interface CursorSink {
+        void sendCursor(int seq, int x, int y, int buttons, Rectangle area);
+    }
+
+    public static final int MIN_RATE_HZ = 1;
+    public static final int MAX_RATE_HZ = 240;
+    private static final long HEARTBEAT_NANOS = 500_000_000L;
+    private static final long AREA_REFRESH_NANOS = 2_000_000_000L;
+
+    private final CursorSink sink;
+    private volatile IntSupplier buttonSource = () -> 0;
+    private volatile Supplier<Rectangle> areaSource = () -> null;
+    private volatile boolean running = false;
+    private Thread worker;
+    private volatile FrameScheduler scheduler;
+
+    public CursorStreamer(CursorSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Source of the button bitmask (e.g. MouseController::getButtonMask).
+     */
+    public void setButtonSource(IntSupplier buttonSource) {
+        this.buttonSource = buttonSource != null ? buttonSource : () -> 0;
+    }
+
+    /**
+     * Source of the desktop area covered by the video (e.g. the stream's viewport).
+     * While it returns null the full virtual screen is reported.
+     */
+    public void setAreaSource(Supplier<Rectangle> areaSource) {
+        this.areaSource = areaSource != null ? areaSource : () -> null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Sample clock of the current (or last) run: achieved rate and jitter, or null.
+     */
+    public FrameScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public synchronized void start(int rateHz) {
+        if (running) stop();
+        int rate = Math.max(MIN_RATE_HZ, Math.min(MAX_RATE_HZ, rateHz));
+        // fell behind: skip instead of bursting stale samples
+        FrameScheduler clock = new FrameScheduler("cursor", rate, FrameScheduler.SkipPolicy.SKIP);
+        scheduler = clock;
+        Desktop desktop = Desktops.get();
+        running = true;
+
+        worker = new Thread(() -> {
+            Rectangle screen = new Rectangle();
+            long areaCheckedAt = 0;
+            int seq = 0;
+            int lastX = Integer.MIN_VALUE, lastY = Integer.MIN_VALUE, lastButtons = -1;
+            Rectangle lastArea = null;
+            long lastSentAt = 0;
+
+            while (running) {
+                clock.awaitNext();
+                if (!running) break;
+                try {
+                    long now = System.nanoTime();
+                    Rectangle area = areaSource.get();
+                    if (area == null) {
+                        if (areaCheckedAt == 0 || now - areaCheckedAt > AREA_REFRESH_NANOS) {
+                            Desktop.virtualBounds(desktop.getScreenBounds(), screen);
+                            areaCheckedAt = now;
+                        }
+                        area = screen;
+                    }
+
+                    Point p = desktop.getPointerLocation();
+                    if (p != null) {
+                        int buttons = buttonSource.getAsInt();
+                        boolean changed = p.x != lastX || p.y != lastY || buttons != lastButtons || area != lastArea;
+                        if (changed || now - lastSentAt > HEARTBEAT_NANOS) {
+                            sink.sendCursor(seq++, p.x, p.y, buttons, area);
+                            lastX = p.x;
+                            lastY = p.y;
+                            lastButtons = buttons;
+                            lastArea = area;
+                            lastSentAt = now;
+                        }
+                    }
+                } catch (Exception e) {
+                    System.err.println("CursorStreamer error: " + e.getMessage());
+                }
+            }
+        }, "cursor-streamer-thread");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try { worker.join(200); } catch (InterruptedException ignored) {}
+            worker = null;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.mousecontrol.communication;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * EncoderPool
+ *
+ * Process-wide, bounded thread pool for encoding frame regions in parallel.
+ * Sized to leave one core for capture and sending; idle threads exit after a
+ * while. When the queue is full the submitting (streaming) thread encodes the
+ * region itself, which throttles it instead of queueing more work.
+ */
+public final class EncoderPool {
+
+    private static final int MAX_THREADS = 16;
+    private static final int QUEUE_CAPACITY = 64;
+    private static volatile ExecutorService shared;
+
+    private EncoderPool() {}
+
+    public static ExecutorService shared() {
+        ExecutorService pool = shared;
+        if (pool == null) {
+            synchronized (EncoderPool.class) {
+                pool = shared;
+                if (pool == null) {
+                    pool = create(threads());
+                    shared = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    public static int threads() {
+        return Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    private static ExecutorService create(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "frame-encoder-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -0,0 +1,95 @@
+package com.mousecontrol.communication;
+
+import java.util.Arrays;
+
+/**
+ * FecEncoder
+ *
+ * XOR-parity forward error correction for fragmented UDP frames. Data fragments
+ * are grouped; after each group one parity fragment (the XOR of the group's
+ * payloads, zero-padded to the longest) is sent, so the client can rebuild any
+ * single lost fragment per group instead of discarding the whole frame.
+ *
+ * The group size is either fixed or chosen from the fragment loss rate reported
+ * by the client (smaller groups = more parity = more loss tolerated).
+ */
+public class FecEncoder {
+
+    public enum Mode { OFF, FIXED, AUTO }
+
+    public static final int MIN_GROUP = 2;
+    public static final int MAX_GROUP = 32;
+    // Used in AUTO mode until the first feedback report arrives
+    private static final int DEFAULT_GROUP = 8;
+
+    private final Mode mode;
+    private final int fixedGroup;
+
+    private byte[] parity = new byte[0];
+    private int parityLength;
+
+    public FecEncoder(Mode mode, int groupSize) {
+        this.mode = mode;
+        this.fixedGroup = Math.max(MIN_GROUP, Math.min(MAX_GROUP, groupSize));
+    }
+
+    public static FecEncoder off() {
+        return new FecEncoder(Mode.OFF, DEFAULT_GROUP);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Data fragments per parity fragment for the next frame, or 0 when FEC is off.
+     *
+     * @param fragmentLoss observed fragment loss ratio (0..1), negative if unknown
+     */
+    public int groupSize(double fragmentLoss) {
+        switch (mode) {
+            case OFF:
+                return 0;
+            case FIXED:
+                return fixedGroup;
+            default:
+                if (fragmentLoss < 0) return DEFAULT_GROUP;
+                // Aim for groups that lose on average well under one fragment each
+                // (about 0.25 expected losses per group), bounded to sane overheads
+                if (fragmentLoss <= 0.0) return MAX_GROUP;
+                int g = (int) Math.floor(0.25 / fragmentLoss);
+                return Math.max(MIN_GROUP, Math.min(MAX_GROUP, g));
+        }
+    }
+
+    /**
+     * Start a new parity group whose fragments are at most fragmentSize bytes.
+     */
+    public void reset(int fragmentSize) {
+        if (parity.length < fragmentSize) {
+            parity = new byte[fragmentSize];
+        } else {
+            Arrays.fill(parity, 0, parityLength, (byte) 0);
+        }
+        parityLength = 0;
+    }
+
+    /**
+     * XOR one data fragment's payload into the current group's parity.
+     */
+    public void accumulate(byte[] src, int offset, int length) {
+        byte[] p = parity;
+        for (int i = 0; i < length; i++) {
+            p[i] ^= src[offset + i];
+        }
+        if (length > parityLength) parityLength = length;
+    }
+
+    public byte[] parity() {
+        return parity;
+    }
+
+    public int parityLength() {
+        return parityLength;
+    }
+}
@@ -0,0 +1,142 @@
+package com.mousecontrol.communication;
+
+import java.util.Arrays;
+
+/**
+ * FoveatedLayout
+ *
+ * Two layers per frame: the whole frame at reduced resolution and quality
+ * (the periphery), then a region around the cursor at the stream's full
+ * resolution and a higher quality (the fovea), drawn on top by the client.
+ * The area the user is looking at stays sharp while most of the frame costs
+ * a fraction of the bytes.
+ *
+ * The fovea only moves once the cursor leaves its central half, so small
+ * movements keep the layout (and the encoders' cached views) unchanged.
+ * The position is kept as a fraction of the frame, so one layout can serve
+ * several tiers of different sizes: the regions are cached per frame size,
+ * and their qualities follow each tier's stream quality at encode time.
+ */
+public class FoveatedLayout implements RegionLayout {
+
+    /**
+     * Tuning. Public fields so callers can fill in only what the client specified.
+     */
+    public static class Settings {
+        /** Fovea width and height as a fraction of the frame's. */
+        public double size = 0.35;
+        /** Resolution of the periphery relative to the frame. */
+        public float peripheryScale = 0.5f;
+        /** Periphery quality as a fraction of the stream quality. */
+        public float peripheryQuality = 0.6f;
+        /** Fovea quality; negative means stream quality + 0.15. */
+        public float foveaQuality = -1f;
+    }
+
+    private static final float MIN_QUALITY = 0.15f;
+    private static final int ALIGN = 16;
+    // the fovea re-centres once the cursor leaves the middle half of it
+    private static final double DEADZONE = 0.5;
+    // frame sizes kept for the current fovea: one per tier sharing the layout
+    private static final int MAX_CACHED = 8;
+
+    /**
+     * Fovea centre as a fraction of the frame; replaced (never changed) when it moves.
+     */
+    private static final class Center {
+        final double x;
+        final double y;
+
+        Center(double x, double y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /**
+     * Regions for one frame size around one centre.
+     */
+    private static final class Entry {
+        final Center center;
+        final FrameRegion[] regions;
+
+        Entry(Center center, FrameRegion[] regions) {
+            this.center = center;
+            this.regions = regions;
+        }
+    }
+
+    private final Settings settings;
+    // read and replaced without locking: tiers lay out their frames concurrently, and a
+    // lost update only costs one more rebuild
+    private volatile Center center = new Center(0.5, 0.5);
+    private volatile Entry[] cache = new Entry[0];
+
+    public FoveatedLayout(Settings settings) {
+        this.settings = settings != null ? settings : new Settings();
+    }
+
+    /**
+     * The quality argument is not used: region qualities are relative to the stream's
+     * (FrameRegion.qualityFor), so quality steps keep the cached regions.
+     */
+    @Override
+    public FrameRegion[] layout(int frameWidth, int frameHeight, float quality,
+                                double cursorX, double cursorY) {
+        double size = Math.max(0.1, Math.min(1.0, settings.size));
+        Center c = center;
+        if (!Double.isNaN(cursorX) && !Double.isNaN(cursorY)) {
+            double reach = size * DEADZONE / 2;
+            if (Math.abs(cursorX - c.x) > reach || Math.abs(cursorY - c.y) > reach) {
+                c = new Center(cursorX, cursorY);
+                center = c;
+            }
+        }
+
+        Entry[] entries = cache;
+        for (Entry e : entries) {
+            if (e.center == c && e.regions[0].frameWidth == frameWidth && e.regions[0].frameHeight == frameHeight) {
+                return e.regions;
+            }
+        }
+
+        FrameRegion[] regions = build(frameWidth, frameHeight, size, c);
+        // entries for an old centre are stale; keep the rest, newest last
+        Entry[] next = new Entry[Math.min(MAX_CACHED, entries.length + 1)];
+        int n = 0;
+        for (int i = Math.max(0, entries.length + 1 - MAX_CACHED); i < entries.length; i++) {
+            if (entries[i].center == c) next[n++] = entries[i];
+        }
+        next[n++] = new Entry(c, regions);
+        cache = n == next.length ? next : Arrays.copyOf(next, n);
+        return regions;
+    }
+
+    private FrameRegion[] build(int frameWidth, int frameHeight, double size, Center c) {
+        float scale = Math.max(0.1f, Math.min(1f, settings.peripheryScale));
+        int w = Math.min(frameWidth, align((int) (frameWidth * size)));
+        int h = Math.min(frameHeight, align((int) (frameHeight * size)));
+        int x = clamp((int) (c.x * frameWidth) - w / 2, frameWidth - w);
+        int y = clamp((int) (c.y * frameHeight) - h / 2, frameHeight - h);
+
+        FrameRegion periphery = new FrameRegion(0, 2, 0, 0, frameWidth, frameHeight, frameWidth, frameHeight,
+                scale, settings.peripheryQuality, 0f, MIN_QUALITY);
+        FrameRegion fovea = settings.foveaQuality >= 0
+                ? new FrameRegion(1, 2, x, y, w, h, frameWidth, frameHeight, 1f, settings.foveaQuality)
+                : new FrameRegion(1, 2, x, y, w, h, frameWidth, frameHeight, 1f, 1f, 0.15f, 0f);
+        return new FrameRegion[] {periphery, fovea};
+    }
+
+    private static int align(int v) {
+        return Math.max(ALIGN, (v + ALIGN - 1) / ALIGN * ALIGN);
+    }
+
+    private static int clamp(int v, int max) {
+        return Math.max(0, Math.min(v, Math.max(0, max)));
+    }
+
+    @Override
+    public String toString() {
+        return "foveated " + settings.size + " periphery x" + settings.peripheryScale;
+    }
+}
@@ -0,0 +1,234 @@
+package com.mousecontrol.communication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * FragmentSender
+ *
+ * Splits an encoded frame into MSTR fragments and sends each fragment to every
+ * stream target over its connected, non-blocking DatagramChannel. The encoded
+ * frame is copied once into a reusable direct buffer (a heap buffer would be
+ * copied into a temporary direct one by every channel write, i.e. once per
+ * fragment and target); each fragment is a window of it, sent with a gathering
+ * write behind one reused direct header buffer. Parity fragments are copied once
+ * each the same way. After warm-up there are no per-packet or per-target copies
+ * or allocations.
+ *
+ * Frames split into regions (parallel strips) send each region as its own unit
+ * with the v3 header, so a lost fragment only damages that region.
+ *
+ * Optional pacing spreads a frame's fragments evenly over a time window instead
+ * of sending them in one burst. A send the OS cannot accept immediately is
+ * counted as dropped rather than blocking the streaming thread.
+ *
+ * Not thread-safe: owned by the streaming thread; counters may be read anywhere.
+ */
+public class FragmentSender {
+
+    private static final int MAGIC = 0x4D535452; // 'MSTR'
+    static final int HEADER_V1 = 13;
+    static final int HEADER_V2 = 18;
+    static final int HEADER_V3 = 32;
+    // Pacing gaps shorter than this are not worth parking for
+    private static final long MIN_PACING_GAP_NANOS = 20_000L;
+
+    private final int fragmentSize;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(HEADER_V3);
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+    // direct, so channel writes send from them without an extra copy; grown as needed
+    private ByteBuffer frameBuffer = ByteBuffer.allocateDirect(0);
+    private final ByteBuffer parityBuffer;
+    private volatile boolean pacing = false;
+
+    // send-side counters
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong droppedSends = new AtomicLong();
+    private volatile double sendKbps = 0.0;
+    private long rateWindowStart = System.nanoTime();
+    private long rateWindowBytes = 0;
+
+    public FragmentSender(int fragmentSize) {
+        this.fragmentSize = fragmentSize;
+        this.parityBuffer = ByteBuffer.allocateDirect(fragmentSize);
+        gather[0] = header;
+    }
+
+    public int getFragmentSize() {
+        return fragmentSize;
+    }
+
+    /**
+     * Data fragments (parity excluded) a frame of length bytes is split into: the count the
+     * client's fragment loss reports are measured against.
+     */
+    public int dataFragments(int length) {
+        return (length + fragmentSize - 1) / fragmentSize;
+    }
+
+    public void setPacing(boolean pacing) {
+        this.pacing = pacing;
+    }
+
+    public boolean isPacing() {
+        return pacing;
+    }
+
+    /**
+     * Send one frame. Returns the number of fragments (data + parity) attempted.
+     *
+     * With FEC (group > 0) the v2 header is used and a parity fragment follows
+     * every group of data fragments; parity for group g has index total + g.
+     *
+     * @param pacingWindowNanos time over which to spread the fragments when pacing is on
+     */
+    public int send(StreamTarget[] targets, byte[] frame, int length, int seq,
+                    FecEncoder fec, int group, long pacingWindowNanos) {
+        return send(targets, frame, length, seq, fec, group, pacingWindowNanos, null);
+    }
+
+    /**
+     * Send one region of a frame (region != null) with the v3 header, which adds the
+     * region's index, count and placement so the client can decode and draw each region
+     * on its own. Regions of one frame share seq; fragment indices count within the region.
+     */
+    public int send(StreamTarget[] targets, byte[] frame, int length, int seq,
+                    FecEncoder fec, int group, long pacingWindowNanos, FrameRegion region) {
+        int total = dataFragments(length);
+        int packets = total + (group > 0 ? (total + group - 1) / group : 0);
+
+        long gap = pacing && packets > 1 ? pacingWindowNanos / packets : 0;
+        if (gap < MIN_PACING_GAP_NANOS) gap = 0;
+        long deadline = System.nanoTime();
+
+        ByteBuffer payload = frameBuffer(frame, length);
+        if (group > 0) fec.reset(fragmentSize);
+
+        int sent = 0;
+        for (int i = 0; i < total; i++) {
+            int offset = i * fragmentSize;
+            int len = Math.min(fragmentSize, length - offset);
+
+            if (gap > 0) deadline = awaitDeadline(deadline, gap, sent);
+            payload.limit(offset + len).position(offset);
+            sendPacket(targets, payload, seq, total, i, group, length, region);
+            sent++;
+
+            if (group > 0) {
+                fec.accumulate(frame, offset, len);
+                if ((i + 1) % group == 0 || i == total - 1) {
+                    if (gap > 0) deadline = awaitDeadline(deadline, gap, sent);
+                    ByteBuffer parity = parityBuffer;
+                    parity.clear();
+                    parity.put(fec.parity(), 0, fec.parityLength()).flip();
+                    sendPacket(targets, parity, seq, total, total + i / group, group, length, region);
+                    sent++;
+                    fec.reset(fragmentSize);
+                }
+            }
+        }
+        updateRate();
+        return sent;
+    }
+
+    private void sendPacket(StreamTarget[] targets, ByteBuffer payload, int seq, int total,
+                            int index, int group, int frameLength, FrameRegion region) {
+        // v1 header: 4 bytes magic, 1 byte version, 4 bytes seq, 2 bytes total, 2 bytes index
+        // v2 header (FEC): v1 + 1 byte group size, 4 bytes frame length
+        // v3 header (regions): v2 (group 0 without FEC) + 1 byte region index, 1 byte region count,
+        //                      2 bytes each x, y, width, height, frame width, frame height
+        header.clear();
+        header.putInt(MAGIC);
+        header.put((byte) (region != null ? 3 : group > 0 ? 2 : 1)); // version
+        header.putInt(seq);
+        header.putShort((short) total);
+        header.putShort((short) index);
+        if (group > 0 || region != null) {
+            header.put((byte) group);
+            header.putInt(frameLength);
+        }
+        if (region != null) {
+            header.put((byte) region.index);
+            header.put((byte) region.count);
+            header.putShort((short) region.x);
+            header.putShort((short) region.y);
+            header.putShort((short) region.width);
+            header.putShort((short) region.height);
+            header.putShort((short) region.frameWidth);
+            header.putShort((short) region.frameHeight);
+        }
+        header.flip();
+        gather[1] = payload;
+
+        int payloadStart = payload.position();
+        int expected = header.remaining() + payload.remaining();
+        for (StreamTarget target : targets) {
+            // a gathering write consumes the buffers; rewind them for each target
+            header.position(0);
+            payload.position(payloadStart);
+            try {
+                long written = target.channel().write(gather);
+                if (written < expected) {
+                    // socket buffer full: the datagram was not queued
+                    droppedSends.incrementAndGet();
+                    target.recordDropped();
+                    continue;
+                }
+                packetsSent.incrementAndGet();
+                bytesSent.addAndGet(written);
+                rateWindowBytes += written;
+                target.recordSent();
+            } catch (IOException e) {
+                // e.g. ICMP port unreachable reported on the connected channel
+                droppedSends.incrementAndGet();
+                target.recordDropped();
+            }
+        }
+    }
+
+    /**
+     * Wait until the deadline for the next paced packet and return the deadline after it.
+     */
+    private long awaitDeadline(long deadline, long gap, int sent) {
+        if (sent == 0) return deadline + gap;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+        return deadline + gap;
+    }
+
+    /**
+     * The first length bytes of frame in the reusable direct buffer.
+     */
+    private ByteBuffer frameBuffer(byte[] frame, int length) {
+        if (frameBuffer.capacity() < length) {
+            // headroom so a slowly growing frame size does not reallocate every frame
+            frameBuffer = ByteBuffer.allocateDirect(Math.max(length, frameBuffer.capacity() * 3 / 2));
+        }
+        frameBuffer.clear();
+        frameBuffer.put(frame, 0, length);
+        frameBuffer.clear();
+        return frameBuffer;
+    }
+
+    private void updateRate() {
+        long now = System.nanoTime();
+        long elapsed = now - rateWindowStart;
+        if (elapsed >= 1_000_000_000L) {
+            sendKbps = rateWindowBytes * 8.0 / 1000.0 / (elapsed / 1e9);
+            rateWindowBytes = 0;
+            rateWindowStart = now;
+        }
+    }
+
+    // ===== metrics =====
+
+    public long getPacketsSent() { return packetsSent.get(); }
+    public long getBytesSent() { return bytesSent.get(); }
+    public long getDroppedSends() { return droppedSends.get(); }
+    public double getSendKbps() { return sendKbps; }
+}
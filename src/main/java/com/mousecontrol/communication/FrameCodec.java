@@ -0,0 +1,31 @@
+package com.mousecontrol.communication;
+
+import java.io.IOException;
+
+/**
+ * FrameCodec
+ *
+ * Selectable stream codec: JPEG (lossy, best for photos and video), LOSSLESS
+ * (QOI, sharp text and cheap to encode for flat desktop content) or AUTO, which
+ * picks one of the two per frame from the frame's content.
+ */
+public enum FrameCodec {
+    JPEG, LOSSLESS, AUTO;
+
+    public FrameEncoder newEncoder(float quality) throws IOException {
+        switch (this) {
+            case LOSSLESS: return new QoiEncoder();
+            case AUTO: return new AutoFrameEncoder(quality);
+            default: return new JpegEncoder(quality);
+        }
+    }
+
+    /**
+     * Parse "jpeg", "lossless" (or "qoi") and "auto"; anything else is JPEG.
+     */
+    public static FrameCodec parse(String name) {
+        if ("lossless".equalsIgnoreCase(name) || "qoi".equalsIgnoreCase(name)) return LOSSLESS;
+        if ("auto".equalsIgnoreCase(name)) return AUTO;
+        return JPEG;
+    }
+}
@@ -0,0 +1,37 @@
+package com.mousecontrol.communication;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * FrameEncoder
+ *
+ * Encodes captured frames into a reusable byte buffer. Every format is
+ * self-describing by its leading bytes (JPEG: FF D8, QOI: "qoif"), so a client
+ * can decode whatever arrives without extra framing.
+ *
+ * Implementations are not thread-safe: use one encoder per streaming thread.
+ */
+public interface FrameEncoder extends AutoCloseable {
+
+    /**
+     * Encode a frame. Returns the number of valid bytes in {@link #buffer()}.
+     * The buffer contents are only valid until the next call to encode.
+     */
+    int encode(BufferedImage img) throws IOException;
+
+    /**
+     * Backing array of the last encoded frame (may be larger than {@link #length()}).
+     */
+    byte[] buffer();
+
+    int length();
+
+    /**
+     * Quality (0..1) for lossy formats; lossless formats ignore it.
+     */
+    void setQuality(float quality);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,101 @@
+package com.mousecontrol.communication;
+
+/**
+ * FrameRegion
+ *
+ * One independently decodable part of a frame: where it goes in the frame
+ * (x, y, width, height in frame pixels), how large the encoded image is
+ * relative to that (scale) and which quality to encode it at, either fixed or
+ * derived from the stream's current quality, so a quality change does not
+ * change the region. A client
+ * decodes each region and draws it into the frame rectangle, scaling it up
+ * when scale is below 1; regions are drawn in index order.
+ */
+public final class FrameRegion {
+
+    // strip boundaries on 16-row multiples match JPEG's 4:2:0 block grid
+    private static final int STRIP_ALIGN = 16;
+
+    public final int index;
+    public final int count;
+    public final int x;
+    public final int y;
+    public final int width;
+    public final int height;
+    public final int frameWidth;
+    public final int frameHeight;
+    public final float scale;
+    public final float quality; // negative: derived from the stream's quality, see qualityFor
+    // derived quality: stream quality * qualityScale + qualityOffset, clamped to [minQuality, 1]
+    public final float qualityScale;
+    public final float qualityOffset;
+    public final float minQuality;
+
+    public FrameRegion(int index, int count, int x, int y, int width, int height,
+                       int frameWidth, int frameHeight, float scale, float quality) {
+        this(index, count, x, y, width, height, frameWidth, frameHeight, scale, quality, 1f, 0f, 0f);
+    }
+
+    /**
+     * A region encoded at a quality that follows the stream's.
+     */
+    public FrameRegion(int index, int count, int x, int y, int width, int height, int frameWidth, int frameHeight,
+                       float scale, float qualityScale, float qualityOffset, float minQuality) {
+        this(index, count, x, y, width, height, frameWidth, frameHeight, scale, -1f, qualityScale, qualityOffset, minQuality);
+    }
+
+    private FrameRegion(int index, int count, int x, int y, int width, int height, int frameWidth, int frameHeight,
+                        float scale, float quality, float qualityScale, float qualityOffset, float minQuality) {
+        this.index = index;
+        this.count = count;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        this.scale = scale;
+        this.quality = quality;
+        this.qualityScale = qualityScale;
+        this.qualityOffset = qualityOffset;
+        this.minQuality = minQuality;
+    }
+
+    /**
+     * Quality to encode this region at while the stream is at streamQuality.
+     */
+    public float qualityFor(float streamQuality) {
+        if (quality >= 0) return quality;
+        return Math.max(minQuality, Math.min(1f, streamQuality * qualityScale + qualityOffset));
+    }
+
+    public int encodedWidth() {
+        return Math.max(1, Math.round(width * scale));
+    }
+
+    public int encodedHeight() {
+        return Math.max(1, Math.round(height * scale));
+    }
+
+    /**
+     * Split a frame into up to count full-width horizontal strips of (nearly) equal height.
+     */
+    public static FrameRegion[] strips(int frameWidth, int frameHeight, int count) {
+        int rows = (frameHeight + STRIP_ALIGN - 1) / STRIP_ALIGN;
+        int n = Math.max(1, Math.min(count, rows));
+        FrameRegion[] strips = new FrameRegion[n];
+        int y = 0;
+        for (int i = 0; i < n; i++) {
+            int end = i == n - 1 ? frameHeight : Math.min(frameHeight, (rows * (i + 1) / n) * STRIP_ALIGN);
+            strips[i] = new FrameRegion(i, n, 0, y, frameWidth, end - y, frameWidth, frameHeight, 1f, -1f);
+            y = end;
+        }
+        return strips;
+    }
+
+    @Override
+    public String toString() {
+        return "region " + index + "/" + count + " " + width + "x" + height + "@" + x + "," + y
+                + (scale != 1f ? " scale " + scale : "");
+    }
+}
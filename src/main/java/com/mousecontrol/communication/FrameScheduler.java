@@ -0,0 +1,275 @@
+package com.mousecontrol.communication;
+
+import com.mousecontrol.metrics.MetricsRegistry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * FrameScheduler
+ *
+ * Fixed-rate tick scheduler for the periodic loops (video frames, cursor
+ * samples). Deadlines are computed from System.nanoTime as origin + k * period
+ * with a fractional period, so neither integer division of the interval nor
+ * the time spent in the loop body makes the rate drift. What happens after a
+ * missed deadline is an explicit policy.
+ *
+ * Also records the achieved tick rate and a histogram of wake-up jitter (how
+ * late each tick started relative to its deadline).
+ *
+ * Ticks are driven by one loop thread; the rate may be set and the metrics
+ * read from any thread.
+ */
+public class FrameScheduler {
+
+    /**
+     * What to do when the loop body overran one or more deadlines.
+     */
+    public enum SkipPolicy {
+        /** Run once now and drop the missed ticks, staying on the original grid. */
+        SKIP,
+        /** Run the missed ticks back to back (up to MAX_CATCH_UP), then skip the rest. */
+        CATCH_UP,
+        /** Run once now and restart the grid from this moment. */
+        RESET
+    }
+
+    private static final long MAX_CATCH_UP = 3;
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+    // Upper bounds (exclusive) of the jitter buckets, in microseconds; the last bucket is open
+    private static final long[] JITTER_BOUNDS_MICROS = {100, 500, 1_000, 2_000, 5_000, 10_000, 20_000};
+
+    private final String name;
+    private final SkipPolicy policy;
+    private volatile double rateHz;
+    private double periodNanos;
+    private long origin;
+    private long tick;
+    private long lastDeadline;
+    private boolean started = false;
+
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLongArray jitter = new AtomicLongArray(JITTER_BOUNDS_MICROS.length + 1);
+    private volatile double achievedHz = 0.0;
+    private long windowStart;
+    private long windowTicks;
+
+    public FrameScheduler(String name, double rateHz, SkipPolicy policy) {
+        this.name = name;
+        this.policy = policy;
+        setRate(rateHz);
+    }
+
+    /**
+     * Change the rate. The grid restarts from the last deadline, so a change does not
+     * cause a burst or a gap.
+     */
+    public void setRate(double rateHz) {
+        double hz = Math.max(0.1, rateHz);
+        if (hz == this.rateHz) return;
+        this.rateHz = hz;
+        synchronized (this) {
+            periodNanos = 1e9 / hz;
+            if (started) {
+                origin = lastDeadline;
+                tick = 0;
+            }
+        }
+    }
+
+    public double getRate() {
+        return rateHz;
+    }
+
+    /**
+     * Wait for the next tick. The first call returns immediately. Returns the number of
+     * ticks dropped because the previous iteration overran (0 when on time). Returns early,
+     * with the interrupt cleared, if the thread is interrupted; the loop should check its
+     * own stop condition after every call.
+     */
+    public long awaitNext() {
+        long dropped = 0;
+        long deadline;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (!started) {
+                // first tick runs immediately and anchors the grid
+                started = true;
+                origin = now;
+                tick = 0;
+                windowStart = now;
+                deadline = now;
+            } else {
+                deadline = deadlineOf(tick + 1);
+                if (now < deadline) {
+                    tick++;
+                } else {
+                    long late = (long) ((now - deadline) / periodNanos);
+                    switch (policy) {
+                        case CATCH_UP:
+                            if (late <= MAX_CATCH_UP) {
+                                tick++;
+                            } else {
+                                // too far behind: drop like SKIP
+                                deadline = skip(late);
+                                dropped = late;
+                            }
+                            break;
+                        case SKIP:
+                            deadline = skip(late);
+                            dropped = late;
+                            break;
+                        case RESET:
+                            origin = now;
+                            tick = 0;
+                            dropped = late;
+                            deadline = now;
+                            break;
+                    }
+                }
+            }
+            lastDeadline = deadline;
+        }
+
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) return dropped;
+        }
+        record(System.nanoTime(), deadline, dropped);
+        return dropped;
+    }
+
+    /**
+     * Nanoseconds until the next deadline (negative if it already passed).
+     */
+    public synchronized long remainingNanos() {
+        return deadlineOf(tick + 1) - System.nanoTime();
+    }
+
+    public long periodNanos() {
+        return (long) (1e9 / rateHz);
+    }
+
+    /**
+     * Drop the missed ticks and return the next deadline on the original grid.
+     */
+    private long skip(long late) {
+        tick += late + 1;
+        return deadlineOf(tick);
+    }
+
+    private long deadlineOf(long k) {
+        return origin + (long) (k * periodNanos);
+    }
+
+    private void record(long now, long deadline, long dropped) {
+        ticks.incrementAndGet();
+        if (dropped > 0) skipped.addAndGet(dropped);
+        long lateMicros = Math.max(0, now - deadline) / 1_000;
+        int bucket = 0;
+        while (bucket < JITTER_BOUNDS_MICROS.length && lateMicros >= JITTER_BOUNDS_MICROS[bucket]) bucket++;
+        jitter.incrementAndGet(bucket);
+
+        windowTicks++;
+        long elapsed = now - windowStart;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            achievedHz = windowTicks * 1e9 / elapsed;
+            windowTicks = 0;
+            windowStart = now;
+        }
+    }
+
+    // ===== metrics =====
+
+    public String getName() { return name; }
+    public SkipPolicy getPolicy() { return policy; }
+    public long getTicks() { return ticks.get(); }
+    public long getSkippedTicks() { return skipped.get(); }
+    public double getAchievedHz() { return achievedHz; }
+
+    /**
+     * Tick counts per jitter bucket; bucket i counts ticks that started less than
+     * getJitterBoundsMicros()[i] late (the last bucket is everything beyond).
+     */
+    public long[] getJitterHistogram() {
+        long[] h = new long[jitter.length()];
+        for (int i = 0; i < h.length; i++) h[i] = jitter.get(i);
+        return h;
+    }
+
+    public static long[] getJitterBoundsMicros() {
+        return JITTER_BOUNDS_MICROS.clone();
+    }
+
+    /**
+     * Upper bound of the jitter bucket holding the given percentile (0..1), in microseconds,
+     * or -1 when it falls in the open last bucket.
+     */
+    public long jitterPercentileMicros(double p) {
+        long[] h = getJitterHistogram();
+        long total = 0;
+        for (long c : h) total += c;
+        if (total == 0) return 0;
+        long target = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < h.length; i++) {
+            seen += h[i];
+            if (seen >= target) return i < JITTER_BOUNDS_MICROS.length ? JITTER_BOUNDS_MICROS[i] : -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Expose the rate and jitter of a loop's clock. The loop creates a new scheduler each
+     * time it starts, so the series read whichever one is current (NaN / 0 before the first).
+     */
+    public static void registerMetrics(MetricsRegistry registry, String loop, Supplier<FrameScheduler> current) {
+        registry.gauge("mousecontrol_loop_target_hz", "Tick rate the loop is scheduled at.", () -> {
+            FrameScheduler s = current.get();
+            return s != null ? s.getRate() : Double.NaN;
+        }, "loop", loop);
+        registry.gauge("mousecontrol_loop_achieved_hz", "Tick rate achieved over the last second.", () -> {
+            FrameScheduler s = current.get();
+            return s != null ? s.getAchievedHz() : Double.NaN;
+        }, "loop", loop);
+        registry.counter("mousecontrol_loop_ticks_total", "Ticks run by the loop's current clock.", () -> {
+            FrameScheduler s = current.get();
+            return s != null ? s.getTicks() : 0;
+        }, "loop", loop);
+        registry.counter("mousecontrol_loop_skipped_ticks_total", "Ticks dropped by the loop's current clock after an overrun.", () -> {
+            FrameScheduler s = current.get();
+            return s != null ? s.getSkippedTicks() : 0;
+        }, "loop", loop);
+        registry.gauge("mousecontrol_loop_jitter_micros", "Upper bound of the wake-up lateness bucket holding the quantile (+Inf beyond the last bucket).", () -> {
+            FrameScheduler s = current.get();
+            return s != null ? jitterGauge(s.jitterPercentileMicros(0.5)) : Double.NaN;
+        }, "loop", loop, "quantile", "0.5");
+        registry.gauge("mousecontrol_loop_jitter_micros", "Upper bound of the wake-up lateness bucket holding the quantile (+Inf beyond the last bucket).", () -> {
+            FrameScheduler s = current.get();
+            return s != null ? jitterGauge(s.jitterPercentileMicros(0.99)) : Double.NaN;
+        }, "loop", loop, "quantile", "0.99");
+    }
+
+    private static double jitterGauge(long micros) {
+        return micros < 0 ? Double.POSITIVE_INFINITY : micros;
+    }
+
+    @Override
+    public String toString() {
+        long[] h = getJitterHistogram();
+        StringBuilder sb = new StringBuilder();
+        sb.append(name).append(": target ").append(String.format("%.1f", rateHz))
+          .append(" Hz, achieved ").append(String.format("%.1f", achievedHz))
+          .append(" Hz, ticks ").append(ticks.get())
+          .append(", skipped ").append(skipped.get())
+          .append(", jitter");
+        for (int i = 0; i < h.length; i++) {
+            sb.append(i < JITTER_BOUNDS_MICROS.length ? " <" + JITTER_BOUNDS_MICROS[i] + "us:" : " more:").append(h[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,470 @@
+package com.mousecontrol.communication;
+
+import com.mousecontrol.controller.KeyboardController;
+import com.mousecontrol.jfr.InputParseEvent;
+import com.mousecontrol.metrics.Counter;
+import com.mousecontrol.metrics.Histogram;
+import com.mousecontrol.models.MotionData;
+import com.mousecontrol.models.TouchData;
+import com.mousecontrol.processor.MovementProcessor;
+import com.mousecontrol.processor.TouchpadProcessor;
+import com.mousecontrol.recording.SessionRecorder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * InputDispatcher
+ *
+ * Routes client input (motion samples, touchpad samples and keyboard commands) into
+ * MovementProcessor, TouchpadProcessor and KeyboardController, whichever connection it
+ * came in on: the TCP control connection
+ * or a WebSocket viewer's connection. Each message is parsed once; the JSONObject the
+ * caller already has for its own commands is reused for the motion sample.
+ *
+ * Readers only parse and queue; one injector thread applies input, in two lanes. Discrete
+ * events (keyboard commands and samples carrying a click) wait in a FIFO that is always
+ * served first. Continuous motion waits in a single slot where a newer sample is merged
+ * into the one not applied yet, so a slow desktop costs motion samples, not click latency.
+ * The slot is merged (gyro values added) rather than overwritten because samples are
+ * relative: the cursor still travels the whole distance. When a discrete event is queued,
+ * the motion that came before it is queued in front of it, so a drag still moves, then
+ * presses, then moves on. Touchpad samples share the slot: one merges into another with
+ * the same fingers down, anything else in the slot is queued in front of it, and a lift
+ * is discrete.
+ *
+ * The discrete lane holds at most MAX_DISCRETE_EVENTS; beyond that new clicks, presses and
+ * other commands are dropped and counted, so a client flooding them at a stuck desktop
+ * cannot grow the heap. Key releases and touch lifts are still queued, up to as many again,
+ * so a key or button pressed before the lane filled is not left down. If applying an event throws an Error, the injector thread ends after logging
+ * it and the next queued event starts a new one.
+ */
+public final class InputDispatcher {
+
+    // 50 us .. 100 ms covers parsing alone up to a slow xdotool call
+    private static final long[] INJECT_BOUNDS_MICROS = {50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000};
+    // keyCmd of the event queued by releaseHeldKeys()
+    private static final String RELEASE_HELD = "releaseHeld";
+    // several seconds of typing or clicking even on a slow desktop
+    static final int MAX_DISCRETE_EVENTS = 1024;
+
+    private final MovementProcessor processor;
+    private volatile KeyboardController keyboardController;
+    private volatile TouchpadProcessor touchpad;
+    private volatile SessionRecorder recorder;
+
+    // lanes: lock-free, so a flooding reader cannot hold up the injector
+    private final ConcurrentLinkedQueue<Pending> discrete = new ConcurrentLinkedQueue<>();
+    // size of discrete, reserved before adding (ConcurrentLinkedQueue.size() walks the queue)
+    private final AtomicInteger discreteSize = new AtomicInteger();
+    private final AtomicReference<Pending> pendingMotion = new AtomicReference<>();
+    // arrival order, to keep motion taken from the slot behind discrete events older than it
+    private final AtomicLong arrivals = new AtomicLong();
+    private volatile Thread injector;
+    // motion taken from the slot and not applied yet; owned by the injector thread, handed
+    // to the next one if it dies
+    private Pending taken;
+    // held while the injector applies an event, so the processor's state can be read between events
+    private final Object applyLock = new Object();
+
+    // package-private: TCPServer exports them with its own metrics
+    final Counter motionEvents = new Counter();
+    final Counter keyboardEvents = new Counter();
+    final Counter parseFailures = new Counter();
+    final Histogram motionLatency = new Histogram(INJECT_BOUNDS_MICROS);
+    final Histogram keyboardLatency = new Histogram(INJECT_BOUNDS_MICROS);
+    final Histogram clickLatency = new Histogram(INJECT_BOUNDS_MICROS);
+    final Counter motionMerged = new Counter();
+    final Counter discreteDropped = new Counter();
+    final Counter touchEvents = new Counter();
+    final Histogram touchLatency = new Histogram(INJECT_BOUNDS_MICROS);
+
+    /**
+     * A queued event: a keyboard command, a motion sample or a touchpad sample, with its
+     * arrival number and the time its line was read. A merged sample keeps those of its
+     * first sample.
+     */
+    private static final class Pending {
+        final MotionData motion;
+        final TouchData touch;
+        final String keyCmd;
+        final int keyCode;
+        final String text;
+        final long seq;
+        final long readAt;
+
+        Pending(MotionData motion, long seq, long readAt) {
+            this(motion, null, null, -1, null, seq, readAt);
+        }
+
+        Pending(TouchData touch, long seq, long readAt) {
+            this(null, touch, null, -1, null, seq, readAt);
+        }
+
+        Pending(MotionData motion, TouchData touch, String keyCmd, int keyCode, String text, long seq, long readAt) {
+            this.motion = motion;
+            this.touch = touch;
+            this.keyCmd = keyCmd;
+            this.keyCode = keyCode;
+            this.text = text;
+            this.seq = seq;
+            this.readAt = readAt;
+        }
+    }
+
+    public InputDispatcher(MovementProcessor processor) {
+        this.processor = processor;
+    }
+
+    public void setKeyboardController(KeyboardController kc) {
+        this.keyboardController = kc;
+    }
+
+    public KeyboardController getKeyboardController() {
+        return keyboardController;
+    }
+
+    /**
+     * Where touchpad samples go (null = touch input is ignored).
+     */
+    public void setTouchpadProcessor(TouchpadProcessor touchpad) {
+        this.touchpad = touchpad;
+    }
+
+    /**
+     * Record input to this session recording (null = not recording).
+     */
+    public void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Start of the injection latency measurement for a line read at this moment (0 unless
+     * metrics are being scraped).
+     */
+    long readStarted() {
+        return motionLatency.start();
+    }
+
+    /**
+     * Handle one input line that the caller has not parsed: a keyboard command or a
+     * motion sample.
+     */
+    public void dispatch(String line) {
+        long readAt = readStarted();
+        JSONObject json;
+        InputParseEvent parseEvent = new InputParseEvent();
+        parseEvent.begin();
+        try {
+            json = new JSONObject(line);
+        } catch (Exception e) {
+            json = null;
+        }
+        parseEvent.end();
+        // as on the control connection: invalid lines are reported by the motion parse below
+        if (json != null && parseEvent.shouldCommit()) {
+            parseEvent.kind = json.has("keyboard") ? "keyboard" : "json";
+            parseEvent.commit();
+        }
+        if (json != null && (dispatchKeyboard(json, readAt) || dispatchTouch(json, readAt))) return;
+        dispatchMotion(line, json, readAt);
+    }
+
+    /**
+     * Queue a {"keyboard":{...}} command in the discrete lane. Returns false (nothing done)
+     * if the message is not one or there is no keyboard controller.
+     */
+    boolean dispatchKeyboard(JSONObject json, long readAt) {
+        if (!json.has("keyboard") || keyboardController == null) return false;
+        keyboardEvents.inc();
+        JSONObject k = json.getJSONObject("keyboard");
+        String cmd = k.optString("cmd", "");
+        int key = k.optInt("keyCode", -1);
+        String text = null;
+        SessionRecorder rec = recorder;
+        if ("type".equalsIgnoreCase(cmd)) {
+            text = k.optString("text", "");
+            if (rec != null) rec.recordKey(SessionRecorder.KEY_TYPE, -1, text);
+        } else if ("tap".equalsIgnoreCase(cmd) || "press".equalsIgnoreCase(cmd) || "release".equalsIgnoreCase(cmd)) {
+            if (key == -1) return true;
+            byte recorded = "tap".equalsIgnoreCase(cmd) ? SessionRecorder.KEY_TAP
+                    : "press".equalsIgnoreCase(cmd) ? SessionRecorder.KEY_PRESS : SessionRecorder.KEY_RELEASE;
+            if (rec != null) rec.recordKey(recorded, key, null);
+        } else {
+            return true;
+        }
+        enqueueDiscrete(new Pending(null, null, cmd, key, text, arrivals.incrementAndGet(), readAt));
+        return true;
+    }
+
+    /**
+     * Release every key still held, in the discrete lane so it runs on the injector thread
+     * after the key commands already queued. Never dropped, even when the lane is full.
+     */
+    public void releaseHeldKeys() {
+        if (keyboardController == null) return;
+        discreteSize.incrementAndGet();
+        discrete.add(new Pending(null, null, RELEASE_HELD, -1, null, arrivals.incrementAndGet(), 0));
+        wakeInjector();
+    }
+
+    /**
+     * Queue a {"touch":{"d":[dx0,dy0,dx1,dy1,...],"spread":s}} sample: an empty d (all
+     * fingers lifted) in the discrete lane, anything else in the motion slot. Returns false
+     * (nothing done) if the message is not one or there is no touchpad processor.
+     */
+    boolean dispatchTouch(JSONObject json, long readAt) {
+        if (!json.has("touch") || touchpad == null) return false;
+        TouchData data = touchFromJson(json.getJSONObject("touch"));
+        if (data == null) {
+            parseFailures.inc();
+            return true;
+        }
+        touchEvents.inc();
+        Pending sample = new Pending(data, arrivals.incrementAndGet(), readAt);
+        if (data.fingers == 0) {
+            enqueueDiscrete(sample);
+            return true;
+        }
+        while (true) {
+            Pending pending = pendingMotion.get();
+            if (pending == null || pending.touch == null || pending.touch.fingers != data.fingers) {
+                // not the same gesture: what waits in the slot is applied first
+                if (!pendingMotion.compareAndSet(pending, null)) continue;
+                if (pending != null) offerDiscrete(pending);
+                if (pendingMotion.compareAndSet(null, sample)) break;
+                continue;
+            }
+            if (pendingMotion.compareAndSet(pending, new Pending(pending.touch.plus(data), pending.seq, pending.readAt))) {
+                motionMerged.inc();
+                break;
+            }
+        }
+        wakeInjector();
+        return true;
+    }
+
+    /**
+     * Queue a motion sample: in the discrete lane if it carries a click, else in the motion
+     * slot. json is the line already parsed by the caller, or null if it was not valid JSON
+     * (counted as a parse failure).
+     */
+    void dispatchMotion(String line, JSONObject json, long readAt) {
+        InputParseEvent parseEvent = new InputParseEvent();
+        parseEvent.begin();
+        MotionData data = json != null ? motionFromJson(json) : null;
+        parseEvent.end();
+        if (parseEvent.shouldCommit()) {
+            parseEvent.kind = data != null ? "motion" : "invalid";
+            parseEvent.commit();
+        }
+        if (data == null) {
+            System.err.println("Invalid JSON: " + line);
+            parseFailures.inc();
+            return;
+        }
+        motionEvents.inc();
+        SessionRecorder rec = recorder;
+        if (rec != null) rec.recordMotion(data);
+        if (data.leftClick || data.rightClick) {
+            enqueueDiscrete(new Pending(data, arrivals.incrementAndGet(), readAt));
+            return;
+        }
+        Pending sample = new Pending(data, arrivals.incrementAndGet(), readAt);
+        while (true) {
+            Pending pending = pendingMotion.get();
+            if (pending != null && pending.motion == null) {
+                // a touch sample: applied before this one
+                if (pendingMotion.compareAndSet(pending, null)) offerDiscrete(pending);
+                continue;
+            }
+            // keep the oldest read time: latency is measured from the first sample waiting
+            Pending next = pending == null ? sample : new Pending(new MotionData(pending.motion.gyroX + data.gyroX,
+                    pending.motion.gyroY + data.gyroY, false, false), pending.seq, pending.readAt);
+            if (pendingMotion.compareAndSet(pending, next)) {
+                if (pending != null) motionMerged.inc();
+                break;
+            }
+        }
+        wakeInjector();
+    }
+
+    private void enqueueDiscrete(Pending event) {
+        // motion received before the event is applied before it (move, then press)
+        Pending motion = pendingMotion.getAndSet(null);
+        if (motion != null) offerDiscrete(motion);
+        offerDiscrete(event);
+        wakeInjector();
+    }
+
+    /**
+     * Add to the discrete lane unless it is full, in which case the event is dropped. A
+     * release or lift may use the lane's headroom: dropping it would leave something down.
+     */
+    private void offerDiscrete(Pending event) {
+        int size = discreteSize.incrementAndGet();
+        if (size > MAX_DISCRETE_EVENTS && (size > 2 * MAX_DISCRETE_EVENTS || !releases(event))) {
+            discreteSize.decrementAndGet();
+            discreteDropped.inc();
+            return;
+        }
+        discrete.add(event);
+    }
+
+    private static boolean releases(Pending event) {
+        return event.touch != null ? event.touch.fingers == 0 : "release".equalsIgnoreCase(event.keyCmd);
+    }
+
+    private Pending pollDiscrete() {
+        Pending event = discrete.poll();
+        if (event != null) discreteSize.decrementAndGet();
+        return event;
+    }
+
+    private void wakeInjector() {
+        Thread t = injector;
+        if (t == null) t = startInjector();
+        LockSupport.unpark(t);
+    }
+
+    private synchronized Thread startInjector() {
+        if (injector == null) {
+            Thread t = new Thread(this::injectLoop, "input-injector");
+            t.setDaemon(true);
+            t.start();
+            injector = t;
+        }
+        return injector;
+    }
+
+    private void injectLoop() {
+        try {
+            applyQueued();
+        } catch (Error e) {
+            System.err.println("InputDispatcher: injector stopped: " + e);
+        } finally {
+            injectorExited();
+        }
+    }
+
+    /**
+     * Let the next event start a new injector, or start it now if events are waiting.
+     */
+    private void injectorExited() {
+        boolean waiting;
+        synchronized (this) {
+            waiting = taken != null || !discrete.isEmpty() || pendingMotion.get() != null;
+            if (injector == Thread.currentThread()) injector = null;
+        }
+        if (waiting) wakeInjector();
+    }
+
+    private void applyQueued() {
+        // taken: motion from the slot; a reader may have queued older discrete events just before
+        while (true) {
+            // discrete events first; the motion slot only when none are waiting
+            Pending head = discrete.peek();
+            Pending event;
+            if (taken != null && (head == null || head.seq > taken.seq)) {
+                event = taken;
+                taken = null;
+            } else if (head != null) {
+                event = pollDiscrete();
+            } else {
+                taken = pendingMotion.getAndSet(null);
+                if (taken == null) LockSupport.park(this);
+                continue;
+            }
+            MotionData motion = event.motion;
+            try {
+                synchronized (applyLock) {
+                    if (motion != null) processor.handle(motion);
+                    else if (event.touch != null) applyTouch(event.touch);
+                    else applyKey(event);
+                }
+                if (event.touch != null) touchLatency.stop(event.readAt);
+                else if (motion == null) keyboardLatency.stop(event.readAt);
+                else (motion.leftClick || motion.rightClick ? clickLatency : motionLatency).stop(event.readAt);
+            } catch (RuntimeException e) {
+                System.err.println("InputDispatcher: failed to apply input: " + e.getMessage());
+            }
+        }
+    }
+
+    private void applyTouch(TouchData data) {
+        TouchpadProcessor t = touchpad;
+        if (t != null) t.handle(data);
+    }
+
+    private void applyKey(Pending event) {
+        KeyboardController kc = keyboardController;
+        if (kc == null) return;
+        if (RELEASE_HELD.equals(event.keyCmd)) kc.releaseHeldKeys();
+        else if ("type".equalsIgnoreCase(event.keyCmd)) kc.typeString(event.text);
+        else if ("tap".equalsIgnoreCase(event.keyCmd)) kc.tapKey(event.keyCode);
+        else if ("press".equalsIgnoreCase(event.keyCmd)) kc.pressKey(event.keyCode);
+        else kc.releaseKey(event.keyCode);
+    }
+
+    /**
+     * The processor's per-client state, taken between two input events.
+     */
+    public MovementProcessor.State saveProcessorState() {
+        synchronized (applyLock) {
+            return processor.saveState();
+        }
+    }
+
+    public void restoreProcessorState(MovementProcessor.State state) {
+        synchronized (applyLock) {
+            processor.restoreState(state);
+        }
+    }
+
+    /**
+     * Input queued and not applied yet: discrete events plus the motion slot (0 or 1).
+     */
+    public int getQueuedInput() {
+        return discreteSize.get() + (pendingMotion.get() != null ? 1 : 0);
+    }
+
+    /**
+     * Touchpad sample from a parsed "touch" object, or null if its deltas are malformed
+     * (missing d is a lift; missing spread is NaN).
+     */
+    static TouchData touchFromJson(JSONObject touch) {
+        try {
+            JSONArray d = touch.optJSONArray("d");
+            int n = d == null ? 0 : d.length();
+            if (n % 2 != 0) return null;
+            double[] deltas = new double[n];
+            for (int i = 0; i < n; i++) {
+                deltas[i] = d.optDouble(i, Double.NaN);
+                if (Double.isNaN(deltas[i])) return null;
+            }
+            return new TouchData(deltas, touch.optDouble("spread", Double.NaN));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Motion sample from a parsed line (missing fields are 0 / false).
+     */
+    static MotionData motionFromJson(JSONObject json) {
+        try {
+            double gx = json.optDouble("gyroX", 0);
+            double gy = json.optDouble("gyroY", 0);
+            boolean left = json.optBoolean("leftClick", false);
+            boolean right = json.optBoolean("rightClick", false);
+            return new MotionData(gx, gy, left, right);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.mousecontrol.communication;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * JpegEncoder
+ *
+ * Keeps one configured JPEG ImageWriter for the life of a stream and encodes
+ * frames into a reusable, growable byte buffer. After warm-up the per-frame
+ * path does not allocate output buffers, streams or write params (the JDK
+ * writer itself still copies each scanline through a temporary array).
+ *
+ * Not thread-safe: use one encoder per streaming thread.
+ */
+public class JpegEncoder implements FrameEncoder {
+
+    private final ImageWriter writer;
+    private final ImageWriteParam param;
+    private final ByteArrayImageOutputStream out = new ByteArrayImageOutputStream(64 * 1024);
+    private IIOImage iioImage;
+    private float quality = -1f;
+
+    public JpegEncoder(float quality) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG ImageWriter available");
+        }
+        this.writer = writers.next();
+        this.param = writer.getDefaultWriteParam();
+        if (param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        }
+        writer.setOutput(out);
+        setQuality(quality);
+    }
+
+    /**
+     * Change the compression quality (0..1) used for subsequent frames.
+     */
+    @Override
+    public void setQuality(float quality) {
+        float q = Math.max(0f, Math.min(1f, quality));
+        if (q == this.quality) return;
+        this.quality = q;
+        if (param.canWriteCompressed()) {
+            param.setCompressionQuality(q);
+        }
+    }
+
+    public float getQuality() {
+        return quality;
+    }
+
+    @Override
+    public int encode(BufferedImage img) throws IOException {
+        out.rewind();
+        if (iioImage == null) {
+            iioImage = new IIOImage(img, null, null);
+        } else {
+            iioImage.setRenderedImage(img);
+        }
+        writer.write(null, iioImage, param);
+        return out.size();
+    }
+
+    @Override
+    public byte[] buffer() {
+        return out.array();
+    }
+
+    @Override
+    public int length() {
+        return out.size();
+    }
+
+    /**
+     * Copy of the last encoded frame, for callers that need an exact-size array.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(out.array(), out.size());
+    }
+
+    @Override
+    public void close() {
+        try { writer.dispose(); } catch (Exception ignored) {}
+    }
+
+    /**
+     * In-memory ImageOutputStream over a growable byte array that can be rewound
+     * and reused for every frame (unlike MemoryCacheImageOutputStream, which must
+     * be recreated around a fresh ByteArrayOutputStream).
+     */
+    private static final class ByteArrayImageOutputStream extends ImageOutputStreamImpl {
+        private byte[] buf;
+        private int count;
+
+        ByteArrayImageOutputStream(int initialCapacity) {
+            this.buf = new byte[initialCapacity];
+        }
+
+        void rewind() {
+            count = 0;
+            streamPos = 0;
+            flushedPos = 0;
+            bitOffset = 0;
+        }
+
+        byte[] array() { return buf; }
+
+        int size() { return count; }
+
+        private void ensureCapacity(long required) throws IOException {
+            if (required > Integer.MAX_VALUE - 8) throw new IOException("Encoded frame too large");
+            if (required > buf.length) {
+                int newCap = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(required, (long) buf.length * 2));
+                buf = Arrays.copyOf(buf, newCap);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            flushBits();
+            ensureCapacity(streamPos + 1);
+            buf[(int) streamPos++] = (byte) b;
+            if (streamPos > count) count = (int) streamPos;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            flushBits();
+            ensureCapacity(streamPos + len);
+            System.arraycopy(b, off, buf, (int) streamPos, len);
+            streamPos += len;
+            if (streamPos > count) count = (int) streamPos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (streamPos >= count) return -1;
+            return buf[(int) streamPos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (streamPos >= count) return -1;
+            int n = (int) Math.min(len, count - streamPos);
+            System.arraycopy(buf, (int) streamPos, b, off, n);
+            streamPos += n;
+            return n;
+        }
+
+        @Override
+        public long length() {
+            return count;
+        }
+    }
+}
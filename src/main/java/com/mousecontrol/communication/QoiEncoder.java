@@ -0,0 +1,200 @@
+package com.mousecontrol.communication;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+
+/**
+ * QoiEncoder
+ *
+ * Lossless encoder for the QOI image format ("Quite OK Image", qoiformat.org):
+ * runs of equal pixels, a 64-entry hash of recently seen colours and small
+ * deltas to the previous pixel. Flat desktop content (terminals, IDEs, UI)
+ * compresses well, text stays sharp, and encoding is a single pass over the
+ * raster with no ImageIO involvement.
+ *
+ * Reads 3-byte BGR and int RGB rasters directly; other image types go through
+ * getRGB one row at a time. Output is 3-channel QOI (the stream has no alpha).
+ *
+ * Not thread-safe: use one encoder per streaming thread.
+ */
+public class QoiEncoder implements FrameEncoder {
+
+    private static final int OP_INDEX = 0x00;
+    private static final int OP_DIFF = 0x40;
+    private static final int OP_LUMA = 0x80;
+    private static final int OP_RUN = 0xC0;
+    private static final int OP_RGB = 0xFE;
+    private static final int MAX_RUN = 62;
+    private static final int HEADER_SIZE = 14;
+    private static final byte[] END_MARKER = {0, 0, 0, 0, 0, 0, 0, 1};
+    private static final int OPAQUE = 0xFF000000;
+
+    private byte[] out = new byte[64 * 1024];
+    private int pos;
+    private final int[] index = new int[64];
+    private int prev;
+    private int run;
+    private int[] row = new int[0];
+
+    @Override
+    public int encode(BufferedImage img) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        // worst case every pixel is a 4-byte RGB op
+        long worst = HEADER_SIZE + (long) w * h * 4 + END_MARKER.length;
+        if (worst > out.length) {
+            out = new byte[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(worst, (long) out.length * 2))];
+        }
+
+        pos = 0;
+        writeInt(0x716F6966); // "qoif"
+        writeInt(w);
+        writeInt(h);
+        out[pos++] = 3; // channels
+        out[pos++] = 0; // sRGB with linear alpha
+        Arrays.fill(index, 0);
+        prev = OPAQUE;
+        run = 0;
+
+        Raster raster = img.getRaster();
+        if (img.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            encodeBgr(raster, w, h);
+        } else if (img.getType() == BufferedImage.TYPE_INT_RGB || img.getType() == BufferedImage.TYPE_INT_ARGB) {
+            encodeIntRgb(raster, w, h);
+        } else {
+            if (row.length < w) row = new int[w];
+            for (int y = 0; y < h; y++) {
+                img.getRGB(0, y, w, 1, row, 0, w);
+                for (int x = 0; x < w; x++) put(OPAQUE | row[x]);
+            }
+        }
+
+        if (run > 0) out[pos++] = (byte) (OP_RUN | (run - 1));
+        System.arraycopy(END_MARKER, 0, out, pos, END_MARKER.length);
+        pos += END_MARKER.length;
+        return pos;
+    }
+
+    // reading the data arrays directly drops acceleration for these images, which is
+    // irrelevant here: frames are only drawn into, never drawn from.
+    // Sub-images (frame regions) share the parent's array at a translated offset.
+    private void encodeBgr(Raster raster, int w, int h) {
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+        int stride = sm.getScanlineStride();
+        int base = raster.getDataBuffer().getOffset()
+                - raster.getSampleModelTranslateY() * stride - raster.getSampleModelTranslateX() * 3;
+        for (int y = 0; y < h; y++) {
+            int i = base + y * stride;
+            for (int x = 0; x < w; x++, i += 3) {
+                put(OPAQUE | (data[i + 2] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8 | (data[i] & 0xFF));
+            }
+        }
+    }
+
+    private void encodeIntRgb(Raster raster, int w, int h) {
+        int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        int base = raster.getDataBuffer().getOffset()
+                - raster.getSampleModelTranslateY() * stride - raster.getSampleModelTranslateX();
+        for (int y = 0; y < h; y++) {
+            int i = base + y * stride;
+            for (int x = 0; x < w; x++) put(OPAQUE | data[i + x]);
+        }
+    }
+
+    private void put(int px) {
+        if (px == prev) {
+            if (++run == MAX_RUN) {
+                out[pos++] = (byte) (OP_RUN | (MAX_RUN - 1));
+                run = 0;
+            }
+            return;
+        }
+        if (run > 0) {
+            out[pos++] = (byte) (OP_RUN | (run - 1));
+            run = 0;
+        }
+
+        int r = (px >> 16) & 0xFF;
+        int g = (px >> 8) & 0xFF;
+        int b = px & 0xFF;
+        int slot = (r * 3 + g * 5 + b * 7 + 255 * 11) & 63;
+        if (index[slot] == px) {
+            out[pos++] = (byte) (OP_INDEX | slot);
+        } else {
+            index[slot] = px;
+            // channel deltas wrap around like unsigned bytes
+            int vr = (byte) (r - ((prev >> 16) & 0xFF));
+            int vg = (byte) (g - ((prev >> 8) & 0xFF));
+            int vb = (byte) (b - (prev & 0xFF));
+            int vgr = vr - vg;
+            int vgb = vb - vg;
+            if (vr > -3 && vr < 2 && vg > -3 && vg < 2 && vb > -3 && vb < 2) {
+                out[pos++] = (byte) (OP_DIFF | (vr + 2) << 4 | (vg + 2) << 2 | (vb + 2));
+            } else if (vgr > -9 && vgr < 8 && vg > -33 && vg < 32 && vgb > -9 && vgb < 8) {
+                out[pos++] = (byte) (OP_LUMA | (vg + 32));
+                out[pos++] = (byte) ((vgr + 8) << 4 | (vgb + 8));
+            } else {
+                out[pos++] = (byte) OP_RGB;
+                out[pos++] = (byte) r;
+                out[pos++] = (byte) g;
+                out[pos++] = (byte) b;
+            }
+        }
+        prev = px;
+    }
+
+    private void writeInt(int v) {
+        out[pos++] = (byte) (v >>> 24);
+        out[pos++] = (byte) (v >>> 16);
+        out[pos++] = (byte) (v >>> 8);
+        out[pos++] = (byte) v;
+    }
+
+    /**
+     * Fraction of sampled pixels equal to their left neighbour, from every rowStep-th row.
+     * High for flat UI and text, low for photos and video; used to pick a codec.
+     */
+    static double flatness(BufferedImage img, int rowStep, int[] rowBuffer) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        if (w < 2) return 1.0;
+        int[] line = rowBuffer.length >= w ? rowBuffer : new int[w];
+        long same = 0, total = 0;
+        for (int y = rowStep / 2; y < h; y += rowStep) {
+            img.getRGB(0, y, w, 1, line, 0, w);
+            for (int x = 1; x < w; x++) {
+                if (line[x] == line[x - 1]) same++;
+            }
+            total += w - 1;
+        }
+        return total > 0 ? (double) same / total : 1.0;
+    }
+
+    @Override
+    public byte[] buffer() {
+        return out;
+    }
+
+    @Override
+    public int length() {
+        return pos;
+    }
+
+    @Override
+    public void setQuality(float quality) {
+        // lossless
+    }
+
+    @Override
+    public void close() {
+        out = new byte[0];
+        pos = 0;
+    }
+}
@@ -0,0 +1,173 @@
+package com.mousecontrol.communication;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * RegionEncoder
+ *
+ * Encodes the regions of a frame in parallel on a shared pool. Each region
+ * slot keeps its own encoder and scratch image, so after warm-up a frame costs
+ * one task per region and no buffer allocations. Regions are read-only views
+ * of the frame, which must not change until encode returns.
+ *
+ * Not thread-safe: use one region encoder per streaming thread (or tier).
+ */
+public class RegionEncoder implements AutoCloseable {
+
+    private final ExecutorService pool;
+    private Slot[] slots = new Slot[0];
+    private Future<?>[] pending = new Future<?>[0];
+    private int count;
+
+    public RegionEncoder(ExecutorService pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Encode every region of the frame and wait for all of them, each at its quality for
+     * the stream quality given (see FrameRegion.qualityFor). Returns the number of regions encoded.
+     */
+    public int encode(BufferedImage frame, FrameRegion[] regions, FrameCodec codec, float quality) throws IOException {
+        if (slots.length < regions.length) {
+            int old = slots.length;
+            slots = Arrays.copyOf(slots, regions.length);
+            pending = new Future<?>[regions.length];
+            for (int i = old; i < slots.length; i++) slots[i] = new Slot();
+        }
+        count = regions.length;
+
+        for (int i = 0; i < count; i++) {
+            Slot slot = slots[i];
+            slot.prepare(frame, regions[i], codec, regions[i].qualityFor(quality));
+            // the last region runs on the calling thread instead of idling while it waits
+            pending[i] = i < count - 1 ? pool.submit(slot) : null;
+        }
+        IOException failure = null;
+        try {
+            slots[count - 1].call();
+        } catch (IOException e) {
+            failure = e;
+        }
+        for (int i = 0; i < count - 1; i++) {
+            try {
+                pending[i].get();
+            } catch (ExecutionException e) {
+                if (failure == null) failure = e.getCause() instanceof IOException
+                        ? (IOException) e.getCause() : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) failure = new IOException("interrupted while encoding regions");
+            }
+            pending[i] = null;
+        }
+        if (failure != null) throw failure;
+        return count;
+    }
+
+    public int regionCount() {
+        return count;
+    }
+
+    public FrameRegion region(int i) {
+        return slots[i].region;
+    }
+
+    public byte[] buffer(int i) {
+        return slots[i].encoder.buffer();
+    }
+
+    public int length(int i) {
+        return slots[i].length;
+    }
+
+    @Override
+    public void close() {
+        for (Slot slot : slots) slot.close();
+        slots = new Slot[0];
+        count = 0;
+    }
+
+    /**
+     * Encoding state of one region index.
+     */
+    private static final class Slot implements Callable<Void> {
+        private FrameRegion region;
+        private BufferedImage frame;
+        private float quality;
+        private FrameEncoder encoder;
+        private FrameCodec encoderCodec;
+        private int length;
+
+        // unscaled regions: a cached view into the frame
+        private BufferedImage view;
+        private BufferedImage viewFrame;
+        private FrameRegion viewRegion;
+        // scaled regions: a private image drawn from the frame
+        private BufferedImage scaled;
+        private Graphics2D scaledGraphics;
+
+        void prepare(BufferedImage frame, FrameRegion region, FrameCodec codec, float quality) throws IOException {
+            this.frame = frame;
+            this.region = region;
+            this.quality = quality;
+            if (encoder == null || encoderCodec != codec) {
+                if (encoder != null) encoder.close();
+                encoder = codec.newEncoder(quality);
+                encoderCodec = codec;
+            }
+        }
+
+        @Override
+        public Void call() throws IOException {
+            FrameRegion r = region;
+            int x = Math.min(r.x, frame.getWidth() - 1);
+            int y = Math.min(r.y, frame.getHeight() - 1);
+            int w = Math.min(r.width, frame.getWidth() - x);
+            int h = Math.min(r.height, frame.getHeight() - y);
+
+            BufferedImage image;
+            if (r.scale == 1f) {
+                if (view == null || viewFrame != frame || viewRegion != r) {
+                    view = frame.getSubimage(x, y, w, h);
+                    viewFrame = frame;
+                    viewRegion = r;
+                }
+                image = view;
+            } else {
+                int ew = r.encodedWidth();
+                int eh = r.encodedHeight();
+                if (scaled == null || scaled.getWidth() != ew || scaled.getHeight() != eh) {
+                    if (scaledGraphics != null) scaledGraphics.dispose();
+                    scaled = new BufferedImage(ew, eh, BufferedImage.TYPE_3BYTE_BGR);
+                    scaledGraphics = scaled.createGraphics();
+                    scaledGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                    scaledGraphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+                }
+                scaledGraphics.drawImage(frame, 0, 0, ew, eh, x, y, x + w, y + h, null);
+                image = scaled;
+            }
+            encoder.setQuality(quality);
+            length = encoder.encode(image);
+            return null;
+        }
+
+        void close() {
+            if (encoder != null) encoder.close();
+            if (scaledGraphics != null) scaledGraphics.dispose();
+            encoder = null;
+            scaled = null;
+            scaledGraphics = null;
+            view = null;
+            viewFrame = null;
+            frame = null;
+        }
+    }
+}
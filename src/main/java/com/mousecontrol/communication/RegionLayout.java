@@ -0,0 +1,52 @@
+package com.mousecontrol.communication;
+
+/**
+ * RegionLayout
+ *
+ * Decides how a frame is split into independently encoded regions.
+ */
+public interface RegionLayout {
+
+    /**
+     * Regions for a frame of the given size, in drawing order. Implementations may
+     * return the same array for consecutive frames while the layout is unchanged; a
+     * region's quality follows the stream's (FrameRegion.qualityFor), so a quality change
+     * alone need not produce new regions.
+     *
+     * @param quality the stream's current quality
+     * @param cursorX cursor position as a fraction (0..1) of the frame width, NaN if unknown
+     * @param cursorY cursor position as a fraction (0..1) of the frame height, NaN if unknown
+     */
+    FrameRegion[] layout(int frameWidth, int frameHeight, float quality, double cursorX, double cursorY);
+
+    /**
+     * Horizontal strips that are encoded in parallel and can be lost independently.
+     */
+    static RegionLayout strips(int count) {
+        return new RegionLayout() {
+            private FrameRegion[] cached;
+
+            @Override
+            public FrameRegion[] layout(int frameWidth, int frameHeight, float quality, double cursorX, double cursorY) {
+                FrameRegion[] c = cached;
+                if (c == null || c[0].frameWidth != frameWidth || c[0].frameHeight != frameHeight) {
+                    c = FrameRegion.strips(frameWidth, frameHeight, count);
+                    cached = c;
+                }
+                return c;
+            }
+
+            @Override
+            public String toString() {
+                return count + " strips";
+            }
+        };
+    }
+
+    /**
+     * A sharp region around the cursor over a low-resolution, low-quality full frame.
+     */
+    static RegionLayout foveated(FoveatedLayout.Settings settings) {
+        return new FoveatedLayout(settings);
+    }
+}
@@ -0,0 +1,270 @@
+package com.mousecontrol.communication;
+
+import com.mousecontrol.desktop.Desktop;
+import com.mousecontrol.desktop.Desktops;
+import com.mousecontrol.jfr.FrameCaptureEvent;
+import com.mousecontrol.jfr.FrameScaleEvent;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * ScreenCapturer
+ *
+ * Captures the current viewport (by default the full virtual screen across all
+ * monitors), optionally overlays a cursor marker and scales the result down to a
+ * maximum width. Only the viewport is grabbed, so capture and encode cost follow
+ * its size. The output image and its Graphics2D are kept between frames so
+ * steady-state streaming only allocates the raster returned by
+ * Desktop.createScreenCapture (the Robot API offers no way to capture into an
+ * existing image).
+ *
+ * Not thread-safe: use one capturer per streaming thread. The viewport may be
+ * set, and the captured area read, from any thread.
+ */
+public class ScreenCapturer {
+
+    // Monitor layout rarely changes; re-query it at most this often
+    private static final long BOUNDS_REFRESH_NANOS = 2_000_000_000L;
+    // Follow mode only re-centres once the cursor leaves the middle 60% of the window,
+    // so small movements do not shift the whole picture
+    private static final double FOLLOW_DEADZONE = 0.6;
+    private static final int MIN_FOLLOW_SIZE = 64;
+
+    private final Desktop desktop;
+    private final Rectangle screenRect = new Rectangle();
+    private Rectangle[] monitors = new Rectangle[0];
+    private long boundsCheckedAt;
+    private boolean boundsValid = false;
+
+    private volatile Viewport viewport = Viewport.full();
+    private final Rectangle captureRect = new Rectangle();
+    private volatile Rectangle captureArea;
+    // cursor position in the last frame as a fraction of its size, NaN when outside it
+    private double cursorX = Double.NaN;
+    private double cursorY = Double.NaN;
+
+    private BufferedImage frame;
+    private Graphics2D frameGraphics;
+    private boolean drawCursor = true;
+
+    public ScreenCapturer() {
+        this(Desktops.get());
+    }
+
+    public ScreenCapturer(Desktop desktop) {
+        this.desktop = desktop;
+    }
+
+    /**
+     * Capture one frame, scaled so that its width does not exceed maxWidth (0 = no limit).
+     * The returned image is owned by the capturer and reused by the next call.
+     */
+    public BufferedImage capture(int maxWidth) {
+        refreshBounds();
+        Point cursor = cursorLocation();
+        resolveViewport(viewport, cursor);
+        if (cursor != null && captureRect.contains(cursor)) {
+            cursorX = (cursor.x - captureRect.x) / (double) captureRect.width;
+            cursorY = (cursor.y - captureRect.y) / (double) captureRect.height;
+        } else {
+            cursorX = Double.NaN;
+            cursorY = Double.NaN;
+        }
+        FrameCaptureEvent captureEvent = new FrameCaptureEvent();
+        captureEvent.begin();
+        BufferedImage capture = desktop.createScreenCapture(captureRect);
+        captureEvent.end();
+        if (captureEvent.shouldCommit()) {
+            captureEvent.width = capture.getWidth();
+            captureEvent.height = capture.getHeight();
+            captureEvent.commit();
+        }
+
+        int w = capture.getWidth();
+        int h = capture.getHeight();
+        if (maxWidth > 0 && w > maxWidth) {
+            h = Math.max(1, (int) (((double) h / w) * maxWidth));
+            w = maxWidth;
+        }
+
+        FrameScaleEvent scaleEvent = new FrameScaleEvent();
+        scaleEvent.begin();
+        Graphics2D g = frameGraphics(w, h);
+        g.drawImage(capture, 0, 0, w, h, null);
+        if (drawCursor && cursor != null) {
+            drawCursor(g, cursor, (double) w / capture.getWidth(), w);
+        }
+        scaleEvent.end();
+        if (scaleEvent.shouldCommit()) {
+            scaleEvent.sourceWidth = capture.getWidth();
+            scaleEvent.sourceHeight = capture.getHeight();
+            scaleEvent.width = w;
+            scaleEvent.height = h;
+            scaleEvent.commit();
+        }
+        return frame;
+    }
+
+    /**
+     * Whether to bake a cursor marker into frames. Turn off when the client draws
+     * the cursor itself from the cursor side channel.
+     */
+    public void setDrawCursor(boolean drawCursor) {
+        this.drawCursor = drawCursor;
+    }
+
+    /**
+     * Region to capture from the next frame on; null means the full virtual screen.
+     */
+    public void setViewport(Viewport viewport) {
+        this.viewport = viewport != null ? viewport : Viewport.full();
+    }
+
+    public Viewport getViewport() {
+        return viewport;
+    }
+
+    /**
+     * Desktop region covered by the most recent frame, or null before the first capture.
+     * The returned rectangle is never modified; a new one is published when the area moves.
+     */
+    public Rectangle getCaptureArea() {
+        return captureArea;
+    }
+
+    /**
+     * Cursor position in the last frame as a fraction (0..1) of its width, NaN when outside.
+     */
+    public double getCursorX() {
+        return cursorX;
+    }
+
+    /**
+     * Cursor position in the last frame as a fraction (0..1) of its height, NaN when outside.
+     */
+    public double getCursorY() {
+        return cursorY;
+    }
+
+    public void close() {
+        if (frameGraphics != null) {
+            frameGraphics.dispose();
+            frameGraphics = null;
+        }
+        frame = null;
+    }
+
+    private void refreshBounds() {
+        long now = System.nanoTime();
+        if (boundsValid && now - boundsCheckedAt < BOUNDS_REFRESH_NANOS) return;
+        Rectangle[] bounds = desktop.getScreenBounds();
+        Desktop.virtualBounds(bounds, screenRect);
+        monitors = bounds;
+        boundsCheckedAt = now;
+        boundsValid = true;
+    }
+
+    private Point cursorLocation() {
+        return desktop.getPointerLocation();
+    }
+
+    /**
+     * Resolve the viewport against the current monitor layout into captureRect.
+     * Modes that no longer fit the layout (unplugged monitor, off-screen rect)
+     * fall back to the full virtual screen.
+     */
+    private void resolveViewport(Viewport v, Point cursor) {
+        int oldX = captureRect.x, oldY = captureRect.y;
+        int oldW = captureRect.width, oldH = captureRect.height;
+
+        switch (v.getMode()) {
+            case MONITOR: {
+                Rectangle[] bounds = monitors;
+                captureRect.setBounds(v.getMonitor() < bounds.length ? bounds[v.getMonitor()] : screenRect);
+                break;
+            }
+            case RECT: {
+                Rectangle r = v.getRect().intersection(screenRect);
+                captureRect.setBounds(r.isEmpty() ? screenRect : r);
+                break;
+            }
+            case FOLLOW:
+                follow(v.getZoom(), cursor);
+                break;
+            default:
+                captureRect.setBounds(screenRect);
+        }
+
+        if (captureArea == null || oldX != captureRect.x || oldY != captureRect.y
+                || oldW != captureRect.width || oldH != captureRect.height) {
+            captureArea = new Rectangle(captureRect);
+        }
+    }
+
+    /**
+     * Follow mode: a (monitor size / zoom) window on the cursor's monitor, moved
+     * only when the cursor leaves its central deadzone and clamped to the monitor.
+     */
+    private void follow(double zoom, Point cursor) {
+        Rectangle m = cursor != null ? monitorAt(cursor) : screenRect;
+        int w = Math.min(m.width, Math.max(MIN_FOLLOW_SIZE, (int) (m.width / zoom)) & ~1);
+        int h = Math.min(m.height, Math.max(MIN_FOLLOW_SIZE, (int) (m.height / zoom)) & ~1);
+
+        boolean settled = captureRect.width == w && captureRect.height == h && m.contains(captureRect);
+        if (settled && (cursor == null || inDeadzone(cursor))) return;
+
+        int cx = cursor != null ? cursor.x : m.x + m.width / 2;
+        int cy = cursor != null ? cursor.y : m.y + m.height / 2;
+        int x = Math.max(m.x, Math.min(cx - w / 2, m.x + m.width - w));
+        int y = Math.max(m.y, Math.min(cy - h / 2, m.y + m.height - h));
+        captureRect.setBounds(x, y, w, h);
+    }
+
+    private boolean inDeadzone(Point p) {
+        int marginX = (int) (captureRect.width * (1 - FOLLOW_DEADZONE) / 2);
+        int marginY = (int) (captureRect.height * (1 - FOLLOW_DEADZONE) / 2);
+        return p.x >= captureRect.x + marginX && p.x < captureRect.x + captureRect.width - marginX
+                && p.y >= captureRect.y + marginY && p.y < captureRect.y + captureRect.height - marginY;
+    }
+
+    private Rectangle monitorAt(Point p) {
+        for (Rectangle m : monitors) {
+            if (m.contains(p)) return m;
+        }
+        return screenRect;
+    }
+
+    private Graphics2D frameGraphics(int w, int h) {
+        if (frame == null || frame.getWidth() != w || frame.getHeight() != h) {
+            if (frameGraphics != null) frameGraphics.dispose();
+            // 3-byte BGR is what the JPEG writer consumes natively; handing it TYPE_INT_RGB
+            // makes it convert the whole raster into fresh arrays on every frame
+            frame = new BufferedImage(w, h, BufferedImage.TYPE_3BYTE_BGR);
+            frameGraphics = frame.createGraphics();
+            // Bilinear drawImage replaces getScaledInstance(SCALE_SMOOTH), which
+            // allocated an intermediate image and filter chain on every frame
+            frameGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            frameGraphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        }
+        return frameGraphics;
+    }
+
+    /**
+     * Overlay a visible cursor marker. scale maps screen pixels to image pixels.
+     */
+    private void drawCursor(Graphics2D g, Point p, double scale, int imageWidth) {
+        try {
+            if (!captureRect.contains(p)) return;
+            int rx = (int) ((p.x - captureRect.x) * scale);
+            int ry = (int) ((p.y - captureRect.y) * scale);
+            int size = Math.max(8, Math.min(24, imageWidth / 80));
+            g.setColor(Color.RED);
+            g.fillOval(rx - size/2, ry - size/2, size, size);
+            g.setColor(Color.WHITE);
+            g.drawOval(rx - size/2, ry - size/2, size, size);
+        } catch (Exception e) {
+            // ignore cursor overlay errors
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.mousecontrol.communication;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StreamTarget
+ *
+ * One UDP subscriber of the shared stream: a unicast client or a multicast group.
+ * Owns a connected, non-blocking DatagramChannel and a liveness deadline that is
+ * pushed back whenever the subscriber shows signs of life (start, keepalive, feedback).
+ */
+public class StreamTarget {
+
+    private final InetSocketAddress address;
+    private final InetAddress owner;
+    private final DatagramChannel channel;
+    private final long timeoutMs;
+    private final int multicastTtl;
+    private final long timeoutNanos;
+    private volatile long lastSeenNanos;
+    // not expired before this, whatever lastSeenNanos says (a detached session's grace period)
+    private volatile long heldUntilNanos;
+
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong droppedSends = new AtomicLong();
+
+    /**
+     * @param owner the control client that subscribed this target (keeps it alive / stops it)
+     * @param timeoutMs liveness timeout; the target is dropped if not touched for this long
+     * @param multicastTtl TTL for multicast groups (ignored for unicast)
+     */
+    public StreamTarget(InetAddress addr, int port, InetAddress owner, long timeoutMs, int multicastTtl) throws IOException {
+        this.address = new InetSocketAddress(addr, port);
+        this.owner = owner != null ? owner : addr;
+        this.timeoutMs = timeoutMs;
+        this.multicastTtl = multicastTtl;
+        this.timeoutNanos = Math.max(1, timeoutMs) * 1_000_000L;
+        DatagramChannel ch = DatagramChannel.open();
+        try {
+            if (addr.isMulticastAddress()) {
+                ch.setOption(StandardSocketOptions.IP_MULTICAST_TTL, Math.max(1, multicastTtl));
+            }
+            ch.connect(address);
+            // never stall the capture loop on a full socket buffer; FragmentSender counts those as drops
+            ch.configureBlocking(false);
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+        this.channel = ch;
+        touch();
+        heldUntilNanos = lastSeenNanos;
+    }
+
+    /**
+     * A target like this one (same port, timeout and TTL) sending to another address for
+     * another owner, for a client that came back from a new address. This one stays open.
+     */
+    public StreamTarget moveTo(InetAddress addr, InetAddress owner) throws IOException {
+        return new StreamTarget(addr, address.getPort(), owner, timeoutMs, multicastTtl);
+    }
+
+    public void touch() {
+        lastSeenNanos = System.nanoTime();
+    }
+
+    /**
+     * Keep the target alive for at least this long without being touched, e.g. while its
+     * client is disconnected and may resume.
+     */
+    public void holdFor(long ms) {
+        heldUntilNanos = System.nanoTime() + ms * 1_000_000L;
+    }
+
+    public boolean isExpired(long nowNanos) {
+        return nowNanos - lastSeenNanos > timeoutNanos && nowNanos - heldUntilNanos > 0;
+    }
+
+    public boolean matches(InetAddress addr, int port) {
+        return address.getAddress().equals(addr) && (port <= 0 || address.getPort() == port);
+    }
+
+    public boolean isOwnedBy(InetAddress client, int port) {
+        return owner.equals(client) && (port <= 0 || address.getPort() == port);
+    }
+
+    public InetAddress getOwner() {
+        return owner;
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    public boolean isMulticast() {
+        return address.getAddress().isMulticastAddress();
+    }
+
+    DatagramChannel channel() {
+        return channel;
+    }
+
+    void recordSent() {
+        packetsSent.incrementAndGet();
+    }
+
+    void recordDropped() {
+        droppedSends.incrementAndGet();
+    }
+
+    public long getPacketsSent() { return packetsSent.get(); }
+    public long getDroppedSends() { return droppedSends.get(); }
+
+    public void close() {
+        try { channel.close(); } catch (Exception ignored) {}
+    }
+
+    @Override
+    public String toString() {
+        return (isMulticast() ? "multicast " : "") + address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+}
@@ -0,0 +1,178 @@
+package com.mousecontrol.communication;
+
+import com.mousecontrol.jfr.FrameScaleEvent;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StreamTier
+ *
+ * One resolution/quality level of a multi-viewer stream. Every viewer in a tier
+ * receives the same encoded bytes, so each frame is scaled and encoded once per
+ * tier no matter how many viewers share it.
+ *
+ * The default tier follows the stream's AdaptiveStreamController; the others use
+ * fixed settings. Encoding state is owned by the streaming thread.
+ */
+public class StreamTier {
+
+    public static final String DEFAULT = "default";
+
+    private final String name;
+    private final int maxWidth;    // fixed tiers only
+    private final float quality;   // fixed tiers only
+
+    private FrameEncoder encoder;
+    private FrameCodec encoderCodec;
+    private RegionEncoder regionEncoder;
+    private BufferedImage scaled;
+    private Graphics2D scaledGraphics;
+    private volatile int viewers;
+    // set by the streaming thread when at least one viewer is ready for this frame
+    boolean pending;
+    private final AtomicLong framesEncoded = new AtomicLong();
+
+    private StreamTier(String name, int maxWidth, float quality) {
+        this.name = name;
+        this.maxWidth = maxWidth;
+        this.quality = quality;
+    }
+
+    /**
+     * The tier driven by the stream controller (used when a viewer asks for nothing else).
+     */
+    public static StreamTier controlled() {
+        return new StreamTier(DEFAULT, 0, 0f);
+    }
+
+    /**
+     * A fixed tier. Width is rounded to a multiple of 16 and quality to 0.05 steps so that
+     * viewers asking for nearly the same settings end up sharing one encode.
+     */
+    public static StreamTier fixed(int maxWidth, float quality) {
+        int w = Math.max(160, Math.round(maxWidth / 16f) * 16);
+        float q = Math.max(0.1f, Math.min(1f, Math.round(quality * 20) / 20f));
+        return new StreamTier(key(w, q), w, q);
+    }
+
+    /**
+     * Named presets: "high", "medium", "low"; anything else is the default tier.
+     */
+    public static StreamTier preset(String name) {
+        if ("high".equalsIgnoreCase(name)) return fixed(1920, 0.85f);
+        if ("medium".equalsIgnoreCase(name)) return fixed(1280, 0.65f);
+        if ("low".equalsIgnoreCase(name)) return fixed(800, 0.45f);
+        return controlled();
+    }
+
+    private static String key(int width, float quality) {
+        return width + "@" + Math.round(quality * 100);
+    }
+
+    public String getName() { return name; }
+    public boolean isControlled() { return DEFAULT.equals(name); }
+
+    public int getMaxWidth(AdaptiveStreamController ctl) {
+        return isControlled() ? ctl.getMaxWidth() : maxWidth;
+    }
+
+    public float getQuality(AdaptiveStreamController ctl) {
+        return isControlled() ? ctl.getQuality() : quality;
+    }
+
+    /**
+     * Scale the captured frame down to this tier's width if needed and encode it with codec.
+     * Returns the encoded length; the bytes are in buffer() until the next call.
+     */
+    int encode(BufferedImage frame, AdaptiveStreamController ctl, FrameCodec codec) throws IOException {
+        float q = getQuality(ctl);
+        if (encoder == null || encoderCodec != codec) {
+            if (encoder != null) encoder.close();
+            encoder = codec.newEncoder(q);
+            encoderCodec = codec;
+        }
+        encoder.setQuality(q);
+        int len = encoder.encode(scaledFrame(frame, ctl));
+        framesEncoded.incrementAndGet();
+        return len;
+    }
+
+    byte[] buffer() {
+        return encoder.buffer();
+    }
+
+    /**
+     * Scale the frame to this tier and encode it as independent regions on the shared pool.
+     * The cursor position (fractions of the frame, NaN if unknown) feeds cursor-aware layouts.
+     * Returns the region encoder holding the results until the next call.
+     */
+    RegionEncoder encodeRegions(BufferedImage frame, AdaptiveStreamController ctl, FrameCodec codec,
+                                RegionLayout layout, double cursorX, double cursorY) throws IOException {
+        BufferedImage image = scaledFrame(frame, ctl);
+        float q = getQuality(ctl);
+        if (regionEncoder == null) regionEncoder = new RegionEncoder(EncoderPool.shared());
+        regionEncoder.encode(image, layout.layout(image.getWidth(), image.getHeight(), q, cursorX, cursorY), codec, q);
+        framesEncoded.incrementAndGet();
+        return regionEncoder;
+    }
+
+    /**
+     * The frame scaled down to this tier's width (the frame itself if it is not wider).
+     * The returned image is reused by the next call.
+     */
+    BufferedImage scaledFrame(BufferedImage frame, AdaptiveStreamController ctl) {
+        int w = getMaxWidth(ctl);
+        if (w <= 0 || frame.getWidth() <= w) return frame;
+        int h = Math.max(1, (int) ((double) frame.getHeight() / frame.getWidth() * w));
+        FrameScaleEvent event = new FrameScaleEvent();
+        event.begin();
+        BufferedImage image = scaled(w, h);
+        scaledGraphics.drawImage(frame, 0, 0, w, h, null);
+        event.end();
+        if (event.shouldCommit()) {
+            event.sourceWidth = frame.getWidth();
+            event.sourceHeight = frame.getHeight();
+            event.width = w;
+            event.height = h;
+            event.commit();
+        }
+        return image;
+    }
+
+    void setViewers(int viewers) {
+        this.viewers = viewers;
+    }
+
+    public int getViewers() { return viewers; }
+    public long getFramesEncoded() { return framesEncoded.get(); }
+
+    private BufferedImage scaled(int w, int h) {
+        if (scaled == null || scaled.getWidth() != w || scaled.getHeight() != h) {
+            if (scaledGraphics != null) scaledGraphics.dispose();
+            scaled = new BufferedImage(w, h, BufferedImage.TYPE_3BYTE_BGR);
+            scaledGraphics = scaled.createGraphics();
+            scaledGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            scaledGraphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        }
+        return scaled;
+    }
+
+    void close() {
+        if (encoder != null) encoder.close();
+        if (regionEncoder != null) regionEncoder.close();
+        regionEncoder = null;
+        if (scaledGraphics != null) scaledGraphics.dispose();
+        encoder = null;
+        scaled = null;
+        scaledGraphics = null;
+    }
+
+    @Override
+    public String toString() {
+        return isControlled() ? DEFAULT : maxWidth + "px q" + quality;
+    }
+}
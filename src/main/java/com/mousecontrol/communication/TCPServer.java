@@ -1,14 +1,26 @@
 package com.mousecontrol.communication;
 
+import com.mousecontrol.jfr.InputParseEvent;
+import com.mousecontrol.jfr.InputReadEvent;
+import com.mousecontrol.metrics.MetricsRegistry;
 import com.mousecontrol.models.MotionData;
 import com.mousecontrol.processor.MovementProcessor;
+import com.mousecontrol.processor.TouchpadProcessor;
+import com.mousecontrol.recording.SessionRecorder;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Supplier;
 import com.mousecontrol.controller.KeyboardController;
 import com.mousecontrol.communication.WebSocketStreamer; // added import
 
@@ -21,20 +33,40 @@ import com.mousecontrol.communication.WebSocketStreamer; // added import
  * Passes MotionData to MovementProcessor.
  *
  * Extended: accepts a small control JSON for starting/stopping UDP screen streaming and keyboard events.
+ * Input and streamed frames can be recorded to a session recording for later replay.
+ * A client that opens a session (see ClientSessions) keeps its streams, held keys and
+ * calibration across a reconnect within the grace period.
  */
 public class TCPServer {
 
     private final int port;
     private final MovementProcessor processor;
     private ServerCallback serverCallback;
-    private UDPStreamer udpStreamer;
-    private KeyboardController keyboardController;
-    private WebSocketStreamer webSocketStreamer; // added
+    private volatile UDPStreamer udpStreamer;
+    private volatile WebSocketStreamer webSocketStreamer; // added
+    // when set, the streamer is built on the first command that needs it
+    private Supplier<UDPStreamer> udpStreamerFactory;
+    private Supplier<WebSocketStreamer> webSocketStreamerFactory;
+
+    // startup timing: wall-clock millis when the port was bound / the first client came in
+    private volatile long listeningAtMillis;
+    private volatile long firstConnectionAtMillis;
+    private volatile SessionRecorder recorder;
+
+    // recordings started from the control connection go under this directory
+    public static final Path RECORDINGS_DIR = Paths.get("recordings");
+
+    // motion and keyboard input, shared with the WebSocket streamer's viewers
+    private final InputDispatcher input;
 
     // Track the currently connected client so we can close it when a new one connects
     private volatile Socket currentClient;
     private volatile Thread currentClientHandler;
 
+    private final ClientSessions sessions = new ClientSessions(this::expireSession);
+    // session whose client started the WebSocket server (null if a client without one did)
+    private volatile ClientSessions.Session webSocketSession;
+
     public interface ServerCallback {
         void onConnectionStatusChanged(String status);
     }
@@ -48,7 +80,28 @@ public class TCPServer {
     }
 
     public void setKeyboardController(KeyboardController kc) {
-        this.keyboardController = kc;
+        input.setKeyboardController(kc);
+    }
+
+    /**
+     * Handle {"touch":...} samples with this processor (touchpad mode).
+     */
+    public void setTouchpadProcessor(TouchpadProcessor touchpad) {
+        input.setTouchpadProcessor(touchpad);
+    }
+
+    /**
+     * Where input arriving on other connections (WebSocket viewers) goes.
+     */
+    public InputDispatcher getInputDispatcher() {
+        return input;
+    }
+
+    /**
+     * How long a disconnected client's session (streams, held keys) is kept for it to resume.
+     */
+    public void setSessionGraceMs(long graceMs) {
+        sessions.setGraceMs(graceMs);
     }
 
     // New setter for WebSocket streamer
@@ -56,9 +109,119 @@ public class TCPServer {
         this.webSocketStreamer = ws;
     }
 
+    /**
+     * Build the UDP streamer when a client first asks to stream rather than at startup.
+     */
+    public synchronized void setUdpStreamerFactory(Supplier<UDPStreamer> factory) {
+        this.udpStreamerFactory = factory;
+    }
+
+    public synchronized void setWebSocketStreamerFactory(Supplier<WebSocketStreamer> factory) {
+        this.webSocketStreamerFactory = factory;
+    }
+
+    private synchronized boolean ensureUdpStreamer() {
+        if (udpStreamer == null && udpStreamerFactory != null) {
+            UDPStreamer s = udpStreamerFactory.get();
+            udpStreamerFactory = null;
+            if (recorder != null) s.setRecorder(recorder);
+            udpStreamer = s;
+        }
+        return udpStreamer != null;
+    }
+
+    private synchronized boolean ensureWebSocketStreamer() {
+        if (webSocketStreamer == null && webSocketStreamerFactory != null) {
+            WebSocketStreamer s = webSocketStreamerFactory.get();
+            webSocketStreamerFactory = null;
+            if (recorder != null) s.setRecorder(recorder);
+            webSocketStreamer = s;
+        }
+        return webSocketStreamer != null;
+    }
+
+    /**
+     * Start recording input and streamed frames into dir (replacing any running recording).
+     */
+    public synchronized SessionRecorder startRecording(Path dir, int segmentBytes, int segments) throws IOException {
+        stopRecording();
+        SessionRecorder r = SessionRecorder.open(dir, segmentBytes, segments);
+        recorder = r;
+        input.setRecorder(r);
+        if (udpStreamer != null) udpStreamer.setRecorder(r);
+        if (webSocketStreamer != null) webSocketStreamer.setRecorder(r);
+        System.out.println("Recording session to " + dir.toAbsolutePath());
+        return r;
+    }
+
+    public synchronized void stopRecording() {
+        SessionRecorder r = recorder;
+        if (r == null) return;
+        recorder = null;
+        input.setRecorder(null);
+        if (udpStreamer != null) udpStreamer.setRecorder(null);
+        if (webSocketStreamer != null) webSocketStreamer.setRecorder(null);
+        r.close();
+    }
+
+    public SessionRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Expose input counters, rates, latency and backlog.
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.counter("mousecontrol_input_events_total", "Input events received from the client.", input.motionEvents, "type", "motion");
+        registry.counter("mousecontrol_input_events_total", "Input events received from the client.", input.keyboardEvents, "type", "keyboard");
+        registry.counter("mousecontrol_input_events_total", "Input events received from the client.", input.touchEvents, "type", "touch");
+        registry.rate("mousecontrol_input_events_per_second", "Input events per second since the previous scrape.", input.motionEvents, "type", "motion");
+        registry.rate("mousecontrol_input_events_per_second", "Input events per second since the previous scrape.", input.keyboardEvents, "type", "keyboard");
+        registry.rate("mousecontrol_input_events_per_second", "Input events per second since the previous scrape.", input.touchEvents, "type", "touch");
+        registry.counter("mousecontrol_input_parse_failures_total", "Lines from the client that were neither a command nor valid motion JSON.", input.parseFailures);
+        registry.histogram("mousecontrol_input_injection_seconds", "Time from reading an input line to injecting it into the desktop.", input.motionLatency, "type", "motion");
+        registry.histogram("mousecontrol_input_injection_seconds", "Time from reading an input line to injecting it into the desktop.", input.keyboardLatency, "type", "keyboard");
+        registry.histogram("mousecontrol_input_injection_seconds", "Time from reading an input line to injecting it into the desktop.", input.clickLatency, "type", "click");
+        registry.histogram("mousecontrol_input_injection_seconds", "Time from reading an input line to injecting it into the desktop.", input.touchLatency, "type", "touch");
+        registry.counter("mousecontrol_input_motion_merged_total", "Motion and touch samples merged into one still waiting because the desktop was busy.", input.motionMerged);
+        registry.gauge("mousecontrol_input_queued", "Input events queued for the desktop and not applied yet.", input::getQueuedInput);
+        registry.counter("mousecontrol_input_dropped_total", "Clicks, key commands and touch lifts dropped because the discrete input queue was full.", input.discreteDropped);
+        registry.gauge("mousecontrol_input_backlog_bytes", "Bytes received from the client and not read yet.", this::getInputBacklog);
+        registry.gauge("mousecontrol_startup_listening_seconds", "Time from JVM start until the control port was listening.",
+                () -> sinceJvmStart(listeningAtMillis));
+        registry.gauge("mousecontrol_startup_first_connection_seconds", "Time from JVM start until the first client was accepted.",
+                () -> sinceJvmStart(firstConnectionAtMillis));
+        registry.counter("mousecontrol_sessions_total", "Client sessions by how they began or ended.", sessions.created, "result", "new");
+        registry.counter("mousecontrol_sessions_total", "Client sessions by how they began or ended.", sessions.resumed, "result", "resumed");
+        registry.counter("mousecontrol_sessions_total", "Client sessions by how they began or ended.", sessions.expired, "result", "expired");
+        registry.gauge("mousecontrol_sessions_detached", "Sessions of disconnected clients waiting to be resumed.", sessions::getDetachedCount);
+    }
+
+    /**
+     * Seconds from JVM start to the given wall-clock time, or NaN if it has not happened.
+     */
+    private static double sinceJvmStart(long atMillis) {
+        if (atMillis == 0) return Double.NaN;
+        return (atMillis - ManagementFactory.getRuntimeMXBean().getStartTime()) / 1000.0;
+    }
+
+    /**
+     * Bytes waiting in the current client's socket that the handler has not read yet.
+     */
+    public int getInputBacklog() {
+        Socket c = currentClient;
+        if (c == null || c.isClosed()) return 0;
+        try {
+            return c.getInputStream().available();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
     public TCPServer(int port, MovementProcessor processor) {
         this.port = port;
         this.processor = processor;
+        this.input = new InputDispatcher(processor);
     }
 
     /**
@@ -67,6 +230,7 @@ public class TCPServer {
     public void start() {
         new Thread(() -> {
             try (ServerSocket serverSocket = new ServerSocket(port)) {
+                listeningAtMillis = System.currentTimeMillis();
                 System.out.println("TCP Server running on port " + port);
                 if (serverCallback != null) {
                     serverCallback.onConnectionStatusChanged("Waiting for connection on port " + port);
@@ -75,6 +239,8 @@ public class TCPServer {
                 while (!Thread.currentThread().isInterrupted()) {
                     try {
                         Socket client = serverSocket.accept();
+                        boolean first = firstConnectionAtMillis == 0;
+                        if (first) firstConnectionAtMillis = System.currentTimeMillis();
 
                         // If another client is connected, close it to allow this new one to take over
                         synchronized (this) {
@@ -98,6 +264,13 @@ public class TCPServer {
                         handler.setDaemon(true);
                         currentClientHandler = handler;
                         handler.start();
+                        if (first) {
+                            // after the handler is running, so the JMX lookup does not delay the client
+                            String timing = String.format("First connection accepted %.0f ms after JVM start (listening after %.0f ms)",
+                                    sinceJvmStart(firstConnectionAtMillis) * 1000, sinceJvmStart(listeningAtMillis) * 1000);
+                            System.out.println(timing);
+                            if (serverCallback != null) serverCallback.onConnectionStatusChanged(timing);
+                        }
 
                     } catch (Exception e) {
                         System.err.println("TCP accept loop error: " + e.getMessage());
@@ -120,12 +293,61 @@ public class TCPServer {
      * Handle a single client's incoming lines until it disconnects. Cleans up references on exit.
      */
     private void handleClient(Socket client, InetAddress clientInet) {
+        ClientSessions.Session session = null;
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
+            long lastSubscriberTouch = 0;
+            while (true) {
+                InputReadEvent readEvent = new InputReadEvent();
+                readEvent.begin();
+                String line = reader.readLine();
+                if (line == null) break;
+                readEvent.end();
+                if (readEvent.shouldCommit()) {
+                    readEvent.bytes = line.length();
+                    readEvent.commit();
+                }
+                // 0 unless metrics are being scraped (both input histograms are enabled together)
+                long readAt = input.readStarted();
+                // any traffic on the control connection keeps this client's UDP subscriptions alive
+                long now = System.nanoTime();
+                if (udpStreamer != null && now - lastSubscriberTouch > 1_000_000_000L) {
+                    udpStreamer.touchSubscribers(clientInet);
+                    lastSubscriberTouch = now;
+                }
+                JSONObject json = null;
                 try {
-                    JSONObject json = new JSONObject(line);
-                    if (json.has("stream") && udpStreamer != null) {
+                    InputParseEvent parseEvent = new InputParseEvent();
+                    parseEvent.begin();
+                    json = new JSONObject(line);
+                    parseEvent.end();
+                    if (parseEvent.shouldCommit()) {
+                        parseEvent.kind = lineKind(json);
+                        parseEvent.commit();
+                    }
+                    // Session resume: {"session":{"cmd":"hello","token":"..."}}, answered with the token to resume with
+                    if (json.has("session")) {
+                        JSONObject s = json.getJSONObject("session");
+                        String cmd = s.optString("cmd", "");
+                        if ("hello".equalsIgnoreCase(cmd)) {
+                            boolean resumed = false;
+                            if (session == null) {
+                                session = sessions.resume(s.optString("token", ""), clientInet, client);
+                                resumed = session != null;
+                                if (resumed) resumeSession(session, clientInet);
+                                else session = sessions.create(clientInet, client);
+                            }
+                            String reply = "{\"session\":{\"token\":\"" + session.getToken() + "\",\"resumed\":" + resumed
+                                    + ",\"graceMs\":" + sessions.getGraceMs() + "}}\n";
+                            client.getOutputStream().write(reply.getBytes(StandardCharsets.UTF_8));
+                        } else if ("bye".equalsIgnoreCase(cmd) && session != null) {
+                            // done for good: clean up now instead of after the grace period
+                            sessions.end(session);
+                            session = null;
+                        }
+                        continue;
+                    }
+
+                    if (json.has("stream") && ensureUdpStreamer()) {
                         JSONObject s = json.getJSONObject("stream");
                         String cmd = s.optString("cmd", "");
                         if ("start".equalsIgnoreCase(cmd)) {
@@ -134,21 +356,55 @@ public class TCPServer {
                             int maxWidth = s.optInt("maxWidth", 1280);
                             double q = s.optDouble("quality", 0.7);
                             try {
-                                udpStreamer.startStreaming(clientInet, port, fps, maxWidth, (float) q);
-                                if (serverCallback != null) serverCallback.onConnectionStatusChanged("Started streaming to " + clientInet.getHostAddress() + ":" + port);
+                                // stream to the client itself, another viewer ("target") or a multicast group on its behalf
+                                String group = s.optString("multicast", s.optString("target", ""));
+                                InetAddress target = group.isEmpty() ? clientInet : InetAddress.getByName(group);
+                                long timeoutMs = s.optLong("timeoutMs", UDPStreamer.DEFAULT_SUBSCRIBER_TIMEOUT_MS);
+                                // parsed up front so a bad setting fails this start, not the running stream
+                                FecEncoder fec = buildFec(s.optJSONObject("fec"));
+                                FrameCodec codec = FrameCodec.parse(s.optString("codec", "jpeg"));
+                                RegionLayout layout = buildRegionLayout(s);
+                                Viewport viewport = s.has("viewport") ? buildViewport(s.getJSONObject("viewport")) : null;
+                                // cursor side channel: when on, the client draws the cursor and the overlay defaults to off
+                                int cursorRate = s.optInt("cursorRate", 0);
+                                boolean cursorOverlay = s.optBoolean("cursorOverlay", cursorRate <= 0);
+                                boolean pacing = s.optBoolean("pacing", false);
+                                // the settings only apply if this starts the stream; a later subscriber shares them
+                                boolean started = udpStreamer.startStreaming(target, port, buildStreamController(s, fps, maxWidth, q),
+                                        clientInet, timeoutMs, s.optInt("ttl", 1), u -> {
+                                            u.setFec(fec);
+                                            u.setPacing(pacing);
+                                            u.setCodec(codec);
+                                            u.setRegionLayout(layout);
+                                            u.setCursorOverlay(cursorOverlay);
+                                            u.setCursorRate(cursorRate);
+                                            if (viewport != null) u.setViewport(viewport);
+                                        });
+                                if (serverCallback != null) serverCallback.onConnectionStatusChanged((started ? "Started streaming to " : "Added stream subscriber ")
+                                        + target.getHostAddress() + ":" + port);
                             } catch (Exception e) {
                                 System.err.println("Failed to start UDP streaming: " + e.getMessage());
                                 if (serverCallback != null) serverCallback.onConnectionStatusChanged("Streaming error: " + e.getMessage());
                             }
+                        } else if ("keepalive".equalsIgnoreCase(cmd)) {
+                            udpStreamer.touchSubscribers(clientInet);
+                        } else if ("viewport".equalsIgnoreCase(cmd)) {
+                            try {
+                                udpStreamer.setViewport(buildViewport(s));
+                                if (serverCallback != null) serverCallback.onConnectionStatusChanged("Stream viewport: " + udpStreamer.getViewport());
+                            } catch (IllegalArgumentException e) {
+                                System.err.println("Invalid viewport: " + e.getMessage());
+                            }
                         } else if ("stop".equalsIgnoreCase(cmd)) {
-                            udpStreamer.stopStreaming();
+                            // only this client's subscriptions; the stream stops when none remain
+                            udpStreamer.removeSubscribers(clientInet, s.optInt("port", 0));
                             if (serverCallback != null) serverCallback.onConnectionStatusChanged("Stopped streaming");
                         }
                         continue;
                     }
 
                     // WebSocket control
-                    if (json.has("websocket") && webSocketStreamer != null) {
+                    if (json.has("websocket") && ensureWebSocketStreamer()) {
                         JSONObject s = json.getJSONObject("websocket");
                         String cmd = s.optString("cmd", "");
                         if ("start".equalsIgnoreCase(cmd)) {
@@ -157,64 +413,120 @@ public class TCPServer {
                             int maxWidth = s.optInt("maxWidth", 1280);
                             double q = s.optDouble("quality", 0.7);
                             try {
-                                webSocketStreamer.start(wsPort, fps, maxWidth, (float) q);
-                                if (serverCallback != null) serverCallback.onConnectionStatusChanged("WebSocket server started on port " + wsPort + " (client should connect to ws://<DESKTOP_IP>:" + wsPort + ")");
+                                int cursorRate = s.optInt("cursorRate", 0);
+                                boolean cursorOverlay = s.optBoolean("cursorOverlay", cursorRate <= 0);
+                                FrameCodec codec = FrameCodec.parse(s.optString("codec", "jpeg"));
+                                RegionLayout layout = buildRegionLayout(s);
+                                Viewport viewport = s.has("viewport") ? buildViewport(s.getJSONObject("viewport")) : null;
+                                // a server that is already running keeps its settings for the viewers it has
+                                boolean started = webSocketStreamer.start(wsPort, buildStreamController(s, fps, maxWidth, q), w -> {
+                                    w.setCursorOverlay(cursorOverlay);
+                                    w.setCursorRate(cursorRate);
+                                    w.setCodec(codec);
+                                    w.setRegionLayout(layout);
+                                    if (viewport != null) w.setViewport(viewport);
+                                });
+                                if (started) {
+                                    webSocketSession = session;
+                                    if (serverCallback != null) serverCallback.onConnectionStatusChanged("WebSocket server started on port " + wsPort + " (client should connect to ws://<DESKTOP_IP>:" + wsPort + ")");
+                                } else if (serverCallback != null) {
+                                    serverCallback.onConnectionStatusChanged("WebSocket server already running; settings unchanged");
+                                }
                             } catch (Exception e) {
                                 System.err.println("Failed to start WebSocket server: " + e.getMessage());
                                 if (serverCallback != null) serverCallback.onConnectionStatusChanged("WebSocket error: " + e.getMessage());
                             }
+                        } else if ("viewport".equalsIgnoreCase(cmd)) {
+                            try {
+                                webSocketStreamer.setViewport(buildViewport(s));
+                                if (serverCallback != null) serverCallback.onConnectionStatusChanged("WebSocket viewport: " + webSocketStreamer.getViewport());
+                            } catch (IllegalArgumentException e) {
+                                System.err.println("Invalid viewport: " + e.getMessage());
+                            }
                         } else if ("stop".equalsIgnoreCase(cmd)) {
                             webSocketStreamer.stop();
+                            webSocketSession = null;
                             if (serverCallback != null) serverCallback.onConnectionStatusChanged("WebSocket server stopped");
                         }
                         continue;
                     }
 
-                    if (json.has("keyboard") && keyboardController != null) {
-                        JSONObject k = json.getJSONObject("keyboard");
-                        String cmd = k.optString("cmd", "");
-                        if ("type".equalsIgnoreCase(cmd)) {
-                            String text = k.optString("text", "");
-                            keyboardController.typeString(text);
-                        } else if ("tap".equalsIgnoreCase(cmd)) {
-                            int key = k.optInt("keyCode", -1);
-                            if (key != -1) keyboardController.tapKey(key);
-                        } else if ("press".equalsIgnoreCase(cmd)) {
-                            int key = k.optInt("keyCode", -1);
-                            if (key != -1) keyboardController.pressKey(key);
-                        } else if ("release".equalsIgnoreCase(cmd)) {
-                            int key = k.optInt("keyCode", -1);
-                            if (key != -1) keyboardController.releaseKey(key);
+                    // Client feedback for adaptive streaming (counts are since the subscriber's previous
+                    // report): {"feedback":{"stream":"udp","port":6000,"framesReceived":..,"fragmentsLost":..}}
+                    if (json.has("feedback")) {
+                        JSONObject f = json.getJSONObject("feedback");
+                        boolean ws = "websocket".equalsIgnoreCase(f.optString("stream", "udp"));
+                        AdaptiveStreamController ctl = ws
+                                ? (webSocketStreamer != null ? webSocketStreamer.getStreamController() : null)
+                                : (udpStreamer != null ? udpStreamer.getStreamController() : null);
+                        if (!ws && udpStreamer != null) udpStreamer.touchSubscribers(clientInet);
+                        if (ctl != null) {
+                            // one window per subscriber: the client, and its port if it has several
+                            ctl.onFeedback(new InetSocketAddress(clientInet, f.optInt("port", 0)),
+                                    f.optLong("framesReceived", 0), f.optLong("fragmentsLost", 0),
+                                    f.optDouble("decodeMs", 0), f.optDouble("latencyMs", -1));
                         }
                         continue;
                     }
+
+                    // Session recording: {"record":{"cmd":"start","name":"lag-report","segmentMB":32,"segments":8}}
+                    if (json.has("record")) {
+                        JSONObject r = json.getJSONObject("record");
+                        String cmd = r.optString("cmd", "");
+                        if ("start".equalsIgnoreCase(cmd)) {
+                            String name = r.optString("name", "session-" + System.currentTimeMillis());
+                            try {
+                                // a plain name only, so a client cannot write outside the recordings directory
+                                if (!name.matches("[A-Za-z0-9._-]+") || name.startsWith(".")) {
+                                    throw new IllegalArgumentException("invalid recording name: " + name);
+                                }
+                                int segmentMb = Math.max(1, Math.min(1024, r.optInt("segmentMB", SessionRecorder.DEFAULT_SEGMENT_BYTES >> 20)));
+                                int segments = Math.max(2, Math.min(64, r.optInt("segments", SessionRecorder.DEFAULT_SEGMENTS)));
+                                startRecording(RECORDINGS_DIR.resolve(name), segmentMb << 20, segments);
+                                if (serverCallback != null) serverCallback.onConnectionStatusChanged("Recording session: " + name);
+                            } catch (Exception e) {
+                                System.err.println("Failed to start recording: " + e.getMessage());
+                                if (serverCallback != null) serverCallback.onConnectionStatusChanged("Recording error: " + e.getMessage());
+                            }
+                        } else if ("stop".equalsIgnoreCase(cmd)) {
+                            stopRecording();
+                            if (serverCallback != null) serverCallback.onConnectionStatusChanged("Recording stopped");
+                        }
+                        continue;
+                    }
+
+                    if (input.dispatchKeyboard(json, readAt) || input.dispatchTouch(json, readAt)) continue;
                 } catch (Exception e) {
                     // not a control JSON; fall through to motion parsing
                 }
 
-                MotionData data = parseJson(line);
-
-                if (data != null) {
-                    processor.handle(data);
-                }
+                // the line as parsed above (null if it was not JSON)
+                input.dispatchMotion(line, json, readAt);
             }
 
         } catch (Exception e) {
             System.err.println("Client handler error: " + e.getMessage());
         } finally {
             try { if (client != null && !client.isClosed()) client.close(); } catch (Exception ignored) {}
-            // Stop any active streaming associated with this client to avoid orphaned streams
-            try {
-                if (udpStreamer != null && udpStreamer.isStreaming()) {
-                    udpStreamer.stopStreaming();
-                }
-            } catch (Exception ignored) {}
+            if (session != null) {
+                // keep streams and held keys for the grace period; expireSession cleans up if the client does not return
+                if (udpStreamer != null) udpStreamer.holdSubscribers(clientInet, sessions.getGraceMs());
+                sessions.detach(session, client, input.saveProcessorState());
+            } else {
+                // Drop this client's UDP subscriptions to avoid orphaned streams (others keep streaming)
+                try {
+                    if (udpStreamer != null && udpStreamer.isStreaming()) {
+                        udpStreamer.removeSubscribers(clientInet, 0);
+                    }
+                } catch (Exception ignored) {}
 
-            try {
-                if (webSocketStreamer != null && webSocketStreamer.isRunning()) {
-                    webSocketStreamer.stop();
-                }
-            } catch (Exception ignored) {}
+                try {
+                    // unless a disconnected session started it and may still come back for it
+                    if (webSocketStreamer != null && webSocketStreamer.isRunning() && webSocketSession == null) {
+                        webSocketStreamer.stop();
+                    }
+                } catch (Exception ignored) {}
+            }
 
             synchronized (this) {
                 if (currentClient == client) currentClient = null;
@@ -228,19 +540,129 @@ public class TCPServer {
     }
 
     /**
-     * Convert JSON string into MotionData object.
+     * A client took its session back: its UDP subscribers follow it to the address it
+     * reconnected from, and the processor gets its calibration and smoothing back.
+     */
+    private void resumeSession(ClientSessions.Session session, InetAddress clientInet) {
+        InetAddress from = session.resumedFrom;
+        UDPStreamer udp = udpStreamer;
+        if (udp != null) {
+            if (from != null && !from.equals(clientInet)) udp.transferSubscribers(from, clientInet);
+            else udp.touchSubscribers(clientInet);
+        }
+        MovementProcessor.State state = session.processorState;
+        if (state != null) input.restoreProcessorState(state);
+        String status = "Session resumed" + (from != null && !from.equals(clientInet) ? " (moved from " + from.getHostAddress() + ")" : "");
+        System.out.println(status);
+        if (serverCallback != null) serverCallback.onConnectionStatusChanged(status);
+    }
+
+    /**
+     * Clean up after a session that ended or was not resumed in time: what a plain
+     * disconnect would have done, plus releasing keys the client still held. Runs on the
+     * sessions' timer thread (or the handler for "bye").
      */
-    private MotionData parseJson(String line) {
+    private void expireSession(ClientSessions.Session session) {
+        try {
+            UDPStreamer udp = udpStreamer;
+            if (udp != null) udp.removeSubscribers(session.getAddress(), 0);
+        } catch (Exception ignored) {}
         try {
-            JSONObject json = new JSONObject(line);
+            WebSocketStreamer ws = webSocketStreamer;
+            if (ws != null && webSocketSession == session) {
+                webSocketSession = null;
+                if (ws.isRunning()) ws.stop();
+            }
+        } catch (Exception ignored) {}
+        // on the injector thread, after any key commands still queued
+        input.releaseHeldKeys();
+        String status = "Session closed (streams stopped, held keys released)";
+        System.out.println(status);
+        if (serverCallback != null) serverCallback.onConnectionStatusChanged(status);
+    }
 
-            double gx = json.optDouble("gyroX", 0);
-            double gy = json.optDouble("gyroY", 0);
-            boolean left = json.optBoolean("leftClick", false);
-            boolean right = json.optBoolean("rightClick", false);
+    /**
+     * Build the stream controller for a start command. Adaptive mode is enabled by an
+     * optional "adaptive" object holding bounds/targets; otherwise the values are fixed.
+     */
+    private AdaptiveStreamController buildStreamController(JSONObject s, int fps, int maxWidth, double q) {
+        JSONObject a = s.optJSONObject("adaptive");
+        if (a == null) {
+            return AdaptiveStreamController.fixed(fps, maxWidth, (float) q);
+        }
+        AdaptiveStreamController.Bounds b = new AdaptiveStreamController.Bounds();
+        b.minQuality = (float) a.optDouble("minQuality", b.minQuality);
+        b.maxQuality = (float) a.optDouble("maxQuality", Math.max(b.maxQuality, q));
+        b.minWidth = a.optInt("minWidth", Math.min(b.minWidth, maxWidth));
+        b.maxWidth = a.optInt("maxWidth", Math.max(b.maxWidth, maxWidth));
+        b.minFps = a.optInt("minFps", Math.min(b.minFps, fps));
+        b.maxFps = a.optInt("maxFps", Math.max(b.maxFps, fps));
+        b.targetKbps = a.optInt("targetKbps", b.targetKbps);
+        b.targetLatencyMs = a.optInt("targetLatencyMs", b.targetLatencyMs);
+        return AdaptiveStreamController.adaptive(fps, maxWidth, (float) q, b);
+    }
 
-            return new MotionData(gx, gy, left, right);
+    /**
+     * Build the FEC setting for a UDP start command: {"mode":"off|xor|auto","group":8}.
+     */
+    private FecEncoder buildFec(JSONObject f) {
+        if (f == null) return FecEncoder.off();
+        String mode = f.optString("mode", "off");
+        int group = f.optInt("group", 8);
+        if ("xor".equalsIgnoreCase(mode)) return new FecEncoder(FecEncoder.Mode.FIXED, group);
+        if ("auto".equalsIgnoreCase(mode)) return new FecEncoder(FecEncoder.Mode.AUTO, group);
+        return FecEncoder.off();
+    }
 
+    /**
+     * Region layout for a start command: a "foveated" object (sharp area around the cursor
+     * over a low-resolution frame), or "strips":n (2..64) to split frames into n strips
+     * encoded in parallel; otherwise whole frames (null).
+     */
+    private RegionLayout buildRegionLayout(JSONObject s) {
+        JSONObject f = s.optJSONObject("foveated");
+        if (f != null) {
+            FoveatedLayout.Settings fs = new FoveatedLayout.Settings();
+            fs.size = f.optDouble("size", fs.size);
+            fs.peripheryScale = (float) f.optDouble("peripheryScale", fs.peripheryScale);
+            fs.peripheryQuality = (float) f.optDouble("peripheryQuality", fs.peripheryQuality);
+            fs.foveaQuality = (float) f.optDouble("foveaQuality", fs.foveaQuality);
+            return RegionLayout.foveated(fs);
+        }
+        int strips = Math.min(64, s.optInt("strips", 0));
+        return strips > 1 ? RegionLayout.strips(strips) : null;
+    }
+
+    /**
+     * Build a viewport from {"mode":"full|monitor|rect|follow", "monitor":0,
+     * "x":..,"y":..,"width":..,"height":.., "zoom":2}. Unknown modes mean full screen.
+     */
+    private Viewport buildViewport(JSONObject v) {
+        String mode = v.optString("mode", "full");
+        if ("monitor".equalsIgnoreCase(mode)) return Viewport.monitor(v.optInt("monitor", 0));
+        if ("rect".equalsIgnoreCase(mode)) {
+            return Viewport.rect(v.optInt("x", 0), v.optInt("y", 0), v.optInt("width", 0), v.optInt("height", 0));
+        }
+        if ("follow".equalsIgnoreCase(mode)) return Viewport.follow(v.optDouble("zoom", 2.0));
+        return Viewport.full();
+    }
+
+    /**
+     * What a parsed line is, for profiling: a keyboard command, another command, or motion.
+     */
+    private static String lineKind(JSONObject json) {
+        if (json.has("keyboard")) return "keyboard";
+        if (json.has("stream") || json.has("websocket") || json.has("feedback") || json.has("record")
+                || json.has("session")) return "control";
+        return "json";
+    }
+
+    /**
+     * Convert JSON string into MotionData object.
+     */
+    static MotionData parseJson(String line) {
+        try {
+            return InputDispatcher.motionFromJson(new JSONObject(line));
         } catch (Exception e) {
             System.err.println("Invalid JSON: " + line);
             return null;
@@ -1,212 +1,593 @@
 package com.mousecontrol.communication;
 
-import java.awt.*;
+import com.mousecontrol.jfr.FrameEncodeEvent;
+import com.mousecontrol.jfr.FrameSendEvent;
+import com.mousecontrol.metrics.MetricsRegistry;
+import com.mousecontrol.metrics.StreamMetrics;
+import com.mousecontrol.recording.SessionRecorder;
+
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 
 /**
  * UDPStreamer
  *
- * Captures the primary screen, JPEG-encodes frames, fragments them into
- * small UDP packets and sends to a single client target.
+ * Captures the screen, JPEG-encodes frames, fragments them into small UDP
+ * packets and sends them to every subscriber (unicast clients or multicast
+ * groups). Each frame is captured, encoded and fragmented once regardless of
+ * the number of subscribers; each subscriber has its own liveness timeout and
+ * the stream stops when the last one goes away.
+ *
+ * Optionally runs a cursor side channel: small MCUR packets with the pointer
+ * position and buttons at 60-120 Hz to the same subscribers, so the client can
+ * draw the cursor itself and the in-frame overlay can be turned off.
  *
- * Lightweight, single-target streamer intended for local network (LAN) use.
+ * Lightweight streamer intended for local network (LAN) use.
  */
-public class UDPStreamer {
+public class UDPStreamer implements CursorStreamer.CursorSink {
 
-    private final int fragmentSize; // bytes of JPEG payload per UDP packet
+    public static final long DEFAULT_SUBSCRIBER_TIMEOUT_MS = 10_000;
+
+    private final FragmentSender sender;
     private volatile boolean running = false;
-    private Thread worker;
-    private DatagramSocket socket;
-    private InetAddress clientAddr;
-    private int clientPort;
+    private volatile Thread worker;
+    // guards subscriber changes and the running flag they depend on
+    private final Object targetsLock = new Object();
+    // copy-on-write so the streaming thread can iterate without locking or allocating
+    private volatile StreamTarget[] targets = new StreamTarget[0];
+    private volatile AdaptiveStreamController controller;
+    private volatile FrameScheduler scheduler;
+    private volatile FecEncoder fec = FecEncoder.off();
+    private volatile FrameCodec codec = FrameCodec.JPEG;
+    private volatile RegionLayout regionLayout;
+    private volatile SessionRecorder recorder;
+    private final StreamMetrics metrics = new StreamMetrics();
     private final AtomicInteger frameSeq = new AtomicInteger(0);
 
+    // cursor side channel
+    private static final int CURSOR_MAGIC = 0x4D435552; // 'MCUR'
+    private final CursorStreamer cursorStreamer = new CursorStreamer(this);
+    private final ByteBuffer cursorPacket = ByteBuffer.allocateDirect(34);
+    private volatile int cursorRateHz = 0;
+    private volatile boolean cursorOverlay = true;
+
+    // region of interest; captureArea is what the last frame actually covered
+    private volatile Viewport viewport = Viewport.full();
+    private volatile Rectangle captureArea;
+
     public UDPStreamer(int fragmentSize) {
-        this.fragmentSize = fragmentSize > 200 ? fragmentSize : 1000; // sane minimum
+        // bytes of JPEG payload per UDP packet
+        this.sender = new FragmentSender(fragmentSize > 200 ? fragmentSize : 1000); // sane minimum
+        cursorStreamer.setAreaSource(() -> captureArea);
     }
 
     public synchronized void startStreaming(InetAddress addr, int port, int fps, int maxWidth, float quality) throws Exception {
-        if (running) return; // already streaming
-        this.clientAddr = addr;
-        this.clientPort = port;
-        this.socket = new DatagramSocket();
-        this.running = true;
+        startStreaming(addr, port, AdaptiveStreamController.fixed(fps, maxWidth, quality));
+    }
 
-        worker = new Thread(() -> {
+    /**
+     * Configure forward error correction for the next stream (default: off).
+     */
+    public synchronized void setFec(FecEncoder fec) {
+        this.fec = fec != null ? fec : FecEncoder.off();
+    }
+
+    /**
+     * Frame codec (default JPEG). Takes effect on the next frame.
+     */
+    public void setCodec(FrameCodec codec) {
+        this.codec = codec != null ? codec : FrameCodec.JPEG;
+    }
+
+    public FrameCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Split frames into independently encoded regions (e.g. RegionLayout.strips(n)),
+     * encoded in parallel and sent with the v3 header; null sends whole frames.
+     */
+    public void setRegionLayout(RegionLayout layout) {
+        this.regionLayout = layout;
+    }
+
+    public RegionLayout getRegionLayout() {
+        return regionLayout;
+    }
+
+    /**
+     * Expose frame, byte, encode-time and send-drop metrics with the label stream="udp".
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        metrics.register(registry, "udp");
+        AdaptiveStreamController.registerMetrics(registry, "udp", () -> controller);
+        FrameScheduler.registerMetrics(registry, "udp", this::getScheduler);
+        FrameScheduler.registerMetrics(registry, "udp_cursor", this::getCursorScheduler);
+        registry.counter("mousecontrol_udp_packets_sent_total", "UDP packets (fragments and parity) sent.", sender::getPacketsSent);
+        registry.counter("mousecontrol_udp_fragment_drops_total", "UDP fragments the OS could not accept and were dropped.", sender::getDroppedSends);
+        registry.gauge("mousecontrol_udp_send_kbps", "UDP send rate over the last second.", sender::getSendKbps);
+        registry.gauge("mousecontrol_udp_subscribers", "Current UDP stream subscribers.", () -> targets.length);
+    }
+
+    public StreamMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Append every encoded frame to this session recording (null = not recording).
+     */
+    public void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Spread each frame's fragments over the frame interval instead of one burst.
+     */
+    public void setPacing(boolean pacing) {
+        sender.setPacing(pacing);
+    }
+
+    /**
+     * Bake the cursor marker into frames (default on).
+     */
+    public void setCursorOverlay(boolean cursorOverlay) {
+        this.cursorOverlay = cursorOverlay;
+    }
+
+    /**
+     * Capture only part of the desktop (a monitor, a rectangle or a window following
+     * the cursor). Takes effect on the next frame; null means the full virtual screen.
+     */
+    public void setViewport(Viewport viewport) {
+        this.viewport = viewport != null ? viewport : Viewport.full();
+    }
+
+    public Viewport getViewport() {
+        return viewport;
+    }
+
+    /**
+     * Send the cursor side channel at rateHz while streaming (0 = off). Takes effect
+     * immediately if a stream is running.
+     */
+    public synchronized void setCursorRate(int rateHz) {
+        this.cursorRateHz = Math.max(0, rateHz);
+        // under the lock that ends the stream, so a stopping stream cannot be given a new channel
+        synchronized (targetsLock) {
+            if (!running) return;
+            if (cursorRateHz > 0) cursorStreamer.start(cursorRateHz);
+            else cursorStreamer.stop();
+        }
+    }
+
+    /**
+     * Source of the button bitmask reported on the cursor side channel.
+     */
+    public void setCursorButtonSource(IntSupplier buttons) {
+        cursorStreamer.setButtonSource(buttons);
+    }
+
+    /**
+     * Start streaming with frame rate, width and quality driven by the given controller.
+     * If a stream is already running the target is added as another subscriber and
+     * shares the running stream's settings.
+     */
+    public synchronized void startStreaming(InetAddress addr, int port, AdaptiveStreamController ctl) throws Exception {
+        startStreaming(addr, port, ctl, addr, DEFAULT_SUBSCRIBER_TIMEOUT_MS, 1, null);
+    }
+
+    /**
+     * Subscribe addr:port (unicast or multicast group) and start the stream if needed.
+     * Returns true if this call started it; otherwise the subscriber joined the running
+     * stream, whose controller and settings stay as they are.
+     *
+     * @param owner control client that keeps this subscriber alive and may stop it
+     * @param timeoutMs liveness timeout for this subscriber
+     * @param multicastTtl TTL used when addr is a multicast group
+     * @param settings applied to this streamer (codec, FEC, pacing, layout, cursor, viewport)
+     *                 only when this call starts the stream; may be null
+     */
+    public synchronized boolean startStreaming(InetAddress addr, int port, AdaptiveStreamController ctl,
+                                               InetAddress owner, long timeoutMs, int multicastTtl,
+                                               Consumer<UDPStreamer> settings) throws Exception {
+        // frames on a fixed-rate grid; an overrun frame drops the ticks it covered
+        FrameScheduler clock = new FrameScheduler("udp-stream", ctl.getFps(), FrameScheduler.SkipPolicy.SKIP);
+        Thread w = new Thread(() -> {
+            ScreenCapturer capturer = null;
+            FrameEncoder encoder = null;
+            RegionEncoder regionEncoder = null;
             try {
-                Robot robot = new Robot();
-                long frameIntervalMs = Math.max(1, 1000 / Math.max(1, fps));
+                capturer = new ScreenCapturer();
+                FrameCodec encoderCodec = codec;
+                encoder = encoderCodec.newEncoder(ctl.getQuality());
+                FecEncoder fecEncoder = fec;
 
-                while (running) {
-                    long start = System.currentTimeMillis();
+                // a stop followed by a quick restart hands the stream to a new worker
+                while (running && worker == Thread.currentThread()) {
+                    clock.setRate(ctl.getFps());
+                    clock.awaitNext();
+                    if (!running || worker != Thread.currentThread()) break;
+                    if (!expireSubscribers()) {
+                        System.out.println("UDPStreamer: no live subscribers, stopping stream");
+                        break;
+                    }
 
                     try {
-                        // capture full virtual screen (handles multi-monitor setups)
-                        GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
-                        GraphicsDevice[] devices = ge.getScreenDevices();
-
-                        int minX = Integer.MAX_VALUE;
-                        int minY = Integer.MAX_VALUE;
-                        int maxX = Integer.MIN_VALUE;
-                        int maxY = Integer.MIN_VALUE;
-
-                        for (GraphicsDevice device : devices) {
-                            Rectangle b = device.getDefaultConfiguration().getBounds();
-                            minX = Math.min(minX, b.x);
-                            minY = Math.min(minY, b.y);
-                            maxX = Math.max(maxX, b.x + b.width);
-                            maxY = Math.max(maxY, b.y + b.height);
-                        }
-
-                        Rectangle screenRect = new Rectangle(minX, minY, maxX - minX, maxY - minY);
-                        BufferedImage capture = robot.createScreenCapture(screenRect);
-
-                        // overlay visible cursor marker onto the captured image
-                        try {
-                            PointerInfo pinfo = MouseInfo.getPointerInfo();
-                            if (pinfo != null) {
-                                Point p = pinfo.getLocation();
-                                int rx = p.x - screenRect.x;
-                                int ry = p.y - screenRect.y;
-                                Graphics2D g = capture.createGraphics();
-                                g.setColor(Color.RED);
-                                int size = Math.max(8, Math.min(24, capture.getWidth() / 80));
-                                g.fillOval(rx - size/2, ry - size/2, size, size);
-                                g.setColor(Color.WHITE);
-                                g.drawOval(rx - size/2, ry - size/2, size, size);
-                                g.dispose();
-                            }
-                        } catch (Exception e) {
-                            // ignore cursor overlay errors
-                        }
+                        // capture the viewport (full virtual screen by default), cursor overlay + scaling
+                        capturer.setViewport(viewport);
+                        capturer.setDrawCursor(cursorOverlay);
+                        BufferedImage frame = capturer.capture(ctl.getMaxWidth());
+                        captureArea = capturer.getCaptureArea();
+                        metrics.framesCaptured.inc();
 
-                        // scale if needed
-                        if (maxWidth > 0 && capture.getWidth() > maxWidth) {
-                            int newW = maxWidth;
-                            int newH = (int) (((double) capture.getHeight() / capture.getWidth()) * newW);
-                            Image tmp = capture.getScaledInstance(newW, newH, Image.SCALE_SMOOTH);
-                            BufferedImage scaled = new BufferedImage(newW, newH, BufferedImage.TYPE_INT_RGB);
-                            scaled.getGraphics().drawImage(tmp, 0, 0, null);
-                            capture = scaled;
+                        if (codec != encoderCodec) {
+                            encoder.close();
+                            encoder = null;
+                            encoderCodec = codec;
+                            encoder = encoderCodec.newEncoder(ctl.getQuality());
                         }
 
-                        // encode JPEG
-                        byte[] jpeg = encodeJpeg(capture, quality);
+                        RegionLayout layout = regionLayout;
+                        if (layout != null) {
+                            // regions are encoded in parallel, then each goes out as its own unit
+                            if (regionEncoder == null) regionEncoder = new RegionEncoder(EncoderPool.shared());
+                            FrameRegion[] regions = layout.layout(frame.getWidth(), frame.getHeight(),
+                                    ctl.getQuality(), capturer.getCursorX(), capturer.getCursorY());
+                            FrameEncodeEvent encodeEvent = new FrameEncodeEvent();
+                            encodeEvent.begin();
+                            long encodeStart = metrics.encodeTime.start();
+                            int n = regionEncoder.encode(frame, regions, encoderCodec, ctl.getQuality());
+                            metrics.encodeTime.stop(encodeStart);
+                            metrics.framesEncoded.inc();
+                            encodeEvent.end();
+                            int group = fecEncoder.groupSize(ctl.getFeedbackReports() > 0 ? ctl.getLastFragmentLoss() : -1);
+                            long pacingWindow = Math.max(0, clock.remainingNanos()) * 4 / 5 / n;
+                            int seq = frameSeq.getAndIncrement();
+                            SessionRecorder rec = recorder;
+                            int bytes = 0, fragments = 0, dataFragments = 0;
+                            FrameSendEvent sendEvent = new FrameSendEvent();
+                            sendEvent.begin();
+                            for (int i = 0; i < n; i++) {
+                                int len = regionEncoder.length(i);
+                                if (rec != null) rec.recordFrame(SessionRecorder.SOURCE_UDP, seq, i, n, regionEncoder.buffer(i), len);
+                                fragments += sender.send(targets, regionEncoder.buffer(i), len, seq,
+                                        fecEncoder, group, pacingWindow, regionEncoder.region(i));
+                                dataFragments += sender.dataFragments(len);
+                                bytes += len;
+                            }
+                            sendEvent.end();
+                            commitEncode(encodeEvent, encoderCodec, frame, n, bytes);
+                            commitSend(sendEvent, bytes, targets.length, fragments);
+                            // loss is reported on data fragments only
+                            ctl.onFrameSent(bytes, dataFragments);
+                            int destinations = targets.length;
+                            metrics.framesSent.add(destinations);
+                            metrics.bytesSent.add((long) bytes * destinations);
+                        } else {
+                            // encode into the encoder's reusable buffer
+                            encoder.setQuality(ctl.getQuality());
+                            FrameEncodeEvent encodeEvent = new FrameEncodeEvent();
+                            encodeEvent.begin();
+                            long encodeStart = metrics.encodeTime.start();
+                            int len = encoder.encode(frame);
+                            metrics.encodeTime.stop(encodeStart);
+                            metrics.framesEncoded.inc();
+                            encodeEvent.end();
+                            commitEncode(encodeEvent, encoderCodec, frame, 1, len);
 
-                        if (jpeg != null && jpeg.length > 0) {
-                            sendFragments(jpeg, frameSeq.getAndIncrement());
+                            if (len > 0) {
+                                int seq = frameSeq.getAndIncrement();
+                                SessionRecorder rec = recorder;
+                                if (rec != null) rec.recordFrame(SessionRecorder.SOURCE_UDP, seq, 0, 1, encoder.buffer(), len);
+                                int group = fecEncoder.groupSize(ctl.getFeedbackReports() > 0 ? ctl.getLastFragmentLoss() : -1);
+                                // pace over most of what is left of this frame's interval
+                                long pacingWindow = Math.max(0, clock.remainingNanos()) * 4 / 5;
+                                FrameSendEvent sendEvent = new FrameSendEvent();
+                                sendEvent.begin();
+                                int fragments = sender.send(targets, encoder.buffer(), len, seq,
+                                        fecEncoder, group, pacingWindow);
+                                sendEvent.end();
+                                commitSend(sendEvent, len, targets.length, fragments);
+                                ctl.onFrameSent(len, sender.dataFragments(len));
+                                int destinations = targets.length;
+                                metrics.framesSent.add(destinations);
+                                metrics.bytesSent.add((long) len * destinations);
+                            }
                         }
 
                     } catch (Exception e) {
                         System.err.println("UDPStreamer capture/send error: " + e.getMessage());
                     }
-
-                    long elapsed = System.currentTimeMillis() - start;
-                    long toSleep = frameIntervalMs - elapsed;
-                    if (toSleep > 0) {
-                        try { Thread.sleep(toSleep); } catch (InterruptedException ignored) {}
-                    }
                 }
 
             } catch (Exception e) {
                 System.err.println("UDPStreamer worker error: " + e.getMessage());
             } finally {
-                try { if (socket != null && !socket.isClosed()) socket.close(); } catch (Exception ignored) {}
-                running = false;
+                if (encoder != null) encoder.close();
+                if (regionEncoder != null) regionEncoder.close();
+                if (capturer != null) capturer.close();
+                System.out.println("UDPStreamer: " + clock);
+                // a stop cleans up after itself; only an ending stream (no subscribers, fatal error) does it here
+                synchronized (targetsLock) {
+                    if (worker == Thread.currentThread()) endStream();
+                }
             }
         }, "udp-streamer-thread");
+        w.setDaemon(true);
 
-        worker.setDaemon(true);
-        worker.start();
+        synchronized (targetsLock) {
+            addSubscriber(addr, port, owner, timeoutMs, multicastTtl);
+            if (running) return false; // already streaming: new subscriber shares the stream
+            if (settings != null) settings.accept(this);
+            // the worker is handed over under the lock, so an old worker that is still ending sees it is not current
+            this.controller = ctl;
+            this.scheduler = clock;
+            this.running = true;
+            worker = w;
+            w.start();
+            if (cursorRateHz > 0) cursorStreamer.start(cursorRateHz);
+        }
+        return true;
     }
 
     public synchronized void stopStreaming() {
-        running = false;
-        if (worker != null) {
-            worker.interrupt();
-            try { worker.join(500); } catch (InterruptedException ignored) {}
-            worker = null;
-        }
-        if (socket != null && !socket.isClosed()) {
-            socket.close();
-            socket = null;
+        Thread w;
+        StreamTarget[] subscribers;
+        synchronized (targetsLock) {
+            w = endStream();
+            subscribers = targets;
+            targets = new StreamTarget[0];
         }
+        join(w);
+        for (StreamTarget t : subscribers) t.close();
+    }
+
+    /**
+     * Mark the stream stopped and stop its cursor channel. Called with targetsLock held, so
+     * the decision and the cleanup cannot interleave with a start that begins a new stream.
+     * Returns the worker to wait for (outside the lock), or null.
+     */
+    private Thread endStream() {
+        Thread w = worker;
+        running = false;
+        worker = null;
+        cursorStreamer.stop();
+        captureArea = null;
+        return w == Thread.currentThread() ? null : w;
+    }
+
+    private static void join(Thread w) {
+        if (w == null) return;
+        w.interrupt();
+        try { w.join(500); } catch (InterruptedException ignored) {}
     }
 
     public boolean isStreaming() {
         return running;
     }
 
-    public InetAddress getClientAddr() {
-        return clientAddr;
+    /**
+     * Add (or refresh) a subscriber. Returns the subscriber's target.
+     */
+    public StreamTarget addSubscriber(InetAddress addr, int port, InetAddress owner, long timeoutMs, int multicastTtl) throws Exception {
+        synchronized (targetsLock) {
+            for (StreamTarget t : targets) {
+                if (t.matches(addr, port)) {
+                    t.touch();
+                    return t;
+                }
+            }
+            StreamTarget target = new StreamTarget(addr, port, owner, timeoutMs, multicastTtl);
+            StreamTarget[] next = Arrays.copyOf(targets, targets.length + 1);
+            next[next.length - 1] = target;
+            targets = next;
+            System.out.println("UDPStreamer: subscriber added " + target + " (" + next.length + " total)");
+            return target;
+        }
     }
 
-    public int getClientPort() {
-        return clientPort;
+    /**
+     * Refresh the liveness of every subscriber owned by the client (keepalive / feedback).
+     */
+    public void touchSubscribers(InetAddress owner) {
+        for (StreamTarget t : targets) {
+            if (t.isOwnedBy(owner, 0)) t.touch();
+        }
     }
 
-    private byte[] encodeJpeg(BufferedImage img, float quality) throws Exception {
-        try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
-            if (!writers.hasNext()) {
-                ImageIO.write(img, "jpg", baos);
-                return baos.toByteArray();
+    /**
+     * Keep every subscriber owned by the client alive for at least ms, whatever its own
+     * liveness timeout (a disconnected client's session grace period).
+     */
+    public void holdSubscribers(InetAddress owner, long ms) {
+        for (StreamTarget t : targets) {
+            if (t.isOwnedBy(owner, 0)) t.holdFor(ms);
+        }
+    }
+
+    /**
+     * Remove subscribers owned by the client (all ports if port <= 0). Stops the stream when none remain.
+     */
+    public void removeSubscribers(InetAddress owner, int port) {
+        int n = 0;
+        Thread ended = null;
+        synchronized (targetsLock) {
+            StreamTarget[] current = targets;
+            StreamTarget[] kept = new StreamTarget[current.length];
+            for (StreamTarget t : current) {
+                if (t.isOwnedBy(owner, port)) {
+                    t.close();
+                    System.out.println("UDPStreamer: subscriber removed " + t);
+                } else {
+                    kept[n++] = t;
+                }
+            }
+            targets = Arrays.copyOf(kept, n);
+            // decided under the lock: a start after this sees the stream stopped and begins a new one
+            if (n == 0 && running) ended = endStream();
+        }
+        join(ended);
+    }
+
+    /**
+     * Hand the subscribers of a client that reconnected from another address over to the
+     * new address: unicast targets that sent to the old address now send to the new one,
+     * other targets (multicast groups, other hosts) just change owner. The stream keeps
+     * running throughout.
+     */
+    public void transferSubscribers(InetAddress from, InetAddress to) {
+        synchronized (targetsLock) {
+            StreamTarget[] current = targets;
+            StreamTarget[] next = current.clone();
+            for (int i = 0; i < next.length; i++) {
+                StreamTarget t = next[i];
+                if (!t.isOwnedBy(from, 0)) continue;
+                InetAddress dest = t.getAddress().getAddress().equals(from) ? to : t.getAddress().getAddress();
+                try {
+                    next[i] = t.moveTo(dest, to);
+                    System.out.println("UDPStreamer: subscriber moved " + t + " -> " + next[i]);
+                } catch (Exception e) {
+                    // keep the old target; it times out unless the client re-subscribes
+                    System.err.println("UDPStreamer: could not move subscriber " + t + ": " + e.getMessage());
+                }
             }
-            ImageWriter writer = writers.next();
-            ImageWriteParam param = writer.getDefaultWriteParam();
-            if (param.canWriteCompressed()) {
-                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-                param.setCompressionQuality(Math.max(0f, Math.min(1f, quality)));
+            targets = next;
+            for (int i = 0; i < next.length; i++) {
+                if (next[i] != current[i]) current[i].close();
             }
-            MemoryCacheImageOutputStream mcios = new MemoryCacheImageOutputStream(baos);
-            writer.setOutput(mcios);
-            writer.write(null, new IIOImage(img, null, null), param);
-            mcios.close();
-            writer.dispose();
-            return baos.toByteArray();
-        } catch (Exception e) {
-            throw new Exception("JPEG encode failed: " + e.getMessage(), e);
         }
     }
 
-    private void sendFragments(byte[] jpeg, int seq) {
-        try {
-            int total = (jpeg.length + fragmentSize - 1) / fragmentSize;
-            for (int i = 0; i < total; i++) {
-                int offset = i * fragmentSize;
-                int len = Math.min(fragmentSize, jpeg.length - offset);
+    /**
+     * Current subscribers (snapshot).
+     */
+    public List<StreamTarget> getSubscribers() {
+        return List.of(targets);
+    }
+
+    private static void commitEncode(FrameEncodeEvent event, FrameCodec codec, BufferedImage frame,
+                                     int regions, int bytes) {
+        if (!event.shouldCommit()) return;
+        event.stream = "udp";
+        event.codec = codec.name();
+        event.width = frame.getWidth();
+        event.height = frame.getHeight();
+        event.regions = regions;
+        event.bytes = bytes;
+        event.commit();
+    }
 
-                // header: 4 bytes magic, 1 byte version, 4 bytes seq, 2 bytes total, 2 bytes index
-                ByteBuffer header = ByteBuffer.allocate(13);
-                header.putInt(0x4D535452); // 'MSTR'
-                header.put((byte)1); // version
-                header.putInt(seq);
-                header.putShort((short) total);
-                header.putShort((short) i);
+    private static void commitSend(FrameSendEvent event, int bytes, int destinations, int packets) {
+        if (!event.shouldCommit()) return;
+        event.stream = "udp";
+        event.bytes = bytes;
+        event.destinations = destinations;
+        event.packets = packets;
+        event.commit();
+    }
 
-                byte[] packet = new byte[header.position() + len];
-                System.arraycopy(header.array(), 0, packet, 0, header.position());
-                System.arraycopy(jpeg, offset, packet, header.position(), len);
+    /**
+     * Drop subscribers whose liveness timeout elapsed. Returns false when none remain.
+     */
+    private boolean expireSubscribers() {
+        long now = System.nanoTime();
+        synchronized (targetsLock) {
+            StreamTarget[] current = targets;
+            int n = 0;
+            for (StreamTarget t : current) {
+                if (!t.isExpired(now)) n++;
+            }
+            if (n != current.length) {
+                StreamTarget[] kept = new StreamTarget[n];
+                int i = 0;
+                for (StreamTarget t : current) {
+                    if (t.isExpired(now)) {
+                        t.close();
+                        System.out.println("UDPStreamer: subscriber timed out " + t);
+                    } else {
+                        kept[i++] = t;
+                    }
+                }
+                targets = kept;
+            }
+            // decide under the lock so a concurrent addSubscriber either sees the stream
+            // still running (and is served) or stopped (and starts a new one)
+            if (n == 0 && worker == Thread.currentThread()) endStream();
+            return n > 0;
+        }
+    }
 
-                DatagramPacket dp = new DatagramPacket(packet, packet.length, clientAddr, clientPort);
-                socket.send(dp);
+    /**
+     * Cursor side channel packet (called on the cursor thread): magic "MCUR" (4),
+     * version (1), seq (4), x (4), y (4), buttons (1), area x/y/w/h (4 each).
+     */
+    @Override
+    public void sendCursor(int seq, int x, int y, int buttons, Rectangle area) {
+        ByteBuffer p = cursorPacket;
+        p.clear();
+        p.putInt(CURSOR_MAGIC);
+        p.put((byte) 1);
+        p.putInt(seq);
+        p.putInt(x);
+        p.putInt(y);
+        p.put((byte) buttons);
+        p.putInt(area.x);
+        p.putInt(area.y);
+        p.putInt(area.width);
+        p.putInt(area.height);
+        p.flip();
+        for (StreamTarget target : targets) {
+            p.position(0);
+            try {
+                target.channel().write(p);
+            } catch (Exception e) {
+                target.recordDropped();
             }
-        } catch (Exception e) {
-            System.err.println("UDPStreamer sendFragments error: " + e.getMessage());
         }
     }
-}
 
+    public InetAddress getClientAddr() {
+        StreamTarget[] current = targets;
+        return current.length > 0 ? current[0].getAddress().getAddress() : null;
+    }
+
+    public int getClientPort() {
+        StreamTarget[] current = targets;
+        return current.length > 0 ? current[0].getAddress().getPort() : 0;
+    }
+
+    /**
+     * Controller of the current (or last) stream, or null if never started.
+     */
+    public AdaptiveStreamController getStreamController() {
+        return controller;
+    }
+
+    /**
+     * Frame clock of the current (or last) stream: achieved rate and jitter, or null if never started.
+     */
+    public FrameScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Clock of the cursor side channel (current or last run), or null if never started.
+     */
+    public FrameScheduler getCursorScheduler() {
+        return cursorStreamer.getScheduler();
+    }
+
+    /**
+     * Send-side counters (packets, bytes, dropped sends, throughput).
+     */
+    public FragmentSender getSender() {
+        return sender;
+    }
+}
@@ -0,0 +1,71 @@
+package com.mousecontrol.communication;
+
+import java.awt.Rectangle;
+
+/**
+ * Viewport
+ *
+ * Which part of the desktop a stream captures: everything (default), a single
+ * monitor, a fixed rectangle, or a window that follows the cursor with a zoom
+ * factor. Capture and encode cost scale with the viewport size.
+ *
+ * Immutable; resolved to a capture rectangle each frame by ScreenCapturer.
+ */
+public final class Viewport {
+
+    public enum Mode { FULL, MONITOR, RECT, FOLLOW }
+
+    public static final double MIN_ZOOM = 1.0;
+    public static final double MAX_ZOOM = 16.0;
+
+    private static final Viewport FULL = new Viewport(Mode.FULL, 0, null, 1.0);
+
+    private final Mode mode;
+    private final int monitor;
+    private final Rectangle rect;
+    private final double zoom;
+
+    private Viewport(Mode mode, int monitor, Rectangle rect, double zoom) {
+        this.mode = mode;
+        this.monitor = monitor;
+        this.rect = rect;
+        this.zoom = zoom;
+    }
+
+    /** The full virtual screen (all monitors). */
+    public static Viewport full() {
+        return FULL;
+    }
+
+    /** A single monitor by index in GraphicsEnvironment.getScreenDevices() order. */
+    public static Viewport monitor(int index) {
+        if (index < 0) throw new IllegalArgumentException("monitor index must be >= 0");
+        return new Viewport(Mode.MONITOR, index, null, 1.0);
+    }
+
+    /** A fixed rectangle in desktop coordinates. */
+    public static Viewport rect(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("viewport rect must have a positive size");
+        return new Viewport(Mode.RECT, 0, new Rectangle(x, y, width, height), 1.0);
+    }
+
+    /** A window of (monitor size / zoom) that follows the cursor within its monitor. */
+    public static Viewport follow(double zoom) {
+        return new Viewport(Mode.FOLLOW, 0, null, Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom)));
+    }
+
+    public Mode getMode() { return mode; }
+    public int getMonitor() { return monitor; }
+    public Rectangle getRect() { return rect != null ? new Rectangle(rect) : null; }
+    public double getZoom() { return zoom; }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+            case MONITOR: return "monitor " + monitor;
+            case RECT: return "rect " + rect.x + "," + rect.y + " " + rect.width + "x" + rect.height;
+            case FOLLOW: return "follow x" + zoom;
+            default: return "full";
+        }
+    }
+}
@@ -1,60 +1,101 @@
 package com.mousecontrol.communication;
 
-import java.awt.Dimension;
-import java.awt.Image;
+import com.mousecontrol.jfr.FrameEncodeEvent;
+import com.mousecontrol.jfr.FrameSendEvent;
+import com.mousecontrol.metrics.MetricsRegistry;
+import com.mousecontrol.metrics.StreamMetrics;
+import com.mousecontrol.recording.SessionRecorder;
+
 import java.awt.Rectangle;
-import java.awt.Robot;
-import java.awt.Toolkit;
 import java.awt.image.BufferedImage;
-import java.awt.MouseInfo;
-import java.awt.PointerInfo;
-import java.awt.Point;
-import java.awt.Graphics2D;
-import java.awt.Color;
-import java.awt.GraphicsEnvironment;
-import java.awt.GraphicsDevice;
-import java.io.ByteArrayOutputStream;
 import java.net.InetSocketAddress;
-import java.util.Iterator;
-import java.util.concurrent.Executors;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.MemoryCacheImageOutputStream;
-
-import com.sun.net.httpserver.HttpServer;
-import com.sun.net.httpserver.HttpHandler;
-import com.sun.net.httpserver.HttpExchange;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 
 import org.java_websocket.server.WebSocketServer;
 import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
 import org.java_websocket.handshake.ClientHandshake;
+import org.json.JSONObject;
 
 /**
  * WebSocketStreamer
  *
- * Simple WebSocket server that accepts one client and streams JPEG frames as binary WebSocket messages.
+ * WebSocket server that streams JPEG frames as binary WebSocket messages to any number of viewers.
  * Uses Java-WebSocket (org.java-websocket) library. If the dependency isn't present, user will need to add it.
+ *
+ * Each viewer picks a quality tier (resolution + quality) in its handshake query or with a
+ * {"tier":...} message. One worker captures each frame once, encodes it once per tier that
+ * has a viewer ready for it and sends the bytes to every viewer in that tier, so encode cost
+ * grows with the number of tiers, not viewers.
+ *
+ * Sending is backpressure-aware per viewer: a viewer only gets a new frame once its previous
+ * one has been written to the socket, so at most one frame is in flight and a slow link costs
+ * that viewer frame rate (and, in adaptive mode, quality) instead of growing the library's
+ * outgoing queue and the latency with it.
+ *
+ * A viewer can also send input on the same connection: motion samples and keyboard commands,
+ * in the same JSON as on the TCP control connection, as text or binary (UTF-8) messages with
+ * one or more newline-separated lines. They go to the InputDispatcher set with
+ * setInputDispatcher(), so one connection carries both the stream and the input.
  */
 public class WebSocketStreamer {
 
     private volatile boolean running = false;
     private SimpleWsServer server;
+    private volatile AdaptiveStreamController controller;
     private final AtomicInteger frameSeq = new AtomicInteger(0);
+    private volatile int cursorRateHz = 0;
+    private volatile boolean cursorOverlay = true;
+    private volatile IntSupplier cursorButtons = () -> 0;
+    private volatile Viewport viewport = Viewport.full();
+    private volatile FrameCodec codec = FrameCodec.JPEG;
+    private volatile RegionLayout regionLayout;
+    private volatile SessionRecorder recorder;
+    private volatile InputDispatcher input;
+    private final StreamMetrics metrics = new StreamMetrics();
 
     public void start(int port, int fps, int maxWidth, float quality) throws Exception {
-        if (running) return;
-        server = new SimpleWsServer(new InetSocketAddress(port), fps, maxWidth, quality);
+        start(port, AdaptiveStreamController.fixed(fps, maxWidth, quality), null);
+    }
+
+    /**
+     * Start the WebSocket server with frame rate, width and quality driven by the given
+     * controller. Returns false, changing nothing, if it is already running.
+     *
+     * @param settings applied to this streamer (codec, layout, cursor, viewport) before the
+     *                 server starts, only if this call starts it; may be null
+     */
+    public synchronized boolean start(int port, AdaptiveStreamController controller,
+                                      Consumer<WebSocketStreamer> settings) throws Exception {
+        if (running) return false;
+        if (settings != null) settings.accept(this);
+        this.controller = controller;
+        server = new SimpleWsServer(new InetSocketAddress(port), controller, metrics);
+        server.cursorRateHz = cursorRateHz;
+        server.cursorOverlay = cursorOverlay;
+        server.viewport = viewport;
+        server.codec = codec;
+        server.regionLayout = regionLayout;
+        server.recorder = recorder;
+        server.input = input;
+        server.cursorStreamer.setButtonSource(cursorButtons);
         server.start();
         running = true;
         System.out.println("WebSocketStreamer started on port " + port);
+        return true;
     }
 
-    public void stop() {
+    public synchronized void stop() {
         running = false;
         if (server != null) {
+            server.shutdown();
             try { server.stop(1000); } catch (Exception ignored) {}
             server = null;
         }
@@ -62,37 +103,341 @@ public class WebSocketStreamer {
 
     public boolean isRunning() { return running; }
 
-    private static class SimpleWsServer extends WebSocketServer {
-        private final int fps;
-        private final int maxWidth;
-        private final float quality;
-        private volatile WebSocket clientSocket;
+    /**
+     * Bake the cursor marker into frames (default on). Applies to the running server too.
+     */
+    public void setCursorOverlay(boolean cursorOverlay) {
+        this.cursorOverlay = cursorOverlay;
+        SimpleWsServer s = server;
+        if (s != null) s.cursorOverlay = cursorOverlay;
+    }
+
+    /**
+     * Capture only part of the desktop (a monitor, a rectangle or a window following
+     * the cursor); null means the full virtual screen. Applies to the running server too.
+     */
+    public void setViewport(Viewport viewport) {
+        this.viewport = viewport != null ? viewport : Viewport.full();
+        SimpleWsServer s = server;
+        if (s != null) s.viewport = this.viewport;
+    }
+
+    public Viewport getViewport() { return viewport; }
+
+    /**
+     * Frame codec for all tiers (default JPEG). Applies to the running server too.
+     */
+    public void setCodec(FrameCodec codec) {
+        this.codec = codec != null ? codec : FrameCodec.JPEG;
+        SimpleWsServer s = server;
+        if (s != null) s.codec = this.codec;
+    }
+
+    public FrameCodec getCodec() { return codec; }
+
+    /**
+     * Split frames into independently encoded regions (e.g. RegionLayout.strips(n)), encoded in
+     * parallel and sent as one MREG-prefixed message each; null sends whole frames.
+     * Applies to the running server too.
+     */
+    public void setRegionLayout(RegionLayout layout) {
+        this.regionLayout = layout;
+        SimpleWsServer s = server;
+        if (s != null) s.regionLayout = layout;
+    }
+
+    public RegionLayout getRegionLayout() { return regionLayout; }
+
+    /**
+     * Expose frame, byte, encode-time, backpressure and queue metrics with the label stream="websocket".
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        metrics.register(registry, "websocket");
+        AdaptiveStreamController.registerMetrics(registry, "websocket", () -> controller);
+        FrameScheduler.registerMetrics(registry, "websocket", this::getScheduler);
+        FrameScheduler.registerMetrics(registry, "websocket_cursor", this::getCursorScheduler);
+        registry.counter("mousecontrol_ws_frames_dropped_total",
+                "Frames skipped for a viewer whose previous frame was still queued (since the server started).", this::getDroppedFrames);
+        registry.gauge("mousecontrol_ws_send_queue_depth", "Messages waiting in all viewers' outgoing queues.", this::getQueueDepth);
+        registry.gauge("mousecontrol_ws_viewers", "Connected WebSocket viewers.", this::getViewerCount);
+    }
+
+    public StreamMetrics getMetrics() { return metrics; }
+
+    /**
+     * Append each sent frame to this session recording (null = not recording). With several
+     * tiers only the first encoded one is recorded. Applies to the running server too.
+     */
+    public void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+        SimpleWsServer s = server;
+        if (s != null) s.recorder = recorder;
+    }
+
+    /**
+     * Where viewers' motion and keyboard messages go (null = ignored). Applies to the running
+     * server too.
+     */
+    public void setInputDispatcher(InputDispatcher input) {
+        this.input = input;
+        SimpleWsServer s = server;
+        if (s != null) s.input = input;
+    }
+
+    /**
+     * Send cursor side-channel text messages at rateHz while viewers are connected (0 = off).
+     */
+    public void setCursorRate(int rateHz) {
+        this.cursorRateHz = Math.max(0, rateHz);
+    }
+
+    /**
+     * Source of the button bitmask reported on the cursor side channel.
+     */
+    public void setCursorButtonSource(IntSupplier buttons) {
+        this.cursorButtons = buttons != null ? buttons : () -> 0;
+    }
+
+    /**
+     * Controller of the current (or last) stream, or null if never started.
+     */
+    public AdaptiveStreamController getStreamController() { return controller; }
+
+    /**
+     * Frames skipped because the previous frame was still queued for sending.
+     */
+    public long getDroppedFrames() {
+        SimpleWsServer s = server;
+        return s != null ? s.droppedFrames.get() : 0;
+    }
+
+    /**
+     * Messages (frames and cursor updates) waiting in all viewers' outgoing queues.
+     */
+    public int getQueueDepth() {
+        SimpleWsServer s = server;
+        if (s == null) return 0;
+        int depth = 0;
+        for (Viewer v : s.viewers) {
+            if (v.conn instanceof WebSocketImpl) depth += ((WebSocketImpl) v.conn).outQueue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Frame clock of the current (or last) worker: achieved rate and jitter, or null.
+     */
+    public FrameScheduler getScheduler() {
+        SimpleWsServer s = server;
+        return s != null ? s.scheduler : null;
+    }
+
+    /**
+     * Clock of the cursor side channel (current or last run), or null.
+     */
+    public FrameScheduler getCursorScheduler() {
+        SimpleWsServer s = server;
+        return s != null ? s.cursorStreamer.getScheduler() : null;
+    }
+
+    public int getViewerCount() {
+        SimpleWsServer s = server;
+        return s != null ? s.viewers.length : 0;
+    }
+
+    /**
+     * Tiers that currently have viewers (snapshot).
+     */
+    public List<StreamTier> getTiers() {
+        SimpleWsServer s = server;
+        return s != null ? List.of(s.tiers) : List.of();
+    }
+
+    /**
+     * A connected viewer and the tier it receives (also stored as the connection's attachment).
+     */
+    private static final class Viewer {
+        private static final int OPCODE_BINARY = 0x2;
+
+        final WebSocket conn;
+        volatile StreamTier tier;
+        boolean ready; // worker thread only
+
+        Viewer(WebSocket conn) {
+            this.conn = conn;
+        }
+
+        /**
+         * Binary messages (frames or regions) still waiting in this viewer's outgoing queue.
+         * Cursor updates are text messages on the same connection and are not counted, so a
+         * cursor stream at 120 Hz does not make the viewer look behind on frames. The library
+         * queues each message as its own wire frame starting at index 0, so the opcode in the
+         * first byte tells them apart even while the selector thread is writing the head.
+         */
+        int pendingFrames() {
+            if (!(conn instanceof WebSocketImpl)) return conn.hasBufferedData() ? 1 : 0;
+            int pending = 0;
+            for (ByteBuffer wire : ((WebSocketImpl) conn).outQueue) {
+                if (wire.limit() > 0 && (wire.get(0) & 0x0F) == OPCODE_BINARY) pending++;
+            }
+            return pending;
+        }
+    }
+
+    private static class SimpleWsServer extends WebSocketServer implements CursorStreamer.CursorSink {
+        private static final int REGION_MAGIC = 0x4D524547; // 'MREG'
+        private static final int REGION_HEADER = 23;
+        // distinct fixed tiers allowed at once; further custom requests share the default tier
+        private static final int MAX_TIERS = 8;
+
+        private final AdaptiveStreamController controller;
+        private final StreamMetrics metrics;
+        // guards viewer/tier membership and the worker handoff
+        private final Object lock = new Object();
+        // copy-on-write so the worker and cursor threads can iterate without locking
+        private volatile Viewer[] viewers = new Viewer[0];
+        private volatile StreamTier[] tiers = new StreamTier[0];
         private Thread worker;
+        private volatile boolean closed = false;
+        private final CursorStreamer cursorStreamer = new CursorStreamer(this);
+        private final StringBuilder cursorJson = new StringBuilder(128);
+        private volatile int cursorRateHz = 0;
+        private volatile boolean cursorOverlay = true;
+        private volatile Viewport viewport = Viewport.full();
+        private volatile FrameCodec codec = FrameCodec.JPEG;
+        private volatile RegionLayout regionLayout;
+        private volatile SessionRecorder recorder;
+        private volatile InputDispatcher input;
+        private volatile Rectangle captureArea;
+        private final AtomicInteger frameSeq = new AtomicInteger(0);
+        private volatile FrameScheduler scheduler;
+        private ByteBuffer regionMessage = ByteBuffer.allocate(64 * 1024);
+        private final AtomicLong droppedFrames = new AtomicLong();
 
-        public SimpleWsServer(InetSocketAddress addr, int fps, int maxWidth, float quality) {
+        public SimpleWsServer(InetSocketAddress addr, AdaptiveStreamController controller, StreamMetrics metrics) {
             super(addr);
-            this.fps = fps;
-            this.maxWidth = maxWidth;
-            this.quality = quality;
+            this.controller = controller;
+            this.metrics = metrics;
+            cursorStreamer.setAreaSource(() -> captureArea);
         }
 
         @Override
         public void onOpen(WebSocket conn, ClientHandshake handshake) {
-            System.out.println("WS client connected: " + conn.getRemoteSocketAddress());
-            this.clientSocket = conn;
-            startWorker();
+            Viewer viewer = new Viewer(conn);
+            conn.setAttachment(viewer);
+            assignTier(viewer, tierFromQuery(handshake.getResourceDescriptor()));
+            int count;
+            synchronized (lock) {
+                Viewer[] next = Arrays.copyOf(viewers, viewers.length + 1);
+                next[next.length - 1] = viewer;
+                viewers = next;
+                count = next.length;
+                startWorker();
+            }
+            System.out.println("WS client connected: " + conn.getRemoteSocketAddress()
+                    + " tier " + viewer.tier + " (" + count + " viewers)");
+            if (cursorRateHz > 0 && !cursorStreamer.isRunning()) cursorStreamer.start(cursorRateHz);
         }
 
         @Override
         public void onClose(WebSocket conn, int code, String reason, boolean remote) {
             System.out.println("WS client disconnected: " + conn.getRemoteSocketAddress());
-            this.clientSocket = null;
-            stopWorker();
+            boolean last;
+            synchronized (lock) {
+                Viewer[] current = viewers;
+                Viewer[] kept = new Viewer[current.length];
+                int n = 0;
+                for (Viewer v : current) {
+                    if (v.conn != conn) kept[n++] = v;
+                }
+                viewers = Arrays.copyOf(kept, n);
+                last = n == 0;
+            }
+            // the worker notices the empty viewer list and exits on its own
+            if (last) cursorStreamer.stop();
         }
 
         @Override
         public void onMessage(WebSocket conn, String message) {
-            // optional: handle control messages from client
+            // usually one line; a client may batch several input samples into one message
+            int start = 0;
+            for (int end; (end = message.indexOf('\n', start)) >= 0; start = end + 1) {
+                if (end > start) onLine(conn, message.substring(start, end));
+            }
+            if (start < message.length()) onLine(conn, start == 0 ? message : message.substring(start));
+        }
+
+        /**
+         * The same messages as UTF-8 in a binary frame.
+         */
+        @Override
+        public void onMessage(WebSocket conn, ByteBuffer message) {
+            onMessage(conn, StandardCharsets.UTF_8.decode(message).toString());
+        }
+
+        private void onLine(WebSocket conn, String line) {
+            // control messages from the viewer: tier selection and adaptive feedback; anything
+            // else is input (motion, touch or keyboard) for the dispatcher
+            JSONObject json;
+            long readAt = 0;
+            InputDispatcher in = input;
+            try {
+                if (in != null) readAt = in.readStarted();
+                json = new JSONObject(line);
+            } catch (Exception e) {
+                if (in != null) in.dispatchMotion(line, null, readAt);
+                else System.err.println("WS invalid message: " + e.getMessage());
+                return;
+            }
+            try {
+                Viewer viewer = conn.getAttachment();
+                if (viewer == null) return;
+                if (!json.has("tier") && !json.has("feedback")) {
+                    if (in != null && !in.dispatchKeyboard(json, readAt) && !in.dispatchTouch(json, readAt)) in.dispatchMotion(line, json, readAt);
+                    return;
+                }
+                if (json.has("tier")) {
+                    JSONObject t = json.optJSONObject("tier");
+                    assignTier(viewer, t != null
+                            ? tierFromSettings(t.optInt("maxWidth", 0), t.optDouble("quality", -1))
+                            : StreamTier.preset(json.optString("tier", "")));
+                    System.out.println("WS client " + conn.getRemoteSocketAddress() + " switched to tier " + viewer.tier);
+                }
+                // only the default tier is driven by the controller
+                if (json.has("feedback") && viewer.tier.isControlled()) {
+                    JSONObject f = json.getJSONObject("feedback");
+                    controller.onFeedback(conn, f.optLong("framesReceived", 0), 0,
+                            f.optDouble("decodeMs", 0), f.optDouble("latencyMs", -1));
+                }
+            } catch (Exception e) {
+                System.err.println("WS invalid message: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Cursor side channel as a text message to every viewer (called on the cursor thread):
+         * {"cursor":{"seq":..,"x":..,"y":..,"buttons":..,"area":[x,y,w,h]}}
+         */
+        @Override
+        public void sendCursor(int seq, int x, int y, int buttons, Rectangle area) {
+            Viewer[] current = viewers;
+            if (current.length == 0) return;
+            StringBuilder sb = cursorJson;
+            sb.setLength(0);
+            sb.append("{\"cursor\":{\"seq\":").append(seq)
+              .append(",\"x\":").append(x)
+              .append(",\"y\":").append(y)
+              .append(",\"buttons\":").append(buttons)
+              .append(",\"area\":[").append(area.x).append(',').append(area.y).append(',')
+              .append(area.width).append(',').append(area.height).append("]}}");
+            String msg = sb.toString();
+            for (Viewer v : current) {
+                try {
+                    if (v.conn.isOpen()) v.conn.send(msg);
+                } catch (Exception e) {
+                    // connection closing; onClose removes the viewer
+                }
+            }
         }
 
         @Override
@@ -105,120 +450,328 @@ public class WebSocketStreamer {
             System.out.println("WS server started and listening");
         }
 
+        /**
+         * Tier from the handshake query: ?tier=low|medium|high or ?maxWidth=800&quality=0.5.
+         */
+        private StreamTier tierFromQuery(String resource) {
+            int q = resource != null ? resource.indexOf('?') : -1;
+            if (q < 0) return StreamTier.controlled();
+            String name = null;
+            int maxWidth = 0;
+            double quality = -1;
+            for (String param : resource.substring(q + 1).split("&")) {
+                int eq = param.indexOf('=');
+                if (eq <= 0) continue;
+                String key = param.substring(0, eq);
+                String value = param.substring(eq + 1);
+                try {
+                    if ("tier".equals(key)) name = value;
+                    else if ("maxWidth".equals(key)) maxWidth = Integer.parseInt(value);
+                    else if ("quality".equals(key)) quality = Double.parseDouble(value);
+                } catch (NumberFormatException ignored) {}
+            }
+            return name != null ? StreamTier.preset(name) : tierFromSettings(maxWidth, quality);
+        }
+
+        private StreamTier tierFromSettings(int maxWidth, double quality) {
+            if (maxWidth <= 0 && quality < 0) return StreamTier.controlled();
+            return StreamTier.fixed(maxWidth > 0 ? maxWidth : controller.getMaxWidth(),
+                    (float) (quality >= 0 ? quality : controller.getQuality()));
+        }
+
+        /**
+         * Put the viewer in the existing tier with the same settings, or register the requested one.
+         * Once the other tiers fill all but one of MAX_TIERS, new settings fall back to the
+         * default tier, whose slot is kept free for it.
+         */
+        private void assignTier(Viewer viewer, StreamTier requested) {
+            synchronized (lock) {
+                StreamTier tier = findTier(requested.getName());
+                StreamTier controlled = findTier(StreamTier.DEFAULT);
+                int free = MAX_TIERS - tiers.length - (controlled == null ? 1 : 0);
+                if (tier == null && !requested.isControlled() && free <= 0) {
+                    requested = StreamTier.controlled();
+                    tier = controlled;
+                }
+                if (tier == null) {
+                    StreamTier[] next = Arrays.copyOf(tiers, tiers.length + 1);
+                    next[next.length - 1] = requested;
+                    tiers = next;
+                    tier = requested;
+                }
+                viewer.tier = tier;
+            }
+        }
+
+        private StreamTier findTier(String name) {
+            for (StreamTier t : tiers) {
+                if (t.getName().equals(name)) return t;
+            }
+            return null;
+        }
+
+        /**
+         * Drop tiers nobody watches any more and refresh viewer counts. Returns the
+         * removed tiers so the worker can release their encoders outside the lock.
+         */
+        private StreamTier[] pruneTiers() {
+            synchronized (lock) {
+                StreamTier[] current = tiers;
+                StreamTier[] kept = new StreamTier[current.length];
+                StreamTier[] removed = new StreamTier[current.length];
+                int k = 0, r = 0;
+                for (StreamTier t : current) {
+                    int count = 0;
+                    for (Viewer v : viewers) {
+                        if (v.tier == t) count++;
+                    }
+                    t.setViewers(count);
+                    if (count > 0) kept[k++] = t;
+                    else removed[r++] = t;
+                }
+                if (r > 0) tiers = Arrays.copyOf(kept, k);
+                return r > 0 ? Arrays.copyOf(removed, r) : null;
+            }
+        }
+
+        /**
+         * Start the worker if it is not running. Called with the lock held.
+         */
         private void startWorker() {
-            if (worker != null && worker.isAlive()) return;
+            if (worker != null || closed) return;
             worker = new Thread(() -> {
+                ScreenCapturer capturer = null;
+                boolean failed = false;
+                // frames on a fixed-rate grid; an overrun frame drops the ticks it covered
+                FrameScheduler clock = new FrameScheduler("ws-stream", controller.getFps(), FrameScheduler.SkipPolicy.SKIP);
+                scheduler = clock;
                 try {
-                    Robot robot = new Robot();
-                    long frameIntervalMs = Math.max(1, 1000 / Math.max(1, fps));
-                    while (clientSocket != null && clientSocket.isOpen()) {
-                        long start = System.currentTimeMillis();
+                    capturer = new ScreenCapturer();
+                    while (!closed) {
+                        clock.setRate(controller.getFps());
+                        clock.awaitNext();
+                        if (closed) break;
 
-                        try {
-                            // capture full virtual screen to include all monitors
-                            GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
-                            GraphicsDevice[] devices = ge.getScreenDevices();
-
-                            int minX = Integer.MAX_VALUE;
-                            int minY = Integer.MAX_VALUE;
-                            int maxX = Integer.MIN_VALUE;
-                            int maxY = Integer.MIN_VALUE;
-
-                            for (GraphicsDevice device : devices) {
-                                Rectangle b = device.getDefaultConfiguration().getBounds();
-                                minX = Math.min(minX, b.x);
-                                minY = Math.min(minY, b.y);
-                                maxX = Math.max(maxX, b.x + b.width);
-                                maxY = Math.max(maxY, b.y + b.height);
-                            }
+                        StreamTier[] removed = pruneTiers();
+                        if (removed != null) {
+                            for (StreamTier t : removed) t.close();
+                        }
+                        synchronized (lock) {
+                            if (viewers.length == 0) break;
+                        }
 
-                            Rectangle screenRect = new Rectangle(minX, minY, maxX - minX, maxY - minY);
-                            BufferedImage capture = robot.createScreenCapture(screenRect);
-
-                            // overlay visible cursor marker
-                            try {
-                                PointerInfo pinfo = MouseInfo.getPointerInfo();
-                                if (pinfo != null) {
-                                    Point p = pinfo.getLocation();
-                                    int rx = p.x - screenRect.x;
-                                    int ry = p.y - screenRect.y;
-                                    Graphics2D g = capture.createGraphics();
-                                    g.setColor(Color.RED);
-                                    int size = Math.max(8, Math.min(24, capture.getWidth() / 80));
-                                    g.fillOval(rx - size/2, ry - size/2, size, size);
-                                    g.setColor(Color.WHITE);
-                                    g.drawOval(rx - size/2, ry - size/2, size, size);
-                                    g.dispose();
-                                }
-                            } catch (Exception e) {
-                                // ignore cursor overlay errors
+                        Viewer[] current = viewers;
+                        StreamTier[] active = tiers;
+                        for (StreamTier t : active) t.pending = false;
+
+                        // a viewer whose previous frame is still queued skips this one
+                        boolean anyReady = false;
+                        for (Viewer v : current) {
+                            StreamTier t = v.tier;
+                            v.ready = v.conn.isOpen() && v.pendingFrames() == 0;
+                            if (v.ready) {
+                                t.pending = true;
+                                anyReady = true;
+                            } else if (v.conn.isOpen()) {
+                                droppedFrames.incrementAndGet();
+                                if (t.isControlled()) controller.onBackpressure();
                             }
+                        }
+                        // nobody can take a frame: wait for the next tick without capturing
+                        if (!anyReady) continue;
 
-                            // scale if needed
-                            if (maxWidth > 0 && capture.getWidth() > maxWidth) {
-                                int newW = maxWidth;
-                                int newH = (int) (((double) capture.getHeight() / capture.getWidth()) * newW);
-                                Image tmp = capture.getScaledInstance(newW, newH, Image.SCALE_SMOOTH);
-                                BufferedImage scaled = new BufferedImage(newW, newH, BufferedImage.TYPE_INT_RGB);
-                                scaled.getGraphics().drawImage(tmp, 0, 0, null);
-                                capture = scaled;
+                        try {
+                            // capture once at the largest width any ready tier needs (0 = no limit)
+                            int captureWidth = -1;
+                            for (StreamTier t : active) {
+                                if (!t.pending) continue;
+                                int w = t.getMaxWidth(controller);
+                                captureWidth = w <= 0 || captureWidth == 0 ? 0 : Math.max(captureWidth, w);
                             }
+                            // capture the viewport (full virtual screen by default), cursor overlay + scaling
+                            capturer.setViewport(viewport);
+                            capturer.setDrawCursor(cursorOverlay);
+                            BufferedImage frame = capturer.capture(Math.max(0, captureWidth));
+                            captureArea = capturer.getCaptureArea();
+                            metrics.framesCaptured.inc();
 
-                            byte[] jpeg = encodeJpeg(capture, quality);
-                            if (jpeg != null && jpeg.length > 0 && clientSocket != null && clientSocket.isOpen()) {
-                                clientSocket.send(jpeg);
+                            int seq = frameSeq.getAndIncrement();
+                            // one copy per frame is enough to reproduce what viewers saw
+                            SessionRecorder rec = recorder;
+                            for (StreamTier t : active) {
+                                if (!t.pending) continue;
+                                sendTier(t, frame, current, seq, capturer, rec);
+                                rec = null;
                             }
 
                         } catch (Exception e) {
                             System.err.println("WS worker capture/send error: " + e.getMessage());
                         }
-
-                        long elapsed = System.currentTimeMillis() - start;
-                        long toSleep = frameIntervalMs - elapsed;
-                        if (toSleep > 0) {
-                            try { Thread.sleep(toSleep); } catch (InterruptedException ignored) {}
-                        }
                     }
                 } catch (Exception e) {
+                    failed = true;
                     System.err.println("WS worker fatal: " + e.getMessage());
+                } finally {
+                    if (capturer != null) capturer.close();
+                    captureArea = null;
+                    System.out.println("WS stream: " + clock);
+                    synchronized (lock) {
+                        for (StreamTier t : tiers) t.close();
+                        if (worker == Thread.currentThread()) worker = null;
+                        // a viewer that joined while this worker was exiting still needs one
+                        if (viewers.length > 0 && !failed) startWorker();
+                    }
                 }
             }, "ws-streamer-thread");
             worker.setDaemon(true);
             worker.start();
         }
 
-        private void stopWorker() {
-            if (worker != null) {
-                worker.interrupt();
-                try { worker.join(500); } catch (InterruptedException ignored) {}
-                worker = null;
+        /**
+         * Encode the frame once for the tier and send it to each of its ready viewers.
+         * The encoded frame is also recorded if rec is not null.
+         */
+        private void sendTier(StreamTier tier, BufferedImage frame, Viewer[] current, int seq,
+                              ScreenCapturer capturer, SessionRecorder rec) throws Exception {
+            RegionLayout layout = regionLayout;
+            FrameCodec frameCodec = codec;
+            FrameEncodeEvent encodeEvent = new FrameEncodeEvent();
+            encodeEvent.begin();
+            long encodeStart = metrics.encodeTime.start();
+            if (layout != null) {
+                RegionEncoder regions = tier.encodeRegions(frame, controller, frameCodec, layout,
+                        capturer.getCursorX(), capturer.getCursorY());
+                metrics.encodeTime.stop(encodeStart);
+                metrics.framesEncoded.inc();
+                encodeEvent.end();
+                if (encodeEvent.shouldCommit()) {
+                    int bytes = 0;
+                    for (int i = 0; i < regions.regionCount(); i++) bytes += regions.length(i);
+                    commitEncode(encodeEvent, tier, frameCodec, frame, regions.regionCount(), bytes);
+                }
+                sendRegions(tier, regions, current, seq, rec);
+                return;
             }
+            int len = tier.encode(frame, controller, frameCodec);
+            metrics.encodeTime.stop(encodeStart);
+            metrics.framesEncoded.inc();
+            encodeEvent.end();
+            commitEncode(encodeEvent, tier, frameCodec, frame, 1, len);
+            if (len <= 0) return;
+            byte[] bytes = tier.buffer();
+            if (rec != null) rec.recordFrame(SessionRecorder.SOURCE_WEBSOCKET, seq, 0, 1, bytes, len);
+            FrameSendEvent sendEvent = new FrameSendEvent();
+            sendEvent.begin();
+            int sent = 0;
+            for (Viewer v : current) {
+                if (!v.ready || v.tier != tier) continue;
+                try {
+                    // the library frames (copies) the payload synchronously, so the buffer can be reused
+                    v.conn.send(ByteBuffer.wrap(bytes, 0, len));
+                    metrics.framesSent.inc();
+                    metrics.bytesSent.add(len);
+                    sent++;
+                } catch (Exception e) {
+                    // connection closing; onClose removes the viewer
+                }
+            }
+            sendEvent.end();
+            commitSend(sendEvent, tier, len, sent, 1);
+            if (tier.isControlled()) controller.onFrameSent(len, 1);
         }
 
-        private byte[] encodeJpeg(BufferedImage img, float quality) throws Exception {
-            try {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
-                if (!writers.hasNext()) {
-                    ImageIO.write(img, "jpg", baos);
-                    return baos.toByteArray();
+        /**
+         * Send each encoded region as one binary message: magic "MREG" (4), version (1), seq (4),
+         * region index (1), region count (1), x, y, width, height, frame width, frame height (2 each),
+         * then the encoded image.
+         */
+        private void sendRegions(StreamTier tier, RegionEncoder regions, Viewer[] current, int seq,
+                                 SessionRecorder rec) {
+            int bytes = 0;
+            int viewers = 0;
+            for (Viewer v : current) {
+                if (v.ready && v.tier == tier) viewers++;
+            }
+            FrameSendEvent sendEvent = new FrameSendEvent();
+            sendEvent.begin();
+            for (int i = 0; i < regions.regionCount(); i++) {
+                FrameRegion r = regions.region(i);
+                int len = regions.length(i);
+                if (rec != null) {
+                    rec.recordFrame(SessionRecorder.SOURCE_WEBSOCKET, seq, i, regions.regionCount(), regions.buffer(i), len);
                 }
-                ImageWriter writer = writers.next();
-                ImageWriteParam param = writer.getDefaultWriteParam();
-                if (param.canWriteCompressed()) {
-                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-                    param.setCompressionQuality(Math.max(0f, Math.min(1f, quality)));
+                ByteBuffer msg = regionMessage;
+                if (msg.capacity() < REGION_HEADER + len) {
+                    msg = ByteBuffer.allocate(Math.max(REGION_HEADER + len, msg.capacity() * 2));
+                    regionMessage = msg;
                 }
-                MemoryCacheImageOutputStream mcios = new MemoryCacheImageOutputStream(baos);
-                writer.setOutput(mcios);
-                writer.write(null, new IIOImage(img, null, null), param);
-                mcios.close();
-                writer.dispose();
-                return baos.toByteArray();
-            } catch (Exception e) {
-                throw new Exception("JPEG encode failed: " + e.getMessage(), e);
+                msg.clear();
+                msg.putInt(REGION_MAGIC);
+                msg.put((byte) 1);
+                msg.putInt(seq);
+                msg.put((byte) r.index);
+                msg.put((byte) r.count);
+                msg.putShort((short) r.x);
+                msg.putShort((short) r.y);
+                msg.putShort((short) r.width);
+                msg.putShort((short) r.height);
+                msg.putShort((short) r.frameWidth);
+                msg.putShort((short) r.frameHeight);
+                msg.put(regions.buffer(i), 0, len);
+                msg.flip();
+                for (Viewer v : current) {
+                    if (!v.ready || v.tier != tier) continue;
+                    try {
+                        // the library copies the payload synchronously, so the buffer can be reused
+                        v.conn.send(msg.duplicate());
+                    } catch (Exception e) {
+                        // connection closing; onClose removes the viewer
+                    }
+                }
+                bytes += len;
+            }
+            sendEvent.end();
+            commitSend(sendEvent, tier, bytes, viewers, regions.regionCount());
+            metrics.framesSent.add(viewers);
+            metrics.bytesSent.add((long) bytes * viewers);
+            if (tier.isControlled()) controller.onFrameSent(bytes, regions.regionCount());
+        }
+
+        private void commitEncode(FrameEncodeEvent event, StreamTier tier, FrameCodec frameCodec,
+                                  BufferedImage frame, int regions, int bytes) {
+            if (!event.shouldCommit()) return;
+            event.stream = "websocket:" + tier.getName();
+            event.codec = frameCodec.name();
+            event.width = frame.getWidth();
+            event.height = frame.getHeight();
+            event.regions = regions;
+            event.bytes = bytes;
+            event.commit();
+        }
+
+        private void commitSend(FrameSendEvent event, StreamTier tier, int bytes, int destinations, int packets) {
+            if (!event.shouldCommit()) return;
+            event.stream = "websocket:" + tier.getName();
+            event.bytes = bytes;
+            event.destinations = destinations;
+            event.packets = packets;
+            event.commit();
+        }
+
+        /**
+         * Stop the worker and cursor threads before the server itself is stopped.
+         */
+        private void shutdown() {
+            closed = true;
+            cursorStreamer.stop();
+            Thread w;
+            synchronized (lock) {
+                w = worker;
+            }
+            if (w != null) {
+                w.interrupt();
+                try { w.join(500); } catch (InterruptedException ignored) {}
             }
         }
     }
 }
-
@@ -1,28 +1,35 @@
 package com.mousecontrol.controller;
 
-import java.awt.AWTException;
-import java.awt.Robot;
-import java.awt.Toolkit;
-import java.awt.datatransfer.StringSelection;
+import com.mousecontrol.desktop.Desktop;
+import com.mousecontrol.desktop.Desktops;
+import com.mousecontrol.jfr.InjectEvent;
+
 import java.awt.event.KeyEvent;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * KeyboardController
  * Allows the application to simulate typing and key presses on the desktop
- * using java.awt.Robot. For characters that Robot cannot type directly,
+ * (java.awt.Robot on a real one). For characters that cannot be typed directly,
  * falls back to clipboard-based paste (Ctrl+V / Cmd+V).
  */
 public class KeyboardController {
 
-    private final Robot robot;
+    // Set in a keyStroke() result when the key is typed with Shift held (above any VK code)
+    static final int SHIFT = 1 << 30;
+
+    private final Desktop desktop;
     private final boolean isMac;
+    // keys pressed through pressKey() and not released yet
+    private final Set<Integer> heldKeys = ConcurrentHashMap.newKeySet();
 
     public KeyboardController() {
-        try {
-            this.robot = new Robot();
-        } catch (AWTException e) {
-            throw new RuntimeException("Failed to create Robot for KeyboardController", e);
-        }
+        this(Desktops.get());
+    }
+
+    public KeyboardController(Desktop desktop) {
+        this.desktop = desktop;
         String os = System.getProperty("os.name").toLowerCase();
         this.isMac = os.contains("mac") || os.contains("darwin");
     }
@@ -33,6 +40,8 @@ public class KeyboardController {
      */
     public void typeString(String text) {
         if (text == null || text.isEmpty()) return;
+        InjectEvent event = new InjectEvent();
+        event.begin();
 
         // Try to type character-by-character; if any unsupported char found, fallback to paste
         boolean fallback = false;
@@ -46,142 +55,84 @@ public class KeyboardController {
         if (fallback) {
             pasteFromClipboard(text);
         }
+        commit(event, "type", 0, text.length());
     }
 
     /**
-     * Attempt to type a single ASCII character using Robot key events.
+     * Attempt to type a single ASCII character using key events.
      * Returns true if typed, false if unsupported (caller may fallback to clipboard).
      */
     private boolean typeChar(char c) {
+        int stroke = keyStroke(c);
+        if (stroke < 0) return false;
+        int key = stroke & ~SHIFT;
+        boolean shift = (stroke & SHIFT) != 0;
         try {
-            boolean upper = Character.isUpperCase(c);
-            int key = 0;
-
-            if (Character.isLetter(c)) {
-                char base = Character.toLowerCase(c);
-                key = KeyEvent.getExtendedKeyCodeForChar(base);
-                if (key == KeyEvent.VK_UNDEFINED) return false;
-                if (upper) robot.keyPress(KeyEvent.VK_SHIFT);
-                robot.keyPress(key);
-                robot.keyRelease(key);
-                if (upper) robot.keyRelease(KeyEvent.VK_SHIFT);
-                return true;
-            }
-
-            if (Character.isDigit(c)) {
-                key = KeyEvent.getExtendedKeyCodeForChar(c);
-                if (key == KeyEvent.VK_UNDEFINED) return false;
-                robot.keyPress(key);
-                robot.keyRelease(key);
-                return true;
-            }
-
-            switch (c) {
-                case ' ':
-                    robot.keyPress(KeyEvent.VK_SPACE);
-                    robot.keyRelease(KeyEvent.VK_SPACE);
-                    return true;
-                case '\n':
-                case '\r':
-                    robot.keyPress(KeyEvent.VK_ENTER);
-                    robot.keyRelease(KeyEvent.VK_ENTER);
-                    return true;
-                case '.':
-                    robot.keyPress(KeyEvent.VK_PERIOD);
-                    robot.keyRelease(KeyEvent.VK_PERIOD);
-                    return true;
-                case ',':
-                    robot.keyPress(KeyEvent.VK_COMMA);
-                    robot.keyRelease(KeyEvent.VK_COMMA);
-                    return true;
-                case '-':
-                    robot.keyPress(KeyEvent.VK_MINUS);
-                    robot.keyRelease(KeyEvent.VK_MINUS);
-                    return true;
-                case '_':
-                    robot.keyPress(KeyEvent.VK_SHIFT);
-                    robot.keyPress(KeyEvent.VK_MINUS);
-                    robot.keyRelease(KeyEvent.VK_MINUS);
-                    robot.keyRelease(KeyEvent.VK_SHIFT);
-                    return true;
-                case ':':
-                    robot.keyPress(KeyEvent.VK_SHIFT);
-                    robot.keyPress(KeyEvent.VK_SEMICOLON);
-                    robot.keyRelease(KeyEvent.VK_SEMICOLON);
-                    robot.keyRelease(KeyEvent.VK_SHIFT);
-                    return true;
-                case ';':
-                    robot.keyPress(KeyEvent.VK_SEMICOLON);
-                    robot.keyRelease(KeyEvent.VK_SEMICOLON);
-                    return true;
-                case '/':
-                    robot.keyPress(KeyEvent.VK_SLASH);
-                    robot.keyRelease(KeyEvent.VK_SLASH);
-                    return true;
-                case '\\':
-                    robot.keyPress(KeyEvent.VK_BACK_SLASH);
-                    robot.keyRelease(KeyEvent.VK_BACK_SLASH);
-                    return true;
-                case '!':
-                    robot.keyPress(KeyEvent.VK_SHIFT);
-                    robot.keyPress(KeyEvent.VK_1);
-                    robot.keyRelease(KeyEvent.VK_1);
-                    robot.keyRelease(KeyEvent.VK_SHIFT);
-                    return true;
-                case '?':
-                    robot.keyPress(KeyEvent.VK_SHIFT);
-                    robot.keyPress(KeyEvent.VK_SLASH);
-                    robot.keyRelease(KeyEvent.VK_SLASH);
-                    robot.keyRelease(KeyEvent.VK_SHIFT);
-                    return true;
-                case '"':
-                    robot.keyPress(KeyEvent.VK_SHIFT);
-                    robot.keyPress(KeyEvent.VK_QUOTE);
-                    robot.keyRelease(KeyEvent.VK_QUOTE);
-                    robot.keyRelease(KeyEvent.VK_SHIFT);
-                    return true;
-                case '\'':
-                    robot.keyPress(KeyEvent.VK_QUOTE);
-                    robot.keyRelease(KeyEvent.VK_QUOTE);
-                    return true;
-                case '(': // shift+9
-                    robot.keyPress(KeyEvent.VK_SHIFT);
-                    robot.keyPress(KeyEvent.VK_9);
-                    robot.keyRelease(KeyEvent.VK_9);
-                    robot.keyRelease(KeyEvent.VK_SHIFT);
-                    return true;
-                case ')': // shift+0
-                    robot.keyPress(KeyEvent.VK_SHIFT);
-                    robot.keyPress(KeyEvent.VK_0);
-                    robot.keyRelease(KeyEvent.VK_0);
-                    robot.keyRelease(KeyEvent.VK_SHIFT);
-                    return true;
-                default:
-                    return false;
-            }
+            if (shift) desktop.keyPress(KeyEvent.VK_SHIFT);
+            desktop.keyPress(key);
+            desktop.keyRelease(key);
+            if (shift) desktop.keyRelease(KeyEvent.VK_SHIFT);
+            return true;
         } catch (IllegalArgumentException e) {
             return false;
         }
     }
 
+    /**
+     * Key that types c on a US layout: a KeyEvent VK code, OR'ed with SHIFT when Shift
+     * must be held, or -1 if c has no direct key.
+     */
+    static int keyStroke(char c) {
+        if (Character.isLetter(c)) {
+            int key = KeyEvent.getExtendedKeyCodeForChar(Character.toLowerCase(c));
+            if (key == KeyEvent.VK_UNDEFINED) return -1;
+            return Character.isUpperCase(c) ? key | SHIFT : key;
+        }
+
+        if (Character.isDigit(c)) {
+            int key = KeyEvent.getExtendedKeyCodeForChar(c);
+            return key == KeyEvent.VK_UNDEFINED ? -1 : key;
+        }
+
+        switch (c) {
+            case ' ': return KeyEvent.VK_SPACE;
+            case '\n':
+            case '\r': return KeyEvent.VK_ENTER;
+            case '.': return KeyEvent.VK_PERIOD;
+            case ',': return KeyEvent.VK_COMMA;
+            case '-': return KeyEvent.VK_MINUS;
+            case '_': return KeyEvent.VK_MINUS | SHIFT;
+            case ':': return KeyEvent.VK_SEMICOLON | SHIFT;
+            case ';': return KeyEvent.VK_SEMICOLON;
+            case '/': return KeyEvent.VK_SLASH;
+            case '\\': return KeyEvent.VK_BACK_SLASH;
+            case '!': return KeyEvent.VK_1 | SHIFT;
+            case '?': return KeyEvent.VK_SLASH | SHIFT;
+            case '"': return KeyEvent.VK_QUOTE | SHIFT;
+            case '\'': return KeyEvent.VK_QUOTE;
+            case '(': return KeyEvent.VK_9 | SHIFT; // shift+9
+            case ')': return KeyEvent.VK_0 | SHIFT; // shift+0
+            default: return -1;
+        }
+    }
+
     /**
      * Paste given text via clipboard (Ctrl+V or Cmd+V depending on OS)
      */
     private void pasteFromClipboard(String text) {
         try {
-            StringSelection ss = new StringSelection(text);
-            Toolkit.getDefaultToolkit().getSystemClipboard().setContents(ss, null);
+            desktop.setClipboardText(text);
 
             if (isMac) {
-                robot.keyPress(KeyEvent.VK_META);
-                robot.keyPress(KeyEvent.VK_V);
-                robot.keyRelease(KeyEvent.VK_V);
-                robot.keyRelease(KeyEvent.VK_META);
+                desktop.keyPress(KeyEvent.VK_META);
+                desktop.keyPress(KeyEvent.VK_V);
+                desktop.keyRelease(KeyEvent.VK_V);
+                desktop.keyRelease(KeyEvent.VK_META);
             } else {
-                robot.keyPress(KeyEvent.VK_CONTROL);
-                robot.keyPress(KeyEvent.VK_V);
-                robot.keyRelease(KeyEvent.VK_V);
-                robot.keyRelease(KeyEvent.VK_CONTROL);
+                desktop.keyPress(KeyEvent.VK_CONTROL);
+                desktop.keyPress(KeyEvent.VK_V);
+                desktop.keyRelease(KeyEvent.VK_V);
+                desktop.keyRelease(KeyEvent.VK_CONTROL);
             }
         } catch (Exception e) {
             System.err.println("Clipboard paste failed: " + e.getMessage());
@@ -193,26 +144,82 @@ public class KeyboardController {
      * Caller must supply a valid KeyEvent VK code.
      */
     public void tapKey(int keyCode) {
+        InjectEvent event = new InjectEvent();
+        event.begin();
         try {
-            robot.keyPress(keyCode);
-            robot.keyRelease(keyCode);
+            desktop.keyPress(keyCode);
+            desktop.keyRelease(keyCode);
         } catch (Exception e) {
             System.err.println("tapKey failed: " + e.getMessage());
         }
+        commit(event, "tap", keyCode, 0);
+    }
+
+    /**
+     * Tap a key combination: press the keys in order, release them in reverse
+     * (e.g. {VK_CONTROL, VK_ALT, VK_LEFT}).
+     */
+    public void tapKeys(int[] keyCodes) {
+        InjectEvent event = new InjectEvent();
+        event.begin();
+        int pressed = 0;
+        try {
+            for (; pressed < keyCodes.length; pressed++) desktop.keyPress(keyCodes[pressed]);
+        } catch (Exception e) {
+            System.err.println("tapKeys failed: " + e.getMessage());
+        } finally {
+            while (pressed > 0) {
+                try { desktop.keyRelease(keyCodes[--pressed]); } catch (Exception e) { System.err.println("tapKeys failed: " + e.getMessage()); }
+            }
+        }
+        commit(event, "chord", keyCodes[keyCodes.length - 1], 0);
     }
 
     /**
      * Press and hold a key
      */
     public void pressKey(int keyCode) {
-        try { robot.keyPress(keyCode); } catch (Exception e) { System.err.println("pressKey failed: " + e.getMessage()); }
+        InjectEvent event = new InjectEvent();
+        event.begin();
+        try { desktop.keyPress(keyCode); } catch (Exception e) { System.err.println("pressKey failed: " + e.getMessage()); }
+        heldKeys.add(keyCode);
+        commit(event, "press", keyCode, 0);
     }
 
     /**
      * Release a previously pressed key
      */
     public void releaseKey(int keyCode) {
-        try { robot.keyRelease(keyCode); } catch (Exception e) { System.err.println("releaseKey failed: " + e.getMessage()); }
+        InjectEvent event = new InjectEvent();
+        event.begin();
+        try { desktop.keyRelease(keyCode); } catch (Exception e) { System.err.println("releaseKey failed: " + e.getMessage()); }
+        heldKeys.remove(keyCode);
+        commit(event, "release", keyCode, 0);
+    }
+
+    /**
+     * Keys currently held down with pressKey()
+     */
+    public Set<Integer> getHeldKeys() {
+        return Set.copyOf(heldKeys);
+    }
+
+    /**
+     * Release every key still held, e.g. when the client that pressed them is gone
+     */
+    public void releaseHeldKeys() {
+        for (Integer keyCode : getHeldKeys()) releaseKey(keyCode);
+    }
+
+    private void commit(InjectEvent event, String action, int keyCode, int characters) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.action = action;
+            event.method = desktop.getName();
+            event.keyCode = keyCode;
+            event.characters = characters;
+            event.commit();
+        }
     }
 }
 
@@ -1,25 +1,66 @@
 package com.mousecontrol.controller;
 
 
+import com.mousecontrol.desktop.AwtDesktop;
+import com.mousecontrol.desktop.Desktop;
+import com.mousecontrol.desktop.Desktops;
+import com.mousecontrol.desktop.Environment;
+import com.mousecontrol.desktop.SimulatedDesktop;
+import com.mousecontrol.jfr.InjectEvent;
+
 import java.awt.*;
 import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 
 public class MouseController {
 
-    private final Robot robot;
+    private final Desktop desktop;
+    // how to inject is decided on first use, so a LazyDesktop is not created early
+    private volatile boolean resolved;
+    // a simulated desktop applies moves immediately; no settle delay or verification
+    private boolean simulated;
     private boolean useXdotool = false;  // Flag to use xdotool on Linux
     private static final String OS_NAME = System.getProperty("os.name").toLowerCase();
     private static final boolean IS_LINUX = OS_NAME.contains("linux");
 
+    // Button bits reported to the cursor side channel
+    public static final int BUTTON_LEFT = 1;
+    public static final int BUTTON_RIGHT = 2;
+    // Clicks are instantaneous; keep them visible to 60-120 Hz samplers for a moment
+    private static final long CLICK_FLASH_NANOS = 150_000_000L;
+    private volatile int clickedButtons = 0;
+    private volatile long clickedAtNanos = 0;
+    private volatile boolean logMoves = false;
+
     public MouseController() {
+            this(Desktops.get());
+            selfTest();
+    }
+
+    /**
+     * Controller for the given desktop, without the startup movement test. xdotool is
+     * only used for the real desktop.
+     */
+    public MouseController(Desktop desktop) {
+        this.desktop = desktop;
+    }
+
+    /** Print every relative move with its clamped target (one line per move; off by default). */
+    public void setLogMoves(boolean logMoves) {
+        this.logMoves = logMoves;
+    }
+
+    /**
+     * Report how the cursor is driven and check that it moves: one pixel there and back,
+     * with a short pause. Creates the desktop if it is a LazyDesktop.
+     */
+    public void selfTest() {
+            resolveInjection();
             try {
-                    this.robot = new Robot();
-                    this.robot.setAutoDelay(0);
-                    System.out.println("✓ Robot initialized successfully");
+                    System.out.println("✓ Desktop initialized successfully (" + desktop.getName() + ")");
 
                     // Check if we're on Linux and xdotool is available
-                    if (IS_LINUX) {
-                        useXdotool = checkXdotoolAvailable();
+                    if (IS_LINUX && !simulated) {
                         if (useXdotool) {
                             System.out.println("✓ xdotool found - using xdotool for cursor movement");
                         } else {
@@ -29,13 +70,13 @@ public class MouseController {
                     }
 
                     // Test if cursor control works
-                    Point testPos = MouseInfo.getPointerInfo().getLocation();
+                    Point testPos = desktop.getPointerLocation();
                     System.out.println("Current cursor position: " + testPos.x + ", " + testPos.y);
 
                     // Try to move cursor 1 pixel and back to test
                     moveToAbsolute(testPos.x + 1, testPos.y);
                     Thread.sleep(10);
-                    Point afterMove = MouseInfo.getPointerInfo().getLocation();
+                    Point afterMove = desktop.getPointerLocation();
                     moveToAbsolute(testPos.x, testPos.y); // Move back
 
                     if (afterMove.x == testPos.x + 1) {
@@ -48,33 +89,24 @@ public class MouseController {
                         }
                     }
             }
-            catch (AWTException awtException ) {
-                throw new RuntimeException("Failed to create Robot instance", awtException);
-            }
             catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 throw new RuntimeException("Robot initialization was interrupted", e);
             }
     }
 
-    public MouseController(Robot robot) {
-        this.robot = robot;
-        if (IS_LINUX) {
-            useXdotool = checkXdotoolAvailable();
-        }
-    }
-
     /**
-     * Check if xdotool is available on the system
+     * Look at the actual desktop once: xdotool (probed once per process) for the real
+     * desktop on Linux, no settle delay for the simulated one.
      */
-    private static boolean checkXdotoolAvailable() {
-        try {
-            ProcessBuilder pb = new ProcessBuilder("which", "xdotool");
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-            return exitCode == 0;
-        } catch (Exception e) {
-            return false;
+    private void resolveInjection() {
+        if (resolved) return;
+        synchronized (this) {
+            if (resolved) return;
+            Desktop actual = Desktops.unwrap(desktop);
+            simulated = actual instanceof SimulatedDesktop;
+            useXdotool = IS_LINUX && actual instanceof AwtDesktop && Environment.get().xdotool;
+            resolved = true;
         }
     }
 
@@ -82,6 +114,7 @@ public class MouseController {
      * Move cursor to absolute position using xdotool (Linux) or Robot (other systems)
      */
     private void moveToAbsolute(int x, int y) {
+        resolveInjection();
         if (useXdotool) {
             try {
                 ProcessBuilder pb = new ProcessBuilder("xdotool", "mousemove", String.valueOf(x), String.valueOf(y));
@@ -91,40 +124,59 @@ public class MouseController {
             } catch (Exception e) {
                 System.err.println("Error using xdotool: " + e.getMessage());
                 // Fallback to Robot
-                robot.mouseMove(x, y);
+                desktop.mouseMove(x, y);
             }
         } else {
-            robot.mouseMove(x, y);
+            desktop.mouseMove(x, y);
         }
     }
 
+    /**
+     * Current cursor position, or null if it cannot be determined.
+     */
+    public Point getPointerLocation() {
+        return desktop.getPointerLocation();
+    }
+
     /**
      * Move cursor relative to current position
      */
 
 
     public void moveBy(int dx, int dy) {
+        InjectEvent event = new InjectEvent();
+        event.begin();
+        try {
+            moveByInternal(dx, dy);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.action = "move";
+                event.method = injectMethod();
+                event.dx = dx;
+                event.dy = dy;
+                event.commit();
+            }
+        }
+    }
+
+    private void moveByInternal(int dx, int dy) {
+        resolveInjection();
         // Get current mouse position
-        PointerInfo pointerInfo = MouseInfo.getPointerInfo();
-        if (pointerInfo == null) {
+        Point currentPos = desktop.getPointerLocation();
+        if (currentPos == null) {
             System.err.println("ERROR: Could not get pointer info");
             return;
         }
 
-        Point currentPos = pointerInfo.getLocation();
-
         // Get screen bounds to clamp cursor
-        GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
-        GraphicsDevice[] devices = ge.getScreenDevices();
-
         int minX = Integer.MAX_VALUE;
         int minY = Integer.MAX_VALUE;
         int maxX = Integer.MIN_VALUE;
         int maxY = Integer.MIN_VALUE;
 
         // Calculate total screen bounds across all monitors
-        for (GraphicsDevice device : devices) {
-            Rectangle bounds = device.getDefaultConfiguration().getBounds();
+        for (Rectangle bounds : desktop.getScreenBounds()) {
             minX = Math.min(minX, bounds.x);
             minY = Math.min(minY, bounds.y);
             maxX = Math.max(maxX, bounds.x + bounds.width);
@@ -138,10 +190,13 @@ public class MouseController {
         newX = Math.max(minX, Math.min(newX, maxX - 1));
         newY = Math.max(minY, Math.min(newY, maxY - 1));
 
-        System.out.printf("Moving cursor: (%d, %d) -> (%d, %d) [delta: %d, %d]%n",
-                currentPos.x, currentPos.y, newX, newY, dx, dy);
+        if (logMoves) {
+            System.out.printf("Moving cursor: (%d, %d) -> (%d, %d) [delta: %d, %d]%n",
+                    currentPos.x, currentPos.y, newX, newY, dx, dy);
+        }
 
         moveToAbsolute(newX, newY);
+        if (simulated) return;
 
         // Small delay to ensure the move is registered
         try {
@@ -151,9 +206,8 @@ public class MouseController {
         }
 
         // VERIFY: Check if cursor actually moved
-        PointerInfo verifyInfo = MouseInfo.getPointerInfo();
-        if (verifyInfo != null) {
-            Point actualPos = verifyInfo.getLocation();
+        Point actualPos = desktop.getPointerLocation();
+        if (actualPos != null) {
             if (actualPos.x != newX || actualPos.y != newY) {
                 System.err.println("⚠ CURSOR DID NOT MOVE!");
                 System.err.println("  Tried to move to: (" + newX + ", " + newY + ")");
@@ -168,36 +222,145 @@ public class MouseController {
     }
 
 
+    /**
+     * Buttons currently shown as pressed (BUTTON_* bits), including recent clicks.
+     */
+    public int getButtonMask() {
+        return System.nanoTime() - clickedAtNanos < CLICK_FLASH_NANOS ? clickedButtons : 0;
+    }
+
+    private void recordClick(int button) {
+        clickedButtons = button;
+        clickedAtNanos = System.nanoTime();
+    }
+
     public void leftClick() {
+        InjectEvent event = new InjectEvent();
+        event.begin();
         System.out.println("LEFT CLICK executed");
+        recordClick(BUTTON_LEFT);
+        resolveInjection();
         try {
             if (useXdotool) {
                 ProcessBuilder pb = new ProcessBuilder("xdotool", "click", "1");
                 Process process = pb.start();
                 process.waitFor();
             } else {
-                robot.mousePress(InputEvent.BUTTON1_DOWN_MASK);
-                robot.mouseRelease(InputEvent.BUTTON1_DOWN_MASK);
+                desktop.mousePress(InputEvent.BUTTON1_DOWN_MASK);
+                desktop.mouseRelease(InputEvent.BUTTON1_DOWN_MASK);
             }
         } catch (Exception e) {
             System.err.println("Left click error: " + e.getMessage());
         }
+        commitClick(event, "leftClick");
     }
 
     public void rightClick() {
+        InjectEvent event = new InjectEvent();
+        event.begin();
         System.out.println("RIGHT CLICK executed");
+        recordClick(BUTTON_RIGHT);
+        resolveInjection();
         try {
             if (useXdotool) {
                 ProcessBuilder pb = new ProcessBuilder("xdotool", "click", "3");
                 Process process = pb.start();
                 process.waitFor();
             } else {
-                robot.mousePress(InputEvent.BUTTON3_DOWN_MASK);
-                robot.mouseRelease(InputEvent.BUTTON3_DOWN_MASK);
+                desktop.mousePress(InputEvent.BUTTON3_DOWN_MASK);
+                desktop.mouseRelease(InputEvent.BUTTON3_DOWN_MASK);
             }
         } catch (Exception e) {
             System.err.println("Right click error: " + e.getMessage());
         }
+        commitClick(event, "rightClick");
+    }
+
+    /**
+     * Turn the wheel: vertical notches (positive scrolls down) and horizontal notches
+     * (positive scrolls right). Without xdotool, horizontal scrolling is Shift+wheel.
+     */
+    public void scroll(int vertical, int horizontal) {
+        if (vertical == 0 && horizontal == 0) return;
+        InjectEvent event = new InjectEvent();
+        event.begin();
+        resolveInjection();
+        try {
+            if (useXdotool) {
+                if (vertical != 0) xdotoolWheel(vertical > 0 ? "5" : "4", Math.abs(vertical), null);
+                if (horizontal != 0) xdotoolWheel(horizontal > 0 ? "7" : "6", Math.abs(horizontal), null);
+            } else {
+                if (vertical != 0) desktop.mouseWheel(vertical);
+                if (horizontal != 0) {
+                    desktop.keyPress(KeyEvent.VK_SHIFT);
+                    try {
+                        desktop.mouseWheel(horizontal);
+                    } finally {
+                        desktop.keyRelease(KeyEvent.VK_SHIFT);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Scroll error: " + e.getMessage());
+        }
+        commitWheel(event, "scroll", horizontal, vertical);
+    }
+
+    /**
+     * Zoom by the given steps (positive zooms in) as Ctrl+wheel.
+     */
+    public void zoom(int steps) {
+        if (steps == 0) return;
+        InjectEvent event = new InjectEvent();
+        event.begin();
+        resolveInjection();
+        try {
+            if (useXdotool) {
+                xdotoolWheel(steps > 0 ? "4" : "5", Math.abs(steps), "ctrl");
+            } else {
+                desktop.keyPress(KeyEvent.VK_CONTROL);
+                try {
+                    desktop.mouseWheel(-steps);
+                } finally {
+                    desktop.keyRelease(KeyEvent.VK_CONTROL);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Zoom error: " + e.getMessage());
+        }
+        commitWheel(event, "zoom", 0, steps);
+    }
+
+    private static void xdotoolWheel(String button, int times, String modifier) throws Exception {
+        ProcessBuilder pb = modifier == null
+                ? new ProcessBuilder("xdotool", "click", "--repeat", String.valueOf(times), button)
+                : new ProcessBuilder("xdotool", "keydown", modifier, "click", "--repeat", String.valueOf(times), button, "keyup", modifier);
+        Process process = pb.start();
+        process.waitFor();
+    }
+
+    private void commitWheel(InjectEvent event, String action, int dx, int dy) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.action = action;
+            event.method = injectMethod();
+            event.dx = dx;
+            event.dy = dy;
+            event.commit();
+        }
+    }
+
+    private void commitClick(InjectEvent event, String action) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.action = action;
+            event.method = injectMethod();
+            event.commit();
+        }
+    }
+
+    private String injectMethod() {
+        return useXdotool ? "xdotool" : desktop.getName();
     }
 
 }
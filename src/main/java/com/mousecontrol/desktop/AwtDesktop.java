@@ -0,0 +1,99 @@
+package com.mousecontrol.desktop;
+
+import java.awt.AWTException;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.MouseInfo;
+import java.awt.Point;
+import java.awt.PointerInfo;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.awt.image.BufferedImage;
+
+/**
+ * AwtDesktop
+ *
+ * The real desktop through java.awt: Robot for input and capture, MouseInfo for the
+ * pointer, GraphicsEnvironment for the monitor layout and the system clipboard.
+ *
+ * Robot's methods are synchronized, so input and capture use separate Robots; a
+ * screen capture (tens of milliseconds) would otherwise hold up every injected move.
+ */
+public final class AwtDesktop implements Desktop {
+
+    private final Robot inputRobot;
+    private final Robot captureRobot;
+
+    public AwtDesktop() throws AWTException {
+        this.inputRobot = new Robot();
+        this.inputRobot.setAutoDelay(0);
+        this.captureRobot = new Robot();
+    }
+
+    @Override
+    public String getName() {
+        return "robot";
+    }
+
+    @Override
+    public Rectangle[] getScreenBounds() {
+        GraphicsDevice[] devices = GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices();
+        Rectangle[] bounds = new Rectangle[devices.length];
+        for (int i = 0; i < devices.length; i++) {
+            bounds[i] = devices[i].getDefaultConfiguration().getBounds();
+        }
+        return bounds;
+    }
+
+    @Override
+    public Point getPointerLocation() {
+        try {
+            PointerInfo info = MouseInfo.getPointerInfo();
+            return info != null ? info.getLocation() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void mouseMove(int x, int y) {
+        inputRobot.mouseMove(x, y);
+    }
+
+    @Override
+    public void mousePress(int buttons) {
+        inputRobot.mousePress(buttons);
+    }
+
+    @Override
+    public void mouseRelease(int buttons) {
+        inputRobot.mouseRelease(buttons);
+    }
+
+    @Override
+    public void mouseWheel(int notches) {
+        inputRobot.mouseWheel(notches);
+    }
+
+    @Override
+    public void keyPress(int keyCode) {
+        inputRobot.keyPress(keyCode);
+    }
+
+    @Override
+    public void keyRelease(int keyCode) {
+        inputRobot.keyRelease(keyCode);
+    }
+
+    @Override
+    public void setClipboardText(String text) {
+        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(text), null);
+    }
+
+    @Override
+    public BufferedImage createScreenCapture(Rectangle area) {
+        return captureRobot.createScreenCapture(area);
+    }
+}
@@ -0,0 +1,68 @@
+package com.mousecontrol.desktop;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Desktop
+ *
+ * Everything the application does to the machine it runs on: reading and moving the
+ * pointer, pressing mouse buttons and keys, turning the wheel, setting the clipboard and capturing the
+ * screen. The controllers and the screen capturer only go through this interface, so
+ * the whole pipeline can run against a SimulatedDesktop where there is no display.
+ * Get the process-wide instance from Desktops.
+ *
+ * Coordinates are virtual-screen pixels, as with java.awt.Robot. Implementations
+ * must be thread-safe.
+ */
+public interface Desktop {
+
+    /** Short name for logs and events ("robot", "simulated"). */
+    String getName();
+
+    /** Bounds of each monitor, in GraphicsEnvironment.getScreenDevices() order. */
+    Rectangle[] getScreenBounds();
+
+    /** Current pointer position, or null if it cannot be determined. */
+    Point getPointerLocation();
+
+    void mouseMove(int x, int y);
+
+    /** Press mouse buttons (InputEvent.BUTTONn_DOWN_MASK bits). */
+    void mousePress(int buttons);
+
+    void mouseRelease(int buttons);
+
+    /** Turn the mouse wheel by whole notches; negative is up (away from the user). */
+    void mouseWheel(int notches);
+
+    /** Press a key (KeyEvent VK code); throws IllegalArgumentException for invalid codes. */
+    void keyPress(int keyCode);
+
+    void keyRelease(int keyCode);
+
+    void setClipboardText(String text);
+
+    /** A new image of the given screen area. */
+    BufferedImage createScreenCapture(Rectangle area);
+
+    /**
+     * Union of all monitor bounds (the full virtual screen), written into out.
+     */
+    static void virtualBounds(Rectangle[] monitors, Rectangle out) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+
+        for (Rectangle b : monitors) {
+            minX = Math.min(minX, b.x);
+            minY = Math.min(minY, b.y);
+            maxX = Math.max(maxX, b.x + b.width);
+            maxY = Math.max(maxY, b.y + b.height);
+        }
+
+        out.setBounds(minX, minY, maxX - minX, maxY - minY);
+    }
+}
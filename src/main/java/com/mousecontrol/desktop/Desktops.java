@@ -0,0 +1,111 @@
+package com.mousecontrol.desktop;
+
+import java.awt.AWTException;
+import java.awt.GraphicsEnvironment;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Desktops
+ *
+ * Holds the process-wide Desktop. It is created on first use from the
+ * mousecontrol.desktop system property:
+ *
+ *   (unset) or "robot"          the real desktop (AwtDesktop)
+ *   "simulated"                 a SimulatedDesktop with one 1920x1080 monitor
+ *   "simulated:<layout>"        a SimulatedDesktop, e.g. simulated:1920x1080,1280x1024
+ *
+ * Tools and tests can install their own with set() before anything uses it.
+ * startAsync() creates it on a background thread (Robot setup takes a while on a
+ * real display); get() then waits for that instead of creating a second one.
+ */
+public final class Desktops {
+
+    public static final String PROPERTY = "mousecontrol.desktop";
+
+    private static Desktop current;
+    private static CompletableFuture<Desktop> pending;
+
+    private Desktops() {}
+
+    public static Desktop get() {
+        CompletableFuture<Desktop> p;
+        synchronized (Desktops.class) {
+            if (current != null) return current;
+            if (pending == null) {
+                current = create(System.getProperty(PROPERTY, ""));
+                System.out.println("Desktops: using " + describe(current));
+                return current;
+            }
+            p = pending;
+        }
+        try {
+            return p.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Create the desktop on a background thread, if it does not exist yet.
+     */
+    public static synchronized CompletableFuture<Desktop> startAsync() {
+        if (current != null) return CompletableFuture.completedFuture(current);
+        if (pending == null) {
+            CompletableFuture<Desktop> p = new CompletableFuture<>();
+            pending = p;
+            Thread t = new Thread(() -> {
+                try {
+                    Desktop d = create(System.getProperty(PROPERTY, ""));
+                    synchronized (Desktops.class) {
+                        if (current == null) current = d;
+                    }
+                    System.out.println("Desktops: using " + describe(d));
+                    p.complete(d);
+                } catch (Throwable e) {
+                    p.completeExceptionally(e);
+                }
+            }, "desktop-init");
+            t.setDaemon(true);
+            t.start();
+        }
+        return pending;
+    }
+
+    public static synchronized void set(Desktop desktop) {
+        current = desktop;
+    }
+
+    /**
+     * The desktop behind a LazyDesktop (creating it if needed), or desktop itself.
+     */
+    public static Desktop unwrap(Desktop desktop) {
+        return desktop instanceof LazyDesktop ? ((LazyDesktop) desktop).resolve() : desktop;
+    }
+
+    /**
+     * Create a desktop from a mousecontrol.desktop value.
+     */
+    public static Desktop create(String spec) {
+        String s = spec == null ? "" : spec.trim();
+        if (s.equalsIgnoreCase("simulated") || s.toLowerCase().startsWith("simulated:")) {
+            return SimulatedDesktop.parse(s.length() > "simulated".length() ? s.substring("simulated:".length()) : "");
+        }
+        if (!s.isEmpty() && !s.equalsIgnoreCase("robot")) {
+            throw new IllegalArgumentException("Unknown " + PROPERTY + " \"" + s + "\" (robot, simulated[:layout])");
+        }
+        if (GraphicsEnvironment.isHeadless()) {
+            throw new IllegalStateException("No display available; run with -D" + PROPERTY + "=simulated to use a simulated desktop");
+        }
+        try {
+            return new AwtDesktop();
+        } catch (AWTException e) {
+            throw new RuntimeException("Failed to create Robot instance", e);
+        }
+    }
+
+    private static String describe(Desktop desktop) {
+        return desktop instanceof SimulatedDesktop ? desktop.toString() : desktop.getName() + " desktop";
+    }
+}
@@ -0,0 +1,76 @@
+package com.mousecontrol.desktop;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Environment
+ *
+ * What the platform offers for input injection, probed once per process: the OS, the
+ * Linux session type and display, and whether xdotool is installed. Finding xdotool
+ * means starting a process, so probeAsync() runs it on a background thread while the
+ * rest of startup continues; get() waits for that probe (or runs it) and caches the
+ * result.
+ */
+public final class Environment {
+
+    private static CompletableFuture<Environment> probe;
+
+    public final String osName;
+    public final boolean windows;
+    public final boolean linux;
+    public final boolean mac;
+    public final String sessionType;
+    public final String display;
+    public final boolean wayland;
+    public final boolean xdotool;
+
+    private Environment() {
+        osName = System.getProperty("os.name");
+        String os = osName.toLowerCase();
+        windows = os.contains("win");
+        linux = os.contains("linux");
+        mac = os.contains("mac") || os.contains("darwin");
+        sessionType = System.getenv("XDG_SESSION_TYPE");
+        display = System.getenv("DISPLAY");
+        wayland = sessionType != null && sessionType.contains("wayland");
+        xdotool = linux && findXdotool();
+    }
+
+    /**
+     * Start probing in the background, if nobody has yet.
+     */
+    public static synchronized CompletableFuture<Environment> probeAsync() {
+        if (probe == null) {
+            probe = new CompletableFuture<>();
+            CompletableFuture<Environment> p = probe;
+            Thread t = new Thread(() -> {
+                try {
+                    p.complete(new Environment());
+                } catch (Throwable e) {
+                    p.completeExceptionally(e);
+                }
+            }, "environment-probe");
+            t.setDaemon(true);
+            t.start();
+        }
+        return probe;
+    }
+
+    public static Environment get() {
+        return probeAsync().join();
+    }
+
+    /**
+     * Check if xdotool is available on the system
+     */
+    private static boolean findXdotool() {
+        try {
+            ProcessBuilder pb = new ProcessBuilder("which", "xdotool");
+            Process process = pb.start();
+            int exitCode = process.waitFor();
+            return exitCode == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.mousecontrol.desktop;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * LazyDesktop
+ *
+ * Stands in for the process-wide desktop (Desktops.get()) until something actually
+ * uses it, so controllers can be built, and the server can listen, while the desktop
+ * is still being created in the background. The first call waits for it.
+ */
+public final class LazyDesktop implements Desktop {
+
+    private volatile Desktop desktop;
+
+    /** The real desktop, created or waited for on first use. */
+    public Desktop resolve() {
+        Desktop d = desktop;
+        if (d == null) desktop = d = Desktops.get();
+        return d;
+    }
+
+    public boolean isResolved() {
+        return desktop != null;
+    }
+
+    @Override
+    public String getName() {
+        return resolve().getName();
+    }
+
+    @Override
+    public Rectangle[] getScreenBounds() {
+        return resolve().getScreenBounds();
+    }
+
+    @Override
+    public Point getPointerLocation() {
+        return resolve().getPointerLocation();
+    }
+
+    @Override
+    public void mouseMove(int x, int y) {
+        resolve().mouseMove(x, y);
+    }
+
+    @Override
+    public void mousePress(int buttons) {
+        resolve().mousePress(buttons);
+    }
+
+    @Override
+    public void mouseRelease(int buttons) {
+        resolve().mouseRelease(buttons);
+    }
+
+    @Override
+    public void mouseWheel(int notches) {
+        resolve().mouseWheel(notches);
+    }
+
+    @Override
+    public void keyPress(int keyCode) {
+        resolve().keyPress(keyCode);
+    }
+
+    @Override
+    public void keyRelease(int keyCode) {
+        resolve().keyRelease(keyCode);
+    }
+
+    @Override
+    public void setClipboardText(String text) {
+        resolve().setClipboardText(text);
+    }
+
+    @Override
+    public BufferedImage createScreenCapture(Rectangle area) {
+        return resolve().createScreenCapture(area);
+    }
+
+    @Override
+    public String toString() {
+        Desktop d = desktop;
+        return d != null ? d.toString() : "lazy desktop (not created yet)";
+    }
+}
@@ -0,0 +1,326 @@
+package com.mousecontrol.desktop;
+
+import com.mousecontrol.metrics.MetricsRegistry;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SimulatedDesktop
+ *
+ * An in-memory desktop for running the application where there is no display (CI,
+ * load tests, benchmarks). It has a configurable monitor layout, a pointer that
+ * moves and is clamped like a real one, screen content that changes over time, and
+ * it records every injected action so a test can check what the pipeline did.
+ *
+ * Screen content is drawn per capture from the elapsed time: a flat background per
+ * monitor with a grid and title bar, a box that bounces around, a band that sweeps
+ * down and a clock. Most of the picture is static from one frame to the next, as on
+ * a real desktop, so codecs see realistic work.
+ *
+ * The last DEFAULT_EVENT_HISTORY injected actions are kept; counters cover the
+ * whole run.
+ */
+public final class SimulatedDesktop implements Desktop {
+
+    public static final String DEFAULT_LAYOUT = "1920x1080";
+    public static final int DEFAULT_EVENT_HISTORY = 10_000;
+
+    private static final Color[] MONITOR_COLORS = {
+            new Color(0x2B4C7E), new Color(0x3E6B48), new Color(0x6B3E5E), new Color(0x7A5C2E)
+    };
+    private static final Color BAND_COLOR = new Color(0xE0E0E0);
+    private static final int GRID = 64;
+    private static final int BOX = 120;
+    private static final double BOX_SPEED = 240; // px/s
+    private static final double SWEEP_SECONDS = 4;
+
+    /**
+     * One injected action. x/y are set for moves (the clamped target), code for
+     * buttons, keys and wheel notches, text for the clipboard.
+     */
+    public static final class InjectedEvent {
+        public enum Type { MOVE, MOUSE_PRESS, MOUSE_RELEASE, MOUSE_WHEEL, KEY_PRESS, KEY_RELEASE, CLIPBOARD }
+
+        public final Type type;
+        public final long timestampNanos;
+        public final int x;
+        public final int y;
+        public final int code;
+        public final String text;
+
+        InjectedEvent(Type type, long timestampNanos, int x, int y, int code, String text) {
+            this.type = type;
+            this.timestampNanos = timestampNanos;
+            this.x = x;
+            this.y = y;
+            this.code = code;
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case MOVE: return "MOVE " + x + "," + y;
+                case CLIPBOARD: return "CLIPBOARD " + text.length() + " chars";
+                default: return type + " " + code;
+            }
+        }
+    }
+
+    private final Rectangle[] monitors;
+    private final Rectangle screen = new Rectangle();
+    private final long startNanos = System.nanoTime();
+    private final Font font = new Font(Font.MONOSPACED, Font.BOLD, 28);
+
+    // pointer, buttons, keys and history are guarded by this
+    private int pointerX;
+    private int pointerY;
+    private int buttons;
+    private final ArrayDeque<InjectedEvent> history = new ArrayDeque<>();
+    private String clipboard = "";
+
+    private final AtomicLong moves = new AtomicLong();
+    private final AtomicLong buttonPresses = new AtomicLong();
+    private final AtomicLong keyPresses = new AtomicLong();
+    private final AtomicLong wheelNotches = new AtomicLong();
+    private final AtomicLong captures = new AtomicLong();
+
+    /**
+     * A desktop with the given monitors (virtual-screen bounds). The pointer starts in
+     * the middle of the first one.
+     */
+    public SimulatedDesktop(Rectangle... monitors) {
+        if (monitors.length == 0) throw new IllegalArgumentException("at least one monitor is required");
+        this.monitors = new Rectangle[monitors.length];
+        for (int i = 0; i < monitors.length; i++) this.monitors[i] = new Rectangle(monitors[i]);
+        Desktop.virtualBounds(this.monitors, screen);
+        pointerX = monitors[0].x + monitors[0].width / 2;
+        pointerY = monitors[0].y + monitors[0].height / 2;
+    }
+
+    /**
+     * Parse a monitor layout: comma-separated WIDTHxHEIGHT, each optionally followed by
+     * +X+Y. Monitors without a position are placed left to right, top-aligned.
+     * Example: "1920x1080,1280x1024" or "2560x1440+0+0,1920x1080+2560+180".
+     */
+    public static SimulatedDesktop parse(String layout) {
+        String spec = layout == null || layout.trim().isEmpty() ? DEFAULT_LAYOUT : layout.trim();
+        List<Rectangle> monitors = new ArrayList<>();
+        int nextX = 0;
+        for (String part : spec.split(",")) {
+            String[] pos = part.trim().split("\\+");
+            String[] size = pos[0].split("x");
+            try {
+                int w = Integer.parseInt(size[0].trim());
+                int h = Integer.parseInt(size[1].trim());
+                int x = pos.length > 2 ? Integer.parseInt(pos[1].trim()) : nextX;
+                int y = pos.length > 2 ? Integer.parseInt(pos[2].trim()) : 0;
+                if (w <= 0 || h <= 0) throw new IllegalArgumentException("empty monitor: " + part);
+                monitors.add(new Rectangle(x, y, w, h));
+                nextX = Math.max(nextX, x + w);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("bad monitor \"" + part + "\", expected WIDTHxHEIGHT[+X+Y]");
+            }
+        }
+        return new SimulatedDesktop(monitors.toArray(new Rectangle[0]));
+    }
+
+    @Override
+    public String getName() {
+        return "simulated";
+    }
+
+    @Override
+    public Rectangle[] getScreenBounds() {
+        Rectangle[] copy = new Rectangle[monitors.length];
+        for (int i = 0; i < monitors.length; i++) copy[i] = new Rectangle(monitors[i]);
+        return copy;
+    }
+
+    @Override
+    public synchronized Point getPointerLocation() {
+        return new Point(pointerX, pointerY);
+    }
+
+    @Override
+    public void mouseMove(int x, int y) {
+        // like a real pointer, it cannot leave the screen
+        int cx = Math.max(screen.x, Math.min(x, screen.x + screen.width - 1));
+        int cy = Math.max(screen.y, Math.min(y, screen.y + screen.height - 1));
+        synchronized (this) {
+            pointerX = cx;
+            pointerY = cy;
+            record(new InjectedEvent(InjectedEvent.Type.MOVE, System.nanoTime(), cx, cy, 0, null));
+        }
+        moves.incrementAndGet();
+    }
+
+    @Override
+    public void mousePress(int buttons) {
+        synchronized (this) {
+            this.buttons |= buttons;
+            record(new InjectedEvent(InjectedEvent.Type.MOUSE_PRESS, System.nanoTime(), pointerX, pointerY, buttons, null));
+        }
+        buttonPresses.incrementAndGet();
+    }
+
+    @Override
+    public void mouseRelease(int buttons) {
+        synchronized (this) {
+            this.buttons &= ~buttons;
+            record(new InjectedEvent(InjectedEvent.Type.MOUSE_RELEASE, System.nanoTime(), pointerX, pointerY, buttons, null));
+        }
+    }
+
+    @Override
+    public void mouseWheel(int notches) {
+        synchronized (this) {
+            record(new InjectedEvent(InjectedEvent.Type.MOUSE_WHEEL, System.nanoTime(), pointerX, pointerY, notches, null));
+        }
+        wheelNotches.addAndGet(Math.abs(notches));
+    }
+
+    @Override
+    public void keyPress(int keyCode) {
+        if (keyCode <= 0) throw new IllegalArgumentException("Invalid key code");
+        synchronized (this) {
+            record(new InjectedEvent(InjectedEvent.Type.KEY_PRESS, System.nanoTime(), 0, 0, keyCode, null));
+        }
+        keyPresses.incrementAndGet();
+    }
+
+    @Override
+    public void keyRelease(int keyCode) {
+        if (keyCode <= 0) throw new IllegalArgumentException("Invalid key code");
+        synchronized (this) {
+            record(new InjectedEvent(InjectedEvent.Type.KEY_RELEASE, System.nanoTime(), 0, 0, keyCode, null));
+        }
+    }
+
+    @Override
+    public void setClipboardText(String text) {
+        synchronized (this) {
+            clipboard = text;
+            record(new InjectedEvent(InjectedEvent.Type.CLIPBOARD, System.nanoTime(), 0, 0, 0, text));
+        }
+    }
+
+    private void record(InjectedEvent event) {
+        if (history.size() == DEFAULT_EVENT_HISTORY) history.removeFirst();
+        history.addLast(event);
+    }
+
+    @Override
+    public BufferedImage createScreenCapture(Rectangle area) {
+        BufferedImage image = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            g.translate(-area.x, -area.y);
+            g.setFont(font);
+            for (int i = 0; i < monitors.length; i++) {
+                Rectangle m = monitors[i];
+                if (!m.intersects(area)) continue;
+                g.setClip(m.intersection(area));
+                drawMonitor(g, i, m, seconds);
+            }
+        } finally {
+            g.dispose();
+        }
+        captures.incrementAndGet();
+        return image;
+    }
+
+    private static void drawMonitor(Graphics2D g, int index, Rectangle m, double seconds) {
+        Color base = MONITOR_COLORS[index % MONITOR_COLORS.length];
+        g.setColor(base);
+        g.fillRect(m.x, m.y, m.width, m.height);
+
+        g.setColor(base.brighter());
+        for (int x = m.x; x < m.x + m.width; x += GRID) g.drawLine(x, m.y, x, m.y + m.height);
+        for (int y = m.y; y < m.y + m.height; y += GRID) g.drawLine(m.x, y, m.x + m.width, y);
+
+        // a band sweeping down, like a scrolling window
+        int band = Math.max(GRID, m.height / 10);
+        int sweepY = m.y + (int) ((seconds % SWEEP_SECONDS) / SWEEP_SECONDS * (m.height + band)) - band;
+        g.setColor(BAND_COLOR);
+        g.fillRect(m.x, sweepY, m.width, band);
+
+        // a box bouncing off the edges
+        int rangeX = Math.max(1, m.width - BOX);
+        int rangeY = Math.max(1, m.height - BOX);
+        int bx = m.x + bounce(seconds * BOX_SPEED + index * 97, rangeX);
+        int by = m.y + bounce(seconds * BOX_SPEED * 0.7 + index * 53, rangeY);
+        g.setColor(Color.ORANGE);
+        g.fillRect(bx, by, BOX, BOX);
+
+        g.setColor(Color.DARK_GRAY);
+        g.fillRect(m.x, m.y, m.width, 40);
+        g.setColor(Color.WHITE);
+        g.drawString(String.format("Monitor %d  %dx%d  t=%.2f s", index, m.width, m.height, seconds),
+                m.x + 12, m.y + 30);
+    }
+
+    private static int bounce(double distance, int range) {
+        int d = (int) (distance % (2L * range));
+        return d < range ? d : 2 * range - d;
+    }
+
+    // ===== inspection =====
+
+    /** Buttons currently held (InputEvent.BUTTONn_DOWN_MASK bits). */
+    public synchronized int getButtons() {
+        return buttons;
+    }
+
+    public synchronized String getClipboardText() {
+        return clipboard;
+    }
+
+    /** The most recent injected actions, oldest first. */
+    public synchronized List<InjectedEvent> getEvents() {
+        return new ArrayList<>(history);
+    }
+
+    public synchronized void clearEvents() {
+        history.clear();
+    }
+
+    /**
+     * Export the injected action and capture counts, so a load test can compare what
+     * reached the desktop with what the client sent.
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.counter("mousecontrol_simulated_moves_total", "Pointer moves applied to the simulated desktop.", moves::get);
+        registry.counter("mousecontrol_simulated_button_presses_total", "Mouse button presses on the simulated desktop.", buttonPresses::get);
+        registry.counter("mousecontrol_simulated_key_presses_total", "Key presses on the simulated desktop.", keyPresses::get);
+        registry.counter("mousecontrol_simulated_wheel_notches_total", "Mouse wheel notches turned on the simulated desktop (either direction).", wheelNotches::get);
+        registry.counter("mousecontrol_simulated_captures_total", "Screen captures of the simulated desktop.", captures::get);
+    }
+
+    public long getMoves() { return moves.get(); }
+    public long getButtonPresses() { return buttonPresses.get(); }
+    public long getKeyPresses() { return keyPresses.get(); }
+    public long getWheelNotches() { return wheelNotches.get(); }
+    public long getCaptures() { return captures.get(); }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("simulated desktop ");
+        for (int i = 0; i < monitors.length; i++) {
+            Rectangle m = monitors[i];
+            if (i > 0) sb.append(',');
+            sb.append(m.width).append('x').append(m.height).append('+').append(m.x).append('+').append(m.y);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,29 @@
+package com.mousecontrol.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * FrameCaptureEvent
+ *
+ * Grabbing the capture area from the screen (Robot.createScreenCapture).
+ */
+@Name("com.mousecontrol.FrameCapture")
+@Label("Frame Capture")
+@Category({"Mouse Control", "Streaming"})
+@Description("Grabbing the capture area from the screen.")
+@StackTrace(false)
+@Threshold("0 ms")
+public final class FrameCaptureEvent extends Event {
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+}
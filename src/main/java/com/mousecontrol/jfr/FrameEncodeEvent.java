@@ -0,0 +1,44 @@
+package com.mousecontrol.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * FrameEncodeEvent
+ *
+ * Encoding one frame, or all regions of it, for a stream or tier.
+ */
+@Name("com.mousecontrol.FrameEncode")
+@Label("Frame Encode")
+@Category({"Mouse Control", "Streaming"})
+@Description("Encoding one frame (all of its regions) for a stream or tier.")
+@StackTrace(false)
+@Threshold("0 ms")
+public final class FrameEncodeEvent extends Event {
+
+    @Label("Stream")
+    @Description("udp, or websocket:<tier>")
+    public String stream;
+
+    @Label("Codec")
+    public String codec;
+
+    @Label("Width")
+    @Description("Captured frame width, before any tier scaling")
+    public int width;
+
+    @Label("Height")
+    @Description("Captured frame height, before any tier scaling")
+    public int height;
+
+    @Label("Regions")
+    public int regions;
+
+    @Label("Bytes")
+    public int bytes;
+}
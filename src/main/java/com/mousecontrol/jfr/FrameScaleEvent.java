@@ -0,0 +1,36 @@
+package com.mousecontrol.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * FrameScaleEvent
+ *
+ * Scaling a captured frame to the stream or tier width, including the cursor
+ * overlay when drawn.
+ */
+@Name("com.mousecontrol.FrameScale")
+@Label("Frame Scale")
+@Category({"Mouse Control", "Streaming"})
+@Description("Scaling a captured frame (plus cursor overlay) to the stream or tier width.")
+@StackTrace(false)
+@Threshold("0 ms")
+public final class FrameScaleEvent extends Event {
+
+    @Label("Source Width")
+    public int sourceWidth;
+
+    @Label("Source Height")
+    public int sourceHeight;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+}
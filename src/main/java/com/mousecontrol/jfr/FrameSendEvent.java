@@ -0,0 +1,38 @@
+package com.mousecontrol.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * FrameSendEvent
+ *
+ * Handing one encoded frame to the transport: UDP fragments to every subscriber,
+ * or WebSocket messages to every ready viewer in a tier.
+ */
+@Name("com.mousecontrol.FrameSend")
+@Label("Frame Send")
+@Category({"Mouse Control", "Streaming"})
+@Description("Handing one encoded frame to the transport for every destination.")
+@StackTrace(false)
+@Threshold("0 ms")
+public final class FrameSendEvent extends Event {
+
+    @Label("Stream")
+    @Description("udp, or websocket:<tier>")
+    public String stream;
+
+    @Label("Bytes")
+    public int bytes;
+
+    @Label("Destinations")
+    public int destinations;
+
+    @Label("Packets")
+    @Description("UDP packets or WebSocket messages per destination")
+    public int packets;
+}
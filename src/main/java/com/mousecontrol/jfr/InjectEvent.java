@@ -0,0 +1,46 @@
+package com.mousecontrol.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * InjectEvent
+ *
+ * One mouse or keyboard action injected into the desktop via Robot or xdotool.
+ * Mouse moves include the settle delay and position check.
+ */
+@Name("com.mousecontrol.Inject")
+@Label("Input Injection")
+@Category({"Mouse Control", "Input"})
+@Description("Injecting a mouse or keyboard action into the desktop.")
+@StackTrace(false)
+@Threshold("0 ms")
+public final class InjectEvent extends Event {
+
+    @Label("Action")
+    @Description("move, leftClick, rightClick, scroll, zoom, type, tap, chord, press or release")
+    public String action;
+
+    @Label("Method")
+    @Description("robot or xdotool")
+    public String method;
+
+    @Label("Delta X")
+    @Description("Pixels moved, or horizontal wheel notches for scroll")
+    public int dx;
+
+    @Label("Delta Y")
+    @Description("Pixels moved, vertical wheel notches for scroll, or zoom steps")
+    public int dy;
+
+    @Label("Key Code")
+    public int keyCode;
+
+    @Label("Characters")
+    public int characters;
+}
@@ -0,0 +1,27 @@
+package com.mousecontrol.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * InputParseEvent
+ *
+ * Parsing one control-connection line; kind is motion, keyboard, control or
+ * invalid.
+ */
+@Name("com.mousecontrol.InputParse")
+@Label("Input Parse")
+@Category({"Mouse Control", "Input"})
+@Description("Parsing one control-connection line into a command or motion sample.")
+@StackTrace(false)
+@Threshold("0 ms")
+public final class InputParseEvent extends Event {
+
+    @Label("Kind")
+    public String kind;
+}
@@ -0,0 +1,28 @@
+package com.mousecontrol.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * InputReadEvent
+ *
+ * One line read from the TCP control connection. The duration includes waiting for
+ * the client, so long reads mean an idle client; look at the gaps between reads
+ * and parses.
+ */
+@Name("com.mousecontrol.InputRead")
+@Label("Input Read")
+@Category({"Mouse Control", "Input"})
+@Description("Reading one line from the control connection, including time spent waiting for the client.")
+@StackTrace(false)
+@Threshold("0 ms")
+public final class InputReadEvent extends Event {
+
+    @Label("Bytes")
+    public int bytes;
+}
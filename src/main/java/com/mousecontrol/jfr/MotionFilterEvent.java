@@ -0,0 +1,36 @@
+package com.mousecontrol.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * MotionFilterEvent
+ *
+ * MovementProcessor turning one gyro sample into a pixel delta (calibration, dead
+ * zone, sensitivity, smoothing).
+ */
+@Name("com.mousecontrol.MotionFilter")
+@Label("Motion Filter")
+@Category({"Mouse Control", "Input"})
+@Description("Calibration, dead zone, scaling and smoothing of one motion sample.")
+@StackTrace(false)
+@Threshold("0 ms")
+public final class MotionFilterEvent extends Event {
+
+    @Label("Gyro X")
+    public double gyroX;
+
+    @Label("Gyro Y")
+    public double gyroY;
+
+    @Label("Move X")
+    public int moveX;
+
+    @Label("Move Y")
+    public int moveY;
+}
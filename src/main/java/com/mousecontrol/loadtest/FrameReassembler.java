@@ -0,0 +1,271 @@
+package com.mousecontrol.loadtest;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * FrameReassembler
+ *
+ * Reference implementation of the client side of the UDP stream: reassembles MSTR
+ * fragments (header versions 1-3) into frames, rebuilds a single lost fragment per
+ * group from its XOR parity, and counts MCUR cursor packets. A frame is complete when
+ * all of its regions are; it is lost when it is still incomplete once the stream has
+ * moved WINDOW frames past it or it is older than TIMEOUT_NANOS. Frames the stream
+ * skipped entirely (no fragment arrived) are lost too.
+ *
+ * Completed frames are checked for a JPEG or QOI signature. Counters are cumulative;
+ * latencies (first fragment to completion) are collected into a Samples the caller
+ * owns. Not thread-safe.
+ */
+final class FrameReassembler {
+
+    static final int MAGIC_FRAME = 0x4D535452; // 'MSTR'
+    static final int MAGIC_CURSOR = 0x4D435552; // 'MCUR'
+    private static final int WINDOW = 16;
+    private static final long TIMEOUT_NANOS = 1_000_000_000L;
+    // a seq this far behind the newest one means the server restarted its counter
+    private static final int RESTART_GAP = 1000;
+
+    private static final class Region {
+        int total;
+        int group;
+        int frameLength = -1;
+        byte[][] data;
+        byte[][] parity;
+        int dataReceived;
+        int parityReceived;
+        boolean done;
+    }
+
+    private static final class Frame {
+        final long firstNanos;
+        Region[] regions;
+        int regionsDone;
+
+        Frame(long firstNanos) {
+            this.firstNanos = firstNanos;
+        }
+    }
+
+    private final TreeMap<Integer, Frame> pending = new TreeMap<>();
+    private final Samples latencies;
+    private boolean started;
+    private int newest;
+
+    long framesComplete;
+    long framesLost;
+    long framesInvalid;
+    long frameBytes;
+    long fragments;
+    long fragmentsLost;
+    long fragmentsRecovered;
+    long latePackets; // fragments of frames already given up on
+    long cursorPackets;
+    int cursorX;
+    int cursorY;
+
+    FrameReassembler(Samples latencies) {
+        this.latencies = latencies;
+    }
+
+    /**
+     * Handle one datagram received at now (System.nanoTime()).
+     */
+    void accept(ByteBuffer packet, long now) {
+        if (packet.remaining() < 13) return;
+        int magic = packet.getInt(packet.position());
+        if (magic == MAGIC_CURSOR) {
+            if (packet.remaining() >= 17) {
+                cursorPackets++;
+                cursorX = packet.getInt(packet.position() + 9);
+                cursorY = packet.getInt(packet.position() + 13);
+            }
+            return;
+        }
+        if (magic != MAGIC_FRAME) return;
+
+        int p = packet.position();
+        int version = packet.get(p + 4);
+        int seq = packet.getInt(p + 5);
+        int total = packet.getShort(p + 9) & 0xFFFF;
+        int index = packet.getShort(p + 11) & 0xFFFF;
+        int group = 0, frameLength = -1, region = 0, regionCount = 1;
+        int header = 13;
+        if (version >= 2) {
+            group = packet.get(p + 13) & 0xFF;
+            frameLength = packet.getInt(p + 14);
+            header = 18;
+        }
+        if (version >= 3) {
+            region = packet.get(p + 18) & 0xFF;
+            regionCount = Math.max(1, packet.get(p + 19) & 0xFF);
+            header = 32;
+        }
+        if (packet.remaining() < header || total == 0) return;
+        fragments++;
+
+        Frame frame = frame(seq, now);
+        if (frame == null) {
+            // parity still arriving for a frame that completed without it is expected
+            if (seq <= newest - WINDOW) latePackets++;
+            return;
+        }
+        if (frame.regions == null) frame.regions = new Region[regionCount];
+        if (region >= frame.regions.length) return;
+        Region r = frame.regions[region];
+        if (r == null) {
+            r = new Region();
+            r.total = total;
+            r.group = group;
+            r.frameLength = frameLength;
+            r.data = new byte[total][];
+            r.parity = new byte[group > 0 ? (total + group - 1) / group : 0][];
+            frame.regions[region] = r;
+        }
+        if (r.done) return;
+
+        byte[] payload = new byte[packet.remaining() - header];
+        packet.position(p + header);
+        packet.get(payload);
+        if (index < r.total) {
+            if (r.data[index] == null) {
+                r.data[index] = payload;
+                r.dataReceived++;
+            }
+        } else if (index - r.total < r.parity.length && r.parity[index - r.total] == null) {
+            r.parity[index - r.total] = payload;
+            r.parityReceived++;
+        }
+
+        if (r.dataReceived == r.total || (r.group > 0 && r.dataReceived + r.parityReceived >= r.total && recover(r))) {
+            completeRegion(seq, frame, r, now);
+        }
+        expire(now);
+    }
+
+    /**
+     * The frame for seq, creating it (and placeholders for any skipped seqs), or null
+     * if seq is too old to still be assembled.
+     */
+    private Frame frame(int seq, long now) {
+        if (!started || seq < newest - RESTART_GAP) {
+            expireAll();
+            started = true;
+            newest = seq - 1;
+        }
+        if (seq > newest) {
+            // skipped frames stay pending so a reordered fragment can still complete them
+            for (int s = Math.max(newest + 1, seq - WINDOW); s < seq; s++) {
+                pending.putIfAbsent(s, new Frame(now));
+            }
+            framesLost += Math.max(0, seq - WINDOW - (newest + 1));
+            newest = seq;
+            Frame f = new Frame(now);
+            pending.put(seq, f);
+            return f;
+        }
+        return pending.get(seq);
+    }
+
+    /**
+     * Rebuild the one missing data fragment of each group from its parity. Returns false,
+     * changing nothing, if some group is missing more than parity can repair.
+     */
+    private boolean recover(Region r) {
+        int groups = r.parity.length;
+        for (int g = 0; g < groups; g++) {
+            int missing = 0;
+            for (int i = g * r.group; i < Math.min(r.total, (g + 1) * r.group); i++) {
+                if (r.data[i] == null) missing++;
+            }
+            if (missing > 1 || (missing == 1 && r.parity[g] == null)) return false;
+        }
+        int fragmentSize = fragmentSize(r);
+        for (int g = 0; g < groups; g++) {
+            int lost = -1;
+            for (int i = g * r.group; i < Math.min(r.total, (g + 1) * r.group); i++) {
+                if (r.data[i] == null) lost = i;
+            }
+            if (lost < 0) continue;
+            byte[] rebuilt = r.parity[g].clone();
+            for (int i = g * r.group; i < Math.min(r.total, (g + 1) * r.group); i++) {
+                if (i == lost) continue;
+                byte[] d = r.data[i];
+                for (int k = 0; k < d.length && k < rebuilt.length; k++) rebuilt[k] ^= d[k];
+            }
+            int length = lost == r.total - 1 && r.frameLength >= 0
+                    ? r.frameLength - (r.total - 1) * fragmentSize
+                    : fragmentSize;
+            r.data[lost] = java.util.Arrays.copyOf(rebuilt, Math.max(0, Math.min(length, rebuilt.length)));
+            r.dataReceived++;
+            fragmentsRecovered++;
+        }
+        return true;
+    }
+
+    /** Size of every fragment but the last: any full fragment, or the parity size. */
+    private static int fragmentSize(Region r) {
+        for (int i = 0; i < r.total - 1; i++) {
+            if (r.data[i] != null) return r.data[i].length;
+        }
+        for (byte[] parity : r.parity) {
+            if (parity != null) return parity.length;
+        }
+        return r.data[r.total - 1] != null ? r.data[r.total - 1].length : 0;
+    }
+
+    private void completeRegion(int seq, Frame frame, Region r, long now) {
+        r.done = true;
+        int length = 0;
+        for (byte[] d : r.data) length += d.length;
+        byte[] image = new byte[length];
+        int off = 0;
+        for (byte[] d : r.data) {
+            System.arraycopy(d, 0, image, off, d.length);
+            off += d.length;
+        }
+        if (!validImage(image) || (r.frameLength >= 0 && r.frameLength != length)) framesInvalid++;
+        frameBytes += length;
+        r.data = null;
+        r.parity = null;
+
+        if (++frame.regionsDone == frame.regions.length) {
+            framesComplete++;
+            latencies.add(now - frame.firstNanos);
+            pending.remove(seq);
+        }
+    }
+
+    static boolean validImage(byte[] image) {
+        if (image.length >= 2 && (image[0] & 0xFF) == 0xFF && (image[1] & 0xFF) == 0xD8) return true;
+        return image.length >= 4 && image[0] == 'q' && image[1] == 'o' && image[2] == 'i' && image[3] == 'f';
+    }
+
+    /**
+     * Give up on frames the stream has moved past or that are too old.
+     */
+    void expire(long now) {
+        Iterator<Map.Entry<Integer, Frame>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Frame> e = it.next();
+            if (e.getKey() > newest - WINDOW && now - e.getValue().firstNanos < TIMEOUT_NANOS) break;
+            lose(e.getValue());
+            it.remove();
+        }
+    }
+
+    private void expireAll() {
+        for (Frame f : pending.values()) lose(f);
+        pending.clear();
+    }
+
+    private void lose(Frame f) {
+        framesLost++;
+        if (f.regions == null) return;
+        for (Region r : f.regions) {
+            if (r != null && !r.done) fragmentsLost += (r.total - r.dataReceived) + (r.parity.length - r.parityReceived);
+        }
+    }
+}
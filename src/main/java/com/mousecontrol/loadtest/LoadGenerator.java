@@ -0,0 +1,282 @@
+package com.mousecontrol.loadtest;
+
+import com.mousecontrol.communication.FrameScheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LoadGenerator
+ *
+ * Drives TCPServer the way a phone does: one control connection that streams gyro
+ * samples as JSON lines (synthetic, or replayed from a recording) at a fixed rate,
+ * optionally mixed with keyboard commands, and reports what was sent each second.
+ *
+ * The server does not answer on the control connection, so acknowledged throughput
+ * is read from its metrics endpoint (-Dmousecontrol.metricsPort): the motion and
+ * keyboard event counters are scraped before and after each session, once the server
+ * has drained its backlog. With --clicks it also reports the server's click injection
+ * latency (read to injected) for the session, which shows whether clicks stay fast while
+ * the motion flood is more than the desktop can take. Run the server with -Dmousecontrol.desktop=simulated to
+ * measure the pipeline without moving the real cursor.
+ *
+ * TCPServer serves one control client at a time (a new connection replaces the old
+ * one), so sessions run one after another; use several to include reconnects. For the
+ * same reason, to measure input under streaming load this connection starts the UDP
+ * stream itself (--stream-port) and StreamReceiver only listens.
+ *
+ * Command line (all optional):
+ *   --host 127.0.0.1 --port 5000     server
+ *   --rate 200                       samples per second (0 = as fast as possible)
+ *   --duration 10                    seconds per session
+ *   --sessions 1                     sessions, one after another
+ *   --trace synthetic | <dir>        synthetic trace, or a recording's motion events
+ *   --speed 1                        time scale for a recording (ignored when --rate is given)
+ *   --keys 0                         keyboard "type" commands per second
+ *   --clicks                         send the synthetic trace's clicks (off by default)
+ *   --stream-port 0                  also start UDP streaming to this local port
+ *   --stream-fps 30
+ *   --metrics http://127.0.0.1:9100/metrics
+ */
+public final class LoadGenerator {
+
+    private static final String MOTION_COUNTER = "mousecontrol_input_events_total{type=\"motion\"}";
+    private static final String KEYBOARD_COUNTER = "mousecontrol_input_events_total{type=\"keyboard\"}";
+    private static final String BACKLOG_GAUGE = "mousecontrol_input_backlog_bytes";
+    private static final String QUEUED_GAUGE = "mousecontrol_input_queued";
+    private static final String CLICK_BUCKET = "mousecontrol_input_injection_seconds_bucket{type=\"click\",le=\"";
+    // a write that takes longer than this means the server is not keeping up
+    private static final long STALL_NANOS = 1_000_000L;
+    private static final long DRAIN_TIMEOUT_NANOS = 10_000_000_000L;
+
+    private final String host;
+    private final int port;
+    private final double rate;
+    private final long durationNanos;
+    private final MotionTrace trace;
+    private final double speed;
+    private final double keysPerSecond;
+    private final boolean clicks;
+    private final URI metrics;
+    private final int streamPort;
+    private final int streamFps;
+
+    private long sent;
+    private long keysSent;
+    private long bytes;
+    private long stalls;
+    private long stallNanos;
+
+    LoadGenerator(Options o) throws IOException {
+        host = o.string("host", "127.0.0.1");
+        port = o.integer("port", 5000);
+        durationNanos = (long) (o.decimal("duration", 10) * 1e9);
+        clicks = o.has("clicks");
+        String source = o.string("trace", "synthetic");
+        trace = "synthetic".equalsIgnoreCase(source)
+                ? MotionTrace.synthetic(4096, 1, clicks)
+                : MotionTrace.recorded(Paths.get(source));
+        // a recording keeps its own timing unless a rate is forced
+        rate = o.decimal("rate", trace.isTimed() ? -1 : 200);
+        speed = o.decimal("speed", 1);
+        keysPerSecond = o.decimal("keys", 0);
+        metrics = o.has("metrics") ? URI.create(o.string("metrics", "")) : null;
+        streamPort = o.integer("stream-port", 0);
+        streamFps = o.integer("stream-fps", 30);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options o = new Options(args);
+        LoadGenerator gen = new LoadGenerator(o);
+        int sessions = Math.max(1, o.integer("sessions", 1));
+        long totalSent = 0, totalAcked = 0;
+        boolean acked = gen.metrics != null;
+        for (int s = 1; s <= sessions; s++) {
+            long[] before = acked ? gen.scrape() : null;
+            Map<String, Long> clicksBefore = acked && gen.clicks ? gen.scrapeClickBuckets() : null;
+            long start = System.nanoTime();
+            gen.runSession(s);
+            long sendNanos = System.nanoTime() - start;
+            String line = String.format("session %d: sent %d motion + %d keyboard lines in %.1f s (%.0f lines/s, %.0f KB/s), %d write stalls (%.1f ms)",
+                    s, gen.sent, gen.keysSent, sendNanos / 1e9, (gen.sent + gen.keysSent) / (sendNanos / 1e9),
+                    gen.bytes / 1024.0 / (sendNanos / 1e9), gen.stalls, gen.stallNanos / 1e6);
+            System.out.println(line);
+            totalSent += gen.sent + gen.keysSent;
+            if (acked) {
+                long[] after = gen.awaitDrain(before, gen.sent, gen.keysSent);
+                long drainNanos = System.nanoTime() - start;
+                long motion = after[0] - before[0];
+                long keys = after[1] - before[1];
+                totalAcked += motion + keys;
+                System.out.println(String.format("session %d: server processed %d motion + %d keyboard events in %.1f s (%.0f events/s, %.1f%% of sent)",
+                        s, motion, keys, drainNanos / 1e9, (motion + keys) / (drainNanos / 1e9),
+                        100.0 * (motion + keys) / Math.max(1, gen.sent + gen.keysSent)));
+                if (clicksBefore != null) System.out.println("session " + s + ": " + clickLatency(clicksBefore, gen.scrapeClickBuckets()));
+            }
+        }
+        if (sessions > 1) {
+            System.out.println("total: sent " + totalSent + (acked ? ", processed " + totalAcked : "") + " lines");
+        }
+    }
+
+    /**
+     * One connection: send for the configured duration, printing the send rate every second.
+     */
+    private void runSession(int session) throws IOException {
+        sent = keysSent = bytes = stalls = stallNanos = 0;
+        try (Socket socket = new Socket()) {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), 5000);
+            OutputStream out = socket.getOutputStream();
+            StringBuilder line = new StringBuilder(128);
+            if (streamPort > 0) {
+                write(out, "{\"stream\":{\"cmd\":\"start\",\"port\":" + streamPort + ",\"fps\":" + streamFps + "}}\n");
+            }
+            FrameScheduler clock = rate > 0 ? new FrameScheduler("loadgen", rate, FrameScheduler.SkipPolicy.CATCH_UP) : null;
+
+            long start = System.nanoTime();
+            long end = start + durationNanos;
+            long nextReport = start + 1_000_000_000L;
+            long keyPeriod = keysPerSecond > 0 ? (long) (1e9 / keysPerSecond) : 0;
+            long nextKey = start + keyPeriod;
+            long lastSent = 0;
+            int i = 0;
+            long lap = 0;
+            while (true) {
+                long now;
+                if (clock != null) {
+                    clock.awaitNext();
+                    now = System.nanoTime();
+                } else if (trace.isTimed() && speed > 0) {
+                    // replay the recording's timing, looping over it
+                    long due = start + (long) ((lap * trace.periodNanos() + trace.offsetNanos(i)) / speed);
+                    while ((now = System.nanoTime()) < due) LockSupport.parkNanos(due - now);
+                } else {
+                    now = System.nanoTime();
+                }
+                if (now >= end) break;
+
+                line.setLength(0);
+                trace.appendLine(i, line);
+                write(out, line);
+                sent++;
+                if (++i == trace.size()) {
+                    i = 0;
+                    lap++;
+                }
+
+                if (keyPeriod > 0 && now >= nextKey) {
+                    line.setLength(0);
+                    line.append("{\"keyboard\":{\"cmd\":\"type\",\"text\":\"load ").append(keysSent).append("\"}}\n");
+                    write(out, line);
+                    keysSent++;
+                    nextKey += keyPeriod;
+                }
+
+                if (now >= nextReport) {
+                    System.out.println(String.format("session %d t=%ds: %d lines/s%s", session,
+                            (now - start) / 1_000_000_000L, sent - lastSent,
+                            clock != null ? String.format(" (target %.0f, %d skipped)", rate, clock.getSkippedTicks()) : ""));
+                    lastSent = sent;
+                    nextReport += 1_000_000_000L;
+                }
+            }
+        }
+    }
+
+    private void write(OutputStream out, CharSequence line) throws IOException {
+        byte[] data = line.toString().getBytes(StandardCharsets.UTF_8);
+        long t0 = System.nanoTime();
+        out.write(data);
+        long took = System.nanoTime() - t0;
+        if (took > STALL_NANOS) {
+            stalls++;
+            stallNanos += took;
+        }
+        bytes += data.length;
+    }
+
+    /**
+     * Wait until the server has counted everything sent in this session, or its counters
+     * stop moving, and return the final counters.
+     */
+    private long[] awaitDrain(long[] before, long motion, long keys) throws IOException {
+        long deadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+        long[] last = scrape();
+        while (System.nanoTime() < deadline) {
+            if (last[0] - before[0] >= motion && last[1] - before[1] >= keys) return last;
+            LockSupport.parkNanos(200_000_000L);
+            long[] now = scrape();
+            // the connection is closed, so once nothing moves and nothing is buffered the rest was lost
+            if (now[0] == last[0] && now[1] == last[1] && now[2] == 0) return now;
+            last = now;
+        }
+        return last;
+    }
+
+    /**
+     * Motion events, keyboard events and input backlog (unread bytes plus events queued for
+     * the desktop) from the server's metrics.
+     */
+    private long[] scrape() throws IOException {
+        long[] values = new long[3];
+        for (String line : fetchMetrics().split("\n")) {
+            if (line.startsWith(MOTION_COUNTER + " ")) values[0] = value(line);
+            else if (line.startsWith(KEYBOARD_COUNTER + " ")) values[1] = value(line);
+            else if (line.startsWith(BACKLOG_GAUGE + " ") || line.startsWith(QUEUED_GAUGE + " ")) values[2] += value(line);
+        }
+        return values;
+    }
+
+    /**
+     * The server's click injection latency buckets: upper bound in seconds ("+Inf" last)
+     * to cumulative count, in bucket order.
+     */
+    private Map<String, Long> scrapeClickBuckets() throws IOException {
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        for (String line : fetchMetrics().split("\n")) {
+            if (!line.startsWith(CLICK_BUCKET)) continue;
+            buckets.put(line.substring(CLICK_BUCKET.length(), line.indexOf('"', CLICK_BUCKET.length())), value(line));
+        }
+        return buckets;
+    }
+
+    /**
+     * p50 / p99 / max of the clicks injected between two scrapes, as bucket upper bounds.
+     */
+    private static String clickLatency(Map<String, Long> before, Map<String, Long> after) {
+        long total = after.getOrDefault("+Inf", 0L) - before.getOrDefault("+Inf", 0L);
+        if (total == 0) return "no clicks timed (is the metrics endpoint on?)";
+        String p50 = null, p99 = null, max = null;
+        double last = 0;
+        for (Map.Entry<String, Long> e : after.entrySet()) {
+            long n = e.getValue() - before.getOrDefault(e.getKey(), 0L);
+            boolean open = "+Inf".equals(e.getKey());
+            if (!open) last = Double.parseDouble(e.getKey()) * 1000;
+            String bound = String.format(open ? "> %.2f ms" : "<= %.2f ms", last);
+            if (p50 == null && n >= total * 0.5) p50 = bound;
+            if (p99 == null && n >= total * 0.99) p99 = bound;
+            if (max == null && n >= total) max = bound;
+        }
+        return String.format("%d clicks injected, latency p50 %s, p99 %s, max %s", total, p50, p99, max);
+    }
+
+    private String fetchMetrics() throws IOException {
+        try (InputStream in = metrics.toURL().openStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static long value(String line) {
+        return (long) Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+    }
+}
@@ -0,0 +1,102 @@
+package com.mousecontrol.loadtest;
+
+import com.mousecontrol.models.MotionData;
+import com.mousecontrol.recording.SessionPlayer;
+import com.mousecontrol.recording.SessionRecorder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * MotionTrace
+ *
+ * Gyro samples to send to the server: either synthetic (deterministic, shaped like a
+ * phone held in the hand: slow sweeps with sensor noise, still periods and clicks) or
+ * the motion events of a SessionRecorder recording, with their original timing.
+ */
+public final class MotionTrace {
+
+    private final MotionData[] samples;
+    // offset of each sample from the first, or null when the trace has no timing of its own
+    private final long[] offsetsNanos;
+
+    private MotionTrace(MotionData[] samples, long[] offsetsNanos) {
+        this.samples = samples;
+        this.offsetsNanos = offsetsNanos;
+    }
+
+    /**
+     * Deterministic synthetic samples.
+     */
+    public static MotionData[] synthetic(int samples, long seed) {
+        Random rnd = new Random(seed);
+        MotionData[] trace = new MotionData[samples];
+        for (int i = 0; i < samples; i++) {
+            boolean still = (i / 200) % 4 == 3;
+            double gx = still ? rnd.nextGaussian() * 0.005 : Math.sin(i / 40.0) * 0.8 + rnd.nextGaussian() * 0.02;
+            double gy = still ? rnd.nextGaussian() * 0.005 : Math.cos(i / 55.0) * 0.5 + rnd.nextGaussian() * 0.02;
+            trace[i] = new MotionData(gx, gy, i % 97 == 0, i % 389 == 0);
+        }
+        return trace;
+    }
+
+    static MotionTrace synthetic(int samples, long seed, boolean clicks) {
+        MotionData[] trace = synthetic(samples, seed);
+        if (!clicks) {
+            for (int i = 0; i < trace.length; i++) trace[i] = new MotionData(trace[i].gyroX, trace[i].gyroY, false, false);
+        }
+        return new MotionTrace(trace, null);
+    }
+
+    /**
+     * The motion events of a recording, in order, with their recorded timing.
+     */
+    static MotionTrace recorded(Path dir) throws IOException {
+        List<SessionPlayer.Record> records = SessionPlayer.open(dir).getRecords();
+        List<MotionData> samples = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        for (SessionPlayer.Record r : records) {
+            if (r.type != SessionRecorder.TYPE_MOTION) continue;
+            samples.add(r.motion());
+            times.add(r.timestampNanos);
+        }
+        if (samples.isEmpty()) throw new IOException("no motion events in " + dir);
+        long[] offsets = new long[times.size()];
+        for (int i = 0; i < offsets.length; i++) offsets[i] = times.get(i) - times.get(0);
+        return new MotionTrace(samples.toArray(new MotionData[0]), offsets);
+    }
+
+    int size() {
+        return samples.length;
+    }
+
+    boolean isTimed() {
+        return offsetsNanos != null;
+    }
+
+    /** Offset of sample i from the first one (timed traces only). */
+    long offsetNanos(int i) {
+        return offsetsNanos[i];
+    }
+
+    /** Length of one pass over a timed trace, including one average gap before it repeats. */
+    long periodNanos() {
+        long span = offsetsNanos[offsetsNanos.length - 1];
+        return span + (offsetsNanos.length > 1 ? span / (offsetsNanos.length - 1) : 1_000_000L);
+    }
+
+    /**
+     * Sample i as the JSON line the mobile client sends (with the newline).
+     */
+    void appendLine(int i, StringBuilder out) {
+        MotionData d = samples[i];
+        out.append("{\"gyroX\":").append(d.gyroX)
+                .append(",\"gyroY\":").append(d.gyroY)
+                .append(",\"leftClick\":").append(d.leftClick)
+                .append(",\"rightClick\":").append(d.rightClick)
+                .append("}\n");
+    }
+}
@@ -0,0 +1,60 @@
+package com.mousecontrol.loadtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Options
+ *
+ * Minimal "--name value" command-line parsing for the load-test tools. Arguments
+ * that do not start with "--" are kept in order as positional arguments; a
+ * "--name" followed by another option or nothing is a flag.
+ */
+final class Options {
+
+    private final Map<String, String> values = new HashMap<>();
+    private final List<String> positional = new ArrayList<>();
+
+    Options(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.startsWith("--")) {
+                String name = a.substring(2);
+                int eq = name.indexOf('=');
+                if (eq >= 0) {
+                    values.put(name.substring(0, eq), name.substring(eq + 1));
+                } else if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                    values.put(name, args[++i]);
+                } else {
+                    values.put(name, "true");
+                }
+            } else {
+                positional.add(a);
+            }
+        }
+    }
+
+    boolean has(String name) {
+        return values.containsKey(name);
+    }
+
+    String string(String name, String def) {
+        return values.getOrDefault(name, def);
+    }
+
+    int integer(String name, int def) {
+        String v = values.get(name);
+        return v != null ? Integer.parseInt(v) : def;
+    }
+
+    double decimal(String name, double def) {
+        String v = values.get(name);
+        return v != null ? Double.parseDouble(v) : def;
+    }
+
+    String positional(int index, String def) {
+        return index < positional.size() ? positional.get(index) : def;
+    }
+}
@@ -0,0 +1,42 @@
+package com.mousecontrol.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Samples
+ *
+ * A growable list of nanosecond durations with percentiles, for the load-test
+ * reports. Not thread-safe.
+ */
+final class Samples {
+
+    private long[] values = new long[256];
+    private int size;
+
+    void add(long nanos) {
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        values[size++] = nanos;
+    }
+
+    void addAll(Samples other) {
+        if (size + other.size > values.length) values = Arrays.copyOf(values, Math.max(values.length * 2, size + other.size));
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /** Percentile (0..1) in milliseconds, or 0 when empty. */
+    double percentileMillis(double p) {
+        if (size == 0) return 0;
+        long[] sorted = Arrays.copyOf(values, size);
+        Arrays.sort(sorted);
+        return sorted[Math.min(size - 1, (int) (p * size))] / 1e6;
+    }
+}
@@ -0,0 +1,335 @@
+package com.mousecontrol.loadtest;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StreamReceiver
+ *
+ * Reference screen-stream client for measuring the streamers over loopback. In udp
+ * mode it binds a port and reassembles MSTR fragments (see FrameReassembler); in ws
+ * mode it connects to the WebSocketStreamer and counts whole-frame and MREG region
+ * messages. Every second it prints achieved fps and bitrate, lost frames, fragment
+ * loss and FEC recoveries (udp), reassembly latency and cursor updates, and a summary
+ * at the end.
+ *
+ * With --control it also acts as the phone: it connects to TCPServer, sends the start
+ * command for the chosen stream, reports feedback every second (so the adaptive
+ * controller sees a real client) and stops the stream on exit. Without it, it only
+ * listens, e.g. for a stream LoadGenerator started with --stream-port (the server
+ * takes one control connection at a time).
+ *
+ * Command line (all optional):
+ *   udp | ws                          mode (default udp)
+ *   --port 6000                       udp: local port; ws: streamer port
+ *   --host 127.0.0.1                  ws: streamer host
+ *   --duration 10                     seconds
+ *   --control 127.0.0.1:5000          send start/feedback/stop over a control connection
+ *   --drop 0                          udp: fraction of datagrams to discard, to exercise FEC
+ *   --fps 30 --max-width 1280 --quality 0.7 --codec jpeg
+ *   --fec off|xor|auto --strips 0 --cursor-rate 0
+ */
+public final class StreamReceiver {
+
+    private static final int REGION_MAGIC = 0x4D524547; // 'MREG'
+    private static final long SECOND = 1_000_000_000L;
+
+    private final boolean udp;
+    private final Options options;
+    private final int port;
+    private final long durationNanos;
+    private final double drop;
+    private final Random random = new Random(1);
+    private long dropped;
+    private final Samples latencies = new Samples();
+    private final Samples allLatencies = new Samples();
+
+    private Socket control;
+    private OutputStream controlOut;
+
+    StreamReceiver(Options o) {
+        options = o;
+        udp = !"ws".equalsIgnoreCase(o.positional(0, "udp"));
+        port = o.integer("port", udp ? 6000 : 8080);
+        durationNanos = (long) (o.decimal("duration", 10) * 1e9);
+        drop = o.decimal("drop", 0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        StreamReceiver receiver = new StreamReceiver(new Options(args));
+        try {
+            if (receiver.udp) receiver.runUdp();
+            else receiver.runWebSocket();
+        } finally {
+            receiver.closeControl();
+        }
+    }
+
+    // ===== udp =====
+
+    private void runUdp() throws IOException {
+        FrameReassembler frames = new FrameReassembler(latencies);
+        try (DatagramSocket socket = new DatagramSocket(port)) {
+            socket.setReceiveBufferSize(4 * 1024 * 1024);
+            socket.setSoTimeout(100);
+            openControl("stream");
+            System.out.println("StreamReceiver: listening for UDP frames on port " + socket.getLocalPort());
+
+            byte[] buf = new byte[65536];
+            DatagramPacket packet = new DatagramPacket(buf, buf.length);
+            long start = System.nanoTime();
+            long nextReport = start + SECOND;
+            long lastFrames = 0, lastBytes = 0, lastLost = 0, lastFragments = 0, lastFragmentsLost = 0,
+                    lastRecovered = 0, lastCursor = 0;
+            while (true) {
+                try {
+                    packet.setLength(buf.length);
+                    socket.receive(packet);
+                    if (drop > 0 && random.nextDouble() < drop) dropped++;
+                    else frames.accept(ByteBuffer.wrap(buf, 0, packet.getLength()), System.nanoTime());
+                } catch (SocketTimeoutException ignored) {
+                    frames.expire(System.nanoTime());
+                }
+                long now = System.nanoTime();
+                if (now < nextReport) continue;
+
+                long received = frames.framesComplete - lastFrames;
+                long fragmentsLost = frames.fragmentsLost - lastFragmentsLost;
+                System.out.println(String.format("t=%ds: %d fps, %.0f kbps, %d lost, fragments %d (%d lost, %d recovered), reassembly p50 %.2f ms p99 %.2f ms, %d cursor",
+                        (now - start) / SECOND, received, (frames.frameBytes - lastBytes) * 8 / 1000.0,
+                        frames.framesLost - lastLost, frames.fragments - lastFragments, fragmentsLost,
+                        frames.fragmentsRecovered - lastRecovered, latencies.percentileMillis(0.5),
+                        latencies.percentileMillis(0.99), frames.cursorPackets - lastCursor));
+                // the server sizes FEC from raw loss, including what parity repaired
+                sendFeedback("udp", received, fragmentsLost + frames.fragmentsRecovered - lastRecovered);
+                lastFrames = frames.framesComplete;
+                lastBytes = frames.frameBytes;
+                lastLost = frames.framesLost;
+                lastFragments = frames.fragments;
+                lastFragmentsLost = frames.fragmentsLost;
+                lastRecovered = frames.fragmentsRecovered;
+                lastCursor = frames.cursorPackets;
+                drainLatencies();
+                nextReport += SECOND;
+                if (now - start >= durationNanos) break;
+            }
+            sendControl("{\"stream\":{\"cmd\":\"stop\",\"port\":" + socket.getLocalPort() + "}}");
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("summary: %d frames in %.1f s (%.1f fps, %.0f kbps), %d lost (%.2f%%), %d invalid, fragments %d (%d lost, %d recovered, %d late), reassembly p50 %.2f ms p99 %.2f ms, %d cursor packets%s",
+                    frames.framesComplete, seconds, frames.framesComplete / seconds, frames.frameBytes * 8 / 1000.0 / seconds,
+                    frames.framesLost, 100.0 * frames.framesLost / Math.max(1, frames.framesComplete + frames.framesLost),
+                    frames.framesInvalid, frames.fragments, frames.fragmentsLost, frames.fragmentsRecovered, frames.latePackets,
+                    allLatencies.percentileMillis(0.5), allLatencies.percentileMillis(0.99), frames.cursorPackets,
+                    dropped > 0 ? ", " + dropped + " datagrams dropped on purpose" : ""));
+        }
+    }
+
+    // ===== websocket =====
+
+    /**
+     * Counts WebSocket messages. Whole frames complete on arrival; region messages complete
+     * their frame when all regions of a seq are in, and a seq that never completes before
+     * the next one starts is lost. Callbacks run on the client's thread, reports on main.
+     */
+    private final class WsClient extends WebSocketClient {
+        long framesComplete;
+        long framesLost;
+        long framesInvalid;
+        long bytes;
+        long cursorMessages;
+        private int seq;
+        private int regionsSeen;
+        private long firstRegionNanos;
+        private boolean inFrame;
+
+        WsClient(URI uri) {
+            super(uri);
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+            System.out.println("StreamReceiver: connected to " + getURI());
+        }
+
+        @Override
+        public synchronized void onMessage(String message) {
+            if (message.startsWith("{\"cursor\"")) cursorMessages++;
+        }
+
+        @Override
+        public synchronized void onMessage(ByteBuffer message) {
+            long now = System.nanoTime();
+            bytes += message.remaining();
+            if (message.remaining() < 22 || message.getInt(message.position()) != REGION_MAGIC) {
+                byte[] head = new byte[Math.min(4, message.remaining())];
+                message.duplicate().get(head);
+                if (!FrameReassembler.validImage(head)) framesInvalid++;
+                framesComplete++;
+                return;
+            }
+            int p = message.position();
+            int s = message.getInt(p + 5);
+            int count = Math.max(1, message.get(p + 10) & 0xFF);
+            if (!inFrame || s != seq) {
+                if (inFrame) framesLost++;
+                if (inFrame && s > seq + 1) framesLost += s - seq - 1;
+                seq = s;
+                regionsSeen = 0;
+                firstRegionNanos = now;
+                inFrame = true;
+            }
+            if (++regionsSeen == count) {
+                framesComplete++;
+                latencies.add(now - firstRegionNanos);
+                inFrame = false;
+            }
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            System.out.println("StreamReceiver: connection closed (" + code + (reason.isEmpty() ? "" : ", " + reason) + ")");
+        }
+
+        @Override
+        public void onError(Exception e) {
+            System.err.println("StreamReceiver: " + e.getMessage());
+        }
+    }
+
+    private void runWebSocket() throws Exception {
+        String host = options.string("host", "127.0.0.1");
+        openControl("websocket");
+        URI uri = URI.create("ws://" + host + ":" + port);
+        WsClient client = connectWebSocket(uri);
+        try {
+            long start = System.nanoTime();
+            long nextReport = start + SECOND;
+            long lastFrames = 0, lastBytes = 0, lastLost = 0, lastCursor = 0;
+            while (true) {
+                long now;
+                while ((now = System.nanoTime()) < nextReport) {
+                    TimeUnit.NANOSECONDS.sleep(nextReport - now);
+                }
+                synchronized (client) {
+                    long received = client.framesComplete - lastFrames;
+                    System.out.println(String.format("t=%ds: %d fps, %.0f kbps, %d lost, region assembly p50 %.2f ms p99 %.2f ms, %d cursor",
+                            (now - start) / SECOND, received, (client.bytes - lastBytes) * 8 / 1000.0,
+                            client.framesLost - lastLost, latencies.percentileMillis(0.5),
+                            latencies.percentileMillis(0.99), client.cursorMessages - lastCursor));
+                    sendFeedback("websocket", received, 0);
+                    lastFrames = client.framesComplete;
+                    lastBytes = client.bytes;
+                    lastLost = client.framesLost;
+                    lastCursor = client.cursorMessages;
+                    drainLatencies();
+                }
+                nextReport += SECOND;
+                if (now - start >= durationNanos) break;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            synchronized (client) {
+                System.out.println(String.format("summary: %d frames in %.1f s (%.1f fps, %.0f kbps), %d lost (%.2f%%), %d invalid, region assembly p50 %.2f ms p99 %.2f ms, %d cursor messages",
+                        client.framesComplete, seconds, client.framesComplete / seconds, client.bytes * 8 / 1000.0 / seconds,
+                        client.framesLost, 100.0 * client.framesLost / Math.max(1, client.framesComplete + client.framesLost),
+                        client.framesInvalid, allLatencies.percentileMillis(0.5), allLatencies.percentileMillis(0.99),
+                        client.cursorMessages));
+            }
+        } finally {
+            client.closeBlocking();
+            sendControl("{\"websocket\":{\"cmd\":\"stop\"}}");
+        }
+    }
+
+    /**
+     * Connect, retrying for a few seconds: after a start command the streamer binds its
+     * port asynchronously.
+     */
+    private WsClient connectWebSocket(URI uri) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            WsClient client = new WsClient(uri);
+            if (client.connectBlocking(2, TimeUnit.SECONDS)) return client;
+            if (attempt >= 10) throw new IOException("could not connect to " + uri);
+            Thread.sleep(250);
+        }
+    }
+
+    // ===== control connection =====
+
+    /**
+     * Connect to TCPServer and start the given stream ("stream" for UDP, "websocket"), if
+     * --control was given.
+     */
+    private void openControl(String kind) throws IOException {
+        if (!options.has("control")) return;
+        String address = options.string("control", "127.0.0.1:5000");
+        int colon = address.lastIndexOf(':');
+        control = new Socket();
+        control.setTcpNoDelay(true);
+        control.connect(new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))), 5000);
+        controlOut = control.getOutputStream();
+
+        StringBuilder cmd = new StringBuilder("{\"").append(kind).append("\":{\"cmd\":\"start\"");
+        cmd.append(",\"port\":").append(port);
+        cmd.append(",\"fps\":").append(options.integer("fps", 30));
+        cmd.append(",\"maxWidth\":").append(options.integer("max-width", 1280));
+        cmd.append(",\"quality\":").append(options.decimal("quality", 0.7));
+        cmd.append(",\"codec\":\"").append(options.string("codec", "jpeg")).append('"');
+        cmd.append(",\"strips\":").append(options.integer("strips", 0));
+        cmd.append(",\"cursorRate\":").append(options.integer("cursor-rate", 0));
+        if (options.has("fec")) cmd.append(",\"fec\":{\"mode\":\"").append(options.string("fec", "off")).append("\"}");
+        cmd.append("}}");
+        sendControl(cmd.toString());
+        System.out.println("StreamReceiver: sent " + cmd + " to " + address);
+    }
+
+    /**
+     * Report this second's counts like a phone does; decode and end-to-end latency are
+     * not measured here.
+     */
+    private void sendFeedback(String stream, long framesReceived, long fragmentsLost) {
+        // the UDP port names this subscriber, so the server keeps a window for it alone
+        sendControl("{\"feedback\":{\"stream\":\"" + stream + "\",\"port\":" + port + ",\"framesReceived\":" + framesReceived
+                + ",\"fragmentsLost\":" + fragmentsLost + "}}");
+    }
+
+    private void sendControl(String line) {
+        if (controlOut == null) return;
+        try {
+            controlOut.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            controlOut.flush();
+        } catch (IOException e) {
+            System.err.println("StreamReceiver: control connection failed: " + e.getMessage());
+            closeControl();
+        }
+    }
+
+    private void closeControl() {
+        if (control == null) return;
+        try {
+            control.close();
+        } catch (IOException ignored) {
+            // nothing left to report to
+        }
+        control = null;
+        controlOut = null;
+    }
+
+    private void drainLatencies() {
+        allLatencies.addAll(latencies);
+        latencies.clear();
+    }
+}
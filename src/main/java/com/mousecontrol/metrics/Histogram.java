@@ -0,0 +1,92 @@
+package com.mousecontrol.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram
+ *
+ * Latency histogram with fixed bucket bounds (nanoseconds), one LongAdder per
+ * bucket. Rendered in seconds with cumulative buckets, like a Prometheus
+ * histogram.
+ *
+ * Timing needs two System.nanoTime calls, so it only happens while a
+ * MetricsServer is running: start() returns 0 otherwise and stop(0) does
+ * nothing.
+ */
+public final class Histogram {
+
+    private final long[] boundsNanos;
+    private final LongAdder[] buckets;
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAdder count = new LongAdder();
+    private volatile boolean enabled = false;
+
+    /**
+     * @param boundsMicros ascending upper bounds of the buckets in microseconds; a
+     *                     last, open bucket is added
+     */
+    public Histogram(long... boundsMicros) {
+        this.boundsNanos = new long[boundsMicros.length];
+        for (int i = 0; i < boundsMicros.length; i++) {
+            if (i > 0 && boundsMicros[i] <= boundsMicros[i - 1]) throw new IllegalArgumentException("bounds must ascend");
+            boundsNanos[i] = boundsMicros[i] * 1_000;
+        }
+        this.buckets = new LongAdder[boundsMicros.length + 1];
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Start timing: the current System.nanoTime, or 0 when metrics are not being collected.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the time since a start() value (nothing if it was 0).
+     */
+    public void stop(long startNanos) {
+        if (startNanos != 0) observe(System.nanoTime() - startNanos);
+    }
+
+    public void observe(long nanos) {
+        int i = 0;
+        while (i < boundsNanos.length && nanos > boundsNanos[i]) i++;
+        buckets[i].increment();
+        sumNanos.add(nanos);
+        count.increment();
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Append the _bucket/_sum/_count lines for this histogram.
+     */
+    void render(StringBuilder out, String name, String labels) {
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            String le = i < boundsNanos.length ? seconds(boundsNanos[i]) : "+Inf";
+            out.append(name).append("_bucket{");
+            if (!labels.isEmpty()) out.append(labels).append(',');
+            out.append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+        }
+        String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braces).append(' ').append(seconds(sumNanos.sum())).append('\n');
+        out.append(name).append("_count").append(braces).append(' ').append(count.sum()).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+}
@@ -0,0 +1,156 @@
+package com.mousecontrol.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * MetricsRegistry
+ *
+ * Named metrics rendered in the Prometheus text format. Components own their
+ * Counter/Histogram objects and register them here once; values that already
+ * exist elsewhere (queue depths, drop counters) are registered as functions
+ * and read only at scrape time, so they cost nothing in between.
+ *
+ * Registration and scraping are synchronized; recording into the metrics is
+ * lock-free and never touches the registry.
+ */
+public final class MetricsRegistry {
+
+    private enum Type { COUNTER, GAUGE, HISTOGRAM }
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final Type type;
+        final List<Series> series = new ArrayList<>();
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private static final class Series {
+        final String labels;
+        final Object source; // Counter, Histogram, LongSupplier or DoubleSupplier
+
+        Series(String labels, Object source) {
+            this.labels = labels;
+            this.source = source;
+        }
+    }
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+    private final List<Histogram> histograms = new ArrayList<>();
+    private boolean enabled = false;
+
+    /**
+     * Register a counter. labels are alternating names and values, e.g. ("stream", "udp").
+     */
+    public synchronized Counter counter(String name, String help, Counter counter, String... labels) {
+        add(name, help, Type.COUNTER, labels, counter);
+        return counter;
+    }
+
+    /**
+     * Register a counter whose value is kept elsewhere (read at scrape time).
+     */
+    public synchronized void counter(String name, String help, LongSupplier value, String... labels) {
+        add(name, help, Type.COUNTER, labels, value);
+    }
+
+    public synchronized void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        add(name, help, Type.GAUGE, labels, value);
+    }
+
+    /**
+     * Gauge with the per-second rate of a counter, measured between consecutive scrapes.
+     */
+    public synchronized void rate(String name, String help, Counter counter, String... labels) {
+        long[] last = {counter.get(), System.nanoTime()};
+        DoubleSupplier rate = () -> {
+            long value = counter.get();
+            long now = System.nanoTime();
+            double perSecond = now > last[1] ? (value - last[0]) * 1e9 / (now - last[1]) : 0.0;
+            last[0] = value;
+            last[1] = now;
+            return perSecond;
+        };
+        add(name, help, Type.GAUGE, labels, rate);
+    }
+
+    public synchronized Histogram histogram(String name, String help, Histogram histogram, String... labels) {
+        add(name, help, Type.HISTOGRAM, labels, histogram);
+        histograms.add(histogram);
+        histogram.setEnabled(enabled);
+        return histogram;
+    }
+
+    /**
+     * Turn latency timing on or off for all registered histograms (on while being scraped).
+     */
+    synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        for (Histogram h : histograms) h.setEnabled(enabled);
+    }
+
+    private void add(String name, String help, Type type, String[] labels, Object source) {
+        Family family = families.get(name);
+        if (family == null) {
+            family = new Family(name, help, type);
+            families.put(name, family);
+        } else if (family.type != type) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        }
+        family.series.add(new Series(labels(labels), source));
+    }
+
+    private static String labels(String[] labels) {
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("labels must be name/value pairs");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) sb.append(',');
+            sb.append(labels[i]).append("=\"")
+              .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+              .append('"');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * All metrics in the Prometheus text exposition format (version 0.0.4).
+     */
+    public synchronized String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Family f : families.values()) {
+            out.append("# HELP ").append(f.name).append(' ').append(f.help).append('\n');
+            out.append("# TYPE ").append(f.name).append(' ').append(f.type.name().toLowerCase()).append('\n');
+            for (Series s : f.series) {
+                if (s.source instanceof Histogram) {
+                    ((Histogram) s.source).render(out, f.name, s.labels);
+                    continue;
+                }
+                out.append(f.name);
+                if (!s.labels.isEmpty()) out.append('{').append(s.labels).append('}');
+                out.append(' ').append(value(s.source)).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private static String value(Object source) {
+        try {
+            if (source instanceof Counter) return Long.toString(((Counter) source).get());
+            if (source instanceof LongSupplier) return Long.toString(((LongSupplier) source).getAsLong());
+            return Double.toString(((DoubleSupplier) source).getAsDouble());
+        } catch (Exception e) {
+            // a gauge whose source went away (e.g. a closed socket) reads as missing
+            return "NaN";
+        }
+    }
+}
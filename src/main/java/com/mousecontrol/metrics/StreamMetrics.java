@@ -0,0 +1,31 @@
+package com.mousecontrol.metrics;
+
+/**
+ * StreamMetrics
+ *
+ * Per-stream frame counters and encode latency, shared by the UDP and WebSocket
+ * streamers. Frames and bytes "sent" count each destination: a frame sent to
+ * three viewers counts three times.
+ */
+public final class StreamMetrics {
+
+    // 1 ms .. 160 ms: from tiny viewports up to 4K frames on a slow machine
+    private static final long[] ENCODE_BOUNDS_MICROS = {1_000, 2_500, 5_000, 10_000, 20_000, 40_000, 80_000, 160_000};
+
+    public final Counter framesCaptured = new Counter();
+    public final Counter framesEncoded = new Counter();
+    public final Counter framesSent = new Counter();
+    public final Counter bytesSent = new Counter();
+    public final Histogram encodeTime = new Histogram(ENCODE_BOUNDS_MICROS);
+
+    /**
+     * Register under the label stream="<name>".
+     */
+    public void register(MetricsRegistry registry, String stream) {
+        registry.counter("mousecontrol_frames_captured_total", "Frames captured from the screen.", framesCaptured, "stream", stream);
+        registry.counter("mousecontrol_frames_encoded_total", "Frames (or tiers/regions of a frame) encoded.", framesEncoded, "stream", stream);
+        registry.counter("mousecontrol_frames_sent_total", "Encoded frames handed to the transport, per destination.", framesSent, "stream", stream);
+        registry.counter("mousecontrol_stream_bytes_sent_total", "Encoded frame bytes handed to the transport, per destination.", bytesSent, "stream", stream);
+        registry.histogram("mousecontrol_frame_encode_seconds", "Time to encode one frame.", encodeTime, "stream", stream);
+    }
+}
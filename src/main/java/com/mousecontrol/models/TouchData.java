@@ -0,0 +1,45 @@
+package com.mousecontrol.models;
+
+/**
+ * TouchData
+ *
+ * One touchpad sample from the phone: the relative movement of each finger on the
+ * screen since the previous sample (in the phone's logical pixels), and the distance
+ * between the first two fingers when the client reports it (NaN otherwise).
+ * No fingers means all of them were lifted.
+ */
+public class TouchData {
+    public final int fingers;
+    // dx, dy per finger: deltas[2 * i], deltas[2 * i + 1]
+    public final double[] deltas;
+    public final double spread;
+
+    public TouchData(double[] deltas, double spread) {
+        this.fingers = deltas.length / 2;
+        this.deltas = deltas;
+        this.spread = spread;
+    }
+
+    public double dx(int finger) {
+        return deltas[2 * finger];
+    }
+
+    public double dy(int finger) {
+        return deltas[2 * finger + 1];
+    }
+
+    /**
+     * This sample followed by next, as one sample: deltas added, the later spread.
+     * Both must have the same number of fingers.
+     */
+    public TouchData plus(TouchData next) {
+        double[] sum = new double[deltas.length];
+        for (int i = 0; i < sum.length; i++) sum[i] = deltas[i] + next.deltas[i];
+        return new TouchData(sum, next.spread);
+    }
+
+    @Override
+    public String toString() {
+        return "TouchData{fingers=" + fingers + ", spread=" + spread + '}';
+    }
+}
@@ -1,6 +1,7 @@
 package com.mousecontrol.processor;
 
 import com.mousecontrol.controller.MouseController;
+import com.mousecontrol.jfr.MotionFilterEvent;
 import com.mousecontrol.models.MotionData;
 
 import java.awt.*;
@@ -29,6 +30,7 @@ public class MovementProcessor {
     private double calibX = 0.0;          // calibration offset for gyroX
     private double calibY = 0.0;          // calibration offset for gyroY
     private boolean invertY = true;       // invert Y axis (common expectation)
+    private volatile boolean logSamples = false; // print every sample's filter stages
 
     // internal smoothing state
     private double lastDx = 0.0;
@@ -75,15 +77,51 @@ public class MovementProcessor {
         this.invertY = invertY;
     }
 
+    /** Print each sample's gyro, raw, smoothed and pixel values (one line per sample; off by default). */
+    public void setLogSamples(boolean logSamples) {
+        this.logSamples = logSamples;
+    }
+
     // Reset smoothing state (useful after calibration or big jumps)
     public void resetSmoothingState() {
         lastDx = 0.0;
         lastDy = 0.0;
     }
 
+    /**
+     * Per-client part of the processor: calibration and smoothing state. Saved when a
+     * client disconnects and put back if it resumes its session.
+     */
+    public static final class State {
+        final double calibX;
+        final double calibY;
+        final double lastDx;
+        final double lastDy;
+
+        State(double calibX, double calibY, double lastDx, double lastDy) {
+            this.calibX = calibX;
+            this.calibY = calibY;
+            this.lastDx = lastDx;
+            this.lastDy = lastDy;
+        }
+    }
+
+    public State saveState() {
+        return new State(calibX, calibY, lastDx, lastDy);
+    }
+
+    public void restoreState(State state) {
+        calibX = state.calibX;
+        calibY = state.calibY;
+        lastDx = state.lastDx;
+        lastDy = state.lastDy;
+    }
+
     // ===== main entry point =====
     public void handle(MotionData data) {
         if (data == null) return;
+        MotionFilterEvent filterEvent = new MotionFilterEvent();
+        filterEvent.begin();
 
         // 1) Apply calibration offsets
         double gx = data.gyroX - calibX;
@@ -118,10 +156,19 @@ public class MovementProcessor {
         // 6) Round to integers (Robot API uses pixels)
         int moveX = (int) Math.round(dx);
         int moveY = (int) Math.round(dy);
+        filterEvent.end();
+        if (filterEvent.shouldCommit()) {
+            filterEvent.gyroX = data.gyroX;
+            filterEvent.gyroY = data.gyroY;
+            filterEvent.moveX = moveX;
+            filterEvent.moveY = moveY;
+            filterEvent.commit();
+        }
 
-        // DEBUG: Log processing details
-        System.out.printf("Gyro: (%.3f, %.3f) -> Raw: (%.2f, %.2f) -> Smoothed: (%.2f, %.2f) -> Pixels: (%d, %d)%n",
-                gx, gy, rawDx, rawDy, dx, dy, moveX, moveY);
+        if (logSamples) {
+            System.out.printf("Gyro: (%.3f, %.3f) -> Raw: (%.2f, %.2f) -> Smoothed: (%.2f, %.2f) -> Pixels: (%d, %d)%n",
+                    gx, gy, rawDx, rawDy, dx, dy, moveX, moveY);
+        }
 
         // Notify UI of cursor movement
         if (uiCallback != null && (moveX != 0 || moveY != 0)) {
@@ -133,9 +180,8 @@ public class MovementProcessor {
             mouse.moveBy(moveX, moveY);
             // Notify UI of new cursor position
             if (uiCallback != null) {
-                PointerInfo pointerInfo = MouseInfo.getPointerInfo();
-                if (pointerInfo != null) {
-                    java.awt.Point pos = pointerInfo.getLocation();
+                java.awt.Point pos = mouse.getPointerLocation();
+                if (pos != null) {
                     uiCallback.onCursorPosition((int)pos.getX(), (int)pos.getY());
                 }
             }
@@ -0,0 +1,257 @@
+package com.mousecontrol.processor;
+
+import com.mousecontrol.controller.KeyboardController;
+import com.mousecontrol.controller.MouseController;
+import com.mousecontrol.metrics.Counter;
+import com.mousecontrol.metrics.MetricsRegistry;
+import com.mousecontrol.models.TouchData;
+
+import java.awt.event.KeyEvent;
+
+/**
+ * TouchpadProcessor
+ *
+ * Turns touchpad samples (TouchData) into pointer movement and gestures, the way a
+ * laptop touchpad behaves:
+ *  - one finger moves the pointer
+ *  - two fingers moving together scroll (natural direction by default)
+ *  - two fingers moving apart or together zoom, sent as Ctrl+wheel
+ *  - three fingers swiping left, right, up or down send the desktop's shortcut for
+ *    switching workspaces / the overview, once per swipe
+ *
+ * A gesture is recognized by a small state machine that starts over whenever the number
+ * of fingers changes. Two fingers only become a scroll or a pinch once they have moved
+ * past a threshold, so a pinch does not scroll a little first. All state is primitive
+ * fields: handling a sample allocates nothing, at the 120 Hz phones send touches at.
+ *
+ * Scroll and zoom are accumulated and injected at most maxWheelRate times a second (and
+ * when the fingers are lifted), in whole notches: a burst of samples becomes one wheel
+ * event instead of one per sample, which xdotool and many applications cannot keep up with.
+ *
+ * Called from one thread at a time (the input injector).
+ */
+public class TouchpadProcessor {
+
+    // distances in touch units, the phone's logical pixels
+    private static final double SCROLL_SLOP = 8;
+    private static final double PINCH_SLOP = 12;
+    private static final double SWIPE_DISTANCE = 60;
+    private static final double SCROLL_UNITS_PER_NOTCH = 20;
+    private static final double ZOOM_UNITS_PER_STEP = 30;
+
+    private static final int IDLE = 0;
+    private static final int POINTER = 1;
+    // two fingers down, not yet decided between scroll and pinch
+    private static final int TWO_FINGERS = 2;
+    private static final int SCROLL = 3;
+    private static final int PINCH = 4;
+    // three fingers down, swipe not yet far enough
+    private static final int THREE_FINGERS = 5;
+    // swipe sent; nothing more until the fingers change
+    private static final int SWIPED = 6;
+
+    private final MouseController mouse;
+    private final KeyboardController keyboard;
+    // shortcuts for a three-finger swipe left, right, up, down
+    private final int[][] swipeKeys;
+
+    private double pointerSpeed = 1.5;   // pixels per touch unit
+    private boolean naturalScroll = true;
+    private long wheelIntervalNanos = 1_000_000_000L / 60;
+
+    // recognizer state
+    private int state = IDLE;
+    private int fingers = 0;
+    private double remainderX = 0.0;     // sub-pixel pointer movement not sent yet
+    private double remainderY = 0.0;
+    private double panX = 0.0;           // two/three-finger movement while undecided
+    private double panY = 0.0;
+    private double pinch = 0.0;          // change of spread while undecided
+    private double lastSpread = Double.NaN;
+
+    // wheel output not injected yet, in touch units
+    private double scrollX = 0.0;
+    private double scrollY = 0.0;
+    private double zoom = 0.0;
+    private long lastWheelNanos = 0;
+
+    private final Counter scrolls = new Counter();
+    private final Counter pinches = new Counter();
+    private final Counter swipes = new Counter();
+    private final Counter wheelInjections = new Counter();
+
+    public TouchpadProcessor(MouseController mouse, KeyboardController keyboard) {
+        this.mouse = mouse;
+        this.keyboard = keyboard;
+        this.swipeKeys = swipeShortcuts(System.getProperty("os.name").toLowerCase());
+    }
+
+    /**
+     * Three-finger swipe shortcuts (left, right, up, down) for the platform's workspace
+     * switching and overview.
+     */
+    private static int[][] swipeShortcuts(String os) {
+        if (os.contains("mac") || os.contains("darwin")) {
+            // Spaces, Mission Control, App Exposé
+            return new int[][] {
+                    {KeyEvent.VK_CONTROL, KeyEvent.VK_LEFT}, {KeyEvent.VK_CONTROL, KeyEvent.VK_RIGHT},
+                    {KeyEvent.VK_CONTROL, KeyEvent.VK_UP}, {KeyEvent.VK_CONTROL, KeyEvent.VK_DOWN}};
+        }
+        if (os.contains("win")) {
+            // virtual desktops, Task View, show desktop
+            return new int[][] {
+                    {KeyEvent.VK_CONTROL, KeyEvent.VK_WINDOWS, KeyEvent.VK_LEFT},
+                    {KeyEvent.VK_CONTROL, KeyEvent.VK_WINDOWS, KeyEvent.VK_RIGHT},
+                    {KeyEvent.VK_WINDOWS, KeyEvent.VK_TAB}, {KeyEvent.VK_WINDOWS, KeyEvent.VK_D}};
+        }
+        // workspace navigation on GNOME, KDE and most X11 window managers
+        return new int[][] {
+                {KeyEvent.VK_CONTROL, KeyEvent.VK_ALT, KeyEvent.VK_LEFT}, {KeyEvent.VK_CONTROL, KeyEvent.VK_ALT, KeyEvent.VK_RIGHT},
+                {KeyEvent.VK_CONTROL, KeyEvent.VK_ALT, KeyEvent.VK_UP}, {KeyEvent.VK_CONTROL, KeyEvent.VK_ALT, KeyEvent.VK_DOWN}};
+    }
+
+    // ===== setters for runtime tuning =====
+
+    public void setPointerSpeed(double pointerSpeed) {
+        if (pointerSpeed <= 0) throw new IllegalArgumentException("pointerSpeed must be > 0");
+        this.pointerSpeed = pointerSpeed;
+    }
+
+    /**
+     * Natural scrolling (the content follows the fingers) or the classic wheel direction.
+     */
+    public void setNaturalScroll(boolean naturalScroll) {
+        this.naturalScroll = naturalScroll;
+    }
+
+    /**
+     * Most scroll / zoom injections per second.
+     */
+    public void setMaxWheelRate(int perSecond) {
+        if (perSecond <= 0) throw new IllegalArgumentException("wheel rate must be > 0");
+        this.wheelIntervalNanos = 1_000_000_000L / perSecond;
+    }
+
+    /**
+     * Handle one sample.
+     */
+    public void handle(TouchData data) {
+        if (data.fingers != fingers) changeFingers(data.fingers);
+        if (fingers == 0) return;
+
+        switch (state) {
+            case POINTER:
+                movePointer(data.dx(0), data.dy(0));
+                break;
+            case TWO_FINGERS:
+                panX += (data.dx(0) + data.dx(1)) / 2;
+                panY += (data.dy(0) + data.dy(1)) / 2;
+                pinch += spreadChange(data.spread);
+                decideTwoFingers();
+                break;
+            case SCROLL:
+                scrollX += (data.dx(0) + data.dx(1)) / 2;
+                scrollY += (data.dy(0) + data.dy(1)) / 2;
+                lastSpread = data.spread;
+                break;
+            case PINCH:
+                zoom += spreadChange(data.spread);
+                break;
+            case THREE_FINGERS:
+                panX += (data.dx(0) + data.dx(1) + data.dx(2)) / 3;
+                panY += (data.dy(0) + data.dy(1) + data.dy(2)) / 3;
+                if (Math.max(Math.abs(panX), Math.abs(panY)) >= SWIPE_DISTANCE) swipe();
+                break;
+            default:
+                break;
+        }
+
+        long now = System.nanoTime();
+        if (now - lastWheelNanos >= wheelIntervalNanos) flushWheel(now);
+    }
+
+    /**
+     * A finger was put down or lifted: whatever was recognized ends, a new gesture starts.
+     */
+    private void changeFingers(int count) {
+        flushWheel(System.nanoTime());
+        // a fraction of a notch does not carry over into the next gesture
+        scrollX = scrollY = zoom = 0.0;
+        panX = panY = pinch = 0.0;
+        remainderX = remainderY = 0.0;
+        lastSpread = Double.NaN;
+        fingers = count;
+        state = count == 0 ? IDLE : count == 1 ? POINTER : count == 2 ? TWO_FINGERS : THREE_FINGERS;
+    }
+
+    private void movePointer(double dx, double dy) {
+        remainderX += dx * pointerSpeed;
+        remainderY += dy * pointerSpeed;
+        int moveX = (int) remainderX;
+        int moveY = (int) remainderY;
+        if (moveX == 0 && moveY == 0) return;
+        remainderX -= moveX;
+        remainderY -= moveY;
+        mouse.moveBy(moveX, moveY);
+    }
+
+    /**
+     * How much the fingers moved apart since the previous sample (0 if the client does
+     * not send the spread).
+     */
+    private double spreadChange(double spread) {
+        double change = Double.isNaN(spread) || Double.isNaN(lastSpread) ? 0.0 : spread - lastSpread;
+        lastSpread = spread;
+        return change;
+    }
+
+    private void decideTwoFingers() {
+        double pan = Math.hypot(panX, panY);
+        if (Math.abs(pinch) >= PINCH_SLOP && Math.abs(pinch) > pan) {
+            state = PINCH;
+            zoom = pinch;
+            pinches.inc();
+        } else if (pan >= SCROLL_SLOP) {
+            state = SCROLL;
+            scrollX = panX;
+            scrollY = panY;
+            scrolls.inc();
+        }
+    }
+
+    private void swipe() {
+        int direction = Math.abs(panX) >= Math.abs(panY) ? (panX < 0 ? 0 : 1) : (panY < 0 ? 2 : 3);
+        state = SWIPED;
+        swipes.inc();
+        if (keyboard != null) keyboard.tapKeys(swipeKeys[direction]);
+    }
+
+    /**
+     * Inject the whole notches accumulated so far; the rest waits for more movement.
+     */
+    private void flushWheel(long now) {
+        int vertical = (int) (scrollY / SCROLL_UNITS_PER_NOTCH);
+        int horizontal = (int) (scrollX / SCROLL_UNITS_PER_NOTCH);
+        int steps = (int) (zoom / ZOOM_UNITS_PER_STEP);
+        if (vertical == 0 && horizontal == 0 && steps == 0) return;
+        scrollY -= vertical * SCROLL_UNITS_PER_NOTCH;
+        scrollX -= horizontal * SCROLL_UNITS_PER_NOTCH;
+        zoom -= steps * ZOOM_UNITS_PER_STEP;
+        lastWheelNanos = now;
+        wheelInjections.inc();
+        // natural: fingers moving up move the content up, i.e. scroll down
+        if (naturalScroll) mouse.scroll(-vertical, -horizontal);
+        else mouse.scroll(vertical, horizontal);
+        mouse.zoom(steps);
+    }
+
+    /**
+     * Expose recognized gestures and wheel injections.
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.counter("mousecontrol_touch_gestures_total", "Touchpad gestures recognized.", scrolls, "gesture", "scroll");
+        registry.counter("mousecontrol_touch_gestures_total", "Touchpad gestures recognized.", pinches, "gesture", "pinch");
+        registry.counter("mousecontrol_touch_gestures_total", "Touchpad gestures recognized.", swipes, "gesture", "swipe");
+        registry.counter("mousecontrol_touch_wheel_injections_total", "Coalesced scroll and zoom injections sent to the desktop.", wheelInjections);
+    }
+}
@@ -0,0 +1,269 @@
+package com.mousecontrol.recording;
+
+import com.mousecontrol.controller.KeyboardController;
+import com.mousecontrol.controller.MouseController;
+import com.mousecontrol.models.MotionData;
+import com.mousecontrol.processor.MovementProcessor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SessionPlayer
+ *
+ * Reads a recording made by SessionRecorder and replays its input events into a
+ * MovementProcessor (and optionally a KeyboardController) with the original
+ * timing, scaled by a speed factor, so a reported problem can be reproduced
+ * deterministically. Recorded frames can be exported as image files to see what
+ * the client was sent.
+ *
+ * The whole ring is indexed when the player is opened; payloads stay in the
+ * read-only mappings until they are used.
+ *
+ * Command line:
+ *   SessionPlayer <dir> [speed]        replay input (speed 1 = real time, 0 = as fast as possible)
+ *   SessionPlayer <dir> frames <out>   export frames
+ *   SessionPlayer <dir> info           print a summary
+ */
+public final class SessionPlayer {
+
+    /**
+     * One recorded event. The payload is a read-only view into the recording.
+     */
+    public static final class Record {
+        public final byte type;
+        public final long timestampNanos;
+        private final ByteBuffer payload;
+
+        Record(byte type, long timestampNanos, ByteBuffer payload) {
+            this.type = type;
+            this.timestampNanos = timestampNanos;
+            this.payload = payload;
+        }
+
+        /** Motion sample, or null if this is not a motion record. */
+        public MotionData motion() {
+            if (type != SessionRecorder.TYPE_MOTION) return null;
+            byte buttons = payload.get(16);
+            return new MotionData(payload.getDouble(0), payload.getDouble(8), (buttons & 1) != 0, (buttons & 2) != 0);
+        }
+
+        public byte keyCommand() { return payload.get(0); }
+        public int keyCode() { return payload.getInt(1); }
+
+        public String keyText() {
+            byte[] utf8 = new byte[payload.limit() - 5];
+            payload.get(5, utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+
+        public byte frameSource() { return payload.get(0); }
+        public int frameRegion() { return payload.get(1) & 0xFF; }
+        public int frameRegionCount() { return payload.get(2) & 0xFF; }
+        public int frameSeq() { return payload.getInt(4); }
+
+        /** Encoded image bytes of a frame record. */
+        public byte[] frameData() {
+            byte[] data = new byte[payload.limit() - SessionRecorder.FRAME_HEADER];
+            payload.get(SessionRecorder.FRAME_HEADER, data);
+            return data;
+        }
+    }
+
+    private final Path dir;
+    private final Properties info;
+    private final List<Record> records;
+
+    private SessionPlayer(Path dir, Properties info, List<Record> records) {
+        this.dir = dir;
+        this.info = info;
+        this.records = records;
+    }
+
+    /**
+     * Index a recording directory. Segments are ordered by the ring lap that wrote them and
+     * records by timestamp; a segment's unwritten or overwritten tail is ignored.
+     */
+    public static SessionPlayer open(Path dir) throws IOException {
+        Properties info = new Properties();
+        try (InputStream in = Files.newInputStream(dir.resolve(SessionRecorder.INFO_FILE))) {
+            info.load(in);
+        }
+        int segmentCount = Integer.parseInt(info.getProperty("segments", "0"));
+
+        List<List<Record>> segments = new ArrayList<>();
+        List<Integer> generations = new ArrayList<>();
+        for (int i = 0; i < segmentCount; i++) {
+            Path file = dir.resolve(SessionRecorder.segmentName(i));
+            if (!Files.exists(file)) continue;
+            ByteBuffer buf;
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+                buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            }
+            List<Record> out = new ArrayList<>();
+            int generation = readSegment(buf, out);
+            if (generation >= 0) {
+                segments.add(out);
+                generations.add(generation);
+            }
+        }
+
+        Integer[] order = new Integer[segments.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        java.util.Arrays.sort(order, Comparator.comparingInt(generations::get));
+        List<Record> all = new ArrayList<>();
+        for (int i : order) all.addAll(segments.get(i));
+        // reservation order is close to but not exactly time order across threads; the sort is stable
+        all.sort(Comparator.comparingLong(r -> r.timestampNanos));
+        return new SessionPlayer(dir, info, all);
+    }
+
+    /**
+     * Collect the valid records of one segment. Returns its generation, or -1 if it is empty.
+     */
+    private static int readSegment(ByteBuffer buf, List<Record> out) {
+        int generation = -1;
+        int off = 0;
+        int size = buf.limit();
+        while (size - off >= SessionRecorder.HEADER) {
+            int length = buf.getInt(off);
+            if (length < SessionRecorder.HEADER || (length & 7) != 0 || length > size - off) break;
+            if (buf.getShort(off + 4) != SessionRecorder.MAGIC) break;
+            int gen = buf.getInt(off + 8);
+            if (generation < 0) generation = gen;
+            else if (gen != generation) break; // older lap of the ring
+            byte type = buf.get(off + 6);
+            int payload = buf.getInt(off + 12);
+            if (type != SessionRecorder.TYPE_PAD) {
+                if (payload < 0 || SessionRecorder.HEADER + payload > length) break;
+                ByteBuffer slice = buf.slice(off + SessionRecorder.HEADER, payload).asReadOnlyBuffer();
+                out.add(new Record(type, buf.getLong(off + 16), slice));
+            }
+            off += length;
+        }
+        return generation;
+    }
+
+    public Path getDirectory() { return dir; }
+
+    /** All records in timestamp order. */
+    public List<Record> getRecords() { return records; }
+
+    public long getStartMillis() {
+        return Long.parseLong(info.getProperty("startMillis", "0"));
+    }
+
+    /**
+     * Replay motion (and keyboard, if a controller is given) events. speed scales time
+     * (2 = twice as fast); 0 or less replays without waiting. The processor's smoothing
+     * state is reset first so the same recording always produces the same movements,
+     * provided the processor is tuned like the recorded session. Returns the number of
+     * events replayed; stops early if the thread is interrupted.
+     */
+    public int replay(MovementProcessor processor, KeyboardController keyboard, double speed) {
+        processor.resetSmoothingState();
+        long first = -1;
+        long start = System.nanoTime();
+        int replayed = 0;
+        for (Record r : records) {
+            if (r.type != SessionRecorder.TYPE_MOTION && (r.type != SessionRecorder.TYPE_KEY || keyboard == null)) continue;
+            if (first < 0) first = r.timestampNanos;
+            if (speed > 0) {
+                long due = start + (long) ((r.timestampNanos - first) / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (Thread.currentThread().isInterrupted()) return replayed;
+                }
+            }
+            if (r.type == SessionRecorder.TYPE_MOTION) processor.handle(r.motion());
+            else replayKey(r, keyboard);
+            replayed++;
+        }
+        return replayed;
+    }
+
+    private static void replayKey(Record r, KeyboardController keyboard) {
+        switch (r.keyCommand()) {
+            case SessionRecorder.KEY_TYPE: keyboard.typeString(r.keyText()); break;
+            case SessionRecorder.KEY_TAP: keyboard.tapKey(r.keyCode()); break;
+            case SessionRecorder.KEY_PRESS: keyboard.pressKey(r.keyCode()); break;
+            case SessionRecorder.KEY_RELEASE: keyboard.releaseKey(r.keyCode()); break;
+            default: break;
+        }
+    }
+
+    /**
+     * Write every recorded frame to out as <time ms>-<source>-<seq>[-r<region>].jpg|.qoi.
+     * Returns the number of files written.
+     */
+    public int exportFrames(Path out) throws IOException {
+        Files.createDirectories(out);
+        int written = 0;
+        for (Record r : records) {
+            if (r.type != SessionRecorder.TYPE_FRAME) continue;
+            byte[] data = r.frameData();
+            boolean qoi = data.length >= 4 && data[0] == 'q' && data[1] == 'o' && data[2] == 'i' && data[3] == 'f';
+            String name = String.format("%08d-%s-%d%s.%s", r.timestampNanos / 1_000_000,
+                    r.frameSource() == SessionRecorder.SOURCE_WEBSOCKET ? "ws" : "udp", r.frameSeq(),
+                    r.frameRegionCount() > 1 ? "-r" + r.frameRegion() : "", qoi ? "qoi" : "jpg");
+            Files.write(out.resolve(name), data);
+            written++;
+        }
+        return written;
+    }
+
+    @Override
+    public String toString() {
+        int frames = 0, motion = 0, keys = 0;
+        long frameBytes = 0;
+        for (Record r : records) {
+            if (r.type == SessionRecorder.TYPE_FRAME) {
+                frames++;
+                frameBytes += r.payload.limit() - SessionRecorder.FRAME_HEADER;
+            } else if (r.type == SessionRecorder.TYPE_MOTION) {
+                motion++;
+            } else if (r.type == SessionRecorder.TYPE_KEY) {
+                keys++;
+            }
+        }
+        long span = records.isEmpty() ? 0 : records.get(records.size() - 1).timestampNanos - records.get(0).timestampNanos;
+        return dir + ": " + records.size() + " records over " + String.format("%.1f", span / 1e9) + " s ("
+                + frames + " frames / " + frameBytes / 1024 + " KB, " + motion + " motion, " + keys + " keyboard)";
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: SessionPlayer <dir> [speed | frames <out> | info]");
+            System.exit(2);
+        }
+        SessionPlayer player = open(Paths.get(args[0]));
+        System.out.println(player);
+        String mode = args.length > 1 ? args[1] : "1";
+        if ("info".equalsIgnoreCase(mode)) return;
+        if ("frames".equalsIgnoreCase(mode)) {
+            Path out = Paths.get(args.length > 2 ? args[2] : "frames");
+            System.out.println("Exported " + player.exportFrames(out) + " frames to " + out);
+            return;
+        }
+        MovementProcessor processor = new MovementProcessor(new MouseController());
+        // same tuning as Main, so a replay matches the live session
+        processor.setSensitivity(2.0);
+        processor.setSmoothing(0.1);
+        processor.setDeadZone(0.0);
+        int n = player.replay(processor, new KeyboardController(), Double.parseDouble(mode));
+        System.out.println("Replayed " + n + " input events");
+    }
+}
@@ -0,0 +1,295 @@
+package com.mousecontrol.recording;
+
+import com.mousecontrol.models.MotionData;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SessionRecorder
+ *
+ * Records a session for later reproduction: encoded frames from the streamers and
+ * timestamped motion and keyboard events from the control connection, appended to
+ * a ring of memory-mapped segment files (segment-0.rec .. segment-N.rec). When the
+ * ring is full the oldest segment is overwritten, so the directory always holds the
+ * most recent (segments x segmentBytes) of the session.
+ *
+ * Writers never lock or block on I/O: all segments are mapped when the recorder is
+ * opened, a record reserves its space with a compare-and-set and is copied straight
+ * into the mapping, and the OS writes pages back in the background. A record that
+ * does not fit in a segment is dropped and counted.
+ *
+ * Record layout (big-endian, 8-byte aligned):
+ *   length (4, whole record incl. padding), magic 'SR' (2), type (1), reserved (1),
+ *   generation (4, which lap of the ring wrote it), payload length (4),
+ *   timestamp (8, nanoseconds since the recorder was opened), payload.
+ *
+ * Thread-safe; any number of threads may record at once. Read with SessionPlayer.
+ */
+public final class SessionRecorder {
+
+    public static final byte TYPE_PAD = 0;
+    public static final byte TYPE_FRAME = 1;
+    public static final byte TYPE_MOTION = 2;
+    public static final byte TYPE_KEY = 3;
+
+    /** Frame sources. */
+    public static final byte SOURCE_UDP = 0;
+    public static final byte SOURCE_WEBSOCKET = 1;
+
+    /** Keyboard commands, as handled by KeyboardController. */
+    public static final byte KEY_TYPE = 0;
+    public static final byte KEY_TAP = 1;
+    public static final byte KEY_PRESS = 2;
+    public static final byte KEY_RELEASE = 3;
+
+    public static final int DEFAULT_SEGMENT_BYTES = 32 * 1024 * 1024;
+    public static final int DEFAULT_SEGMENTS = 8;
+
+    static final short MAGIC = 0x5352; // 'SR'
+    static final int HEADER = 24;
+    static final int FRAME_HEADER = 8;
+    static final int MOTION_PAYLOAD = 17;
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".rec";
+    static final String INFO_FILE = "session.properties";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final MappedByteBuffer[] segments;
+    private final long startNanos = System.nanoTime();
+    private final long startMillis = System.currentTimeMillis();
+
+    // logical write position over the whole session; segment = (cursor / segmentBytes) % segments
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicInteger writers = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private SessionRecorder(Path dir, int segmentBytes, MappedByteBuffer[] segments) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.segments = segments;
+    }
+
+    /**
+     * Create (or overwrite) a recording in dir with the given ring geometry. Segment size is
+     * rounded down to a multiple of 8 and must be at least 64 KB.
+     */
+    public static SessionRecorder open(Path dir, int segmentBytes, int segmentCount) throws IOException {
+        int size = segmentBytes & ~7;
+        if (size < 64 * 1024) throw new IllegalArgumentException("segmentBytes must be >= 64 KB");
+        if (segmentCount < 2) throw new IllegalArgumentException("at least 2 segments are required");
+        Files.createDirectories(dir);
+
+        MappedByteBuffer[] maps = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            try (RandomAccessFile file = new RandomAccessFile(dir.resolve(segmentName(i)).toFile(), "rw")) {
+                // start from zeros so stale records of an earlier session cannot be mistaken for new ones
+                file.setLength(0);
+                file.setLength(size);
+                // the mapping stays valid after the channel is closed
+                maps[i] = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+        SessionRecorder recorder = new SessionRecorder(dir, size, maps);
+        recorder.writeInfo(false);
+        return recorder;
+    }
+
+    static String segmentName(int index) {
+        return SEGMENT_PREFIX + index + SEGMENT_SUFFIX;
+    }
+
+    // ===== recording (hot paths) =====
+
+    /**
+     * Record one encoded frame (or one region of it). Returns false if the record was dropped.
+     */
+    public boolean recordFrame(byte source, int seq, int region, int regionCount, byte[] data, int len) {
+        if (closed) return false;
+        writers.incrementAndGet();
+        try {
+            if (closed) return false;
+            long pos = reserve(FRAME_HEADER + len);
+            if (pos < 0) return false;
+            MappedByteBuffer buf = segment(pos);
+            int off = offset(pos) + HEADER;
+            buf.put(off, source);
+            buf.put(off + 1, (byte) region);
+            buf.put(off + 2, (byte) regionCount);
+            buf.putInt(off + 4, seq);
+            buf.put(off + FRAME_HEADER, data, 0, len);
+            commit(pos, TYPE_FRAME, FRAME_HEADER + len);
+            return true;
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Record one motion sample as received from the client (before calibration/smoothing).
+     */
+    public boolean recordMotion(MotionData data) {
+        if (closed) return false;
+        writers.incrementAndGet();
+        try {
+            if (closed) return false;
+            long pos = reserve(MOTION_PAYLOAD);
+            if (pos < 0) return false;
+            MappedByteBuffer buf = segment(pos);
+            int off = offset(pos) + HEADER;
+            buf.putDouble(off, data.gyroX);
+            buf.putDouble(off + 8, data.gyroY);
+            buf.put(off + 16, (byte) ((data.leftClick ? 1 : 0) | (data.rightClick ? 2 : 0)));
+            commit(pos, TYPE_MOTION, MOTION_PAYLOAD);
+            return true;
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Record one keyboard command (KEY_TYPE with text, or KEY_TAP/PRESS/RELEASE with a key code).
+     */
+    public boolean recordKey(byte cmd, int keyCode, String text) {
+        if (closed) return false;
+        byte[] utf8 = text != null ? text.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        writers.incrementAndGet();
+        try {
+            if (closed) return false;
+            long pos = reserve(5 + utf8.length);
+            if (pos < 0) return false;
+            MappedByteBuffer buf = segment(pos);
+            int off = offset(pos) + HEADER;
+            buf.put(off, cmd);
+            buf.putInt(off + 1, keyCode);
+            buf.put(off + 5, utf8, 0, utf8.length);
+            commit(pos, TYPE_KEY, 5 + utf8.length);
+            return true;
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reserve space for a record and return its logical position, or -1 if it can never fit.
+     * A record is never split across segments: when it does not fit in the rest of the
+     * current one, the cursor jumps to the next segment start and the skipped tail is padded,
+     * so every segment begins with a record.
+     */
+    private long reserve(int payload) {
+        int len = recordLength(payload);
+        if (len > segmentBytes) {
+            dropped.incrementAndGet();
+            return -1;
+        }
+        while (true) {
+            long pos = cursor.get();
+            int off = offset(pos);
+            if (off + len <= segmentBytes) {
+                if (cursor.compareAndSet(pos, pos + len)) return pos;
+            } else {
+                int rest = segmentBytes - off;
+                if (cursor.compareAndSet(pos, pos + rest) && rest >= HEADER) {
+                    // a tail shorter than a header is implicitly empty; the reader moves on anyway
+                    writeHeader(segment(pos), off, rest, TYPE_PAD, generation(pos), 0, 0);
+                }
+            }
+        }
+    }
+
+    private void commit(long pos, byte type, int payload) {
+        // length goes in last so a half-written record does not look complete
+        writeHeader(segment(pos), offset(pos), recordLength(payload), type, generation(pos),
+                payload, System.nanoTime() - startNanos);
+        records.incrementAndGet();
+    }
+
+    private static void writeHeader(MappedByteBuffer buf, int off, int length, byte type, int generation,
+                                    int payload, long timestamp) {
+        buf.putShort(off + 4, MAGIC);
+        buf.put(off + 6, type);
+        buf.put(off + 7, (byte) 0);
+        buf.putInt(off + 8, generation);
+        buf.putInt(off + 12, payload);
+        buf.putLong(off + 16, timestamp);
+        buf.putInt(off, length);
+    }
+
+    static int recordLength(int payload) {
+        return (HEADER + payload + 7) & ~7;
+    }
+
+    private MappedByteBuffer segment(long pos) {
+        return segments[(int) ((pos / segmentBytes) % segments.length)];
+    }
+
+    private int offset(long pos) {
+        return (int) (pos % segmentBytes);
+    }
+
+    private int generation(long pos) {
+        return (int) (pos / segmentBytes);
+    }
+
+    // ===== lifecycle =====
+
+    /**
+     * Stop recording, flush the segments to disk and write the session info. Records still
+     * being written get a short grace period; anything later is ignored.
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        long deadline = System.nanoTime() + 1_000_000_000L;
+        while (writers.get() > 0 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        for (MappedByteBuffer m : segments) {
+            try { m.force(); } catch (Exception ignored) {}
+        }
+        try {
+            writeInfo(true);
+        } catch (IOException e) {
+            System.err.println("SessionRecorder: failed to write session info: " + e.getMessage());
+        }
+        System.out.println("SessionRecorder: closed " + this);
+    }
+
+    private void writeInfo(boolean finished) throws IOException {
+        try (Writer w = Files.newBufferedWriter(dir.resolve(INFO_FILE), StandardCharsets.UTF_8)) {
+            w.write("segmentBytes=" + segmentBytes + "\n");
+            w.write("segments=" + segments.length + "\n");
+            w.write("startMillis=" + startMillis + "\n");
+            if (finished) {
+                w.write("durationNanos=" + (System.nanoTime() - startNanos) + "\n");
+                w.write("records=" + records.get() + "\n");
+                w.write("dropped=" + dropped.get() + "\n");
+            }
+        }
+    }
+
+    public boolean isClosed() { return closed; }
+    public Path getDirectory() { return dir; }
+    public long getRecords() { return records.get(); }
+    public long getDroppedRecords() { return dropped.get(); }
+    public long getBytesWritten() { return cursor.get(); }
+
+    @Override
+    public String toString() {
+        return dir + " (" + records.get() + " records, " + dropped.get() + " dropped, "
+                + cursor.get() / 1024 + " KB written, ring " + segments.length + " x "
+                + segmentBytes / 1024 + " KB)";
+    }
+}
@@ -1,17 +1,17 @@
 package com.mousecontrol.ui;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import com.mousecontrol.metrics.MetricsRegistry;
 
 /**
  * Headless replacement for the original Swing-based DashboardUI.
- * Keeps the same public API used by the rest of the app but logs
- * updates to stdout so the application can run in the background.
+ * Keeps the same public API used by the rest of the app. Everything goes
+ * into an EventLog ring that can be read back without blocking writers;
+ * messages and status changes are also printed to stdout, per-sample
+ * updates (gyro, cursor) only when echoSamples is on.
  */
 public class DashboardUI {
 
-    private final StringBuilder logBuffer = new StringBuilder();
-    private final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ss");
+    private final EventLog log;
 
     // state (kept for potential debugging)
     private volatile double gyroX = 0.0;
@@ -21,43 +21,66 @@ public class DashboardUI {
     private volatile int cursorX = 0;
     private volatile int cursorY = 0;
     private volatile String connectionStatus = "Waiting for connection...";
+    private volatile boolean echoSamples = false;
 
     public DashboardUI() {
+        this(new EventLog());
+    }
+
+    public DashboardUI(EventLog log) {
+        this.log = log;
         addLog("Headless dashboard initialized.");
     }
 
     public void updateGyroValues(double gyroX, double gyroY) {
         this.gyroX = gyroX;
         this.gyroY = gyroY;
-        addLog(String.format("Gyro updated: %+f, %+f", gyroX, gyroY));
+        echo(log.gyro(gyroX, gyroY));
     }
 
     public void updateCursorMovement(int moveX, int moveY) {
         this.moveX = moveX;
         this.moveY = moveY;
-        addLog(String.format("Cursor moved: %+d, %+d", moveX, moveY));
+        echo(log.cursorMove(moveX, moveY));
     }
 
     public void updateCursorPosition(int x, int y) {
         this.cursorX = x;
         this.cursorY = y;
-        addLog(String.format("Cursor position: %d, %d", x, y));
+        echo(log.cursorPosition(x, y));
     }
 
     public void setConnectionStatus(String status) {
         this.connectionStatus = status;
-        addLog("Connection status: " + status);
+        print(log.status(status));
+    }
+
+    public void addLog(String message) {
+        print(log.message(message));
+    }
+
+    private void echo(long sequence) {
+        if (echoSamples) print(sequence);
+    }
+
+    private void print(long sequence) {
+        EventLog.Entry e = log.get(sequence);
+        // null only if the ring wrapped around meanwhile
+        if (e != null) System.out.println(e);
+    }
+
+    /** Print per-sample gyro and cursor updates too (one line per sample; off by default). */
+    public void setEchoSamples(boolean echoSamples) {
+        this.echoSamples = echoSamples;
+    }
+
+    /** Recent history; see EventLog.since and EventLog.snapshot. */
+    public EventLog getLog() {
+        return log;
     }
 
-    public synchronized void addLog(String message) {
-        String ts = LocalDateTime.now().format(dtf);
-        String line = ts + " - " + message;
-        System.out.println(line);
-        logBuffer.append(line).append('\n');
-        // keep the buffer from growing unbounded
-        if (logBuffer.length() > 32_000) {
-            logBuffer.delete(0, logBuffer.length() / 2);
-        }
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.counter("mousecontrol_dashboard_log_entries_total", "Entries written to the dashboard event log.", log::size);
     }
 
     // Optional getters for debugging or tests
@@ -0,0 +1,251 @@
+package com.mousecontrol.ui;
+
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * EventLog
+ *
+ * Fixed-capacity ring of recent dashboard events that writers never block on. Each
+ * slot is preallocated as primitive columns (timestamp, kind, two numeric values) plus
+ * a reference for text, so logging a motion sample stores a few longs and allocates
+ * nothing; formatting happens only when an entry is read.
+ *
+ * Writers claim a sequence number with one atomic increment and publish the slot by
+ * stamping it with that number. Readers copy a slot and keep the copy only if the
+ * stamp was the expected one before and after, so a slot being overwritten is skipped
+ * rather than returned half-written. Old entries are overwritten once the ring is full;
+ * the capacity should be well above the number of concurrent writers, since two writers
+ * a whole ring apart share a slot.
+ */
+public final class EventLog {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    public enum Kind { MESSAGE, STATUS, GYRO, CURSOR_MOVE, CURSOR_POSITION }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final long WRITING = -1;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ss");
+
+    /**
+     * A copy of one entry, made when reading.
+     */
+    public static final class Entry {
+        public final long sequence;
+        public final long nanoTime;
+        public final Kind kind;
+        private final long a;
+        private final long b;
+        private final String text;
+        private final EventLog log;
+
+        Entry(EventLog log, long sequence, long nanoTime, Kind kind, long a, long b, String text) {
+            this.log = log;
+            this.sequence = sequence;
+            this.nanoTime = nanoTime;
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+            this.text = text;
+        }
+
+        /** Wall-clock time of the entry. */
+        public long epochMillis() {
+            return log.epochMillis(nanoTime);
+        }
+
+        /** Gyro x, or 0 for other kinds. */
+        public double gyroX() {
+            return kind == Kind.GYRO ? Double.longBitsToDouble(a) : 0;
+        }
+
+        /** Gyro y, or 0 for other kinds. */
+        public double gyroY() {
+            return kind == Kind.GYRO ? Double.longBitsToDouble(b) : 0;
+        }
+
+        /** Move delta or position x, or 0 for other kinds. */
+        public int x() {
+            return kind == Kind.CURSOR_MOVE || kind == Kind.CURSOR_POSITION ? (int) a : 0;
+        }
+
+        /** Move delta or position y, or 0 for other kinds. */
+        public int y() {
+            return kind == Kind.CURSOR_MOVE || kind == Kind.CURSOR_POSITION ? (int) b : 0;
+        }
+
+        /** The text of a MESSAGE or STATUS entry, else null. */
+        public String text() {
+            return text;
+        }
+
+        /** The entry's message, as it would have been logged. */
+        public String message() {
+            switch (kind) {
+                case STATUS: return "Connection status: " + text;
+                case GYRO: return String.format("Gyro updated: %+f, %+f", gyroX(), gyroY());
+                case CURSOR_MOVE: return String.format("Cursor moved: %+d, %+d", x(), y());
+                case CURSOR_POSITION: return String.format("Cursor position: %d, %d", x(), y());
+                default: return text;
+            }
+        }
+
+        @Override
+        public String toString() {
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis()), ZoneId.systemDefault());
+            return time.format(TIME) + " - " + message();
+        }
+    }
+
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    // sequence published in each slot, or WRITING while a writer fills it
+    private final AtomicLongArray stamps;
+    private final long[] times;
+    private final byte[] kinds;
+    private final long[] as;
+    private final long[] bs;
+    private final String[] texts;
+    // nanoTime() and wall clock at construction, to turn entry times into dates
+    private final long baseNanos = System.nanoTime();
+    private final long baseMillis = System.currentTimeMillis();
+
+    public EventLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * A log keeping the last capacity entries (rounded up to a power of two).
+     */
+    public EventLog(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 24) throw new IllegalArgumentException("capacity must be 1.." + (1 << 24));
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        stamps = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) stamps.set(i, WRITING);
+        times = new long[size];
+        kinds = new byte[size];
+        as = new long[size];
+        bs = new long[size];
+        texts = new String[size];
+    }
+
+    // ===== writers =====
+
+    public long message(String text) {
+        return append(Kind.MESSAGE, 0, 0, text);
+    }
+
+    public long status(String text) {
+        return append(Kind.STATUS, 0, 0, text);
+    }
+
+    public long gyro(double x, double y) {
+        return append(Kind.GYRO, Double.doubleToRawLongBits(x), Double.doubleToRawLongBits(y), null);
+    }
+
+    public long cursorMove(int dx, int dy) {
+        return append(Kind.CURSOR_MOVE, dx, dy, null);
+    }
+
+    public long cursorPosition(int x, int y) {
+        return append(Kind.CURSOR_POSITION, x, y, null);
+    }
+
+    private long append(Kind kind, long a, long b, String text) {
+        long seq = next.getAndIncrement();
+        int i = (int) seq & mask;
+        stamps.set(i, WRITING);
+        // the fields must not become visible before the slot is marked
+        VarHandle.releaseFence();
+        times[i] = System.nanoTime();
+        kinds[i] = (byte) kind.ordinal();
+        as[i] = a;
+        bs[i] = b;
+        texts[i] = text;
+        stamps.setRelease(i, seq);
+        return seq;
+    }
+
+    // ===== readers =====
+
+    /** Entries written so far, including ones since overwritten. */
+    public long size() {
+        return next.get();
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * The entry with the given sequence, or null if it was overwritten or is being written.
+     */
+    public Entry get(long sequence) {
+        int i = (int) sequence & mask;
+        if (stamps.getAcquire(i) != sequence) return null;
+        long time = times[i];
+        byte kind = kinds[i];
+        long a = as[i];
+        long b = bs[i];
+        String text = texts[i];
+        // re-check after the copy: a writer may have started on the slot meanwhile
+        VarHandle.acquireFence();
+        if (stamps.get(i) != sequence) return null;
+        return new Entry(this, sequence, time, KINDS[kind], a, b, text);
+    }
+
+    /**
+     * Up to max of the most recent entries with a sequence after afterSequence, oldest
+     * first. Pass -1 for everything still in the ring; pass the last entry's sequence to
+     * poll for new ones.
+     */
+    public List<Entry> since(long afterSequence, int max) {
+        long end = next.get();
+        long start = Math.max(Math.max(afterSequence + 1, end - capacity()), end - Math.max(0, max));
+        List<Entry> entries = new ArrayList<>((int) Math.max(0, end - start));
+        for (long seq = start; seq < end; seq++) {
+            Entry e = get(seq);
+            if (e != null) entries.add(e);
+        }
+        return entries;
+    }
+
+    /** Every entry still in the ring, oldest first. */
+    public List<Entry> snapshot() {
+        return since(-1, capacity());
+    }
+
+    /**
+     * The most recent entries of the given kind, oldest first.
+     */
+    public List<Entry> recent(Kind kind, int max) {
+        List<Entry> all = snapshot();
+        List<Entry> matching = new ArrayList<>();
+        for (int i = all.size() - 1; i >= 0 && matching.size() < max; i--) {
+            if (all.get(i).kind == kind) matching.add(all.get(i));
+        }
+        Collections.reverse(matching);
+        return matching;
+    }
+
+    /** The last max entries formatted as log lines. */
+    public String format(int max) {
+        StringBuilder sb = new StringBuilder();
+        for (Entry e : since(-1, max)) sb.append(e).append('\n');
+        return sb.toString();
+    }
+
+    long epochMillis(long nanoTime) {
+        return baseMillis + (nanoTime - baseNanos) / 1_000_000L;
+    }
+}
@@ -0,0 +1,69 @@
+package com.mousecontrol.communication;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdaptiveStreamControllerTest {
+
+    // reports follow each other within microseconds here, so no bitrate target is reachable
+    private static AdaptiveStreamController.Bounds bounds() {
+        AdaptiveStreamController.Bounds b = new AdaptiveStreamController.Bounds();
+        b.targetKbps = Integer.MAX_VALUE;
+        return b;
+    }
+
+    private static void sendFrames(AdaptiveStreamController ctl, int frames) {
+        for (int i = 0; i < frames; i++) ctl.onFrameSent(100, 1);
+    }
+
+    @Test
+    void subscribersReportingAtDifferentTimesSeeNoLoss() {
+        AdaptiveStreamController ctl = AdaptiveStreamController.adaptive(20, 1280, 0.8f, bounds());
+        ctl.onFeedback("a", 0, 0, 0, -1);
+        sendFrames(ctl, 10);
+        ctl.onFeedback("b", 0, 0, 0, -1);
+        for (int round = 0; round < 5; round++) {
+            sendFrames(ctl, 10);
+            // a has seen 20 frames since its last report, b only 10
+            ctl.onFeedback("a", 20, 0, 0, -1);
+            assertEquals(0.0, ctl.getLastFrameLoss(), 1e-9, "loss for a");
+            sendFrames(ctl, 10);
+            ctl.onFeedback("b", 20, 0, 0, -1);
+            assertEquals(0.0, ctl.getLastFrameLoss(), 1e-9, "loss for b");
+        }
+        assertEquals(0, ctl.getDowngrades(), "downgrades");
+    }
+
+    @Test
+    void oneLossySubscriberStepsDownAndHoldsUpgrades() {
+        AdaptiveStreamController ctl = AdaptiveStreamController.adaptive(20, 1280, 0.8f, bounds());
+        ctl.onFeedback("good", 0, 0, 0, -1);
+        ctl.onFeedback("lossy", 0, 0, 0, -1);
+        sendFrames(ctl, 10);
+        ctl.onFeedback("good", 10, 0, 0, -1);
+        sendFrames(ctl, 10);
+        // 10 of the 20 frames since its own last report, though only 10 since good's
+        ctl.onFeedback("lossy", 10, 0, 0, -1);
+        assertEquals(0.5, ctl.getLastFrameLoss(), 1e-9, "loss for lossy");
+        assertEquals(1, ctl.getDowngrades(), "downgrades");
+        float quality = ctl.getQuality();
+        long upgrades = ctl.getUpgrades();
+
+        // the healthy subscriber right after does not undo the step
+        ctl.onFeedback("good", 10, 0, 0, -1);
+        assertEquals(upgrades, ctl.getUpgrades(), "upgrades");
+        assertEquals(quality, ctl.getQuality(), 1e-6, "quality");
+    }
+
+    @Test
+    void fragmentLossIsTheWorstSubscribers() {
+        AdaptiveStreamController ctl = AdaptiveStreamController.fixed(20, 1280, 0.8f);
+        ctl.onFeedback("a", 0, 0, 0, -1);
+        ctl.onFeedback("b", 0, 0, 0, -1);
+        sendFrames(ctl, 100);
+        ctl.onFeedback("a", 90, 10, 0, -1);
+        ctl.onFeedback("b", 100, 0, 0, -1);
+        assertEquals(0.1, ctl.getLastFragmentLoss(), 1e-9, "fragment loss");
+    }
+}
@@ -0,0 +1,47 @@
+package com.mousecontrol.communication;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * One FoveatedLayout shared by tiers of different sizes and qualities, as the WebSocket
+ * streamer uses it.
+ */
+class FoveatedLayoutTest {
+
+    @Test
+    void tiersAndQualityStepsKeepTheCachedRegions() {
+        FoveatedLayout layout = new FoveatedLayout(null);
+        FrameRegion[] large = layout.layout(1280, 720, 0.8f, 0.5, 0.5);
+        FrameRegion[] small = layout.layout(640, 360, 0.4f, 0.5, 0.5);
+        for (int frame = 0; frame < 10; frame++) {
+            float step = frame * 0.05f;
+            assertSame(large, layout.layout(1280, 720, 0.8f - step, 0.5, 0.5), "large tier regions rebuilt");
+            assertSame(small, layout.layout(640, 360, 0.4f + step, 0.5, 0.5), "small tier regions rebuilt");
+        }
+    }
+
+    @Test
+    void regionQualityFollowsTheStream() {
+        FrameRegion[] regions = new FoveatedLayout(null).layout(1280, 720, 0.7f, 0.5, 0.5);
+        // periphery: 0.6 of the stream quality, at least 0.15; fovea: 0.15 above it, at most 1
+        assertEquals(0.42, regions[0].qualityFor(0.7f), 1e-6);
+        assertEquals(0.15, regions[0].qualityFor(0.1f), 1e-6);
+        assertEquals(0.85, regions[1].qualityFor(0.7f), 1e-6);
+        assertEquals(1.0, regions[1].qualityFor(0.95f), 1e-6);
+    }
+
+    @Test
+    void cursorLeavingTheFoveaMovesIt() {
+        FoveatedLayout layout = new FoveatedLayout(null);
+        FrameRegion[] centred = layout.layout(1280, 720, 0.7f, 0.5, 0.5);
+        // inside the central half of the fovea: unchanged
+        assertSame(centred, layout.layout(1280, 720, 0.7f, 0.55, 0.52));
+        FrameRegion[] moved = layout.layout(1280, 720, 0.7f, 0.9, 0.9);
+        assertNotSame(centred, moved);
+        assertEquals(1280 - moved[1].width, moved[1].x);
+    }
+}
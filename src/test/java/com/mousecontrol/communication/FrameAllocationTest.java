@@ -0,0 +1,138 @@
+package com.mousecontrol.communication;
+
+import com.mousecontrol.desktop.SimulatedDesktop;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Steady-state allocation of the capture and encode paths (JPEG and QOI), measured with
+ * ThreadMXBean.getThreadAllocatedBytes around repeated frames after warm-up.
+ * Single-threaded on purpose: the counter only covers the calling thread.
+ */
+class FrameAllocationTest {
+
+    private static final int WARMUP = 30;
+    private static final int FRAMES = 50;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+
+    // the layout ScreenCapturer hands to the encoder
+    private static BufferedImage testImage(int w, int h) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = img.createGraphics();
+        for (int y = 0; y < h; y += 40) {
+            for (int x = 0; x < w; x += 40) {
+                g.setColor(new Color((x * 7 + y * 3) & 0xFFFFFF));
+                g.fillRect(x, y, 40, 40);
+            }
+        }
+        g.dispose();
+        return img;
+    }
+
+    /**
+     * A new writer, stream and output buffer per frame, as before the encoder was reused.
+     */
+    private static int encodeWithFreshWriter(BufferedImage img) throws Exception {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(0.7f);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray().length;
+    }
+
+    @Test
+    void jpegEncodeReusesWriterAndOutputBuffer() throws Exception {
+        int w = 1280;
+        int h = 720;
+        BufferedImage img = testImage(w, h);
+        JpegEncoder encoder = new JpegEncoder(0.7f);
+        try {
+            for (int i = 0; i < WARMUP; i++) {
+                encoder.encode(img);
+                encodeWithFreshWriter(img);
+            }
+            int encoded = encoder.length();
+
+            long before = allocatedBytes();
+            for (int i = 0; i < FRAMES; i++) encoder.encode(img);
+            long reused = (allocatedBytes() - before) / FRAMES;
+
+            before = allocatedBytes();
+            for (int i = 0; i < FRAMES; i++) encodeWithFreshWriter(img);
+            long fresh = (allocatedBytes() - before) / FRAMES;
+
+            // Not close to zero: the JDK's JPEGImageWriter copies every scanline into a new
+            // array and child raster (about w * 3 + 420 bytes a row, ~3.07 MB for 1280x720),
+            // and that happens inside the writer. The bound is that floor plus ~5%, so any
+            // allocation added on our side of the encoder fails the test.
+            long scanlineCopies = (long) h * (w * 3 + 640);
+            assertTrue(reused < scanlineCopies,
+                    "allocated " + reused + " bytes per frame, scanline copies are " + scanlineCopies);
+            // a fresh stream and output buffer cost at least twice the encoded size
+            // (growing the buffer, then toByteArray)
+            assertTrue(fresh - reused >= 2L * encoded,
+                    "reused encoder allocated " + reused + " bytes per frame, a fresh writer " + fresh
+                            + ", encoded size " + encoded);
+        } finally {
+            encoder.close();
+        }
+    }
+
+    @Test
+    void qoiEncodeAllocatesNothing() {
+        BufferedImage img = testImage(1280, 720);
+        QoiEncoder encoder = new QoiEncoder();
+        for (int i = 0; i < WARMUP; i++) encoder.encode(img);
+
+        long before = allocatedBytes();
+        for (int i = 0; i < FRAMES; i++) encoder.encode(img);
+        long perFrame = (allocatedBytes() - before) / FRAMES;
+
+        // the output buffer is kept between frames; allow for the measurement's own noise
+        assertTrue(perFrame < 256, "allocated " + perFrame + " bytes per frame");
+    }
+
+    @Test
+    void captureOnlyAllocatesTheDesktopRaster() {
+        SimulatedDesktop desktop = new SimulatedDesktop(new Rectangle(0, 0, 1280, 720));
+        ScreenCapturer capturer = new ScreenCapturer(desktop);
+        for (int i = 0; i < WARMUP; i++) capturer.capture(640);
+
+        long before = allocatedBytes();
+        for (int i = 0; i < FRAMES; i++) capturer.capture(640);
+        long perFrame = (allocatedBytes() - before) / FRAMES;
+
+        // createScreenCapture returns a new 1280x720 int raster; the scaled frame is reused
+        long raster = 1280L * 720 * 4;
+        long scaledFrame = 640L * 360 * 4;
+        assertTrue(perFrame < raster + scaledFrame / 2,
+                "allocated " + perFrame + " bytes per frame, raster is " + raster);
+    }
+}
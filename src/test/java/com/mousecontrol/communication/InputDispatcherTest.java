@@ -0,0 +1,218 @@
+package com.mousecontrol.communication;
+
+import com.mousecontrol.controller.KeyboardController;
+import com.mousecontrol.controller.MouseController;
+import com.mousecontrol.desktop.Desktop;
+import com.mousecontrol.desktop.SimulatedDesktop;
+import com.mousecontrol.processor.MovementProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives an InputDispatcher against a SimulatedDesktop behind a wrapper that the mouse
+ * controller treats as a real desktop, so every move pays the controller's settle delay
+ * (about 10 ms), like a slow xdotool or Robot.
+ */
+class InputDispatcherTest {
+
+    private static final String MOTION = "{\"gyroX\":1.0,\"gyroY\":0.5,\"leftClick\":false,\"rightClick\":false}";
+    private static final String CLICK = "{\"gyroX\":0,\"gyroY\":0,\"leftClick\":true,\"rightClick\":false}";
+
+    /**
+     * A real-looking desktop: moves can be held at a gate, and the next press can fail.
+     */
+    private static final class GatedDesktop implements Desktop {
+        final SimulatedDesktop sim = SimulatedDesktop.parse(SimulatedDesktop.DEFAULT_LAYOUT);
+        volatile CountDownLatch gate = new CountDownLatch(0);
+        final CountDownLatch moving = new CountDownLatch(1);
+        volatile Error failNextPress;
+        volatile String releasedOn;
+
+        private void await() {
+            moving.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override public String getName() { return "gated"; }
+        @Override public Rectangle[] getScreenBounds() { return sim.getScreenBounds(); }
+        @Override public Point getPointerLocation() { return sim.getPointerLocation(); }
+
+        @Override
+        public void mouseMove(int x, int y) {
+            await();
+            sim.mouseMove(x, y);
+        }
+
+        @Override
+        public void mousePress(int buttons) {
+            Error e = failNextPress;
+            if (e != null) {
+                failNextPress = null;
+                await();
+                throw e;
+            }
+            sim.mousePress(buttons);
+        }
+
+        @Override public void mouseRelease(int buttons) { sim.mouseRelease(buttons); }
+        @Override public void mouseWheel(int notches) { sim.mouseWheel(notches); }
+        @Override public void keyPress(int keyCode) { sim.keyPress(keyCode); }
+        @Override
+        public void keyRelease(int keyCode) {
+            releasedOn = Thread.currentThread().getName();
+            sim.keyRelease(keyCode);
+        }
+
+        @Override public void setClipboardText(String text) { sim.setClipboardText(text); }
+        @Override public BufferedImage createScreenCapture(Rectangle area) { return sim.createScreenCapture(area); }
+    }
+
+    private static InputDispatcher dispatcher(Desktop desktop) {
+        MovementProcessor processor = new MovementProcessor(new MouseController(desktop));
+        processor.setDeadZone(0.0);
+        // raw samples: every one moves the pointer
+        processor.setSmoothing(1.0);
+        return new InputDispatcher(processor);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition, long timeoutMs, String message) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, message);
+            Thread.sleep(2);
+        }
+    }
+
+    @Test
+    @Timeout(30)
+    void clicksStayFastWhileMotionFloods() throws Exception {
+        GatedDesktop desktop = new GatedDesktop();
+        InputDispatcher input = dispatcher(desktop);
+        int clicks = 10;
+        // load the click path before timing it
+        input.dispatch(CLICK);
+        awaitTrue(() -> desktop.sim.getButtonPresses() == 1, 5000, "warm-up click was not applied");
+        desktop.sim.clearEvents();
+
+        Thread flood = new Thread(() -> {
+            long until = System.nanoTime() + 1_500_000_000L;
+            while (System.nanoTime() < until) input.dispatch(MOTION);
+        }, "motion-flood");
+        flood.start();
+        List<Long> clickedAt = new ArrayList<>();
+        Thread.sleep(200);
+        for (int i = 0; i < clicks; i++) {
+            clickedAt.add(System.nanoTime());
+            input.dispatch(CLICK);
+            Thread.sleep(100);
+        }
+        flood.join();
+        awaitTrue(() -> desktop.sim.getButtonPresses() == clicks + 1, 5000, "clicks were not all applied");
+
+        List<Long> pressedAt = new ArrayList<>();
+        for (SimulatedDesktop.InjectedEvent e : desktop.sim.getEvents()) {
+            if (e.type == SimulatedDesktop.InjectedEvent.Type.MOUSE_PRESS) pressedAt.add(e.timestampNanos);
+        }
+        assertEquals(clicks, pressedAt.size());
+        long worstMicros = 0;
+        for (int i = 0; i < clicks; i++) worstMicros = Math.max(worstMicros, (pressedAt.get(i) - clickedAt.get(i)) / 1000);
+        long received = input.motionEvents.get() - (clicks + 1);
+        // the desktop applies under 100 moves a second; the flood sends far more
+        assertTrue(received > 100 * desktop.sim.getMoves(), received + " motion samples for " + desktop.sim.getMoves() + " moves");
+        assertTrue(input.motionMerged.get() > 0, "no motion merged");
+        // at worst the move in progress and the one merged ahead of the click (~10 ms each)
+        assertTrue(worstMicros < 100_000, "click applied " + worstMicros + " us after it was read");
+    }
+
+    @Test
+    @Timeout(30)
+    void discreteLaneIsBoundedAndCountsDrops() throws Exception {
+        GatedDesktop desktop = new GatedDesktop();
+        desktop.gate = new CountDownLatch(1);
+        InputDispatcher input = dispatcher(desktop);
+
+        input.dispatch(MOTION);
+        assertTrue(desktop.moving.await(5, TimeUnit.SECONDS), "injector never reached the desktop");
+        int extra = 200;
+        for (int i = 0; i < InputDispatcher.MAX_DISCRETE_EVENTS + extra; i++) input.dispatch(CLICK);
+        assertEquals(InputDispatcher.MAX_DISCRETE_EVENTS, input.getQueuedInput());
+        assertEquals(extra, input.discreteDropped.get());
+
+        desktop.gate.countDown();
+        awaitTrue(() -> desktop.sim.getButtonPresses() == InputDispatcher.MAX_DISCRETE_EVENTS, 10_000,
+                "queued clicks were not all applied");
+        assertEquals(0, input.getQueuedInput());
+    }
+
+    @Test
+    @Timeout(30)
+    void keyReleaseIsQueuedWhenTheLaneIsFull() throws Exception {
+        GatedDesktop desktop = new GatedDesktop();
+        desktop.gate = new CountDownLatch(1);
+        InputDispatcher input = dispatcher(desktop);
+        KeyboardController keyboard = new KeyboardController(desktop);
+        input.setKeyboardController(keyboard);
+
+        input.dispatch(MOTION);
+        assertTrue(desktop.moving.await(5, TimeUnit.SECONDS), "injector never reached the desktop");
+        input.dispatch("{\"keyboard\":{\"cmd\":\"press\",\"keyCode\":" + KeyEvent.VK_SHIFT + "}}");
+        for (int i = 0; i < InputDispatcher.MAX_DISCRETE_EVENTS; i++) input.dispatch(CLICK);
+        input.dispatch("{\"keyboard\":{\"cmd\":\"release\",\"keyCode\":" + KeyEvent.VK_SHIFT + "}}");
+        assertEquals(1, input.discreteDropped.get());
+
+        desktop.gate.countDown();
+        awaitTrue(() -> desktop.releasedOn != null, 10_000, "key release was dropped");
+        assertTrue(keyboard.getHeldKeys().isEmpty(), "key still held");
+    }
+
+    @Test
+    @Timeout(30)
+    void injectorSurvivesAnError() throws Exception {
+        GatedDesktop desktop = new GatedDesktop();
+        desktop.gate = new CountDownLatch(1);
+        desktop.failNextPress = new LinkageError("simulated desktop failure");
+        InputDispatcher input = dispatcher(desktop);
+
+        input.dispatch(CLICK);
+        assertTrue(desktop.moving.await(5, TimeUnit.SECONDS), "injector never reached the desktop");
+        // queued while the injector is about to die; nothing else wakes it
+        input.dispatch(CLICK);
+        desktop.gate.countDown();
+        awaitTrue(() -> desktop.sim.getButtonPresses() == 1, 5000, "click after the error was not applied");
+
+        input.dispatch(CLICK);
+        awaitTrue(() -> desktop.sim.getButtonPresses() == 2, 5000, "injector did not restart");
+    }
+
+    @Test
+    @Timeout(30)
+    void heldKeysAreReleasedOnTheInjectorThread() throws Exception {
+        GatedDesktop desktop = new GatedDesktop();
+        InputDispatcher input = dispatcher(desktop);
+        KeyboardController keyboard = new KeyboardController(desktop);
+        input.setKeyboardController(keyboard);
+
+        input.dispatch("{\"keyboard\":{\"cmd\":\"press\",\"keyCode\":" + KeyEvent.VK_SHIFT + "}}");
+        input.releaseHeldKeys();
+        awaitTrue(() -> keyboard.getHeldKeys().isEmpty() && desktop.releasedOn != null, 5000, "held key was not released");
+        assertEquals("input-injector", desktop.releasedOn);
+        assertEquals(1, desktop.sim.getKeyPresses());
+    }
+}
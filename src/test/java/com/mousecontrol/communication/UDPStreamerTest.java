@@ -0,0 +1,56 @@
+package com.mousecontrol.communication;
+
+import com.mousecontrol.desktop.Desktops;
+import com.mousecontrol.desktop.SimulatedDesktop;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Subscriber membership against concurrent stops and starts, streaming the simulated
+ * desktop over loopback.
+ */
+class UDPStreamerTest {
+
+    private static boolean subscribed(UDPStreamer streamer, int port) {
+        for (StreamTarget t : streamer.getSubscribers()) {
+            if (t.getAddress().getPort() == port) return true;
+        }
+        return false;
+    }
+
+    @Test
+    @Timeout(60)
+    void lastSubscriberLeavingNeverClosesOneJustAdded() throws Exception {
+        Desktops.set(SimulatedDesktop.parse("640x360"));
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        InetAddress first = InetAddress.getByName("127.0.0.2");
+        UDPStreamer streamer = new UDPStreamer(1100);
+        try (DatagramSocket a = new DatagramSocket(0, loopback);
+             DatagramSocket b = new DatagramSocket(0, loopback)) {
+            streamer.startStreaming(loopback, a.getLocalPort(), AdaptiveStreamController.fixed(30, 320, 0.5f),
+                    first, UDPStreamer.DEFAULT_SUBSCRIBER_TIMEOUT_MS, 1, null);
+            Thread leave = new Thread(() -> streamer.removeSubscribers(first, 0), "leave");
+            // a start holds the streamer's monitor; the last subscriber leaves meanwhile
+            synchronized (streamer) {
+                leave.start();
+                while (leave.getState() != Thread.State.BLOCKED && leave.getState() != Thread.State.TERMINATED) {
+                    Thread.sleep(1);
+                }
+                streamer.startStreaming(loopback, b.getLocalPort(), AdaptiveStreamController.fixed(30, 320, 0.5f),
+                        loopback, UDPStreamer.DEFAULT_SUBSCRIBER_TIMEOUT_MS, 1, null);
+            }
+            leave.join();
+
+            // whether it joined the old stream or started a new one, the new subscriber is served
+            assertTrue(subscribed(streamer, b.getLocalPort()), "new subscriber was closed");
+            assertTrue(streamer.isStreaming(), "stream stopped under a live subscriber");
+        } finally {
+            streamer.stopStreaming();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.mousecontrol.jfr;
+
+import com.mousecontrol.communication.TCPServer;
+import com.mousecontrol.communication.UDPStreamer;
+import com.mousecontrol.controller.MouseController;
+import com.mousecontrol.desktop.Desktops;
+import com.mousecontrol.desktop.SimulatedDesktop;
+import com.mousecontrol.processor.MovementProcessor;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Records a short synthetic session with the pipeline events enabled, against a
+ * SimulatedDesktop so it needs no display: motion lines go to a TCPServer over loopback
+ * through the real read/parse/filter/inject path, while the simulated screen is streamed
+ * over UDP to a local socket. Checks that every custom event fired, that the motion
+ * filter stays fast and that the control connection's handler thread allocates little
+ * per line.
+ */
+class PipelineEventsTest {
+
+    private static final String PREFIX = "com.mousecontrol.";
+    private static final String HANDLER_THREAD = "tcp-client-handler";
+    private static final int LINES = 5000;
+    private static final long MAX_FILTER_P99_MICROS = 5000;
+    private static final long MAX_ALLOC_BYTES_PER_LINE = 64 * 1024;
+
+    @Test
+    @Timeout(60)
+    void syntheticSessionRecordsEveryPipelineEvent() throws Exception {
+        SimulatedDesktop desktop = SimulatedDesktop.parse(SimulatedDesktop.DEFAULT_LAYOUT);
+        Desktops.set(desktop);
+        Path out = Files.createTempFile("mousecontrol-", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            for (String name : new String[] {"InputRead", "InputParse", "MotionFilter", "Inject",
+                    "FrameCapture", "FrameScale", "FrameEncode", "FrameSend"}) {
+                recording.enable(PREFIX + name).withThreshold(Duration.ZERO);
+            }
+            recording.enable("jdk.ObjectAllocationSample").with("throttle", "1000/s");
+            recording.start();
+            try {
+                runSession(desktop);
+            } finally {
+                recording.stop();
+                recording.dump(out);
+            }
+        }
+
+        Map<String, List<Long>> durations = new TreeMap<>();
+        long allocated = 0;
+        for (RecordedEvent e : RecordingFile.readAllEvents(out)) {
+            String name = e.getEventType().getName();
+            if (name.startsWith(PREFIX)) {
+                durations.computeIfAbsent(name.substring(PREFIX.length()), k -> new ArrayList<>())
+                        .add(e.getDuration().toNanos());
+            } else if ("jdk.ObjectAllocationSample".equals(name) && e.getThread() != null
+                    && HANDLER_THREAD.equals(e.getThread().getJavaName())) {
+                allocated += e.getLong("weight");
+            }
+        }
+        Files.deleteIfExists(out);
+
+        for (String name : new String[] {"InputRead", "InputParse", "MotionFilter", "Inject",
+                "FrameCapture", "FrameEncode", "FrameSend"}) {
+            assertTrue(durations.containsKey(name), "no " + name + " events (recorded " + durations.keySet() + ")");
+        }
+        long p99 = percentile(durations.get("MotionFilter"), 0.99) / 1000;
+        assertTrue(p99 <= MAX_FILTER_P99_MICROS, "MotionFilter p99 " + p99 + " us");
+        long perLine = allocated / LINES;
+        assertTrue(perLine <= MAX_ALLOC_BYTES_PER_LINE, "handler thread allocated ~" + perLine + " bytes/line");
+    }
+
+    private static long percentile(List<Long> nanos, double p) {
+        long[] sorted = nanos.stream().mapToLong(Long::longValue).sorted().toArray();
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+
+    /**
+     * Stream the screen to a local socket and send lines of gyro motion (one full sine
+     * period per 200 lines), then receive frames for a while.
+     */
+    private static void runSession(SimulatedDesktop desktop) throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        MovementProcessor processor = new MovementProcessor(new MouseController(desktop));
+        processor.setSensitivity(2.0);
+        processor.setSmoothing(0.1);
+        processor.setDeadZone(0.0);
+        TCPServer server = new TCPServer(port, processor);
+        UDPStreamer streamer = new UDPStreamer(1100);
+        server.setUdpStreamer(streamer);
+        server.start();
+
+        Socket socket = connect(port);
+        try (DatagramSocket receiver = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             Writer w = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            w.write("{\"stream\":{\"cmd\":\"start\",\"port\":" + receiver.getLocalPort() + ",\"fps\":15,\"maxWidth\":960}}\n");
+            w.flush();
+            for (int i = 0; i < LINES; i++) {
+                double phase = 2 * Math.PI * (i % 200) / 200.0;
+                w.write("{\"gyroX\":" + Math.sin(phase) + ",\"gyroY\":" + Math.cos(phase) / 2
+                        + ",\"leftClick\":false,\"rightClick\":false}\n");
+                if (i % 50 == 49) w.flush();
+            }
+            w.flush();
+            receiver.setSoTimeout(200);
+            byte[] buf = new byte[2048];
+            long until = System.nanoTime() + 2_000_000_000L;
+            while (System.nanoTime() < until) {
+                try {
+                    receiver.receive(new DatagramPacket(buf, buf.length));
+                } catch (SocketTimeoutException ignored) {
+                    // keep waiting until the deadline
+                }
+            }
+            streamer.stopStreaming();
+            // let the handler drain what is still buffered
+            Thread.sleep(500);
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static Socket connect(int port) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new Socket(InetAddress.getLoopbackAddress(), port);
+            } catch (java.net.ConnectException e) {
+                // the server binds on its own thread
+                if (attempt >= 50) throw e;
+                Thread.sleep(20);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.mousecontrol.loadtest;
+
+import com.mousecontrol.communication.FecEncoder;
+import com.mousecontrol.communication.FragmentSender;
+import com.mousecontrol.communication.StreamTarget;
+import org.junit.jupiter.api.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sends frames through FragmentSender over loopback UDP, drops datagrams at a fixed
+ * rate on the receiving side (like StreamReceiver --drop) and reassembles them with
+ * the reference FrameReassembler, with and without XOR-parity FEC.
+ */
+class FecLossTest {
+
+    private static final int FRAMES = 300;
+    private static final int FRAGMENT_SIZE = 1000;
+    private static final int FRAME_BYTES = 20 * FRAGMENT_SIZE - 300;
+    private static final double DROP = 0.05;
+
+    /**
+     * Fraction of frames the receiver completed, all of them checked for a valid image.
+     */
+    private static double deliveredRatio(FecEncoder fec) throws Exception {
+        Random content = new Random(7);
+        Random loss = new Random(42);
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        FrameReassembler reassembler = new FrameReassembler(new Samples());
+        try (DatagramSocket receiver = new DatagramSocket(0, loopback)) {
+            receiver.setSoTimeout(2000);
+            receiver.setReceiveBufferSize(1 << 20);
+            StreamTarget target = new StreamTarget(loopback, receiver.getLocalPort(), loopback, 10_000, 1);
+            StreamTarget[] targets = {target};
+            FragmentSender sender = new FragmentSender(FRAGMENT_SIZE);
+            byte[] frame = new byte[FRAME_BYTES];
+            byte[] buf = new byte[FRAGMENT_SIZE + 64];
+            try {
+                for (int seq = 0; seq < FRAMES; seq++) {
+                    content.nextBytes(frame);
+                    // JPEG signature, so the reassembler accepts the frame as an image
+                    frame[0] = (byte) 0xFF;
+                    frame[1] = (byte) 0xD8;
+                    int packets = sender.send(targets, frame, FRAME_BYTES, seq, fec, fec.groupSize(-1), 0);
+                    // one frame at a time, so the socket buffer never overflows on its own
+                    for (int i = 0; i < packets; i++) {
+                        DatagramPacket packet = new DatagramPacket(buf, buf.length);
+                        receiver.receive(packet);
+                        if (loss.nextDouble() < DROP) continue;
+                        reassembler.accept(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()), System.nanoTime());
+                    }
+                }
+            } finally {
+                target.close();
+            }
+        }
+        // whatever is still incomplete is lost
+        reassembler.expire(Long.MAX_VALUE);
+        assertEquals(0, reassembler.framesInvalid, "frames reassembled with wrong contents");
+        assertEquals(FRAMES, reassembler.framesComplete + reassembler.framesLost, "frames accounted for");
+        return reassembler.framesComplete / (double) FRAMES;
+    }
+
+    @Test
+    void parityDeliversMoreFramesUnderLoss() throws Exception {
+        double without = deliveredRatio(FecEncoder.off());
+        double with = deliveredRatio(new FecEncoder(FecEncoder.Mode.FIXED, 4));
+        // 20 fragments at 5% loss: about 36% of frames survive without parity, about 89%
+        // with one parity fragment per 4
+        assertTrue(with > without + 0.3, "delivered " + with + " with FEC, " + without + " without");
+        assertTrue(with > 0.8, "delivered " + with + " with FEC");
+    }
+}